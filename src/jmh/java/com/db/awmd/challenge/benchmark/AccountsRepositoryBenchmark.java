@@ -0,0 +1,108 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryLockFree;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+import com.db.awmd.challenge.repository.AccountsRepositorySharded;
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Account creation and lookup against the repository implementations.
+ *
+ * @author jeevan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountsRepositoryBenchmark {
+
+  private static final int ACCOUNTS = 1 << 17;
+
+  @Param({"locking", "lock-free", "sharded", "off-heap"})
+  public String repository;
+
+  private AccountsRepository populated;
+
+  private AccountsRepository empty;
+
+  private String[] existingIds;
+
+  private String[] missingIds;
+
+  /**
+   * Per-thread position in the id arrays and source of unique ids for creation.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    private final String prefix = UUID.randomUUID().toString();
+    private int next;
+  }
+
+  @Setup(Level.Trial)
+  public void populate() {
+    populated = create(repository);
+    empty = create(repository);
+    existingIds = new String[ACCOUNTS];
+    missingIds = new String[ACCOUNTS];
+    for (int i = 0; i < ACCOUNTS; i++) {
+      existingIds[i] = "Id-" + i;
+      missingIds[i] = "Missing-" + i;
+      populated.createAccount(new Account(existingIds[i], BigDecimal.TEN));
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void clear() {
+    empty.clearAccounts();
+  }
+
+  @Benchmark
+  public void createAccount(Cursor cursor) {
+    empty.createAccount(new Account(cursor.prefix + cursor.next++, BigDecimal.TEN));
+  }
+
+  @Benchmark
+  public Account getAccountHit(Cursor cursor) {
+    return populated.getAccount(existingIds[cursor.next++ & (ACCOUNTS - 1)]);
+  }
+
+  @Benchmark
+  public Account getAccountMiss(Cursor cursor) {
+    return populated.getAccount(missingIds[cursor.next++ & (ACCOUNTS - 1)]);
+  }
+
+  static AccountsRepository create(String repository) {
+    switch (repository) {
+      case "locking":
+        return new AccountsRepositoryInMemory(1024);
+      case "lock-free":
+        return new AccountsRepositoryLockFree();
+      case "off-heap":
+        return new AccountsRepositoryOffHeap(1024, ACCOUNTS);
+      case "sharded":
+        return new AccountsRepositorySharded(0, 65536);
+      default:
+        throw new IllegalArgumentException("Unknown repository " + repository);
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.DevChallengeApplication;
+import com.db.awmd.challenge.binary.BinaryTransferClient;
+import com.db.awmd.challenge.binary.BinaryTransferServer;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * One transfer over loopback, through the JSON REST endpoint and through the binary protocol of
+ * {@link BinaryTransferServer}, both ending in the same {@link AccountsService} call. The binary
+ * protocol is measured once waiting for every response before sending the next request, like the
+ * REST client has to, and once keeping {@value #PIPELINE_DEPTH} requests in flight.
+ *
+ * @author jeevan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryProtocolBenchmark {
+
+  private static final int ACCOUNTS = 1024;
+
+  private static final int PIPELINE_DEPTH = 64;
+
+  private ConfigurableApplicationContext context;
+
+  private URL transferUrl;
+
+  private int binaryPort;
+
+  /**
+   * Connection of one benchmark thread, the REST client reuses its keep-alive connection.
+   */
+  @State(Scope.Thread)
+  public static class Client {
+
+    private BinaryTransferClient binary;
+    private final byte[] buffer = new byte[1024];
+
+    @Setup(Level.Trial)
+    public void connect(BinaryProtocolBenchmark benchmark) throws IOException {
+      binary = new BinaryTransferClient("localhost", benchmark.binaryPort);
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() throws IOException {
+      binary.close();
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void start() throws IOException {
+    // passed as arguments, default properties would not override application.yml
+    context = new SpringApplicationBuilder(DevChallengeApplication.class)
+        .run("--server.port=0", "--accounts.binary.enabled=true", "--accounts.binary.port=0",
+            "--logging.level.root=WARN");
+    final AccountsService accountsService = context.getBean(AccountsService.class);
+    final BigDecimal balance = new BigDecimal("1000000000000");
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accountsService.createAccount(new Account("Id-" + i, balance));
+    }
+    transferUrl = new URL("http://localhost:" + context.getEnvironment()
+        .getProperty("local.server.port") + "/v1/accounts/transfer");
+    binaryPort = context.getBean(BinaryTransferServer.class).getPort();
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    context.close();
+  }
+
+  @Benchmark
+  public int rest(Client client) throws IOException {
+    final int from = pick();
+    final byte[] body = ("{\"accountFromId\":\"Id-" + from + "\",\"accountToId\":\"Id-"
+        + other(from) + "\",\"amount\":1}").getBytes(StandardCharsets.UTF_8);
+    final HttpURLConnection connection = (HttpURLConnection) transferUrl.openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/json");
+    connection.setFixedLengthStreamingMode(body.length);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body);
+    }
+    final int status = connection.getResponseCode();
+    // the response has to be read to the end for the connection to be reused
+    try (InputStream in = connection.getInputStream()) {
+      while (in.read(client.buffer) >= 0) {
+        // discard
+      }
+    }
+    return status;
+  }
+
+  @Benchmark
+  public Void binary(Client client) {
+    final int from = pick();
+    return client.binary.transfer("Id-" + from, "Id-" + other(from), 100L).join();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PIPELINE_DEPTH)
+  public Void binaryPipelined(Client client) {
+    final CompletableFuture<?>[] transfers = new CompletableFuture<?>[PIPELINE_DEPTH];
+    for (int i = 0; i < PIPELINE_DEPTH; i++) {
+      final int from = pick();
+      transfers[i] = client.binary.transfer("Id-" + from, "Id-" + other(from), 100L);
+    }
+    return CompletableFuture.allOf(transfers).join();
+  }
+
+  private static int pick() {
+    return ThreadLocalRandom.current().nextInt(ACCOUNTS);
+  }
+
+  private static int other(int from) {
+    return (from + 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+  }
+}
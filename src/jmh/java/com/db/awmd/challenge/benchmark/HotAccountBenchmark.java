@@ -0,0 +1,88 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryLockFree;
+import com.db.awmd.challenge.repository.HotAccounts;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every thread pays from an account of its own into one merchant account, the worst case for a
+ * single balance, with the merchant account split or not.
+ *
+ * @author jeevan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class HotAccountBenchmark {
+
+  private static final String MERCHANT = "merchant";
+
+  @Param({"locking", "lock-free"})
+  public String repository;
+
+  @Param({"false", "true"})
+  public boolean split;
+
+  private AccountsRepository accountsRepository;
+
+  private Account merchant;
+
+  private final AtomicInteger payers = new AtomicInteger();
+
+  /**
+   * Account the thread pays from.
+   */
+  @State(Scope.Thread)
+  public static class Payer {
+
+    private Account account;
+
+    @Setup(Level.Trial)
+    public void create(HotAccountBenchmark benchmark) {
+      account = new Account("payer-" + benchmark.payers.incrementAndGet(),
+          new BigDecimal(Long.MAX_VALUE / 100 / 1024));
+      benchmark.accountsRepository.createAccount(account);
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void populate() {
+    final Set<String> hot = split ? Collections.singleton(MERCHANT) : Collections.emptySet();
+    final HotAccounts hotAccounts = new HotAccounts(hot, 16, 0L, 0L);
+    accountsRepository = "locking".equals(repository)
+        ? new AccountsRepositoryInMemory(1024, new TransferMetrics(), hotAccounts)
+        : new AccountsRepositoryLockFree(hotAccounts);
+    merchant = new Account(MERCHANT, BigDecimal.ZERO);
+    accountsRepository.createAccount(merchant);
+  }
+
+  @Benchmark
+  public void pay(Payer payer) {
+    accountsRepository.transferBetweenAccounts(payer.account, merchant, 1L);
+  }
+}
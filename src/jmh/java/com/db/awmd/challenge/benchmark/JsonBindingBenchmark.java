@@ -0,0 +1,83 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Jackson binding of the payloads handled by {@code AccountsController}.
+ *
+ * @author jeevan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBindingBenchmark {
+
+  private ObjectReader accountReader;
+  private ObjectWriter accountWriter;
+  private ObjectReader transferRequestReader;
+  private ObjectWriter transferResponseWriter;
+
+  private Account account;
+  private byte[] accountJson;
+  private byte[] transferRequestJson;
+  private TransferResponse transferResponse;
+
+  @Setup
+  public void setUp() {
+    final ObjectMapper objectMapper = new ObjectMapper();
+    accountReader = objectMapper.readerFor(Account.class);
+    accountWriter = objectMapper.writerFor(Account.class);
+    transferRequestReader = objectMapper.readerFor(TransferRequest.class);
+    transferResponseWriter = objectMapper.writerFor(TransferResponse.class);
+
+    account = new Account("Id-123", new BigDecimal("123.45"));
+    accountJson = "{\"accountId\":\"Id-123\",\"balance\":123.45}"
+        .getBytes(StandardCharsets.UTF_8);
+    transferRequestJson = "{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200}"
+        .getBytes(StandardCharsets.UTF_8);
+    transferResponse = new TransferResponse(true,
+        "200 amount has been transferred from account AC2 to AC1");
+  }
+
+  @Benchmark
+  public byte[] serializeAccount() throws IOException {
+    return accountWriter.writeValueAsBytes(account);
+  }
+
+  @Benchmark
+  public Account deserializeAccount() throws IOException {
+    return accountReader.readValue(accountJson);
+  }
+
+  @Benchmark
+  public TransferRequest deserializeTransferRequest() throws IOException {
+    return transferRequestReader.readValue(transferRequestJson);
+  }
+
+  @Benchmark
+  public byte[] serializeTransferResponse() throws IOException {
+    return transferResponseWriter.writeValueAsBytes(transferResponse);
+  }
+}
@@ -0,0 +1,132 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.DevChallengeApplication;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResponse;
+import com.db.awmd.challenge.service.AccountsService;
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * End-to-end {@link AccountsService#transferAmount(TransferRequest)} in a fully wired application
+ * context. With few accounts or Zipf-distributed selection most transfers touch the same hot
+ * accounts, with many accounts and uniform selection they are practically uncontended. Use the
+ * {@code -t} option to measure other thread counts than the two annotated ones. With
+ * {@code metrics} false no latencies are recorded, which gives what recording them costs.
+ *
+ * @author jeevan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+
+  private static final int REQUESTS_PER_THREAD = 4096;
+
+  @Param({"locking", "lock-free", "sharded"})
+  public String repository;
+
+  @Param({"16", "100000"})
+  public int accounts;
+
+  @Param({"uniform", "zipf"})
+  public String selection;
+
+  @Param({"true", "false"})
+  public boolean metrics;
+
+  private ConfigurableApplicationContext context;
+
+  private AccountsService accountsService;
+
+  private ZipfDistribution zipf;
+
+  /**
+   * Pre-generated transfers of one thread, so that picking accounts is not measured.
+   */
+  @State(Scope.Thread)
+  public static class Requests {
+
+    private TransferRequest[] requests;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void generate(TransferBenchmark benchmark) {
+      final Random random = ThreadLocalRandom.current();
+      requests = new TransferRequest[REQUESTS_PER_THREAD];
+      for (int i = 0; i < requests.length; i++) {
+        final int from = benchmark.pick(random);
+        int to = benchmark.pick(random);
+        while (to == from) {
+          to = benchmark.pick(random);
+        }
+        final TransferRequest request = new TransferRequest();
+        request.setAccountFromId("Id-" + from);
+        request.setAccountToId("Id-" + to);
+        request.setAmount(BigDecimal.ONE);
+        requests[i] = request;
+      }
+    }
+
+    private TransferRequest next() {
+      return requests[next++ & (REQUESTS_PER_THREAD - 1)];
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void start() {
+    context = new SpringApplicationBuilder(DevChallengeApplication.class).web(false)
+        .properties("accounts.repository.mode=" + repository,
+            "accounts.metrics.latency=" + metrics).run();
+    accountsService = context.getBean(AccountsService.class);
+    zipf = new ZipfDistribution(accounts, 1.0);
+    // large enough never to run dry during a trial
+    final BigDecimal balance = new BigDecimal("1000000000000");
+    for (int i = 0; i < accounts; i++) {
+      accountsService.createAccount(new Account("Id-" + i, balance));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    context.close();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public TransferResponse transferSingleThread(Requests requests) {
+    return accountsService.transferAmount(requests.next());
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public TransferResponse transferAllThreads(Requests requests) {
+    return accountsService.transferAmount(requests.next());
+  }
+
+  private int pick(Random random) {
+    return "zipf".equals(selection) ? zipf.sample(random) : random.nextInt(accounts);
+  }
+}
@@ -0,0 +1,380 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.DevChallengeApplication;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Load driver comparing the blocking and the asynchronous transfer endpoint, see
+ * {@code accounts.web.execution}, under many concurrent clients.
+ *
+ * <p>For every mode the driver starts the service in a JVM of its own, creates the accounts
+ * through the import endpoint and opens one keep-alive connection per client. Clients are closed
+ * loop: each sends a transfer, waits for the response and sends the next one, so the latency
+ * recorded is the time the service takes to answer while that many clients keep it busy. All
+ * connections are driven by a single selector thread, so the driver needs no thread per client.
+ * Requests still unanswered when the measurement ends, including those sent during the warm-up,
+ * are recorded with the time they waited so far rather than dropped, so a stalled request still
+ * shows in the tail.
+ *
+ * <p>The server gets a 3 GB heap by default: with 10000 transfers in flight the asynchronous
+ * endpoint keeps about 900 MB live, where the blocking one leaves the requests it has no thread
+ * for in the socket buffers, and with 1 GB it spends the run in full collections.
+ *
+ * <p>Admission control is turned off for the run, as every client connects from the same address
+ * and would otherwise share one rate limit. Run with, for example,
+ * {@code gradle loadTest -Pload.clients=10000 -Pload.seconds=30}; the other settings are
+ * {@code load.modes}, {@code load.repository}, {@code load.accounts},
+ * {@code load.warmup-seconds}, {@code load.port} and {@code load.server-jvm-args}. The output of
+ * every server goes to {@code build/reports/load}.
+ *
+ * @author jeevan
+ */
+public final class TransferLoadDriver {
+
+  private static final int CLIENTS = Integer.getInteger("load.clients", 10_000);
+  private static final int ACCOUNTS = Integer.getInteger("load.accounts", 10_000);
+  private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup-seconds", 10);
+  private static final int SECONDS = Integer.getInteger("load.seconds", 30);
+  private static final String MODES = System.getProperty("load.modes", "blocking,async");
+  private static final String REPOSITORY = System.getProperty("load.repository", "sharded");
+  private static final String SERVER_JVM_ARGS =
+      System.getProperty("load.server-jvm-args", "-Xmx3g");
+  private static final int PORT = Integer.getInteger("load.port", 18080);
+
+  /**
+   * Connections being opened at once, more would overflow the accept backlog of the server.
+   */
+  private static final int MAX_PENDING_CONNECTS = 64;
+
+  private static final long STARTUP_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+  private TransferLoadDriver() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    final List<Result> results = new ArrayList<>();
+    for (String mode : MODES.split(",")) {
+      final Process server = startServer(mode.trim());
+      try {
+        awaitStarted(server);
+        createAccounts();
+        results.add(new Load(mode.trim()).run());
+      } finally {
+        server.destroy();
+        server.waitFor(30, TimeUnit.SECONDS);
+      }
+    }
+
+    System.out.printf("%n%d clients, %d accounts, %s repository, %d s measured after %d s of "
+        + "warm-up%n", CLIENTS, ACCOUNTS, REPOSITORY, SECONDS, WARMUP_SECONDS);
+    System.out.printf("%-10s %10s %10s %9s %9s %9s %9s %9s  %s%n", "mode", "requests", "req/s",
+        "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "statuses");
+    for (Result result : results) {
+      System.out.println(result);
+    }
+  }
+
+  private static Process startServer(String mode) throws IOException {
+    final List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    if (!SERVER_JVM_ARGS.trim().isEmpty()) {
+      command.addAll(Arrays.asList(SERVER_JVM_ARGS.trim().split("\\s+")));
+    }
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(DevChallengeApplication.class.getName());
+    command.add("--server.port=" + PORT);
+    command.add("--accounts.web.execution=" + mode);
+    command.add("--accounts.web.max-in-flight-transfers=" + Math.max(CLIENTS, 1));
+    command.add("--accounts.repository.mode=" + REPOSITORY);
+    command.add("--accounts.admission.enabled=false");
+    command.add("--accounts.logging.transfer-sample-rate=0");
+    final File log = new File("build/reports/load/server-" + mode + ".log");
+    log.getParentFile().mkdirs();
+    return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+  }
+
+  private static void awaitStarted(Process server) throws InterruptedException {
+    final long deadline = System.nanoTime() + STARTUP_TIMEOUT_NANOS;
+    while (System.nanoTime() - deadline < 0) {
+      if (!server.isAlive()) {
+        throw new IllegalStateException("Server exited with " + server.exitValue()
+            + ", see build/reports/load.");
+      }
+      try {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(
+            "http://localhost:" + PORT + "/v1/metrics").openConnection();
+        if (connection.getResponseCode() == 200) {
+          return;
+        }
+      } catch (IOException notYet) {
+        // still starting
+      }
+      Thread.sleep(200);
+    }
+    throw new IllegalStateException("Server did not start in time.");
+  }
+
+  private static void createAccounts() throws IOException {
+    final StringBuilder body = new StringBuilder();
+    for (int i = 0; i < ACCOUNTS; i++) {
+      body.append("{\"accountId\":\"LOAD-").append(i).append("\",\"balance\":1000000000}\n");
+    }
+    final HttpURLConnection connection = (HttpURLConnection) new URL(
+        "http://localhost:" + PORT + "/v1/accounts/import").openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/x-ndjson");
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    try (InputStream in = connection.getInputStream()) {
+      while (in.read() >= 0) {
+        // drained
+      }
+    }
+    if (connection.getResponseCode() != 200) {
+      throw new IllegalStateException("Import failed with " + connection.getResponseCode());
+    }
+  }
+
+  /**
+   * One measurement of one mode.
+   */
+  private static final class Load {
+
+    private final String mode;
+    private final Selector selector;
+    private final SplittableRandom random = new SplittableRandom(42L);
+    private final Histogram histogram = new Histogram(TimeUnit.MINUTES.toNanos(5), 3);
+    private final Map<Integer, Long> statuses = new TreeMap<>();
+    private long measuredFrom;
+    private long measuredTo;
+    private long completed;
+    private long unanswered;
+    private long reconnects;
+
+    private Load(String mode) throws IOException {
+      this.mode = mode;
+      this.selector = Selector.open();
+    }
+
+    private Result run() throws IOException {
+      final Client[] clients = new Client[CLIENTS];
+      try {
+        connectAll(clients);
+        final long started = System.nanoTime();
+        measuredFrom = started + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        measuredTo = measuredFrom + TimeUnit.SECONDS.toNanos(SECONDS);
+        for (Client client : clients) {
+          send(client, started);
+        }
+        while (System.nanoTime() - measuredTo < 0) {
+          selector.select(100);
+          final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            final SelectionKey key = keys.next();
+            keys.remove();
+            handle((Client) key.attachment(), key);
+          }
+        }
+        // every client has a request outstanding, also those sent before the warm-up ended
+        for (Client client : clients) {
+          if (measuredTo - client.sentAt > 0) {
+            histogram.recordValue(Math.min(measuredTo - client.sentAt,
+                histogram.getHighestTrackableValue()));
+            unanswered++;
+          }
+        }
+      } finally {
+        for (Client client : clients) {
+          if (client != null) {
+            client.channel.close();
+          }
+        }
+        selector.close();
+      }
+      return new Result(mode, completed, unanswered, histogram, statuses, reconnects);
+    }
+
+    private void connectAll(Client[] clients) throws IOException {
+      int opened = 0;
+      int connected = 0;
+      int pending = 0;
+      while (connected < clients.length) {
+        while (pending < MAX_PENDING_CONNECTS && opened < clients.length) {
+          clients[opened] = new Client();
+          connect(clients[opened++]);
+          pending++;
+        }
+        selector.select(100);
+        final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          final SelectionKey key = keys.next();
+          keys.remove();
+          ((SocketChannel) key.channel()).finishConnect();
+          key.interestOps(0);
+          pending--;
+          connected++;
+        }
+      }
+    }
+
+    private void connect(Client client) throws IOException {
+      client.channel = SocketChannel.open();
+      client.channel.configureBlocking(false);
+      client.channel.connect(new InetSocketAddress("localhost", PORT));
+      client.channel.register(selector, SelectionKey.OP_CONNECT, client);
+    }
+
+    private void handle(Client client, SelectionKey key) throws IOException {
+      if (key.isConnectable()) {
+        // a connection the server closed after its last keep-alive request was reopened
+        client.channel.finishConnect();
+        key.interestOps(SelectionKey.OP_WRITE);
+      } else if (key.isWritable()) {
+        client.channel.write(client.request);
+        if (!client.request.hasRemaining()) {
+          key.interestOps(SelectionKey.OP_READ);
+        }
+      } else if (key.isReadable()) {
+        if (client.channel.read(client.response) < 0) {
+          throw new IOException("Server closed a connection while a request was pending.");
+        }
+        final int status = client.status();
+        if (status < 0) {
+          return;
+        }
+        final long now = System.nanoTime();
+        if (client.sentAt - measuredFrom >= 0 && measuredTo - now > 0) {
+          histogram.recordValue(Math.min(now - client.sentAt,
+              histogram.getHighestTrackableValue()));
+          statuses.merge(status, 1L, Long::sum);
+          completed++;
+        }
+        final boolean close = client.closeAfterResponse;
+        client.response.clear();
+        if (close) {
+          key.cancel();
+          client.channel.close();
+          reconnects++;
+          nextRequest(client, now);
+          connect(client);
+        } else {
+          send(client, now);
+        }
+      }
+    }
+
+    private void send(Client client, long now) throws IOException {
+      nextRequest(client, now);
+      client.channel.write(client.request);
+      client.channel.keyFor(selector).interestOps(
+          client.request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void nextRequest(Client client, long now) {
+      final int from = random.nextInt(ACCOUNTS);
+      final int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+      final String body = "{\"accountFromId\":\"LOAD-" + from + "\",\"accountToId\":\"LOAD-"
+          + to + "\",\"amount\":1}";
+      client.request = ByteBuffer.wrap(("POST /v1/accounts/transfer HTTP/1.1\r\n"
+          + "Host: localhost\r\nContent-Type: application/json\r\nContent-Length: "
+          + body.length() + "\r\n\r\n" + body).getBytes(StandardCharsets.US_ASCII));
+      client.sentAt = now;
+    }
+  }
+
+  private static final class Client {
+
+    private SocketChannel channel;
+    private ByteBuffer request;
+    private final ByteBuffer response = ByteBuffer.allocate(16384);
+    private long sentAt;
+    private boolean closeAfterResponse;
+
+    /**
+     * Method used to check whether the whole response has arrived.
+     *
+     * @return HTTP status of the response, or -1 if more of it is still to come.
+     */
+    private int status() {
+      final String text = new String(response.array(), 0, response.position(),
+          StandardCharsets.ISO_8859_1);
+      final int headerEnd = text.indexOf("\r\n\r\n");
+      if (headerEnd < 0) {
+        return -1;
+      }
+      final String headers = text.substring(0, headerEnd).toLowerCase();
+      final int bodyStart = headerEnd + 4;
+      final int lengthAt = headers.indexOf("\r\ncontent-length:");
+      if (lengthAt >= 0) {
+        final int valueEnd = headers.indexOf("\r\n", lengthAt + 2);
+        final int length = Integer.parseInt(headers.substring(lengthAt + 17,
+            valueEnd < 0 ? headers.length() : valueEnd).trim());
+        if (text.length() - bodyStart < length) {
+          return -1;
+        }
+      } else if (headers.contains("\r\ntransfer-encoding: chunked")
+          && !text.substring(bodyStart).startsWith("0\r\n\r\n")
+          && !text.endsWith("\r\n0\r\n\r\n")) {
+        return -1;
+      }
+      closeAfterResponse = headers.contains("\r\nconnection: close");
+      return Integer.parseInt(text.substring(9, 12));
+    }
+  }
+
+  private static final class Result {
+
+    private final String mode;
+    private final long completed;
+    private final long unanswered;
+    private final Histogram histogram;
+    private final Map<Integer, Long> statuses;
+    private final long reconnects;
+
+    private Result(String mode, long completed, long unanswered, Histogram histogram,
+        Map<Integer, Long> statuses, long reconnects) {
+      this.mode = mode;
+      this.completed = completed;
+      this.unanswered = unanswered;
+      this.histogram = histogram;
+      this.statuses = statuses;
+      this.reconnects = reconnects;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-10s %10d %10.0f %9.1f %9.1f %9.1f %9.1f %9.1f  %s, %d in flight, "
+          + "%d reconnects", mode, completed, (double) completed / SECONDS, millis(50), millis(90),
+          millis(99), millis(99.9), histogram.getMaxValue() / 1e6, statuses, unanswered,
+          reconnects);
+    }
+
+    private double millis(double percentile) {
+      return histogram.getValueAtPercentile(percentile) / 1e6;
+    }
+  }
+}
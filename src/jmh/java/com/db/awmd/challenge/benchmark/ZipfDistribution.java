@@ -0,0 +1,32 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Samples indexes {@code 0..n-1} with Zipf-distributed probabilities, index 0 being the most
+ * frequent one. Used to model a few hot accounts receiving most of the traffic.
+ *
+ * @author jeevan
+ */
+final class ZipfDistribution {
+
+  private final double[] cumulative;
+
+  ZipfDistribution(int n, double exponent) {
+    cumulative = new double[n];
+    double sum = 0;
+    for (int i = 0; i < n; i++) {
+      sum += 1.0 / Math.pow(i + 1, exponent);
+      cumulative[i] = sum;
+    }
+    for (int i = 0; i < n; i++) {
+      cumulative[i] /= sum;
+    }
+  }
+
+  int sample(Random random) {
+    final int index = Arrays.binarySearch(cumulative, random.nextDouble());
+    return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+  }
+}
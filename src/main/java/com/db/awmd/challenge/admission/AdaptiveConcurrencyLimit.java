@@ -0,0 +1,157 @@
+package com.db.awmd.challenge.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limit on the number of requests executing at once which adapts to their latency, in the manner
+ * of TCP congestion control.
+ *
+ * <p>The latency of an idle system is estimated by the smallest latency seen over a sliding
+ * window, but never less than a floor, so that jitter on a sub-millisecond path is not mistaken
+ * for queueing. While the smoothed latency stays within a tolerance of that baseline and the limit
+ * is at least half used, every completed request adds {@code 1 / limit} to the limit, which grows
+ * it by one per round of requests. Once the smoothed latency exceeds the tolerance the limit is
+ * cut by a tenth, at most once per round, until requests queue less. All state is kept in atomics,
+ * acquiring and releasing never lock.
+ *
+ * @author jeevan
+ */
+public class AdaptiveConcurrencyLimit {
+
+  private static final double DECREASE_FACTOR = 0.9;
+
+  /**
+   * Weight of a new sample in the smoothed latency, as a power of two.
+   */
+  private static final int SMOOTHING_SHIFT = 4;
+
+  private final int minLimit;
+
+  private final int maxLimit;
+
+  private final double tolerance;
+
+  private final long latencyFloorNanos;
+
+  private final long windowNanos;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final AtomicLong limitBits;
+
+  private final AtomicLong smoothedNanos = new AtomicLong(-1L);
+
+  private final AtomicLong samples = new AtomicLong();
+
+  private final AtomicLong lastDecrease = new AtomicLong();
+
+  /**
+   * Smallest latency of the current window and when the window started. Updated without
+   * synchronization, an estimate slightly off for one sample does no harm.
+   */
+  private volatile long minLatencyNanos = Long.MAX_VALUE;
+
+  private volatile long windowStart = System.nanoTime();
+
+  /**
+   * @param initialLimit Limit to start with.
+   * @param minLimit Lowest the limit is cut to.
+   * @param maxLimit Highest the limit grows to.
+   * @param tolerance Ratio of smoothed to idle latency above which the system counts as
+   * congested.
+   * @param latencyFloorMicros Lowest idle latency assumed.
+   * @param windowSeconds How long the smallest latency seen is taken as the idle latency.
+   */
+  public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance,
+      long latencyFloorMicros, long windowSeconds) {
+    if (minLimit < 1 || maxLimit < minLimit || tolerance <= 1.0) {
+      throw new IllegalArgumentException("Invalid concurrency limit bounds or tolerance.");
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.tolerance = tolerance;
+    this.latencyFloorNanos = TimeUnit.MICROSECONDS.toNanos(latencyFloorMicros);
+    this.windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+    this.limitBits = new AtomicLong(Double.doubleToLongBits(
+        Math.min(Math.max(initialLimit, minLimit), maxLimit)));
+  }
+
+  /**
+   * Method used to start a request if the limit allows it.
+   *
+   * @return {@code true} if the request may execute, it must then be {@link #release released}.
+   */
+  public boolean tryAcquire() {
+    while (true) {
+      final int current = inFlight.get();
+      if (current >= (int) getLimit()) {
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Method used to end a request and adapt the limit to its latency.
+   *
+   * @param latencyNanos Time the request took.
+   * @param now Current {@link System#nanoTime()}.
+   */
+  public void release(long latencyNanos, long now) {
+    final int used = inFlight.getAndDecrement();
+    if (latencyNanos < minLatencyNanos || now - windowStart > windowNanos) {
+      minLatencyNanos = latencyNanos;
+      windowStart = now;
+    }
+    final long smoothed = smooth(latencyNanos);
+    final long baseline = Math.max(minLatencyNanos, latencyFloorNanos);
+    final long sample = samples.incrementAndGet();
+
+    if (smoothed > tolerance * baseline) {
+      final long last = lastDecrease.get();
+      if (sample - last >= (long) getLimit() && lastDecrease.compareAndSet(last, sample)) {
+        adjust(false);
+      }
+    } else if (used >= getLimit() / 2) {
+      adjust(true);
+    }
+  }
+
+  /**
+   * Current limit, requests beyond its integer part are refused.
+   */
+  public double getLimit() {
+    return Double.longBitsToDouble(limitBits.get());
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  private void adjust(boolean increase) {
+    while (true) {
+      final long bits = limitBits.get();
+      final double limit = Double.longBitsToDouble(bits);
+      final double next = increase ? Math.min(maxLimit, limit + 1.0 / limit)
+          : Math.max(minLimit, limit * DECREASE_FACTOR);
+      if (next == limit || limitBits.compareAndSet(bits, Double.doubleToLongBits(next))) {
+        return;
+      }
+    }
+  }
+
+  private long smooth(long latencyNanos) {
+    while (true) {
+      final long current = smoothedNanos.get();
+      final long next = current < 0 ? latencyNanos
+          : current + ((latencyNanos - current) >> SMOOTHING_SHIFT);
+      if (smoothedNanos.compareAndSet(current, next)) {
+        return next;
+      }
+    }
+  }
+}
@@ -0,0 +1,214 @@
+package com.db.awmd.challenge.admission;
+
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.metrics.TransferMetrics.Outcome;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides whether a transfer request may go ahead before it reaches {@code AccountsService}, so
+ * that a client flooding the service, or every client together flooding one account, is turned
+ * away cheaply instead of queueing on the contended path of the repository.
+ *
+ * <p>A request has to take a token from the bucket of its client and from the bucket of the
+ * account it debits, see {@link TokenBuckets}, and then fit under the
+ * {@link AdaptiveConcurrencyLimit} of all transfers. A refused request costs a few atomic
+ * operations and touches neither the service nor the repository.
+ *
+ * <p>Clients are told apart by the authenticated principal of the request, or else by its remote
+ * address. The {@code X-Client-Id} header is taken instead only when
+ * {@code accounts.admission.client.trust-client-id-header} is set, for a service behind a gateway
+ * which sets it: a client choosing its own id could otherwise take a fresh bucket per request.
+ *
+ * @author jeevan
+ */
+@Component
+public class AdmissionControl {
+
+  /**
+   * Why a request was refused.
+   */
+  public enum Reason {
+    CLIENT_RATE("Too many transfers from this client"),
+    ACCOUNT_RATE("Too many transfers from this account"),
+    CONCURRENCY("Too many transfers in progress");
+
+    private final String message;
+
+    Reason(String message) {
+      this.message = message;
+    }
+  }
+
+  /**
+   * Refusal of a request, with the time after which a retry may succeed.
+   */
+  @Getter
+  public static final class Rejection {
+
+    private final Reason reason;
+    private final long retryAfterSeconds;
+
+    private Rejection(Reason reason, long retryAfterNanos) {
+      this.reason = reason;
+      this.retryAfterSeconds = Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(
+          retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    public String getMessage() {
+      return reason.message + ", retry in " + retryAfterSeconds + " seconds.";
+    }
+  }
+
+  private static final Rejection CONCURRENCY_REJECTION = new Rejection(Reason.CONCURRENCY, 0L);
+
+  /**
+   * Header naming the calling client, see {@link #clientOf(HttpServletRequest)}.
+   */
+  public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+  private final boolean enabled;
+
+  private final boolean trustClientIdHeader;
+
+  private final TokenBuckets clientBuckets;
+
+  private final TokenBuckets accountBuckets;
+
+  @Getter
+  private final AdaptiveConcurrencyLimit concurrencyLimit;
+
+  private final TransferMetrics transferMetrics;
+
+  @Autowired
+  public AdmissionControl(TransferMetrics transferMetrics,
+      @Value("${accounts.admission.enabled:true}") boolean enabled,
+      @Value("${accounts.admission.client.trust-client-id-header:false}") boolean trustClientId,
+      @Value("${accounts.admission.client.rate-per-second:10000}") double clientRate,
+      @Value("${accounts.admission.client.burst:20000}") int clientBurst,
+      @Value("${accounts.admission.account.rate-per-second:2000}") double accountRate,
+      @Value("${accounts.admission.account.burst:4000}") int accountBurst,
+      @Value("${accounts.admission.max-keys:100000}") int maxKeys,
+      @Value("${accounts.admission.concurrency.initial-limit:256}") int initialLimit,
+      @Value("${accounts.admission.concurrency.min-limit:16}") int minLimit,
+      @Value("${accounts.admission.concurrency.max-limit:4096}") int maxLimit,
+      @Value("${accounts.admission.concurrency.latency-tolerance:2.0}") double tolerance,
+      @Value("${accounts.admission.concurrency.latency-floor-micros:1000}") long latencyFloor,
+      @Value("${accounts.admission.concurrency.window-seconds:30}") long windowSeconds) {
+    this.transferMetrics = transferMetrics;
+    this.enabled = enabled;
+    this.trustClientIdHeader = trustClientId;
+    this.clientBuckets = new TokenBuckets(clientRate, clientBurst, maxKeys);
+    this.accountBuckets = new TokenBuckets(accountRate, accountBurst, maxKeys);
+    this.concurrencyLimit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit,
+        tolerance, latencyFloor, windowSeconds);
+  }
+
+  /**
+   * Method used to identify the client sending a request, for its rate limit.
+   *
+   * @param request Servlet request.
+   * @return Name of the authenticated principal, the {@code X-Client-Id} header if trusted, or
+   * the remote address.
+   */
+  public String clientOf(HttpServletRequest request) {
+    final Principal principal = request.getUserPrincipal();
+    if (principal != null) {
+      return principal.getName();
+    }
+    final String clientId = trustClientIdHeader ? request.getHeader(CLIENT_ID_HEADER) : null;
+    return clientId != null ? clientId : request.getRemoteAddr();
+  }
+
+  /**
+   * Method used to admit a transfer request. An admitted request must be
+   * {@link #release(long) released} once it completes, whatever its outcome.
+   *
+   * @param clientId Client sending the request, see {@link #clientOf(HttpServletRequest)}.
+   * @param accountFromId Account the request debits.
+   * @return {@code null} if the request is admitted, otherwise why it is not.
+   */
+  public Rejection tryAdmit(String clientId, String accountFromId) {
+    if (!enabled) {
+      return null;
+    }
+    final long now = System.nanoTime();
+    long wait = clientBuckets.tryAcquire(clientId, now);
+    if (wait > 0) {
+      return reject(new Rejection(Reason.CLIENT_RATE, wait));
+    }
+    wait = accountBuckets.tryAcquire(String.valueOf(accountFromId), now);
+    if (wait > 0) {
+      return reject(new Rejection(Reason.ACCOUNT_RATE, wait));
+    }
+    if (!concurrencyLimit.tryAcquire()) {
+      return reject(CONCURRENCY_REJECTION);
+    }
+    return null;
+  }
+
+  /**
+   * Method used to admit a batch of transfers as one request: the client pays a token per
+   * transfer and every debited account a token per transfer debiting it, while the batch takes a
+   * single place under the concurrency limit. An admitted batch must be
+   * {@link #release(long) released} like any request.
+   *
+   * @param clientId Client sending the batch, see {@link #clientOf(HttpServletRequest)}.
+   * @param accountFromIds Account debited by every transfer of the batch.
+   * @return {@code null} if the batch is admitted, otherwise why it is not.
+   */
+  public Rejection tryAdmitBatch(String clientId, List<String> accountFromIds) {
+    if (!enabled) {
+      return null;
+    }
+    final long now = System.nanoTime();
+    long wait = clientBuckets.tryAcquire(clientId, now, Math.max(1, accountFromIds.size()));
+    if (wait > 0) {
+      return reject(new Rejection(Reason.CLIENT_RATE, wait));
+    }
+    final Map<String, Integer> debits = new HashMap<>();
+    for (String accountFromId : accountFromIds) {
+      debits.merge(String.valueOf(accountFromId), 1, Integer::sum);
+    }
+    for (Map.Entry<String, Integer> debit : debits.entrySet()) {
+      wait = accountBuckets.tryAcquire(debit.getKey(), now, debit.getValue());
+      if (wait > 0) {
+        return reject(new Rejection(Reason.ACCOUNT_RATE, wait));
+      }
+    }
+    if (!concurrencyLimit.tryAcquire()) {
+      return reject(CONCURRENCY_REJECTION);
+    }
+    return null;
+  }
+
+  /**
+   * Method used to end an admitted request.
+   *
+   * @param started {@link System#nanoTime()} when the request was admitted.
+   */
+  public void release(long started) {
+    if (enabled) {
+      final long now = System.nanoTime();
+      concurrencyLimit.release(now - started, now);
+    }
+  }
+
+  public void clear() {
+    clientBuckets.clear();
+    accountBuckets.clear();
+  }
+
+  private Rejection reject(Rejection rejection) {
+    transferMetrics.recordOutcome(Outcome.THROTTLED);
+    return rejection;
+  }
+}
@@ -0,0 +1,155 @@
+package com.db.awmd.challenge.admission;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Token buckets of the same rate and burst, one per key, for example per client or per account.
+ *
+ * <p>Each bucket is a single {@link AtomicLong} holding its theoretical arrival time as in the
+ * generic cell rate algorithm: the time at which the bucket would be full again. Taking a token
+ * pushes that time one emission interval further and is refused when it would end up more than a
+ * burst ahead of now, so a bucket is updated with one compare-and-set and never locked.
+ *
+ * <p>A bucket whose arrival time has passed is full, which is exactly the state of a new bucket,
+ * so dropping it loses nothing. Once the map holds its maximum number of keys such idle buckets
+ * are swept out, and only those: dropping a bucket in use would grant its key a fresh burst. New
+ * keys finding the map still full of buckets in use share a single overflow bucket, so that a
+ * flood of new keys gets no more than one key would.
+ *
+ * @author jeevan
+ */
+public class TokenBuckets {
+
+  private static final long NEVER_SWEPT = Long.MIN_VALUE;
+
+  private final long emissionIntervalNanos;
+
+  private final long burstNanos;
+
+  private final int maxKeys;
+
+  private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+  /**
+   * Bucket shared by the keys which found the map full, created on first use.
+   */
+  private final AtomicReference<AtomicLong> overflow = new AtomicReference<>();
+
+  private final AtomicBoolean sweeping = new AtomicBoolean();
+
+  /**
+   * Earliest {@link System#nanoTime()} at which a sweep can find an idle bucket, or
+   * {@link #NEVER_SWEPT}.
+   */
+  private volatile long nextSweep = NEVER_SWEPT;
+
+  /**
+   * @param ratePerSecond Tokens added per second.
+   * @param burst Tokens a full bucket holds.
+   * @param maxKeys Keys kept before new keys share the overflow bucket.
+   */
+  public TokenBuckets(double ratePerSecond, int burst, int maxKeys) {
+    if (ratePerSecond <= 0 || burst < 1) {
+      throw new IllegalArgumentException("Rate and burst of a token bucket must be positive.");
+    }
+    this.emissionIntervalNanos = Math.max(1L,
+        (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+    this.burstNanos = emissionIntervalNanos * burst;
+    this.maxKeys = Math.max(1, maxKeys);
+  }
+
+  /**
+   * Method used to take a token from the bucket of a key.
+   *
+   * @param key Key of the bucket.
+   * @param now Current {@link System#nanoTime()}.
+   * @return Zero if a token was taken, otherwise the nanoseconds until one is available.
+   */
+  public long tryAcquire(String key, long now) {
+    return tryAcquire(key, now, 1);
+  }
+
+  /**
+   * Method used to take many tokens from the bucket of a key at once. More tokens than a full
+   * bucket holds cost a full bucket, so that such a request can still be admitted.
+   *
+   * @param key Key of the bucket.
+   * @param now Current {@link System#nanoTime()}.
+   * @param tokens Tokens to take, at least one.
+   * @return Zero if the tokens were taken, otherwise the nanoseconds until they are available.
+   */
+  public long tryAcquire(String key, long now, int tokens) {
+    final long cost = tokens >= burstNanos / emissionIntervalNanos ? burstNanos
+        : tokens * emissionIntervalNanos;
+    AtomicLong bucket = buckets.get(key);
+    if (bucket == null) {
+      if (buckets.size() >= maxKeys && !evict(now)) {
+        bucket = overflow.get();
+        if (bucket == null) {
+          overflow.compareAndSet(null, new AtomicLong(now));
+          bucket = overflow.get();
+        }
+      } else {
+        bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+      }
+    }
+    while (true) {
+      final long arrival = bucket.get();
+      final long next = Math.max(arrival - now, 0L) + cost;
+      if (next > burstNanos) {
+        return next - burstNanos;
+      }
+      if (bucket.compareAndSet(arrival, now + next)) {
+        return 0L;
+      }
+    }
+  }
+
+  /**
+   * Number of keys with a bucket.
+   */
+  public int size() {
+    return buckets.size();
+  }
+
+  public void clear() {
+    buckets.clear();
+    overflow.set(null);
+    nextSweep = NEVER_SWEPT;
+  }
+
+  /**
+   * Method used to drop the idle buckets of a full map.
+   *
+   * @return {@code true} if the map has room for another key.
+   */
+  private boolean evict(long now) {
+    // a sweep is skipped while no bucket can have become idle since the last one, so that a flood
+    // of new keys does not sweep on every request; one thread sweeps at a time
+    final long sweepAt = nextSweep;
+    if ((sweepAt == NEVER_SWEPT || now - sweepAt >= 0) && sweeping.compareAndSet(false, true)) {
+      try {
+        // a bucket added meanwhile is idle again one emission interval after its first token
+        long earliest = now + emissionIntervalNanos;
+        for (Iterator<AtomicLong> it = buckets.values().iterator(); it.hasNext(); ) {
+          final long arrival = it.next().get();
+          if (arrival - now <= 0) {
+            it.remove();
+          } else if (arrival - earliest < 0) {
+            earliest = arrival;
+          }
+        }
+        nextSweep = earliest;
+      } finally {
+        sweeping.set(false);
+      }
+    }
+    return buckets.size() < maxKeys;
+  }
+}
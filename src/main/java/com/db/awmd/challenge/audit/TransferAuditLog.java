@@ -0,0 +1,176 @@
+package com.db.awmd.challenge.audit;
+
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.metrics.TransferMetrics.Outcome;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Asynchronous audit trail of transfers.
+ *
+ * <p>Request threads publish events into a ring of pre-allocated, fixed-layout slots and return
+ * immediately; a single background thread formats them and writes them to the
+ * {@code transfer-audit} logger, which has an appender of its own. Publishing takes no lock and
+ * does not allocate: a producer claims a sequence number with one atomic increment, fills the slot
+ * and marks it published. When the consumer falls a whole ring behind, producers wait for it, so
+ * no event is ever lost.
+ *
+ * @author jeevan
+ */
+@Component
+public class TransferAuditLog {
+
+  public static final String LOGGER_NAME = "transfer-audit";
+
+  private static final Logger AUDIT = LoggerFactory.getLogger(LOGGER_NAME);
+
+  /**
+   * Receives the events in sequence order on the consumer thread.
+   */
+  public interface Sink {
+
+    void write(long sequence, long timestamp, Outcome outcome, String accountFromId,
+        String accountToId, long amount);
+  }
+
+  private final Slot[] slots;
+
+  private final int mask;
+
+  /**
+   * Sequence number last published into each slot.
+   */
+  private final AtomicLongArray published;
+
+  private final AtomicLong claimed = new AtomicLong();
+
+  /**
+   * Sequence number the consumer will read next, every slot before it may be reused.
+   */
+  private volatile long consumed;
+
+  private final Sink sink;
+
+  private volatile boolean running;
+
+  private Thread consumer;
+
+  @Autowired
+  public TransferAuditLog(@Value("${accounts.audit.ring-size:65536}") int ringSize) {
+    this(ringSize, TransferAuditLog::log);
+  }
+
+  public TransferAuditLog(int ringSize, Sink sink) {
+    if (ringSize < 1) {
+      throw new IllegalArgumentException("Audit ring size must be positive.");
+    }
+    final int size = Integer.highestOneBit(ringSize - 1) << 1;
+    this.slots = new Slot[Math.max(size, 1)];
+    this.published = new AtomicLongArray(slots.length);
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = new Slot();
+      published.set(i, -1L);
+    }
+    this.mask = slots.length - 1;
+    this.sink = sink;
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    consumer = new Thread(this::consume, "transfer-audit");
+    consumer.setDaemon(true);
+    consumer.start();
+  }
+
+  /**
+   * Stops the consumer once every event published so far has been written.
+   */
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    running = false;
+    LockSupport.unpark(consumer);
+    consumer.join();
+  }
+
+  /**
+   * Method used to record a transfer attempt.
+   *
+   * @param outcome How the transfer ended.
+   * @param accountFromId Account debited.
+   * @param accountToId Account credited.
+   * @param amount Amount in minor units.
+   */
+  public void publish(Outcome outcome, String accountFromId, String accountToId, long amount) {
+    final long sequence = claimed.getAndIncrement();
+    while (sequence - slots.length >= consumed) {
+      // the consumer is a whole ring behind, wait until it frees the slot
+      LockSupport.parkNanos(1_000L);
+    }
+    final Slot slot = slots[(int) sequence & mask];
+    slot.timestamp = System.currentTimeMillis();
+    slot.outcome = outcome;
+    slot.accountFromId = accountFromId;
+    slot.accountToId = accountToId;
+    slot.amount = amount;
+    // ordered write, the slot fields are visible to the consumer once it sees the sequence
+    published.lazySet((int) sequence & mask, sequence);
+  }
+
+  /**
+   * Number of events published but not yet written.
+   */
+  public long getBacklog() {
+    return Math.max(0L, claimed.get() - consumed);
+  }
+
+  private void consume() {
+    long next = 0;
+    int idle = 0;
+    while (true) {
+      final int index = (int) next & mask;
+      if (published.get(index) == next) {
+        final Slot slot = slots[index];
+        try {
+          sink.write(next, slot.timestamp, slot.outcome, slot.accountFromId, slot.accountToId,
+              slot.amount);
+        } catch (RuntimeException re) {
+          LoggerFactory.getLogger(TransferAuditLog.class).error("Could not write audit event", re);
+        }
+        slot.accountFromId = null;
+        slot.accountToId = null;
+        consumed = ++next;
+        idle = 0;
+      } else if (!running && next == claimed.get()) {
+        return;
+      } else if (++idle < 100) {
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(this, 100_000L);
+      }
+    }
+  }
+
+  private static void log(long sequence, long timestamp, Outcome outcome, String accountFromId,
+      String accountToId, long amount) {
+    AUDIT.info("seq={} ts={} outcome={} from={} to={} amount={}", sequence, timestamp, outcome,
+        accountFromId, accountToId, Money.toBigDecimal(amount));
+  }
+
+  private static final class Slot {
+
+    private long timestamp;
+    private Outcome outcome;
+    private String accountFromId;
+    private String accountToId;
+    private long amount;
+  }
+}
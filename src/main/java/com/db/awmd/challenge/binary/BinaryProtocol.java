@@ -0,0 +1,181 @@
+package com.db.awmd.challenge.binary;
+
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frame layout of the binary transfer protocol spoken by {@link BinaryTransferServer} and
+ * {@link BinaryTransferClient}. All numbers are big-endian.
+ *
+ * <p>Every frame starts with an {@code int} holding the length of the rest of the frame, followed
+ * by a type or status byte and a {@code long} correlation id chosen by the client. A transfer
+ * request continues with the amount in minor units as a {@code long} and three strings, each an
+ * unsigned {@code short} byte count followed by UTF-8 bytes: the account debited, the account
+ * credited and the optional idempotency key, empty if absent. A response continues with nothing
+ * when the transfer succeeded and with the failure message as such a string otherwise.
+ *
+ * <p>The client may send any number of requests without waiting for their responses, which may
+ * arrive in another order and are matched up by the correlation id.
+ *
+ * @author jeevan
+ */
+public final class BinaryProtocol {
+
+  /**
+   * Type of a transfer request frame.
+   */
+  public static final byte TRANSFER = 1;
+
+  /**
+   * Length prefix and type or status byte plus correlation id.
+   */
+  public static final int HEADER_SIZE = 4 + 1 + 8;
+
+  public static final int MAX_STRING_BYTES = 0xFFFF;
+
+  /**
+   * Failure messages are cut to this many bytes.
+   */
+  static final int MAX_MESSAGE_BYTES = 1024;
+
+  /**
+   * Outcome of a transfer as carried by the response frame.
+   */
+  public enum Status {
+    OK, ACCOUNT_NOT_FOUND, INSUFFICIENT_BALANCE, INVALID_REQUEST, IDEMPOTENCY_KEY_REUSED, ERROR;
+
+    private static final Status[] VALUES = values();
+
+    static Status of(byte code) {
+      return code >= 0 && code < VALUES.length ? VALUES[code] : ERROR;
+    }
+
+    static Status of(Throwable failure) {
+      if (failure instanceof AccountNotFoundException) {
+        return ACCOUNT_NOT_FOUND;
+      } else if (failure instanceof InsufficientBalanceException) {
+        return INSUFFICIENT_BALANCE;
+      } else if (failure instanceof IdempotencyKeyReusedException) {
+        return IDEMPOTENCY_KEY_REUSED;
+      } else if (failure instanceof ArithmeticException
+          || failure instanceof IllegalArgumentException) {
+        return INVALID_REQUEST;
+      }
+      return ERROR;
+    }
+
+    /**
+     * Method used to turn a failure status back into the exception the service threw.
+     */
+    RuntimeException toException(String message) {
+      switch (this) {
+        case ACCOUNT_NOT_FOUND:
+          return new AccountNotFoundException(message);
+        case INSUFFICIENT_BALANCE:
+          return new InsufficientBalanceException(message);
+        case IDEMPOTENCY_KEY_REUSED:
+          return new IdempotencyKeyReusedException(message);
+        case INVALID_REQUEST:
+          return new IllegalArgumentException(message);
+        default:
+          return new IllegalStateException(message);
+      }
+    }
+  }
+
+  private BinaryProtocol() {
+  }
+
+  /**
+   * Method used to append a transfer request frame.
+   *
+   * @return {@code false}, leaving the buffer untouched, if the frame does not fit.
+   */
+  static boolean putTransfer(ByteBuffer buffer, long correlationId, byte[] accountFromId,
+      byte[] accountToId, long amount, byte[] requestId) {
+    final int length = 1 + 8 + 8 + 6 + accountFromId.length + accountToId.length
+        + requestId.length;
+    if (buffer.remaining() < 4 + length) {
+      return false;
+    }
+    buffer.putInt(length).put(TRANSFER).putLong(correlationId).putLong(amount);
+    putString(buffer, accountFromId);
+    putString(buffer, accountToId);
+    putString(buffer, requestId);
+    return true;
+  }
+
+  /**
+   * Method used to append a response frame.
+   *
+   * @param message Failure message, ignored for {@link Status#OK}.
+   * @return {@code false}, leaving the buffer untouched, if the frame does not fit.
+   */
+  static boolean putResponse(ByteBuffer buffer, long correlationId, Status status,
+      byte[] message) {
+    final int length = 1 + 8 + (status == Status.OK ? 0 : 2 + message.length);
+    if (buffer.remaining() < 4 + length) {
+      return false;
+    }
+    buffer.putInt(length).put((byte) status.ordinal()).putLong(correlationId);
+    if (status != Status.OK) {
+      putString(buffer, message);
+    }
+    return true;
+  }
+
+  /**
+   * Method used to encode a string field, rejecting values too long for the frame.
+   */
+  static byte[] encode(String value, String field) {
+    if (value == null) {
+      return new byte[0];
+    }
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > MAX_STRING_BYTES) {
+      throw new IllegalArgumentException(field + " is too long for the binary protocol.");
+    }
+    return bytes;
+  }
+
+  /**
+   * Method used to encode a failure message, cut to {@value #MAX_MESSAGE_BYTES} bytes.
+   */
+  static byte[] encodeMessage(String message) {
+    final byte[] bytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+    if (bytes.length <= MAX_MESSAGE_BYTES) {
+      return bytes;
+    }
+    final byte[] cut = new byte[MAX_MESSAGE_BYTES];
+    System.arraycopy(bytes, 0, cut, 0, cut.length);
+    return cut;
+  }
+
+  /**
+   * Method used to read a string field at the buffer position, copying its bytes once into the
+   * string rather than into an intermediate array when the buffer has one.
+   */
+  static String getString(ByteBuffer buffer, byte[] scratch) {
+    final int length = buffer.getShort() & 0xFFFF;
+    if (length > buffer.remaining()) {
+      throw new IllegalArgumentException("String field runs past the end of the frame.");
+    }
+    final String value;
+    if (buffer.hasArray()) {
+      value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+          StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + length);
+    } else {
+      buffer.get(scratch, 0, length);
+      value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+    return value;
+  }
+
+  private static void putString(ByteBuffer buffer, byte[] value) {
+    buffer.putShort((short) value.length).put(value);
+  }
+}
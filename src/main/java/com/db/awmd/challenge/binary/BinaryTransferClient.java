@@ -0,0 +1,181 @@
+package com.db.awmd.challenge.binary;
+
+import com.db.awmd.challenge.binary.BinaryProtocol.Status;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client of the {@link BinaryTransferServer} over a single connection, safe for use by many
+ * threads at once.
+ *
+ * <p>Requests are written as soon as they are made and never wait for earlier responses, so any
+ * number of transfers can be in flight on the connection. A reader thread matches the responses
+ * to their futures by correlation id; a failed transfer completes its future with the exception
+ * the service raised, for example {@code InsufficientBalanceException}. Futures are completed on
+ * the reader thread, so their callbacks should not block.
+ *
+ * @author jeevan
+ */
+public class BinaryTransferClient implements Closeable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final SocketChannel channel;
+
+  private final ByteBuffer outbound = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+  private final AtomicLong correlationIds = new AtomicLong();
+
+  private final Map<Long, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+
+  private final Thread reader;
+
+  private volatile boolean closed;
+
+  public BinaryTransferClient(String host, int port) throws IOException {
+    this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+    this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    this.reader = new Thread(this::read, "binary-transfer-client-" + port);
+    this.reader.setDaemon(true);
+    this.reader.start();
+  }
+
+  /**
+   * Method used to transfer money between two accounts.
+   *
+   * @param accountFromId Money being transferred from account.
+   * @param accountToId Money being transferred to account.
+   * @param amount Amount in minor units.
+   * @return Future completed once the transfer is applied, or failed with the reason it was not.
+   */
+  public CompletableFuture<Void> transfer(String accountFromId, String accountToId,
+      long amount) {
+    return transfer(accountFromId, accountToId, amount, null);
+  }
+
+  /**
+   * Method used to transfer money at most once per request id, see {@code IdempotencyCache}.
+   *
+   * @param accountFromId Money being transferred from account.
+   * @param accountToId Money being transferred to account.
+   * @param amount Amount in minor units.
+   * @param requestId Idempotency key, or {@code null}.
+   * @return Future completed once the transfer is applied, or failed with the reason it was not.
+   */
+  public CompletableFuture<Void> transfer(String accountFromId, String accountToId, long amount,
+      String requestId) {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    final byte[] from;
+    final byte[] to;
+    final byte[] key;
+    try {
+      from = BinaryProtocol.encode(accountFromId, "Account id");
+      to = BinaryProtocol.encode(accountToId, "Account id");
+      key = BinaryProtocol.encode(requestId, "Request id");
+    } catch (IllegalArgumentException iae) {
+      result.completeExceptionally(iae);
+      return result;
+    }
+    final long correlationId = correlationIds.incrementAndGet();
+    pending.put(correlationId, result);
+    try {
+      synchronized (outbound) {
+        if (closed) {
+          throw new IOException("Binary transfer client is closed.");
+        }
+        outbound.clear();
+        if (!BinaryProtocol.putTransfer(outbound, correlationId, from, to, amount, key)) {
+          throw new IllegalArgumentException("Transfer request is too large.");
+        }
+        outbound.flip();
+        while (outbound.hasRemaining()) {
+          channel.write(outbound);
+        }
+      }
+    } catch (IOException | RuntimeException ex) {
+      pending.remove(correlationId);
+      result.completeExceptionally(ex instanceof IOException
+          ? new UncheckedIOException((IOException) ex) : ex);
+    }
+    return result;
+  }
+
+  /**
+   * Number of transfers sent and not yet answered.
+   */
+  public int getPending() {
+    return pending.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (outbound) {
+      closed = true;
+      channel.close();
+    }
+    try {
+      reader.join();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void read() {
+    final ByteBuffer inbound = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    final byte[] scratch = new byte[BinaryProtocol.MAX_STRING_BYTES];
+    IOException failure = null;
+    try {
+      while (channel.read(inbound) >= 0) {
+        inbound.flip();
+        while (inbound.remaining() >= 4) {
+          final int length = inbound.getInt(inbound.position());
+          if (length < 1 + 8 || length > BUFFER_SIZE - 4) {
+            throw new IOException("Binary transfer response of " + length + " bytes.");
+          }
+          if (inbound.remaining() < 4 + length) {
+            break;
+          }
+          inbound.getInt();
+          final Status status = Status.of(inbound.get());
+          final CompletableFuture<Void> result = pending.remove(inbound.getLong());
+          if (status == Status.OK) {
+            complete(result, null);
+          } else {
+            complete(result, status.toException(BinaryProtocol.getString(inbound, scratch)));
+          }
+        }
+        inbound.compact();
+      }
+    } catch (IOException ioe) {
+      failure = ioe;
+    } catch (RuntimeException re) {
+      failure = new IOException("Malformed binary transfer response.", re);
+    } finally {
+      final IOException cause = closed || failure == null
+          ? new IOException("Binary transfer connection closed.") : failure;
+      closed = true;
+      pending.values().forEach(result -> result.completeExceptionally(
+          new UncheckedIOException(cause)));
+      pending.clear();
+    }
+  }
+
+  private static void complete(CompletableFuture<Void> result, RuntimeException failure) {
+    if (result == null) {
+      return;
+    } else if (failure == null) {
+      result.complete(null);
+    } else {
+      result.completeExceptionally(failure);
+    }
+  }
+}
@@ -0,0 +1,411 @@
+package com.db.awmd.challenge.binary;
+
+import com.db.awmd.challenge.binary.BinaryProtocol.Status;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.service.AccountsService;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener serving the {@link BinaryProtocol} next to the REST endpoints, enabled with
+ * {@code accounts.binary.enabled=true}. Transfers go through the same
+ * {@link AccountsService#transferAsync} path as the REST endpoints, with the same idempotency,
+ * metrics, audit and notifications, but without JSON on either side and without the
+ * human-readable message of a successful {@code TransferResponse}.
+ *
+ * <p>Connections are spread over a few event loops, each running a selector on its own thread.
+ * A loop reads into a direct buffer per connection and decodes every complete frame in place, so
+ * pipelined requests arriving in one read are dispatched without copying them out first.
+ * Responses are encoded straight into a direct outbound buffer per connection, whichever thread
+ * completes the transfer, and the loop writes all of them in one go. A connection with
+ * {@code accounts.binary.max-in-flight-per-connection} unanswered requests, or with a client not
+ * reading its responses, is not read from until it drains. With a repository applying transfers
+ * on the calling thread the loop runs them itself, so there should be at least as many loops as
+ * transfers are meant to run in parallel.
+ *
+ * @author jeevan
+ */
+@Component
+@ConditionalOnProperty(prefix = "accounts.binary", name = "enabled", havingValue = "true")
+@Slf4j
+public class BinaryTransferServer {
+
+  private static final int INITIAL_OUTBOUND_SIZE = 16 * 1024;
+
+  private static final int MAX_PENDING_OUTBOUND = 256 * 1024;
+
+  private final AccountsService accountsService;
+
+  private final TransferMetrics transferMetrics;
+
+  private final String host;
+
+  private final int port;
+
+  private final int maxFrameBytes;
+
+  private final int maxInFlight;
+
+  private final EventLoop[] loops;
+
+  private ServerSocketChannel serverChannel;
+
+  private Thread acceptor;
+
+  private volatile boolean running;
+
+  @Autowired
+  public BinaryTransferServer(AccountsService accountsService, TransferMetrics transferMetrics,
+      @Value("${accounts.binary.host:0.0.0.0}") String host,
+      @Value("${accounts.binary.port:18081}") int port,
+      @Value("${accounts.binary.io-threads:0}") int ioThreads,
+      @Value("${accounts.binary.max-frame-bytes:4096}") int maxFrameBytes,
+      @Value("${accounts.binary.max-in-flight-per-connection:1024}") int maxInFlight) {
+    this.accountsService = accountsService;
+    this.transferMetrics = transferMetrics;
+    this.host = host;
+    this.port = port;
+    this.maxFrameBytes = Math.max(maxFrameBytes, 64);
+    this.maxInFlight = Math.max(maxInFlight, 1);
+    this.loops = new EventLoop[ioThreads > 0 ? ioThreads
+        : Runtime.getRuntime().availableProcessors()];
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    running = true;
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(new InetSocketAddress(host, port), 1024);
+    for (int i = 0; i < loops.length; i++) {
+      loops[i] = new EventLoop(i);
+      loops[i].thread.start();
+    }
+    acceptor = new Thread(this::accept, "binary-transfer-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    log.info("Binary transfer protocol listening on port {} with {} event loops", getPort(),
+        loops.length);
+  }
+
+  @PreDestroy
+  public void stop() throws IOException, InterruptedException {
+    running = false;
+    serverChannel.close();
+    acceptor.join();
+    for (EventLoop loop : loops) {
+      loop.selector.wakeup();
+      loop.thread.join();
+    }
+  }
+
+  /**
+   * Port the listener is bound to, which differs from the configured one if that is zero.
+   */
+  public int getPort() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  private void accept() {
+    int next = 0;
+    while (running) {
+      try {
+        final SocketChannel channel = serverChannel.accept();
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        loops[next++ % loops.length].register(channel);
+      } catch (ClosedChannelException cce) {
+        return;
+      } catch (IOException ioe) {
+        log.warn("Could not accept binary protocol connection", ioe);
+      }
+    }
+  }
+
+  /**
+   * Selector thread owning a share of the connections. Only this thread reads from or writes to
+   * its channels; other threads hand it work through the queues and wake the selector up.
+   */
+  private final class EventLoop {
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> flushes = new ConcurrentLinkedQueue<>();
+
+    private EventLoop(int index) throws IOException {
+      this.selector = Selector.open();
+      this.thread = new Thread(this::run, "binary-transfer-io-" + index);
+      this.thread.setDaemon(true);
+    }
+
+    private void register(SocketChannel channel) {
+      registrations.add(channel);
+      selector.wakeup();
+    }
+
+    private void flushLater(Connection connection) {
+      flushes.add(connection);
+      selector.wakeup();
+    }
+
+    private void run() {
+      try {
+        while (running) {
+          selector.select();
+          SocketChannel channel;
+          while ((channel = registrations.poll()) != null) {
+            channel.configureBlocking(false);
+            final Connection connection = new Connection(this, channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+          }
+          Connection connection;
+          while ((connection = flushes.poll()) != null) {
+            connection.flush();
+          }
+          final Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+          while (selected.hasNext()) {
+            final SelectionKey key = selected.next();
+            selected.remove();
+            connection = (Connection) key.attachment();
+            if (key.isValid() && key.isReadable()) {
+              connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+              connection.flush();
+            }
+          }
+        }
+      } catch (IOException ioe) {
+        log.error("Binary protocol event loop failed", ioe);
+      } finally {
+        for (SelectionKey key : selector.keys()) {
+          ((Connection) key.attachment()).close();
+        }
+        try {
+          selector.close();
+        } catch (IOException ioe) {
+          log.warn("Could not close selector", ioe);
+        }
+      }
+    }
+  }
+
+  private final class Connection {
+
+    private final EventLoop loop;
+    private final SocketChannel channel;
+    private final ByteBuffer inbound;
+    private final byte[] scratch;
+    private SelectionKey key;
+
+    /**
+     * Encoded responses not yet written, guarded by the connection.
+     */
+    private ByteBuffer outbound = ByteBuffer.allocateDirect(INITIAL_OUTBOUND_SIZE);
+    private int inFlight;
+    private boolean paused;
+    private boolean closed;
+
+    private Connection(EventLoop loop, SocketChannel channel) {
+      this.loop = loop;
+      this.channel = channel;
+      this.inbound = ByteBuffer.allocateDirect(4 * maxFrameBytes);
+      this.scratch = new byte[maxFrameBytes];
+    }
+
+    private void read() {
+      try {
+        if (channel.read(inbound) < 0) {
+          close();
+          return;
+        }
+        process();
+        flush();
+      } catch (IOException ioe) {
+        log.debug("Binary protocol connection failed", ioe);
+        close();
+      }
+    }
+
+    /**
+     * Method used to dispatch every complete frame of the inbound buffer, unless the connection
+     * has too much outstanding already.
+     */
+    private void process() {
+      inbound.flip();
+      try {
+        while (inbound.remaining() >= 4) {
+          final int length = inbound.getInt(inbound.position());
+          if (length < 1 + 8 || length > maxFrameBytes) {
+            log.debug("Closing binary protocol connection sending a frame of {} bytes", length);
+            close();
+            return;
+          }
+          if (inbound.remaining() < 4 + length) {
+            break;
+          }
+          if (backlogged()) {
+            pause();
+            break;
+          }
+          final int end = inbound.position() + 4 + length;
+          final int limit = inbound.limit();
+          inbound.position(inbound.position() + 4).limit(end);
+          dispatch();
+          inbound.limit(limit).position(end);
+        }
+      } finally {
+        inbound.compact();
+      }
+    }
+
+    private void dispatch() {
+      final byte type = inbound.get();
+      final long correlationId = inbound.getLong();
+      final long started = System.nanoTime();
+      synchronized (this) {
+        inFlight++;
+      }
+      CompletableFuture<?> transfer;
+      try {
+        if (type != BinaryProtocol.TRANSFER) {
+          throw new IllegalArgumentException("Unknown frame type " + type);
+        }
+        final long amount = inbound.getLong();
+        final String accountFromId = BinaryProtocol.getString(inbound, scratch);
+        final String accountToId = BinaryProtocol.getString(inbound, scratch);
+        final String requestId = BinaryProtocol.getString(inbound, scratch);
+        if (amount < 1) {
+          throw new IllegalArgumentException("Transfer amount must be greater than zero.");
+        }
+        if (requestId.isEmpty()) {
+          transfer = accountsService.transferAsync(accountFromId, accountToId, amount);
+        } else {
+          final TransferRequest transferRequest = new TransferRequest();
+          transferRequest.setAccountFromId(accountFromId);
+          transferRequest.setAccountToId(accountToId);
+          transferRequest.setAmount(Money.toBigDecimal(amount));
+          transferRequest.setRequestId(requestId);
+          transfer = accountsService.transferAmountAsync(transferRequest);
+        }
+      } catch (BufferUnderflowException bue) {
+        transfer = failed(new IllegalArgumentException("Transfer frame is truncated."));
+      } catch (RuntimeException re) {
+        transfer = failed(re);
+      }
+      transfer.whenComplete((ignored, failure) -> respond(correlationId, failure, started));
+    }
+
+    private CompletableFuture<Void> failed(RuntimeException failure) {
+      final CompletableFuture<Void> result = new CompletableFuture<>();
+      result.completeExceptionally(failure);
+      return result;
+    }
+
+    private void respond(long correlationId, Throwable failure, long started) {
+      transferMetrics.recordRequest(System.nanoTime() - started);
+      final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+          ? failure.getCause() : failure;
+      final Status status = cause == null ? Status.OK : Status.of(cause);
+      if (status == Status.ERROR) {
+        log.error("Binary protocol transfer failed", cause);
+      }
+      final byte[] message = cause == null ? null : BinaryProtocol.encodeMessage(
+          cause.getMessage());
+      synchronized (this) {
+        inFlight--;
+        if (closed) {
+          return;
+        }
+        while (!BinaryProtocol.putResponse(outbound, correlationId, status, message)) {
+          final ByteBuffer larger = ByteBuffer.allocateDirect(outbound.capacity() * 2);
+          outbound.flip();
+          outbound = larger.put(outbound);
+        }
+      }
+      // responses completed on the loop thread are written once the whole read is dispatched
+      if (Thread.currentThread() != loop.thread) {
+        loop.flushLater(this);
+      }
+    }
+
+    /**
+     * Method used to write the pending responses and resume reading once the backlog is gone.
+     */
+    private void flush() {
+      final boolean pending;
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        outbound.flip();
+        try {
+          channel.write(outbound);
+        } catch (IOException ioe) {
+          log.debug("Binary protocol connection failed", ioe);
+          outbound.clear();
+          close();
+          return;
+        }
+        outbound.compact();
+        pending = outbound.position() > 0;
+      }
+      key.interestOps(pending ? key.interestOps() | SelectionKey.OP_WRITE
+          : key.interestOps() & ~SelectionKey.OP_WRITE);
+      if (paused && !backlogged()) {
+        paused = false;
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        // frames left in the buffer when reading was paused do not make the key readable
+        process();
+        flush();
+      }
+    }
+
+    private synchronized boolean backlogged() {
+      return inFlight >= maxInFlight || outbound.position() > MAX_PENDING_OUTBOUND;
+    }
+
+    private void pause() {
+      paused = true;
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+    }
+
+    private void close() {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+      }
+      if (key != null) {
+        key.cancel();
+      }
+      try {
+        channel.close();
+      } catch (IOException ioe) {
+        log.debug("Could not close binary protocol connection", ioe);
+      }
+    }
+  }
+}
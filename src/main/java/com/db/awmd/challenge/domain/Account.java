@@ -1,57 +1,569 @@
 package com.db.awmd.challenge.domain;
 
+import com.db.awmd.challenge.exception.AccountVersionMismatchException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
-import lombok.Data;
+import lombok.Getter;
 import org.hibernate.validator.constraints.NotEmpty;
 
-@Data
+/**
+ * Account with a lock-free balance. The balance and its version live in an immutable
+ * {@link BalanceSnapshot} which is replaced through compare-and-set, so concurrent debits and
+ * credits never lose updates and readers never see a torn value.
+ *
+ * <p>An account receiving a large share of all credits can be {@link #split(int) split}: credits
+ * then land in one of several sub-balances picked by the crediting thread, so they no longer
+ * contend on the single balance. A sub-balance is an immutable total of the amount and the number
+ * of credits it received, replaced through compare-and-set. Debits are applied to the main balance
+ * alone; when it falls short the sub-balances are folded into it first, under a lock of the split
+ * account, each sub-balance handing over its amount and its count in one compare-and-set. The
+ * balance and version of a split account are the sum of the main balance and its sub-balances;
+ * every debit and every credit raises that version by exactly one and a fold changes neither, so a
+ * version stands for one balance only. Between folds every part only moves forward, so a read
+ * which finds the main balance and the number of credits unchanged after collecting the
+ * sub-balances has seen them all at one point in time. A read losing that race too often takes
+ * the lock and holds the credits back while it collects them, so readers never retry without
+ * bound.
+ *
+ * <p>An authorization {@link #hold(long) hold} moves funds from the balance to the reserved funds
+ * of the same snapshot, so it is checked and applied in one compare-and-set like a debit and takes
+ * no lock. A hold is later either {@link #settleHold(long) settled}, when its funds leave the
+ * account, or {@link #releaseHold(long) released} back into the balance.
+ */
 public class Account {
 
+  /**
+   * Expected version accepted by {@link #debit(long, long)} in place of a version, for a debit
+   * which does not care what the account is at. Versions start at zero.
+   */
+  public static final long ANY_VERSION = -1L;
+
+  /**
+   * Attempts of a lock-free read of a split account before it holds the credits back.
+   */
+  private static final int MAX_READ_ATTEMPTS = 64;
+
   @NotNull
   @NotEmpty
+  @Getter
   private final String accountId;
 
-  @NotNull
-  @Min(value = 0, message = "Initial balance must be positive.")
-  private BigDecimal balance;
+  /**
+   * Holds {@code null} only for accounts bound from a request without a balance, which are
+   * rejected by validation before they reach the repository.
+   */
+  private final AtomicReference<BalanceSnapshot> state;
+
+  /**
+   * Sub-balances of a split account, {@code null} unless the account is split.
+   */
+  private volatile SubBalances subBalances;
 
   public Account(String accountId) {
-    this.accountId = accountId;
-    this.balance = BigDecimal.ZERO;
+    this(accountId, BigDecimal.ZERO);
   }
 
   @JsonCreator
   public Account(@JsonProperty("accountId") String accountId,
       @JsonProperty("balance") BigDecimal balance) {
     this.accountId = accountId;
-    this.balance = balance;
+    this.state = new AtomicReference<>(
+        balance == null ? null : new BalanceSnapshot(Money.toMinorUnits(balance), 0L));
+  }
+
+  /**
+   * Creates an account from a previously recorded snapshot, for example when recovering state.
+   *
+   * @param accountId Account id.
+   * @param snapshot Balance and version to start from.
+   */
+  public Account(String accountId, BalanceSnapshot snapshot) {
+    this.accountId = accountId;
+    this.state = new AtomicReference<>(snapshot);
+  }
+
+  @NotNull
+  @Min(value = 0, message = "Initial balance must be positive.")
+  public BigDecimal getBalance() {
+    final BalanceSnapshot snapshot = getSnapshot();
+    return snapshot == null ? null : Money.toBigDecimal(snapshot.getBalance());
+  }
+
+  public void setBalance(BigDecimal balance) {
+    final long minorUnits = Money.toMinorUnits(balance);
+    final SubBalances split = subBalances;
+    if (split == null) {
+      setMainBalance(minorUnits, null);
+      return;
+    }
+    // no fold can move the sub-balances meanwhile
+    split.lock.lock();
+    try {
+      setMainBalance(minorUnits, split);
+    } finally {
+      split.lock.unlock();
+    }
+  }
+
+  private void setMainBalance(long minorUnits, SubBalances split) {
+    while (true) {
+      final BalanceSnapshot current = state.get();
+      // what the sub-balances hold is left out of the main balance, credits landing meanwhile
+      // count as made after the change
+      final long main = split == null ? minorUnits : minorUnits - split.credited();
+      if (state.compareAndSet(current,
+          current == null ? new BalanceSnapshot(main, 0L) : current.next(main))) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Balance in minor units, see {@link Money}.
+   */
+  @JsonIgnore
+  public long getBalanceInMinorUnits() {
+    return getSnapshot().getBalance();
+  }
+
+  @JsonIgnore
+  public BalanceSnapshot getSnapshot() {
+    final SubBalances split = subBalances;
+    if (split == null) {
+      return state.get();
+    }
+    for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+      final BalanceSnapshot snapshot = state.get();
+      if (snapshot == null) {
+        return null;
+      }
+      // a sealed sub-balance may already be part of the main balance
+      final Cell total = split.total();
+      if (total != null && state.get() == snapshot && split.credits() == total.count) {
+        return withCredits(snapshot, total);
+      }
+    }
+    // credits keep landing, hold them back for one read
+    return split.read(state);
+  }
+
+  @JsonIgnore
+  public long getVersion() {
+    return getSnapshot().getVersion();
+  }
+
+  /**
+   * Method used to spread the credits of this account over several sub-balances. Splitting an
+   * account twice has no effect.
+   *
+   * @param ways Number of sub-balances, rounded up to a power of two.
+   */
+  public synchronized void split(int ways) {
+    if (subBalances == null) {
+      subBalances = new SubBalances(ways);
+    }
+  }
+
+  @JsonIgnore
+  public boolean isSplit() {
+    return subBalances != null;
+  }
+
+  /**
+   * Method used to install a snapshot recorded elsewhere, unless the account is already at the
+   * same or a later version. Applying the same snapshot twice is harmless.
+   *
+   * @param snapshot Snapshot to install.
+   * @return {@code true} if the snapshot was installed.
+   */
+  public boolean applyIfNewer(BalanceSnapshot snapshot) {
+    final SubBalances split = subBalances;
+    if (split == null) {
+      return applyToMainIfNewer(snapshot, null);
+    }
+    // no fold can move the sub-balances meanwhile
+    split.lock.lock();
+    try {
+      return applyToMainIfNewer(snapshot, split);
+    } finally {
+      split.lock.unlock();
+    }
+  }
+
+  private boolean applyToMainIfNewer(BalanceSnapshot snapshot, SubBalances split) {
+    while (true) {
+      final BalanceSnapshot current = state.get();
+      // the sub-balances are left in place, the main balance takes up the difference
+      final Cell total = split == null ? Cell.EMPTY : split.total();
+      if (current != null && current.getVersion() + total.count >= snapshot.getVersion()) {
+        return false;
+      }
+      if (state.compareAndSet(current, split == null ? snapshot
+          : new BalanceSnapshot(snapshot.getBalance() - total.amount,
+              snapshot.getVersion() - total.count, snapshot.getReserved()))) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Method used to debit amount from the account. The balance check and the update happen in the
+   * same compare-and-set, so the account can never go negative.
+   *
+   * @param amount Amount in minor units being debited.
+   */
+  public void debit(long amount) {
+    debit(amount, ANY_VERSION);
+  }
+
+  /**
+   * Method used to debit amount from the account only if it is still at the version the caller
+   * read, for optimistic concurrency control. The version check, the balance check and the update
+   * happen in the same compare-and-set.
+   *
+   * <p>A split account is checked against its aggregated version, credits landing in its
+   * sub-balances meanwhile do not fail the debit. When its main balance falls short the
+   * sub-balances are folded into it and the debit checked again, so a debit they cover is not
+   * turned away either.
+   *
+   * @param amount Amount in minor units being debited.
+   * @param expectedVersion Version the account must be at, see {@link #getVersion()}, or
+   * {@link #ANY_VERSION}.
+   * @throws AccountVersionMismatchException if the account is at another version.
+   */
+  public void debit(long amount, long expectedVersion) {
+    boolean folded = false;
+    while (true) {
+      final BalanceSnapshot current = state.get();
+      if (expectedVersion != ANY_VERSION) {
+        final SubBalances split = subBalances;
+        final long version = split == null ? current.getVersion()
+            : current.getVersion() + split.credits();
+        if (version != expectedVersion) {
+          if (state.get() != current) {
+            // a fold moved the credits counted into the main balance meanwhile
+            continue;
+          }
+          throw new AccountVersionMismatchException("Account " + accountId + " is at version "
+              + version + ", not " + expectedVersion + ".");
+        }
+      }
+      if (current.getBalance() < amount) {
+        if (!folded && fold()) {
+          folded = true;
+          continue;
+        }
+        throw new InsufficientBalanceException(
+            "Account " + accountId + " does not have sufficient amount to debit from.");
+      }
+      if (state.compareAndSet(current,
+          current.next(Money.subtract(current.getBalance(), amount)))) {
+        return;
+      }
+    }
   }
 
   /**
-   * Method used to debit amount from the account.
+   * Method used to set funds aside for an authorization hold. The balance check and the update
+   * happen in the same compare-and-set, so held funds can never be spent twice.
    *
-   * @param amount Amount being debited.
+   * @param amount Amount in minor units being held.
    */
-  public void debit(BigDecimal amount) {
-    if (balance.compareTo(amount) < 0) {
-      throw new InsufficientBalanceException(
-          "Account " + accountId + " does not have sufficient amount to debit from.");
+  public void hold(long amount) {
+    boolean folded = false;
+    while (true) {
+      final BalanceSnapshot current = state.get();
+      if (current.getBalance() < amount) {
+        if (!folded && fold()) {
+          folded = true;
+          continue;
+        }
+        throw new InsufficientBalanceException(
+            "Account " + accountId + " does not have sufficient amount to hold.");
+      }
+      if (state.compareAndSet(current, current.next(Money.subtract(current.getBalance(), amount),
+          Money.add(current.getReserved(), amount)))) {
+        return;
+      }
     }
+  }
+
+  /**
+   * Method used to take the funds of a hold out of the account, when the hold is captured.
+   *
+   * @param amount Amount in minor units previously held.
+   * @throws IllegalStateException if less than the amount is reserved.
+   */
+  public void settleHold(long amount) {
+    changeReserved(amount, false);
+  }
+
+  /**
+   * Method used to give the funds of a hold back to the balance, when the hold is released.
+   *
+   * @param amount Amount in minor units previously held.
+   * @throws IllegalStateException if less than the amount is reserved.
+   */
+  public void releaseHold(long amount) {
+    changeReserved(amount, true);
+  }
 
-    this.balance = this.balance.subtract(amount);
+  private void changeReserved(long amount, boolean toBalance) {
+    BalanceSnapshot current;
+    BalanceSnapshot next;
+    do {
+      current = state.get();
+      if (current.getReserved() < amount) {
+        throw new IllegalStateException(
+            "Account " + accountId + " has less than " + amount + " reserved.");
+      }
+      next = current.next(toBalance ? Money.add(current.getBalance(), amount)
+          : current.getBalance(), current.getReserved() - amount);
+    } while (!state.compareAndSet(current, next));
   }
 
   /**
    * Method used to credit amount from the account.
    *
-   * @param amount Amount being credited.
+   * @param amount Amount in minor units being credited.
+   * @throws ArithmeticException if the balance, or the sub-balance of a split account, would
+   * overflow.
    */
-  public void credit(BigDecimal amount) {
-    this.balance = this.balance.add(amount);
+  public void credit(long amount) {
+    final SubBalances split = subBalances;
+    if (split != null) {
+      // overflow is checked per sub-balance, summing them all would put back the contention
+      split.add(amount);
+      return;
+    }
+    BalanceSnapshot current;
+    BalanceSnapshot next;
+    do {
+      current = state.get();
+      next = current.next(Money.add(current.getBalance(), amount));
+    } while (!state.compareAndSet(current, next));
+  }
+
+  /**
+   * Method used to move what the sub-balances of a split account hold into its main balance.
+   *
+   * @return {@code true} if any credit was moved.
+   */
+  private boolean fold() {
+    final SubBalances split = subBalances;
+    return split != null && split.fold(state);
+  }
+
+  private static BalanceSnapshot withCredits(BalanceSnapshot snapshot, Cell total) {
+    return new BalanceSnapshot(snapshot.getBalance() + total.amount,
+        snapshot.getVersion() + total.count, snapshot.getReserved());
+  }
+
+  /**
+   * Amount and number of credits, of one sub-balance or all of them. A sub-balance is sealed while
+   * the lock holder collects it, credits to it wait for the lock meanwhile.
+   */
+  private static final class Cell {
+
+    private static final Cell EMPTY = new Cell(0L, 0L, false);
+
+    private final long amount;
+    private final long count;
+    private final boolean sealed;
+
+    private Cell(long amount, long count, boolean sealed) {
+      this.amount = amount;
+      this.count = count;
+      this.sealed = sealed;
+    }
+  }
+
+  /**
+   * Credit cells of a split account. Every cell is padded to a cache line of its own, so credits
+   * from different threads do not share a line. Cells are only sealed, and only emptied, under the
+   * lock.
+   */
+  private static final class SubBalances {
+
+    private static final int STRIDE = 16;
+
+    private final int ways;
+    private final AtomicReferenceArray<Cell> cells;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private SubBalances(int ways) {
+      this.ways = Math.max(1, Integer.highestOneBit(Math.max(1, ways) - 1) << 1);
+      this.cells = new AtomicReferenceArray<>((this.ways + 1) * STRIDE);
+      for (int i = 1; i <= this.ways; i++) {
+        cells.set(STRIDE * i, Cell.EMPTY);
+      }
+    }
+
+    private void add(long amount) {
+      final long id = Thread.currentThread().getId();
+      final int cell = STRIDE * (1 + (int) ((id * 0x9E3779B97F4A7C15L) >>> 40 & (ways - 1)));
+      while (true) {
+        final Cell current = cells.get(cell);
+        if (current.sealed) {
+          // wait for the fold or the read collecting the cell
+          lock.lock();
+          lock.unlock();
+        } else if (cells.compareAndSet(cell, current,
+            new Cell(Money.add(current.amount, amount), current.count + 1, false))) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * Method used to sum up the cells.
+     *
+     * @return Total of the cells, or {@code null} if any of them is sealed.
+     */
+    private Cell total() {
+      long amount = 0;
+      long count = 0;
+      for (int i = 1; i <= ways; i++) {
+        final Cell cell = cells.get(STRIDE * i);
+        if (cell.sealed) {
+          return null;
+        }
+        amount += cell.amount;
+        count += cell.count;
+      }
+      return new Cell(amount, count, false);
+    }
+
+    /**
+     * Method used to fold the cells into the main balance. Each cell is sealed with one
+     * compare-and-set, which takes its amount and its count together, the main balance then gains
+     * both and the cells start over from empty. The balance and version of the account stay the
+     * same.
+     *
+     * @param state Main balance of the account.
+     * @return {@code true} if any credit was moved.
+     * @throws ArithmeticException if the main balance would overflow, the cells are left as they
+     * were.
+     */
+    private boolean fold(AtomicReference<BalanceSnapshot> state) {
+      lock.lock();
+      try {
+        final Cell total = seal();
+        boolean folded = false;
+        try {
+          if (total.count == 0) {
+            return false;
+          }
+          BalanceSnapshot current;
+          do {
+            current = state.get();
+          } while (!state.compareAndSet(current, new BalanceSnapshot(
+              Money.add(current.getBalance(), total.amount),
+              current.getVersion() + total.count, current.getReserved())));
+          folded = true;
+          return true;
+        } finally {
+          unseal(folded);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Method used to read the account while credits are held back, for a reader which lost the
+     * race with them too often. Debits are not held back, the main balance is read once.
+     *
+     * @param state Main balance of the account.
+     * @return Balance and version of the account.
+     */
+    private BalanceSnapshot read(AtomicReference<BalanceSnapshot> state) {
+      lock.lock();
+      try {
+        final Cell total = seal();
+        try {
+          final BalanceSnapshot snapshot = state.get();
+          return snapshot == null ? null : withCredits(snapshot, total);
+        } finally {
+          unseal(false);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private Cell seal() {
+      long amount = 0;
+      long count = 0;
+      for (int i = 1; i <= ways; i++) {
+        Cell current;
+        do {
+          current = cells.get(STRIDE * i);
+        } while (!cells.compareAndSet(STRIDE * i, current,
+            new Cell(current.amount, current.count, true)));
+        amount += current.amount;
+        count += current.count;
+      }
+      return new Cell(amount, count, false);
+    }
+
+    /**
+     * Method used to let credits land again, either on top of what the cells held or, once that
+     * was folded into the main balance, from empty.
+     */
+    private void unseal(boolean empty) {
+      for (int i = 1; i <= ways; i++) {
+        final Cell sealed = cells.get(STRIDE * i);
+        cells.set(STRIDE * i, empty ? Cell.EMPTY : new Cell(sealed.amount, sealed.count, false));
+      }
+    }
+
+    private long credited() {
+      long amount = 0;
+      for (int i = 1; i <= ways; i++) {
+        amount += cells.get(STRIDE * i).amount;
+      }
+      return amount;
+    }
+
+    private long credits() {
+      long count = 0;
+      for (int i = 1; i <= ways; i++) {
+        count += cells.get(STRIDE * i).count;
+      }
+      return count;
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Account)) {
+      return false;
+    }
+    Account other = (Account) o;
+    return Objects.equals(accountId, other.accountId)
+        && Objects.equals(getBalance(), other.getBalance());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(accountId, getBalance());
+  }
+
+  @Override
+  public String toString() {
+    return "Account(accountId=" + accountId + ", balance=" + getBalance() + ")";
   }
 }
@@ -0,0 +1,65 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Entry of the change stream replicas follow: the state of an account after a committed change.
+ * Entries carry the whole state rather than a delta, so applying one twice, or after a later one
+ * of the same account, is harmless as long as the higher version wins.
+ *
+ * @author jeevan
+ */
+public class AccountChange {
+
+  private final long sequence;
+  private final String accountId;
+  private final long balance;
+  private final long reserved;
+  private final long version;
+
+  @JsonCreator
+  public AccountChange(@JsonProperty("sequence") long sequence,
+      @JsonProperty("accountId") String accountId, @JsonProperty("balance") long balance,
+      @JsonProperty("reserved") long reserved, @JsonProperty("version") long version) {
+    this.sequence = sequence;
+    this.accountId = accountId;
+    this.balance = balance;
+    this.reserved = reserved;
+    this.version = version;
+  }
+
+  /**
+   * Position in the change stream. For an account read directly from the primary, the position of
+   * the stream when it was read.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  public String getAccountId() {
+    return accountId;
+  }
+
+  /**
+   * Available balance in minor units, see {@link Money}.
+   */
+  public long getBalance() {
+    return balance;
+  }
+
+  /**
+   * Funds held for authorization holds in minor units, see {@link Money}.
+   */
+  public long getReserved() {
+    return reserved;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public BalanceSnapshot toSnapshot() {
+    return new BalanceSnapshot(balance, version, reserved);
+  }
+}
@@ -0,0 +1,55 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+/**
+ * Page of the change stream returned to a replica.
+ *
+ * @author jeevan
+ */
+public class AccountChanges {
+
+  private final String streamId;
+  private final List<AccountChange> changes;
+  private final long lastSequence;
+  private final boolean reset;
+
+  @JsonCreator
+  public AccountChanges(@JsonProperty("streamId") String streamId,
+      @JsonProperty("changes") List<AccountChange> changes,
+      @JsonProperty("lastSequence") long lastSequence, @JsonProperty("reset") boolean reset) {
+    this.streamId = streamId;
+    this.changes = changes;
+    this.lastSequence = lastSequence;
+    this.reset = reset;
+  }
+
+  /**
+   * Identifies one run of the primary, or its accounts since they were last cleared. Versions
+   * start over when it changes, and so do sequences when the primary restarted.
+   */
+  public String getStreamId() {
+    return streamId;
+  }
+
+  public List<AccountChange> getChanges() {
+    return changes;
+  }
+
+  /**
+   * Sequence to continue after with the next page.
+   */
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  /**
+   * Whether the requested changes are no longer retained, or were never published in this stream.
+   * The replica must then drop what it cached and continue after {@code lastSequence}.
+   */
+  public boolean isReset() {
+    return reset;
+  }
+}
@@ -0,0 +1,37 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Line of a bulk account import which was not imported.
+ *
+ * @author jeevan
+ */
+public class AccountImportError {
+
+  private final long line;
+  private final String accountId;
+  private final String message;
+
+  public AccountImportError(long line, String accountId, String message) {
+    this.line = line;
+    this.accountId = accountId;
+    this.message = message;
+  }
+
+  /**
+   * Line number within the input, starting at one.
+   */
+  public long getLine() {
+    return line;
+  }
+
+  /**
+   * Account id of the line, {@code null} if the line could not be parsed that far.
+   */
+  public String getAccountId() {
+    return accountId;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+}
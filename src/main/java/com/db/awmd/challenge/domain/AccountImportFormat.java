@@ -0,0 +1,45 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.Locale;
+import org.springframework.http.MediaType;
+
+/**
+ * Formats accepted by the bulk account import, one account per line.
+ *
+ * @author jeevan
+ */
+public enum AccountImportFormat {
+
+  /**
+   * Newline-delimited JSON, e.g. {@code {"accountId":"Id-1","balance":100.50}}.
+   */
+  NDJSON,
+
+  /**
+   * Comma-separated {@code accountId,balance} with an optional header line; fields may be quoted.
+   */
+  CSV;
+
+  public static final String TEXT_CSV_VALUE = "text/csv";
+
+  /**
+   * Method used to pick the format of a request body.
+   *
+   * @param contentType Content type of the body.
+   * @return {@code CSV} for {@code text/csv}, {@code NDJSON} otherwise.
+   */
+  public static AccountImportFormat forContentType(String contentType) {
+    return contentType != null && MediaType.parseMediaType(contentType)
+        .isCompatibleWith(MediaType.parseMediaType(TEXT_CSV_VALUE)) ? CSV : NDJSON;
+  }
+
+  /**
+   * Method used to pick the format of a file.
+   *
+   * @param fileName Name of the file.
+   * @return {@code CSV} for a {@code .csv} file, {@code NDJSON} otherwise.
+   */
+  public static AccountImportFormat forFileName(String fileName) {
+    return fileName.toLowerCase(Locale.ROOT).endsWith(".csv") ? CSV : NDJSON;
+  }
+}
@@ -0,0 +1,59 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+/**
+ * Class used to return the outcome of a bulk account import.
+ *
+ * @author jeevan
+ */
+public class AccountImportResponse {
+
+  private final long imported;
+  private final long duplicates;
+  private final long failed;
+  private final List<AccountImportError> errors;
+  private final boolean errorsTruncated;
+
+  public AccountImportResponse(long imported, long duplicates, long failed,
+      List<AccountImportError> errors, boolean errorsTruncated) {
+    this.imported = imported;
+    this.duplicates = duplicates;
+    this.failed = failed;
+    this.errors = errors;
+    this.errorsTruncated = errorsTruncated;
+  }
+
+  public long getImported() {
+    return imported;
+  }
+
+  /**
+   * Lines skipped because the account id already existed, they are also listed in the errors.
+   */
+  public long getDuplicates() {
+    return duplicates;
+  }
+
+  /**
+   * Lines which were malformed or failed validation.
+   */
+  public long getFailed() {
+    return failed;
+  }
+
+  /**
+   * Rejected lines in input order, duplicates included, up to the configured number of reported
+   * errors.
+   */
+  public List<AccountImportError> getErrors() {
+    return errors;
+  }
+
+  /**
+   * Whether more lines were rejected than are listed in the errors.
+   */
+  public boolean isErrorsTruncated() {
+    return errorsTruncated;
+  }
+}
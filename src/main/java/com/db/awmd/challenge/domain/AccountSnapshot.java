@@ -0,0 +1,50 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.math.BigDecimal;
+
+/**
+ * Immutable, read-only view of an account as of one version, returned by the read endpoints in
+ * place of the live {@link Account}.
+ *
+ * @author jeevan
+ */
+public class AccountSnapshot {
+
+  private final String accountId;
+  private final long balance;
+  private final long version;
+  private final long reserved;
+
+  public AccountSnapshot(String accountId, BalanceSnapshot snapshot) {
+    this.accountId = accountId;
+    this.balance = snapshot.getBalance();
+    this.version = snapshot.getVersion();
+    this.reserved = snapshot.getReserved();
+  }
+
+  public String getAccountId() {
+    return accountId;
+  }
+
+  public BigDecimal getBalance() {
+    return Money.toBigDecimal(balance);
+  }
+
+  /**
+   * Funds held for authorization holds, left out of the JSON while nothing is held.
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public BigDecimal getReserved() {
+    return reserved == 0 ? null : Money.toBigDecimal(reserved);
+  }
+
+  /**
+   * Version of the balance, incremented by every change to the account.
+   */
+  @JsonIgnore
+  public long getVersion() {
+    return version;
+  }
+}
@@ -0,0 +1,33 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+/**
+ * Class used to return the snapshots of many accounts read in one call.
+ *
+ * @author jeevan
+ */
+public class AccountSnapshotsResponse {
+
+  private final List<AccountSnapshot> accounts;
+  private final List<String> notFound;
+
+  public AccountSnapshotsResponse(List<AccountSnapshot> accounts, List<String> notFound) {
+    this.accounts = accounts;
+    this.notFound = notFound;
+  }
+
+  /**
+   * Snapshots of the accounts found, in the order they were requested.
+   */
+  public List<AccountSnapshot> getAccounts() {
+    return accounts;
+  }
+
+  /**
+   * Requested account ids which do not exist.
+   */
+  public List<String> getNotFound() {
+    return notFound;
+  }
+}
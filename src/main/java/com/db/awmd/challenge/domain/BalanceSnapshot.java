@@ -0,0 +1,59 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Value;
+
+/**
+ * Immutable point-in-time view of an account balance. Every change to an account publishes a new
+ * snapshot with a higher version, so a reader holding one snapshot always sees a consistent pair.
+ *
+ * <p>The balance is what the account can spend. Funds set aside by authorization holds are not
+ * part of it but are counted as reserved until the hold is captured or released.
+ *
+ * @author jeevan
+ */
+@Value
+public class BalanceSnapshot {
+
+  /**
+   * Available balance in minor units, see {@link Money}.
+   */
+  private final long balance;
+
+  private final long version;
+
+  /**
+   * Funds held for authorization holds in minor units, see {@link Money}.
+   */
+  private final long reserved;
+
+  public BalanceSnapshot(long balance, long version) {
+    this(balance, version, 0L);
+  }
+
+  public BalanceSnapshot(long balance, long version, long reserved) {
+    this.balance = balance;
+    this.version = version;
+    this.reserved = reserved;
+  }
+
+  /**
+   * Method used to derive the snapshot which follows this one.
+   *
+   * @param newBalance Balance in minor units after the change.
+   * @return New snapshot with the version incremented.
+   */
+  public BalanceSnapshot next(long newBalance) {
+    return new BalanceSnapshot(newBalance, version + 1, reserved);
+  }
+
+  /**
+   * Method used to derive the snapshot which follows this one when reserved funds change.
+   *
+   * @param newBalance Balance in minor units after the change.
+   * @param newReserved Reserved funds in minor units after the change.
+   * @return New snapshot with the version incremented.
+   */
+  public BalanceSnapshot next(long newBalance, long newReserved) {
+    return new BalanceSnapshot(newBalance, version + 1, newReserved);
+  }
+}
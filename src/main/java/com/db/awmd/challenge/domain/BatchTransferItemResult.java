@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Outcome of a single transfer within a batch.
+ *
+ * @author jeevan
+ */
+public class BatchTransferItemResult {
+
+  private final int index;
+  private final boolean status;
+  private final String message;
+
+  public BatchTransferItemResult(int index, boolean status, String message) {
+    this.index = index;
+    this.status = status;
+    this.message = message;
+  }
+
+  /**
+   * Position of the transfer in the submitted batch, starting at zero.
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  public boolean isStatus() {
+    return status;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+}
@@ -0,0 +1,19 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Execution modes of a batch transfer.
+ *
+ * @author jeevan
+ */
+public enum BatchTransferMode {
+
+  /**
+   * Either every transfer of the batch is applied or none is.
+   */
+  ALL_OR_NOTHING,
+
+  /**
+   * Every transfer is attempted, failures are reported per item and do not affect the others.
+   */
+  BEST_EFFORT
+}
@@ -0,0 +1,46 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+/**
+ * Class used to return the outcome of a batch transfer with one result per submitted transfer.
+ *
+ * @author jeevan
+ */
+public class BatchTransferResponse {
+
+  private final BatchTransferMode mode;
+  private final boolean status;
+  private final int succeeded;
+  private final int failed;
+  private final List<BatchTransferItemResult> results;
+
+  public BatchTransferResponse(BatchTransferMode mode, boolean status, int succeeded, int failed,
+      List<BatchTransferItemResult> results) {
+    this.mode = mode;
+    this.status = status;
+    this.succeeded = succeeded;
+    this.failed = failed;
+    this.results = results;
+  }
+
+  public BatchTransferMode getMode() {
+    return mode;
+  }
+
+  public boolean isStatus() {
+    return status;
+  }
+
+  public int getSucceeded() {
+    return succeeded;
+  }
+
+  public int getFailed() {
+    return failed;
+  }
+
+  public List<BatchTransferItemResult> getResults() {
+    return results;
+  }
+}
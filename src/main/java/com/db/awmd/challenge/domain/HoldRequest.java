@@ -0,0 +1,37 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import lombok.Data;
+
+/**
+ * Class holds information about funds to reserve on one account for a later transfer to another.
+ *
+ * @author jeevan
+ */
+@Data
+public class HoldRequest {
+
+  @NotNull
+  private String accountFromId;
+
+  @NotNull
+  private String accountToId;
+
+  @NotNull
+  @Min(value = 1, message = "Hold amount must be greater than zero.")
+  private BigDecimal amount;
+
+  /**
+   * Seconds after which the hold is released unless captured, the configured default if absent.
+   */
+  @Min(value = 1, message = "Hold time to live must be positive.")
+  private Long ttlSeconds;
+
+  /**
+   * Optional id chosen by the client, placing a hold again with the same id and the same details
+   * returns the existing hold.
+   */
+  private String holdId;
+}
@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import lombok.Value;
+
+/**
+ * State of an authorization hold as returned by the holds API.
+ *
+ * @author jeevan
+ */
+@Value
+public class HoldResponse {
+
+  private final String holdId;
+
+  private final String accountFromId;
+
+  private final String accountToId;
+
+  private final BigDecimal amount;
+
+  private final HoldStatus status;
+
+  /**
+   * Time in milliseconds since the epoch at which the hold expires unless captured or released.
+   */
+  private final long expiresAt;
+}
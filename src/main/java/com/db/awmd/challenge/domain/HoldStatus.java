@@ -0,0 +1,11 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Lifecycle of an authorization hold. A hold starts {@code HELD} and ends in exactly one of the
+ * other states.
+ *
+ * @author jeevan
+ */
+public enum HoldStatus {
+  HELD, CAPTURED, RELEASED, EXPIRED
+}
@@ -0,0 +1,60 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point money arithmetic on primitive {@code long} values expressed in minor units (cents
+ * for the default scale of 2). Balances and amounts are kept as longs on the transfer path and are
+ * converted to and from {@link BigDecimal} only at the JSON boundary.
+ *
+ * <p>The scale is read once from the {@code accounts.money.scale} system property.
+ *
+ * @author jeevan
+ */
+public final class Money {
+
+  public static final int SCALE = Integer.getInteger("accounts.money.scale", 2);
+
+  private Money() {
+  }
+
+  /**
+   * Method used to convert an amount into minor units.
+   *
+   * @param amount Amount in major units.
+   * @return Amount in minor units.
+   * @throws ArithmeticException if the amount has more fraction digits than the scale allows or
+   * does not fit into a long.
+   */
+  public static long toMinorUnits(BigDecimal amount) {
+    return amount.movePointRight(SCALE).longValueExact();
+  }
+
+  /**
+   * Method used to convert minor units back into an amount in major units.
+   *
+   * @param minorUnits Amount in minor units.
+   * @return Amount with the configured scale.
+   */
+  public static BigDecimal toBigDecimal(long minorUnits) {
+    return BigDecimal.valueOf(minorUnits, SCALE);
+  }
+
+  /**
+   * Overflow-checked addition.
+   *
+   * @throws ArithmeticException if the result overflows.
+   */
+  public static long add(long a, long b) {
+    return Math.addExact(a, b);
+  }
+
+  /**
+   * Overflow-checked subtraction.
+   *
+   * @throws ArithmeticException if the result overflows.
+   */
+  public static long subtract(long a, long b) {
+    return Math.subtractExact(a, b);
+  }
+}
@@ -0,0 +1,47 @@
+package com.db.awmd.challenge.domain;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import lombok.Data;
+
+/**
+ * Class holds information about a transfer to execute at a later time, once or repeatedly.
+ *
+ * @author jeevan
+ */
+@Data
+public class ScheduledTransferRequest {
+
+  /**
+   * Transfer executed at every occurrence, its request id is ignored.
+   */
+  @NotNull
+  @Valid
+  private TransferRequest transfer;
+
+  /**
+   * Time of the first occurrence in milliseconds since the epoch, a time in the past executes it
+   * as soon as possible.
+   */
+  @NotNull
+  private Long executeAt;
+
+  /**
+   * Seconds between occurrences of a standing order, absent for a single future-dated transfer.
+   */
+  @Min(value = 1, message = "Interval must be positive.")
+  private Long intervalSeconds;
+
+  /**
+   * Number of occurrences of a standing order, absent for no limit.
+   */
+  @Min(value = 1, message = "Occurrences must be positive.")
+  private Integer occurrences;
+
+  /**
+   * Optional id chosen by the client, scheduling again with the same id returns the existing
+   * schedule.
+   */
+  private String scheduleId;
+}
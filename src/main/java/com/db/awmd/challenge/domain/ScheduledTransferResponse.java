@@ -0,0 +1,47 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import lombok.Value;
+
+/**
+ * State of a scheduled transfer as returned by the scheduling API.
+ *
+ * @author jeevan
+ */
+@Value
+public class ScheduledTransferResponse {
+
+  private final String scheduleId;
+
+  private final String accountFromId;
+
+  private final String accountToId;
+
+  private final BigDecimal amount;
+
+  private final ScheduledTransferStatus status;
+
+  /**
+   * Time of the next occurrence in milliseconds since the epoch, {@code null} once none is left.
+   */
+  private final Long nextExecutionAt;
+
+  private final Long intervalSeconds;
+
+  /**
+   * Occurrences executed successfully since the service started.
+   */
+  private final long executed;
+
+  /**
+   * Occurrences which failed since the service started, the last failure is in {@code lastError}.
+   */
+  private final long failed;
+
+  /**
+   * Occurrences skipped because they were missed by more than the catch-up allows.
+   */
+  private final long skipped;
+
+  private final String lastError;
+}
@@ -0,0 +1,11 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Lifecycle of a scheduled transfer. A schedule is {@code PENDING} while it has occurrences left
+ * and ends either {@code COMPLETED} after its last occurrence or {@code CANCELLED}.
+ *
+ * @author jeevan
+ */
+public enum ScheduledTransferStatus {
+  PENDING, COMPLETED, CANCELLED
+}
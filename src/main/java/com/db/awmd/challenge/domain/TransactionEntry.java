@@ -0,0 +1,51 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Entry of the transaction history of an account: one side of a transfer.
+ *
+ * @author jeevan
+ */
+public class TransactionEntry {
+
+  private final long sequence;
+  private final long timestamp;
+  private final String counterpartyId;
+  private final long amount;
+
+  public TransactionEntry(long sequence, long timestamp, String counterpartyId, long amount) {
+    this.sequence = sequence;
+    this.timestamp = timestamp;
+    this.counterpartyId = counterpartyId;
+    this.amount = amount;
+  }
+
+  /**
+   * Sequence number of the transfer, shared by the entries of both accounts.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Time the transfer was recorded, in milliseconds since the epoch.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * The other account of the transfer.
+   */
+  public String getCounterpartyId() {
+    return counterpartyId;
+  }
+
+  /**
+   * Amount credited to the account, negative for a debit.
+   */
+  public BigDecimal getAmount() {
+    return Money.toBigDecimal(amount);
+  }
+}
@@ -0,0 +1,37 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+/**
+ * Class used to return one page of the transaction history of an account, newest entry first.
+ *
+ * @author jeevan
+ */
+public class TransactionPage {
+
+  private final String accountId;
+  private final List<TransactionEntry> transactions;
+  private final String nextCursor;
+
+  public TransactionPage(String accountId, List<TransactionEntry> transactions,
+      String nextCursor) {
+    this.accountId = accountId;
+    this.transactions = transactions;
+    this.nextCursor = nextCursor;
+  }
+
+  public String getAccountId() {
+    return accountId;
+  }
+
+  public List<TransactionEntry> getTransactions() {
+    return transactions;
+  }
+
+  /**
+   * Cursor of the next, older page, {@code null} once the oldest entry has been returned.
+   */
+  public String getNextCursor() {
+    return nextCursor;
+  }
+}
@@ -1,5 +1,6 @@
 package com.db.awmd.challenge.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.math.BigDecimal;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
@@ -22,4 +23,16 @@ public class TransferRequest {
   @NotNull
   @Min(value = 1, message = "Transfer amount must be greater than zero.")
   private BigDecimal amount;
+
+  /**
+   * Optional idempotency key, a retried request with the same key does not transfer again.
+   */
+  private String requestId;
+
+  /**
+   * Version the debited account must be at, taken from the {@code If-Match} header rather than
+   * from the body; {@code null} for an unconditional transfer.
+   */
+  @JsonIgnore
+  private Long expectedVersion;
 }
@@ -0,0 +1,14 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * Thrown when a conditional transfer finds the debited account at another version than the one
+ * the caller read, i.e. the account changed in between.
+ *
+ * @author jeevan
+ */
+public class AccountVersionMismatchException extends RuntimeException {
+
+  public AccountVersionMismatchException(String message) {
+    super(message);
+  }
+}
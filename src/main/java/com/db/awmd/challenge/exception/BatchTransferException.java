@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * Thrown when transfers applied as one are refused because one of them can not be applied. None
+ * of the transfers has been applied.
+ *
+ * @author jeevan
+ */
+public class BatchTransferException extends RuntimeException {
+
+  private final int index;
+
+  public BatchTransferException(int index, String message) {
+    super(message);
+    this.index = index;
+  }
+
+  /**
+   * Position of the transfer which can not be applied.
+   */
+  public int getIndex() {
+    return index;
+  }
+}
@@ -0,0 +1,13 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * Thrown when a hold id is not known, either never used or forgotten after its retention.
+ *
+ * @author jeevan
+ */
+public class HoldNotFoundException extends RuntimeException {
+
+  public HoldNotFoundException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,14 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * Thrown when a hold cannot make the requested transition, for example capturing a hold which was
+ * already released, or when a hold id is reused for a different hold.
+ *
+ * @author jeevan
+ */
+public class HoldStateException extends RuntimeException {
+
+  public HoldStateException(String message) {
+    super(message);
+  }
+}
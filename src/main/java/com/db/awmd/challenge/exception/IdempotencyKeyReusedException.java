@@ -0,0 +1,14 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * Thrown when an idempotency key is sent again with a different transfer than the one it was
+ * first used for.
+ *
+ * @author jeevan
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+  public IdempotencyKeyReusedException(String message) {
+    super(message);
+  }
+}
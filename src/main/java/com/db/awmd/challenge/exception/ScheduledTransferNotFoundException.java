@@ -0,0 +1,13 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * Thrown when a schedule id is not known, either never used or forgotten after its retention.
+ *
+ * @author jeevan
+ */
+public class ScheduledTransferNotFoundException extends RuntimeException {
+
+  public ScheduledTransferNotFoundException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,185 @@
+package com.db.awmd.challenge.history;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only segment files holding the history entries which no longer fit into the in-memory
+ * rings of their accounts.
+ *
+ * <p>Each record is laid out as {@code [long previous][long ordinal][long sequence][long
+ * timestamp][long amount][short counterparty length][counterparty]}, where {@code previous} is the
+ * position of the previous, older record of the same account or {@code -1}. The records of an
+ * account therefore form a chain from its newest spilled entry backwards which is read without
+ * any per-account file or index on disk.
+ *
+ * <p>Positions are logical across segments of a fixed size and a batch never straddles two
+ * segments. Room is reserved with a compare-and-set and filled with positional writes, so
+ * accounts spill concurrently without a common lock. Written records are never modified.
+ *
+ * @author jeevan
+ */
+final class HistorySpill implements Closeable {
+
+  static final int HEADER_SIZE = 5 * 8 + 2;
+  static final int MAX_ID_BYTES = 0xFFFF;
+
+  private static final String SUFFIX = ".history";
+
+  /**
+   * Spilled entry read back from a segment.
+   */
+  static final class Record {
+
+    long previous;
+    long ordinal;
+    long sequence;
+    long timestamp;
+    long amount;
+    String counterpartyId;
+  }
+
+  private final File directory;
+  private final int segmentSize;
+  private final AtomicLong end = new AtomicLong();
+  private final Map<Long, FileChannel> segments = new ConcurrentHashMap<>();
+
+  /**
+   * Opens the spill in the given directory. The in-memory part of the history does not survive a
+   * restart, so segments left behind by a previous run are deleted.
+   */
+  HistorySpill(File directory, int segmentSize) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create history directory " + directory);
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    deleteSegments();
+  }
+
+  /**
+   * Method used to reserve room for a batch of records, so that the caller knows the positions of
+   * its records before laying them out.
+   *
+   * @param length Size of the batch, at most the segment size.
+   * @return Position of the first byte of the batch.
+   */
+  long reserve(int length) throws IOException {
+    if (length > segmentSize) {
+      throw new IOException("History batch of " + length + " bytes exceeds the segment size.");
+    }
+    long current;
+    long start;
+    do {
+      current = end.get();
+      start = current % segmentSize + length > segmentSize
+          ? (current / segmentSize + 1) * segmentSize : current;
+    } while (!end.compareAndSet(current, start + length));
+    return start;
+  }
+
+  /**
+   * Method used to write a batch of records into the room reserved for it.
+   *
+   * @param position Position returned by {@link #reserve(int)}.
+   * @param batch Records of the batch.
+   */
+  void write(long position, ByteBuffer batch) throws IOException {
+    final FileChannel channel = segment(position / segmentSize);
+    long offset = position % segmentSize;
+    while (batch.hasRemaining()) {
+      offset += channel.write(batch, offset);
+    }
+  }
+
+  /**
+   * Method used to read the record at the given position.
+   */
+  Record read(long position, Record record) throws IOException {
+    final FileChannel channel = segment(position / segmentSize);
+    final long offset = position % segmentSize;
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    readFully(channel, header, offset);
+    header.flip();
+    record.previous = header.getLong();
+    record.ordinal = header.getLong();
+    record.sequence = header.getLong();
+    record.timestamp = header.getLong();
+    record.amount = header.getLong();
+    final ByteBuffer counterpartyId = ByteBuffer.allocate(header.getShort() & 0xFFFF);
+    readFully(channel, counterpartyId, offset + HEADER_SIZE);
+    record.counterpartyId = new String(counterpartyId.array(), StandardCharsets.UTF_8);
+    return record;
+  }
+
+  /**
+   * Method used to drop every record.
+   */
+  void clear() throws IOException {
+    closeSegments();
+    deleteSegments();
+    end.set(0L);
+  }
+
+  @Override
+  public void close() throws IOException {
+    closeSegments();
+  }
+
+  /**
+   * Encoded size of a record with the given counterparty id.
+   */
+  static int recordSize(byte[] counterpartyId) {
+    return HEADER_SIZE + counterpartyId.length;
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long offset)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException("History record at " + offset + " is incomplete.");
+      }
+    }
+  }
+
+  private FileChannel segment(long index) {
+    return segments.computeIfAbsent(index, i -> {
+      try {
+        return FileChannel.open(new File(directory, String.format("%020d%s",
+            i * segmentSize, SUFFIX)).toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+      } catch (IOException ioe) {
+        throw new UncheckedIOException("Could not open history segment " + i, ioe);
+      }
+    });
+  }
+
+  private void closeSegments() throws IOException {
+    for (FileChannel channel : segments.values()) {
+      channel.close();
+    }
+    segments.clear();
+  }
+
+  private void deleteSegments() throws IOException {
+    final File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (!file.delete()) {
+        throw new IOException("Could not delete history segment " + file);
+      }
+    }
+  }
+}
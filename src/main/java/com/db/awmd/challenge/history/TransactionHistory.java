@@ -0,0 +1,378 @@
+package com.db.awmd.challenge.history;
+
+import com.db.awmd.challenge.domain.TransactionEntry;
+import com.db.awmd.challenge.domain.TransactionPage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Append-only transaction history of every account, kept partly in memory and partly in
+ * {@link HistorySpill} segment files.
+ *
+ * <p>Every entry of an account gets the next ordinal of that account. The most recent entries live
+ * in a per-account ring of primitive columns; once the ring is full its older half is spilled in
+ * one batch, so the disk is touched once every half ring of entries. Spilled entries are chained
+ * from newest to oldest, and every {@value #CHECKPOINT_EVERY}th spilled ordinal is indexed in
+ * memory with its position and timestamp. Any ordinal, or the newest entry before a point in
+ * time, is therefore found with a binary search over the index and at most
+ * {@value #CHECKPOINT_EVERY} record reads, and a page costs one read per spilled entry on it,
+ * whatever the length of the history.
+ *
+ * <p>Page cursors are ordinals, which never change once assigned, so paging is stable while new
+ * entries are recorded. The history covers the lifetime of the process; it is not recovered on
+ * restart.
+ *
+ * @author jeevan
+ */
+@Component
+@Slf4j
+public class TransactionHistory {
+
+  static final int CHECKPOINT_EVERY = 16;
+
+  private final Map<String, AccountHistory> histories = new ConcurrentHashMap<>();
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  private final HistorySpill spill;
+
+  private final int ringSize;
+
+  public TransactionHistory(File directory, int segmentSize, int ringSize) throws IOException {
+    this.spill = new HistorySpill(directory, segmentSize);
+    // at least two so that half a ring can be spilled
+    this.ringSize = Math.max(2, ringSize);
+  }
+
+  @Autowired
+  public TransactionHistory(
+      @Value("${accounts.history.directory:data/history}") String directory,
+      @Value("${accounts.history.segment-size-mb:64}") int segmentSizeMb,
+      @Value("${accounts.history.ring-size:32}") int ringSize) throws IOException {
+    this(new File(directory), segmentSizeMb << 20, ringSize);
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    spill.close();
+  }
+
+  /**
+   * Method used to record a transfer in the history of both accounts.
+   *
+   * @param accountFromId Account debited.
+   * @param accountToId Account credited.
+   * @param amount Amount in minor units.
+   */
+  public void record(String accountFromId, String accountToId, long amount) {
+    final long transfer = sequence.incrementAndGet();
+    final long timestamp = System.currentTimeMillis();
+    history(accountFromId).append(transfer, timestamp, accountToId, -amount);
+    history(accountToId).append(transfer, timestamp, accountFromId, amount);
+  }
+
+  /**
+   * Method used to read a page of the history of an account, newest entry first.
+   *
+   * @param accountId Account id.
+   * @param cursor Cursor returned with the previous page, {@code null} for the newest entries.
+   * @param before Only entries recorded before this time in milliseconds since the epoch,
+   * {@code null} for no bound.
+   * @param limit Maximum number of entries.
+   * @return {@code TransactionPage} with up to {@code limit} entries.
+   * @throws IllegalArgumentException if the cursor is malformed.
+   */
+  public TransactionPage page(String accountId, String cursor, Long before, int limit) {
+    final long end = cursor == null ? Long.MAX_VALUE : parseCursor(cursor);
+    final AccountHistory history = histories.get(accountId);
+    if (history == null) {
+      return new TransactionPage(accountId, new ArrayList<>(), null);
+    }
+    try {
+      return history.page(accountId, end, before, limit);
+    } catch (IOException ioe) {
+      throw new UncheckedIOException("Could not read the history of account " + accountId, ioe);
+    }
+  }
+
+  /**
+   * Method used to drop the history of every account.
+   */
+  public void clear() {
+    histories.clear();
+    try {
+      spill.clear();
+    } catch (IOException ioe) {
+      throw new UncheckedIOException("Could not clear history", ioe);
+    }
+  }
+
+  private AccountHistory history(String accountId) {
+    final AccountHistory history = histories.get(accountId);
+    return history != null ? history
+        : histories.computeIfAbsent(accountId, id -> new AccountHistory(Math.min(4, ringSize)));
+  }
+
+  private static long parseCursor(String cursor) {
+    try {
+      final long end = Long.parseLong(cursor);
+      if (end >= 0) {
+        return end;
+      }
+    } catch (NumberFormatException nfe) {
+      // reported below
+    }
+    throw new IllegalArgumentException("Invalid cursor " + cursor);
+  }
+
+  /**
+   * History of one account. The ring holds the ordinals from {@code spilled} to {@code count}, at
+   * index {@code ordinal % capacity}; it starts small and grows up to the ring size.
+   */
+  private final class AccountHistory {
+
+    private long count;
+    private long spilled;
+    private long[] sequences;
+    private long[] timestamps;
+    private long[] amounts;
+    private String[] counterpartyIds;
+
+    /**
+     * Position of the newest spilled record, {@code -1} while nothing is spilled.
+     */
+    private long newestSpilled = -1L;
+
+    /**
+     * Position and timestamp of every spilled ordinal which is a multiple of the checkpoint
+     * interval. Entries are only ever appended, so a reader may keep using an array it copied
+     * together with the count under the lock.
+     */
+    private long[] checkpointPositions = new long[4];
+    private long[] checkpointTimestamps = new long[4];
+    private int checkpoints;
+
+    private AccountHistory(int capacity) {
+      resize(capacity);
+    }
+
+    private synchronized void append(long transfer, long timestamp, String counterpartyId,
+        long amount) {
+      if (count - spilled == sequences.length) {
+        if (sequences.length < ringSize) {
+          resize(Math.min(ringSize, 2 * sequences.length));
+        } else if (!spillOlderHalf()) {
+          // keep everything in memory rather than lose entries of committed transfers
+          resize(2 * sequences.length);
+        }
+      }
+      final int index = (int) (count % sequences.length);
+      sequences[index] = transfer;
+      timestamps[index] = timestamp;
+      amounts[index] = amount;
+      counterpartyIds[index] = counterpartyId;
+      count++;
+    }
+
+    private boolean spillOlderHalf() {
+      final int batch = sequences.length / 2;
+      final byte[][] ids = new byte[batch][];
+      int length = 0;
+      for (int i = 0; i < batch; i++) {
+        ids[i] = counterpartyIds[(int) ((spilled + i) % sequences.length)]
+            .getBytes(StandardCharsets.UTF_8);
+        length += HistorySpill.recordSize(ids[i]);
+      }
+      final long[] positions = new long[batch];
+      try {
+        long position = spill.reserve(length);
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        long previous = newestSpilled;
+        for (int i = 0; i < batch; i++) {
+          final long ordinal = spilled + i;
+          final int index = (int) (ordinal % sequences.length);
+          if (ids[i].length > HistorySpill.MAX_ID_BYTES) {
+            throw new IOException("Account id is too long to be spilled.");
+          }
+          buffer.putLong(previous).putLong(ordinal).putLong(sequences[index])
+              .putLong(timestamps[index]).putLong(amounts[index])
+              .putShort((short) ids[i].length).put(ids[i]);
+          positions[i] = position;
+          previous = position;
+          position += HistorySpill.recordSize(ids[i]);
+        }
+        buffer.flip();
+        spill.write(positions[0], buffer);
+      } catch (IOException | RuntimeException ex) {
+        log.error("Could not spill transaction history, keeping it in memory", ex);
+        return false;
+      }
+      for (int i = 0; i < batch; i++) {
+        final long ordinal = spilled + i;
+        if (ordinal % CHECKPOINT_EVERY == 0) {
+          addCheckpoint(positions[i], timestamps[(int) (ordinal % sequences.length)]);
+        }
+        counterpartyIds[(int) (ordinal % sequences.length)] = null;
+      }
+      newestSpilled = positions[batch - 1];
+      spilled += batch;
+      return true;
+    }
+
+    private void addCheckpoint(long position, long timestamp) {
+      if (checkpoints == checkpointPositions.length) {
+        checkpointPositions = Arrays.copyOf(checkpointPositions, 2 * checkpoints);
+        checkpointTimestamps = Arrays.copyOf(checkpointTimestamps, 2 * checkpoints);
+      }
+      checkpointPositions[checkpoints] = position;
+      checkpointTimestamps[checkpoints] = timestamp;
+      checkpoints++;
+    }
+
+    private void resize(int capacity) {
+      final long[] newSequences = new long[capacity];
+      final long[] newTimestamps = new long[capacity];
+      final long[] newAmounts = new long[capacity];
+      final String[] newCounterpartyIds = new String[capacity];
+      for (long ordinal = spilled; ordinal < count; ordinal++) {
+        final int from = (int) (ordinal % sequences.length);
+        final int to = (int) (ordinal % capacity);
+        newSequences[to] = sequences[from];
+        newTimestamps[to] = timestamps[from];
+        newAmounts[to] = amounts[from];
+        newCounterpartyIds[to] = counterpartyIds[from];
+      }
+      sequences = newSequences;
+      timestamps = newTimestamps;
+      amounts = newAmounts;
+      counterpartyIds = newCounterpartyIds;
+    }
+
+    private TransactionPage page(String accountId, long cursor, Long before, int limit)
+        throws IOException {
+      final List<TransactionEntry> entries = new ArrayList<>(Math.min(limit, 1024));
+      final SpillView view;
+      long end;
+      synchronized (this) {
+        end = Math.min(cursor, count);
+        if (before != null) {
+          while (end > spilled && timestamps[(int) ((end - 1) % sequences.length)] >= before) {
+            end--;
+          }
+        }
+        for (long ordinal = end - 1; ordinal >= spilled && entries.size() < limit; ordinal--) {
+          final int index = (int) (ordinal % sequences.length);
+          entries.add(new TransactionEntry(sequences[index], timestamps[index],
+              counterpartyIds[index], amounts[index]));
+        }
+        view = new SpillView(spilled, newestSpilled, checkpointPositions, checkpointTimestamps,
+            checkpoints);
+      }
+
+      // entries hold the ordinals from next to end, the rest of the page comes from the spill
+      long next = end - entries.size();
+      if (entries.size() < limit && next <= view.spilled) {
+        if (before != null && entries.isEmpty()) {
+          next = Math.min(next, view.endBefore(before));
+        }
+        final HistorySpill.Record record = new HistorySpill.Record();
+        long position = next > 0 ? view.locate(next - 1, record) : -1L;
+        while (position >= 0 && entries.size() < limit) {
+          spill.read(position, record);
+          entries.add(new TransactionEntry(record.sequence, record.timestamp,
+              record.counterpartyId, record.amount));
+          position = record.previous;
+          next = record.ordinal;
+        }
+      }
+      return new TransactionPage(accountId, entries, next > 0 ? String.valueOf(next) : null);
+    }
+  }
+
+  /**
+   * Spilled part of an account history as of the moment a page was requested.
+   */
+  private final class SpillView {
+
+    private final long spilled;
+    private final long newestSpilled;
+    private final long[] checkpointPositions;
+    private final long[] checkpointTimestamps;
+    private final int checkpoints;
+
+    private SpillView(long spilled, long newestSpilled, long[] checkpointPositions,
+        long[] checkpointTimestamps, int checkpoints) {
+      this.spilled = spilled;
+      this.newestSpilled = newestSpilled;
+      this.checkpointPositions = checkpointPositions;
+      this.checkpointTimestamps = checkpointTimestamps;
+      this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Method used to find the position of a spilled ordinal by walking back from the nearest
+     * checkpoint at or after it.
+     */
+    private long locate(long ordinal, HistorySpill.Record record) throws IOException {
+      final long checkpoint = (ordinal + CHECKPOINT_EVERY - 1) / CHECKPOINT_EVERY;
+      long current;
+      long position;
+      if (checkpoint < checkpoints) {
+        current = checkpoint * CHECKPOINT_EVERY;
+        position = checkpointPositions[(int) checkpoint];
+      } else {
+        current = spilled - 1;
+        position = newestSpilled;
+      }
+      while (current > ordinal) {
+        position = spill.read(position, record).previous;
+        current--;
+      }
+      return position;
+    }
+
+    /**
+     * Method used to find the first spilled ordinal recorded at or after the given time.
+     *
+     * @return Ordinal bounding the entries recorded before the time.
+     */
+    private long endBefore(long before) throws IOException {
+      // first checkpoint at or after the time, the answer lies in the interval before it
+      int low = 0;
+      int high = checkpoints;
+      while (low < high) {
+        final int middle = (low + high) >>> 1;
+        if (checkpointTimestamps[middle] < before) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      if (low == 0) {
+        return 0L;
+      }
+      long end = Math.min(spilled, (long) low * CHECKPOINT_EVERY);
+      final HistorySpill.Record record = new HistorySpill.Record();
+      long position = locate(end - 1, record);
+      while (position >= 0 && spill.read(position, record).timestamp >= before) {
+        position = record.previous;
+        end--;
+      }
+      return end;
+    }
+  }
+}
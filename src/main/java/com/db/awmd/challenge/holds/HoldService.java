@@ -0,0 +1,332 @@
+package com.db.awmd.challenge.holds;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.HoldRequest;
+import com.db.awmd.challenge.domain.HoldResponse;
+import com.db.awmd.challenge.domain.HoldStatus;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.HoldNotFoundException;
+import com.db.awmd.challenge.exception.HoldStateException;
+import com.db.awmd.challenge.replication.ChangeStream;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.scheduling.TimingWheel;
+import com.db.awmd.challenge.service.AccountsService;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+
+/**
+ * Authorization holds: funds reserved on one account now and transferred to another account
+ * later, or given back.
+ *
+ * <p>Placing a hold moves its amount from the balance to the reserved funds of the account, see
+ * {@link Account#hold(long)}, without taking the locks transfers take. Capturing it credits the
+ * other account and takes the amount out of the reserved funds; releasing it, or letting it
+ * expire, puts the amount back into the balance. Every hold changes state exactly once, through a
+ * compare-and-set, so concurrent and repeated captures and releases are safe: repeating the call
+ * which won returns the hold again, the losing call is refused.
+ *
+ * <p>Expiry is driven by a {@link TimingWheel} advanced by one thread every
+ * {@code accounts.holds.tick-millis}, so the cost of a tick does not grow with the number of
+ * outstanding holds. A hold is remembered for {@code accounts.holds.retention-seconds} after it
+ * expires, so that retries keep getting an answer, and then forgotten.
+ *
+ * <p>Holds live in memory and are lost, with their reserved funds, on a restart. The journaled and
+ * off-heap repositories record balances only, so with either of them this service and
+ * {@code HoldsController} are not created, rather than offering holds which would fail.
+ *
+ * @author jeevan
+ */
+@Service
+@ConditionalOnExpression(HoldService.ENABLED)
+@Slf4j
+public class HoldService {
+
+  /**
+   * Condition under which holds are offered, by the repository mode.
+   */
+  public static final String ENABLED =
+      "!'${accounts.repository.mode:locking}'.matches('journaled|off-heap')";
+
+  private final AccountsService accountsService;
+
+  private final AccountsRepository accountsRepository;
+
+  private final ChangeStream changeStream;
+
+  private final long defaultTtlMillis;
+
+  private final long maxTtlMillis;
+
+  private final long retentionMillis;
+
+  private final long tickMillis;
+
+  private final Map<String, Hold> holds = new ConcurrentHashMap<>();
+
+  private final TimingWheel<Hold> wheel;
+
+  private volatile boolean running;
+
+  private Thread ticker;
+
+  @Autowired
+  public HoldService(AccountsService accountsService, ChangeStream changeStream,
+      @Value("${accounts.holds.default-ttl-seconds:600}") long defaultTtlSeconds,
+      @Value("${accounts.holds.max-ttl-seconds:86400}") long maxTtlSeconds,
+      @Value("${accounts.holds.retention-seconds:3600}") long retentionSeconds,
+      @Value("${accounts.holds.tick-millis:100}") long tickMillis) {
+    this.accountsService = accountsService;
+    this.accountsRepository = accountsService.getAccountsRepository();
+    this.changeStream = changeStream;
+    this.defaultTtlMillis = TimeUnit.SECONDS.toMillis(defaultTtlSeconds);
+    this.maxTtlMillis = TimeUnit.SECONDS.toMillis(maxTtlSeconds);
+    this.retentionMillis = TimeUnit.SECONDS.toMillis(retentionSeconds);
+    this.tickMillis = tickMillis;
+    this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    ticker = new Thread(this::tick, "hold-expiry");
+    ticker.setDaemon(true);
+    ticker.start();
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    running = false;
+    LockSupport.unpark(ticker);
+    ticker.join();
+  }
+
+  /**
+   * Method used to reserve funds for a later transfer.
+   *
+   * @param holdRequest Accounts, amount and optionally time to live and id of the hold.
+   * @return {@code HoldResponse} of the new hold, or of the existing hold with the same id.
+   * @throws HoldStateException if the hold id is already used for a different hold.
+   */
+  public HoldResponse placeHold(HoldRequest holdRequest) {
+    final long amount = Money.toMinorUnits(holdRequest.getAmount());
+    final Account fromAccount = account(holdRequest.getAccountFromId());
+    final Account toAccount = account(holdRequest.getAccountToId());
+    final long ttlMillis = holdRequest.getTtlSeconds() == null ? defaultTtlMillis
+        : Math.min(TimeUnit.SECONDS.toMillis(holdRequest.getTtlSeconds()), maxTtlMillis);
+    final String holdId = holdRequest.getHoldId() != null ? holdRequest.getHoldId()
+        : UUID.randomUUID().toString();
+    final Hold hold = new Hold(holdId, fromAccount, toAccount, amount,
+        System.currentTimeMillis() + ttlMillis);
+
+    // the id is claimed first, a retry of a hold already placed reserves nothing
+    Hold existing;
+    while ((existing = holds.putIfAbsent(holdId, hold)) != null) {
+      if (!existing.sameAs(hold)) {
+        throw new HoldStateException("Hold id " + holdId + " was already used for a different "
+            + "hold.");
+      }
+      if (existing.awaitPlaced()) {
+        return existing.toResponse();
+      }
+      // placing it failed and the id was given up, try again
+    }
+    try {
+      accountsRepository.placeHold(fromAccount, amount);
+    } catch (RuntimeException re) {
+      holds.remove(holdId, hold);
+      hold.placed(false);
+      throw re;
+    }
+    hold.placed(true);
+    changeStream.record(fromAccount.getAccountId());
+    wheel.schedule(hold, hold.expiresAt);
+    return hold.toResponse();
+  }
+
+  /**
+   * Method used to transfer the funds of a hold to the account it was placed for.
+   *
+   * @param holdId Hold id.
+   * @return {@code HoldResponse} of the captured hold.
+   * @throws HoldStateException if the hold was released or has expired.
+   */
+  public HoldResponse capture(String holdId) {
+    final Hold hold = hold(holdId);
+    if (hold.status.compareAndSet(HoldStatus.HELD, HoldStatus.CAPTURED)) {
+      try {
+        accountsService.captureHold(hold.fromAccount, hold.toAccount, hold.amount);
+      } catch (RuntimeException re) {
+        hold.status.set(HoldStatus.HELD);
+        // its expiry may have fired meanwhile and found the hold captured
+        if (System.currentTimeMillis() >= hold.expiresAt) {
+          expire(hold);
+        }
+        throw re;
+      }
+    } else if (hold.status.get() != HoldStatus.CAPTURED) {
+      throw new HoldStateException("Hold " + holdId + " cannot be captured, it is "
+          + hold.status.get() + ".");
+    }
+    return hold.toResponse();
+  }
+
+  /**
+   * Method used to give the funds of a hold back to the account it was placed on.
+   *
+   * @param holdId Hold id.
+   * @return {@code HoldResponse} of the released or expired hold.
+   * @throws HoldStateException if the hold was captured.
+   */
+  public HoldResponse release(String holdId) {
+    final Hold hold = hold(holdId);
+    if (hold.status.compareAndSet(HoldStatus.HELD, HoldStatus.RELEASED)) {
+      accountsRepository.releaseHold(hold.fromAccount, hold.amount);
+      changeStream.record(hold.fromAccount.getAccountId());
+    } else if (hold.status.get() == HoldStatus.CAPTURED) {
+      throw new HoldStateException("Hold " + holdId + " cannot be released, it is CAPTURED.");
+    }
+    return hold.toResponse();
+  }
+
+  public HoldResponse getHold(String holdId) {
+    return hold(holdId).toResponse();
+  }
+
+  /**
+   * Number of holds remembered, in any state.
+   */
+  public int size() {
+    return holds.size();
+  }
+
+  /**
+   * Method used to forget every hold without releasing its funds, for use together with
+   * clearing the accounts.
+   */
+  public void clear() {
+    holds.clear();
+  }
+
+  private Account account(String accountId) {
+    final Account account = accountsRepository.getAccount(accountId);
+    if (account == null) {
+      throw new AccountNotFoundException("Account with id " + accountId + " not found.");
+    }
+    return account;
+  }
+
+  private Hold hold(String holdId) {
+    final Hold hold = holds.get(holdId);
+    // a hold whose funds are still being reserved is answered once they are
+    if (hold == null || !hold.awaitPlaced()) {
+      throw new HoldNotFoundException("Hold with id " + holdId + " not found.");
+    }
+    return hold;
+  }
+
+  private void tick() {
+    while (running) {
+      try {
+        wheel.advance(System.currentTimeMillis(), this::onTimer);
+      } catch (RuntimeException re) {
+        log.error("Could not process hold timers", re);
+      }
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(tickMillis));
+    }
+  }
+
+  /**
+   * Fires once at the expiry of a hold and once at the end of its retention.
+   */
+  private void onTimer(Hold hold) {
+    expire(hold);
+    final long forgetAt = hold.expiresAt + retentionMillis;
+    if (System.currentTimeMillis() >= forgetAt) {
+      holds.remove(hold.holdId, hold);
+    } else {
+      wheel.schedule(hold, forgetAt);
+    }
+  }
+
+  private void expire(Hold hold) {
+    if (hold.status.compareAndSet(HoldStatus.HELD, HoldStatus.EXPIRED)) {
+      try {
+        accountsRepository.releaseHold(hold.fromAccount, hold.amount);
+        changeStream.record(hold.fromAccount.getAccountId());
+      } catch (RuntimeException re) {
+        log.error("Could not release expired hold {}", hold.holdId, re);
+      }
+    }
+  }
+
+  private static final class Hold {
+
+    private final String holdId;
+    private final Account fromAccount;
+    private final Account toAccount;
+    private final long amount;
+    private final long expiresAt;
+    private final AtomicReference<HoldStatus> status = new AtomicReference<>(HoldStatus.HELD);
+    private final CountDownLatch placing = new CountDownLatch(1);
+    private volatile boolean placed;
+
+    private Hold(String holdId, Account fromAccount, Account toAccount, long amount,
+        long expiresAt) {
+      this.holdId = holdId;
+      this.fromAccount = fromAccount;
+      this.toAccount = toAccount;
+      this.amount = amount;
+      this.expiresAt = expiresAt;
+    }
+
+    private void placed(boolean placed) {
+      this.placed = placed;
+      placing.countDown();
+    }
+
+    /**
+     * Waits until the funds of the hold are reserved, which takes one compare-and-set.
+     *
+     * @return {@code false} if reserving them failed.
+     */
+    private boolean awaitPlaced() {
+      boolean interrupted = false;
+      while (true) {
+        try {
+          placing.await();
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      return placed;
+    }
+
+    private boolean sameAs(Hold other) {
+      return fromAccount.getAccountId().equals(other.fromAccount.getAccountId())
+          && toAccount.getAccountId().equals(other.toAccount.getAccountId())
+          && amount == other.amount;
+    }
+
+    private HoldResponse toResponse() {
+      return new HoldResponse(holdId, fromAccount.getAccountId(), toAccount.getAccountId(),
+          Money.toBigDecimal(amount), status.get(), expiresAt);
+    }
+  }
+}
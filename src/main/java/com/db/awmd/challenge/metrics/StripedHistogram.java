@@ -0,0 +1,51 @@
+package com.db.awmd.challenge.metrics;
+
+import org.HdrHistogram.AtomicHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latency histogram spread over several {@link AtomicHistogram}s. A value is recorded into the
+ * stripe picked by the recording thread, so threads recording at once do not contend on the total
+ * count, minimum and maximum of one histogram; the stripes are merged only when the histogram is
+ * read.
+ *
+ * @author jeevan
+ */
+final class StripedHistogram {
+
+  private final long highestTrackableValue;
+
+  private final AtomicHistogram[] stripes;
+
+  /**
+   * @param highestTrackableValue Largest value recorded, larger ones are recorded as it.
+   * @param stripes Number of stripes, rounded up to a power of two.
+   */
+  StripedHistogram(long highestTrackableValue, int stripes) {
+    this.highestTrackableValue = highestTrackableValue;
+    this.stripes = new AtomicHistogram[Math.max(1,
+        Integer.highestOneBit(Math.max(1, stripes) - 1) << 1)];
+    for (int i = 0; i < this.stripes.length; i++) {
+      this.stripes[i] = new AtomicHistogram(highestTrackableValue, 3);
+    }
+  }
+
+  void recordValue(long value) {
+    final long id = Thread.currentThread().getId();
+    stripes[(int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & (stripes.length - 1)]
+        .recordValue(Math.min(Math.max(value, 0L), highestTrackableValue));
+  }
+
+  /**
+   * Method used to merge the stripes.
+   *
+   * @return Copy of everything recorded so far.
+   */
+  Histogram merged() {
+    final Histogram merged = new Histogram(highestTrackableValue, 3);
+    for (AtomicHistogram stripe : stripes) {
+      merged.add(stripe);
+    }
+    return merged;
+  }
+}
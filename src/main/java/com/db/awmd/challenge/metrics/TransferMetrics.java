@@ -0,0 +1,153 @@
+package com.db.awmd.challenge.metrics;
+
+import com.db.awmd.challenge.repository.LockStripes;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counters and latency histograms of the transfer path.
+ *
+ * <p>Recording is lock-free and does not allocate: outcomes go to striped {@link LongAdder}s and
+ * latencies, in nanoseconds, to fixed-size {@link StripedHistogram}s with three significant
+ * digits, which are merged when read. Latencies above one minute are recorded as one minute.
+ * Latency recording can be turned off with {@code accounts.metrics.latency}, to measure what it
+ * costs; the histograms then stay empty.
+ *
+ * @author jeevan
+ */
+@Component
+public class TransferMetrics {
+
+  private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  private static final int MAX_DEFAULT_STRIPES = 16;
+
+  /**
+   * How a transfer ended. {@code THROTTLED} transfers were refused by admission control before
+   * reaching the service and are not audited.
+   */
+  public enum Outcome {
+    SUCCESS, INSUFFICIENT_BALANCE, NOT_FOUND, REJECTED, THROTTLED
+  }
+
+  private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+
+  private final boolean latency;
+
+  private final StripedHistogram requestNanos;
+
+  private final StripedHistogram lookupNanos;
+
+  private final StripedHistogram lockWaitNanos;
+
+  private final StripedHistogram commitNanos;
+
+  private volatile LockStripes lockStripes;
+
+  public TransferMetrics() {
+    this(true, 0);
+  }
+
+  /**
+   * @param latency Whether latencies are recorded.
+   * @param histogramStripes Stripes of every latency histogram, 0 for one per available
+   * processor up to 16.
+   */
+  @Autowired
+  public TransferMetrics(@Value("${accounts.metrics.latency:true}") boolean latency,
+      @Value("${accounts.metrics.histogram-stripes:0}") int histogramStripes) {
+    for (int i = 0; i < outcomes.length; i++) {
+      outcomes[i] = new LongAdder();
+    }
+    this.latency = latency;
+    // every stripe takes about 220 KB
+    final int stripes = histogramStripes > 0 ? histogramStripes
+        : Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_STRIPES);
+    this.requestNanos = new StripedHistogram(HIGHEST_TRACKABLE_NANOS, stripes);
+    this.lookupNanos = new StripedHistogram(HIGHEST_TRACKABLE_NANOS, stripes);
+    this.lockWaitNanos = new StripedHistogram(HIGHEST_TRACKABLE_NANOS, stripes);
+    this.commitNanos = new StripedHistogram(HIGHEST_TRACKABLE_NANOS, stripes);
+  }
+
+  public void recordOutcome(Outcome outcome) {
+    outcomes[outcome.ordinal()].increment();
+  }
+
+  /**
+   * Method used to record the time a transfer request spent in the web layer.
+   */
+  public void recordRequest(long nanos) {
+    record(requestNanos, nanos);
+  }
+
+  /**
+   * Method used to record the time taken to look up both accounts of a transfer.
+   */
+  public void recordLookup(long nanos) {
+    record(lookupNanos, nanos);
+  }
+
+  /**
+   * Method used to record the time spent waiting for the locks of a transfer, zero when they were
+   * free.
+   */
+  public void recordLockWait(long nanos) {
+    record(lockWaitNanos, nanos);
+  }
+
+  /**
+   * Method used to record the time taken by the repository to apply a transfer, lock wait
+   * included.
+   */
+  public void recordCommit(long nanos) {
+    record(commitNanos, nanos);
+  }
+
+  /**
+   * Method used to expose the per-stripe contention counters of the repository's locks.
+   */
+  public void trackLockStripes(LockStripes lockStripes) {
+    this.lockStripes = lockStripes;
+  }
+
+  public long getOutcomeCount(Outcome outcome) {
+    return outcomes[outcome.ordinal()].sum();
+  }
+
+  /**
+   * Latencies of transfer requests, as a copy merged from the stripes; likewise the other latency
+   * getters.
+   */
+  public Histogram getRequestNanos() {
+    return requestNanos.merged();
+  }
+
+  public Histogram getLookupNanos() {
+    return lookupNanos.merged();
+  }
+
+  public Histogram getLockWaitNanos() {
+    return lockWaitNanos.merged();
+  }
+
+  public Histogram getCommitNanos() {
+    return commitNanos.merged();
+  }
+
+  /**
+   * Locks of the repository, or {@code null} if it does not lock.
+   */
+  public LockStripes getLockStripes() {
+    return lockStripes;
+  }
+
+  private void record(StripedHistogram histogram, long nanos) {
+    if (latency) {
+      histogram.recordValue(nanos);
+    }
+  }
+}
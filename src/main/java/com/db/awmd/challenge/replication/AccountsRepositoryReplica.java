@@ -0,0 +1,238 @@
+package com.db.awmd.challenge.replication;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountChange;
+import com.db.awmd.challenge.domain.AccountChanges;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Repository;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Read-only repository of a replica, serving balances from a {@link NearCache} kept up to date
+ * from the {@link ChangeStream} of the primary at {@code accounts.replication.primary-url}.
+ *
+ * <p>An account not cached is read from the primary once and cached; from then on every committed
+ * change of it reaches the replica through the stream, which one thread long-polls, so reads scale
+ * with the number of replicas and are never older than the last change the replica received. If
+ * the replica falls too far behind, or the primary restarts, the cache is dropped and refilled.
+ * While the replica has not heard from the primary for {@code max-staleness-millis}, reads go to
+ * the primary instead of the cache, which bounds how stale a read can be.
+ *
+ * <p>Every other request is sent to the primary by {@link ReplicaWriteFilter}; writing through
+ * this repository is refused.
+ *
+ * @author jeevan
+ */
+@Repository
+@ConditionalOnProperty(prefix = "accounts.repository", name = "mode", havingValue = "replica")
+@Slf4j
+public class AccountsRepositoryReplica implements AccountsRepository {
+
+  static final String READ_ONLY = "Replicas are read-only, send writes to the primary.";
+
+  private final String primaryUrl;
+
+  private final NearCache cache;
+
+  private final RestTemplate primary;
+
+  private final int batchSize;
+
+  private final long pollWaitMillis;
+
+  private final long maxStalenessMillis;
+
+  private volatile String streamId;
+
+  private volatile long appliedSequence;
+
+  /**
+   * Time of the last successful poll of the primary, in nanoseconds.
+   */
+  private volatile long lastContact = System.nanoTime() - Long.MAX_VALUE / 2;
+
+  private volatile boolean running;
+
+  private Thread follower;
+
+  @Autowired
+  public AccountsRepositoryReplica(
+      @Value("${accounts.replication.primary-url}") String primaryUrl,
+      @Value("${accounts.replication.cache-size:100000}") int cacheSize,
+      @Value("${accounts.replication.batch-size:1000}") int batchSize,
+      @Value("${accounts.replication.poll-wait-millis:1000}") long pollWaitMillis,
+      @Value("${accounts.replication.max-staleness-millis:5000}") long maxStalenessMillis) {
+    this.primaryUrl = primaryUrl.endsWith("/") ? primaryUrl.substring(0, primaryUrl.length() - 1)
+        : primaryUrl;
+    this.cache = new NearCache(cacheSize);
+    this.batchSize = batchSize;
+    this.pollWaitMillis = pollWaitMillis;
+    this.maxStalenessMillis = maxStalenessMillis;
+    final SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(1000);
+    requestFactory.setReadTimeout((int) Math.min(Integer.MAX_VALUE, pollWaitMillis + 5000));
+    this.primary = new RestTemplate(requestFactory);
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    follower = new Thread(this::follow, "replica-follower");
+    follower.setDaemon(true);
+    follower.start();
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    running = false;
+    follower.interrupt();
+    follower.join();
+  }
+
+  public String getPrimaryUrl() {
+    return primaryUrl;
+  }
+
+  @Override
+  public void createAccount(Account account) {
+    throw new UnsupportedOperationException(READ_ONLY);
+  }
+
+  /**
+   * Replicas hold no {@link Account} objects, only their balances, see
+   * {@link #getBalanceSnapshot(String)}.
+   */
+  @Override
+  public Account getAccount(String accountId) {
+    throw new UnsupportedOperationException(READ_ONLY);
+  }
+
+  @Override
+  public BalanceSnapshot getBalanceSnapshot(String accountId) {
+    final boolean fresh = System.nanoTime() - lastContact
+        < TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+    if (fresh) {
+      final BalanceSnapshot cached = cache.get(accountId);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    final long epoch = cache.getEpoch();
+    final AccountChange change = readFromPrimary(accountId);
+    if (change == null) {
+      return null;
+    }
+    final BalanceSnapshot snapshot = change.toSnapshot();
+    cache.putIfNewer(accountId, snapshot, epoch);
+    return snapshot;
+  }
+
+  /**
+   * Drops the cached balances, which are read from the primary again.
+   */
+  @Override
+  public void clearAccounts() {
+    cache.clear();
+  }
+
+  @Override
+  public void transferBetweenAccounts(Account fromAccount, Account toAccount, long amount) {
+    throw new UnsupportedOperationException(READ_ONLY);
+  }
+
+  @Override
+  public void transferIfVersion(Account fromAccount, Account toAccount, long amount,
+      long expectedVersion) {
+    throw new UnsupportedOperationException(READ_ONLY);
+  }
+
+  /**
+   * Sequence of the last change of the primary applied to the cache.
+   */
+  public long getAppliedSequence() {
+    return appliedSequence;
+  }
+
+  /**
+   * Milliseconds since the replica last heard from the primary.
+   */
+  public long getMillisSinceContact() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastContact);
+  }
+
+  public int getCacheSize() {
+    return cache.size();
+  }
+
+  private AccountChange readFromPrimary(String accountId) {
+    try {
+      return primary.getForObject(primaryUrl + "/v1/replication/accounts/{accountId}",
+          AccountChange.class, accountId);
+    } catch (HttpClientErrorException hcee) {
+      if (hcee.getStatusCode() == HttpStatus.NOT_FOUND) {
+        return null;
+      }
+      throw hcee;
+    }
+  }
+
+  private void follow() {
+    long backoffMillis = 0;
+    while (running) {
+      try {
+        final AccountChanges changes = primary.getForObject(primaryUrl
+                + "/v1/replication/changes?after={after}&limit={limit}&waitMillis={wait}",
+            AccountChanges.class, appliedSequence, batchSize, pollWaitMillis);
+        apply(changes);
+        lastContact = System.nanoTime();
+        backoffMillis = 0;
+      } catch (RestClientException rce) {
+        if (!running) {
+          return;
+        }
+        backoffMillis = Math.min(Math.max(2 * backoffMillis, 10), 1000);
+        log.warn("Could not follow the primary at {}, retrying in {} ms: {}", primaryUrl,
+            backoffMillis, rce.getMessage());
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoffMillis));
+      }
+    }
+  }
+
+  private void apply(AccountChanges changes) {
+    if (!changes.getStreamId().equals(streamId) || changes.isReset()) {
+      if (streamId != null) {
+        log.info("Replica lost track of the primary, dropping {} cached accounts",
+            cache.size());
+      }
+      cache.clear();
+      streamId = changes.getStreamId();
+      if (changes.isReset()) {
+        appliedSequence = changes.getLastSequence();
+        return;
+      }
+      if (appliedSequence != 0) {
+        // sequences of the new stream start over
+        appliedSequence = 0;
+        return;
+      }
+    }
+    final long epoch = cache.getEpoch();
+    for (AccountChange change : changes.getChanges()) {
+      cache.putIfNewer(change.getAccountId(), change.toSnapshot(), epoch);
+    }
+    appliedSequence = changes.getLastSequence();
+  }
+}
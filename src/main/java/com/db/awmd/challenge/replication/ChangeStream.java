@@ -0,0 +1,206 @@
+package com.db.awmd.challenge.replication;
+
+import com.db.awmd.challenge.domain.AccountChange;
+import com.db.awmd.challenge.domain.AccountChanges;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stream of committed account changes the primary publishes to its replicas, see
+ * {@link AccountsRepositoryReplica}.
+ *
+ * <p>After every committed change the current state of the account is appended with the next
+ * sequence number. The stream is a ring of the most recent {@code capacity} entries: publishing
+ * claims a sequence with one atomic increment and stores the entry into its slot, without a lock
+ * and without waiting for readers. A reader that falls more than a ring behind is told to reset.
+ * Entries may become visible slightly out of sequence order, so a reader stops at the first
+ * sequence not published yet and picks it up with its next read.
+ *
+ * <p>Clearing the accounts of the primary, see {@link #reset()}, starts a new stream: accounts
+ * created again start over at version zero, so replicas must drop everything they cached rather
+ * than keep the higher versions of the old accounts.
+ *
+ * <p>The stream is disabled unless {@code accounts.replication.change-stream.enabled} is set, in
+ * which case recording a change costs one branch.
+ *
+ * @author jeevan
+ */
+@Component
+public class ChangeStream {
+
+  private final AccountsRepository accountsRepository;
+
+  private final boolean enabled;
+
+  private volatile Epoch epoch = new Epoch(UUID.randomUUID().toString(), 0L);
+
+  /**
+   * Version of the change filling the slot of an account which no longer exists, never read.
+   */
+  private static final long GONE = -1L;
+
+  private final AtomicReferenceArray<AccountChange> ring;
+
+  private final int mask;
+
+  private final AtomicLong claimed = new AtomicLong();
+
+  private final Object signal = new Object();
+
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  @Autowired
+  public ChangeStream(AccountsRepository accountsRepository,
+      @Value("${accounts.replication.change-stream.enabled:false}") boolean enabled,
+      @Value("${accounts.replication.change-stream.capacity:65536}") int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Change stream capacity must be positive.");
+    }
+    this.accountsRepository = accountsRepository;
+    this.enabled = enabled;
+    final int size = Math.max(Integer.highestOneBit(capacity - 1) << 1, 1);
+    this.ring = new AtomicReferenceArray<>(enabled ? size : 1);
+    this.mask = ring.length() - 1;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Method used to publish the current state of an account after a change was committed.
+   *
+   * @param accountId Account changed.
+   */
+  public void record(String accountId) {
+    if (!enabled) {
+      return;
+    }
+    // claimed before the account is read, so that a sequence after a reset carries a state read
+    // after the accounts were cleared
+    final long sequence = claimed.incrementAndGet();
+    final BalanceSnapshot snapshot = accountsRepository.getBalanceSnapshot(accountId);
+    // the slot is filled in any case, readers wait for every sequence claimed
+    ring.set((int) sequence & mask, snapshot == null
+        ? new AccountChange(sequence, accountId, 0L, 0L, GONE)
+        : new AccountChange(sequence, accountId, snapshot.getBalance(), snapshot.getReserved(),
+            snapshot.getVersion()));
+    signalReaders();
+  }
+
+  /**
+   * Method used to start a new stream once the accounts of the primary were cleared. Readers of
+   * the old stream are told to reset, and nothing published before is read again.
+   */
+  public void reset() {
+    epoch = new Epoch(UUID.randomUUID().toString(), claimed.get());
+    signalReaders();
+  }
+
+  /**
+   * Method used to read the current state of an account together with the position of the
+   * stream, so that every change after it is published after that position.
+   *
+   * @param accountId Account id.
+   * @return Current state, or {@code null} if there is no such account.
+   */
+  public AccountChange read(String accountId) {
+    final long sequence = claimed.get();
+    final BalanceSnapshot snapshot = accountsRepository.getBalanceSnapshot(accountId);
+    return snapshot == null ? null : new AccountChange(sequence, accountId,
+        snapshot.getBalance(), snapshot.getReserved(), snapshot.getVersion());
+  }
+
+  /**
+   * Method used to read the changes after a sequence, waiting for the first one if there is none
+   * yet.
+   *
+   * @param after Last sequence the reader has seen, zero for the beginning of the stream.
+   * @param limit Maximum number of changes.
+   * @param waitMillis How long to wait for a change, zero not to wait.
+   * @return Changes in sequence order, or a reset if the reader is too far behind or ahead.
+   */
+  public AccountChanges read(long after, int limit, long waitMillis) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+    while (true) {
+      final Epoch current = epoch;
+      final long last = claimed.get();
+      if (after > last || after < last - ring.length() || after < current.floor) {
+        return new AccountChanges(current.streamId, Collections.emptyList(), last, true);
+      }
+      final List<AccountChange> changes = new ArrayList<>(Math.min(limit, 256));
+      long read = after;
+      for (long sequence = after + 1; sequence <= last && changes.size() < limit; sequence++) {
+        final AccountChange change = ring.get((int) sequence & mask);
+        if (change == null || change.getSequence() < sequence) {
+          break;
+        }
+        if (change.getSequence() > sequence) {
+          // overwritten while reading
+          return new AccountChanges(current.streamId, Collections.emptyList(), claimed.get(),
+              true);
+        }
+        if (change.getVersion() != GONE) {
+          changes.add(change);
+        }
+        read = sequence;
+      }
+      if (current != epoch) {
+        // reset while reading, the changes may belong to the old stream
+        continue;
+      }
+      final long remaining = deadline - System.nanoTime();
+      if (read > after || remaining <= 0) {
+        return new AccountChanges(current.streamId, changes, read, false);
+      }
+      awaitChange(after + 1, remaining);
+    }
+  }
+
+  private void signalReaders() {
+    if (waiting.get() > 0) {
+      synchronized (signal) {
+        signal.notifyAll();
+      }
+    }
+  }
+
+  private void awaitChange(long sequence, long remainingNanos) throws InterruptedException {
+    synchronized (signal) {
+      waiting.incrementAndGet();
+      try {
+        final AccountChange change = ring.get((int) sequence & mask);
+        if (change == null || change.getSequence() < sequence) {
+          TimeUnit.NANOSECONDS.timedWait(signal, remainingNanos);
+        }
+      } finally {
+        waiting.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Identity of the stream and the last sequence published before it started.
+   */
+  private static final class Epoch {
+
+    private final String streamId;
+    private final long floor;
+
+    private Epoch(String streamId, long floor) {
+      this.streamId = streamId;
+      this.floor = floor;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package com.db.awmd.challenge.replication;
+
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of account balances on a replica, evicting the least recently used account.
+ *
+ * <p>The cache is split into segments by the hash of the account id, each an access-ordered map
+ * behind a lock of its own, so that concurrent reads of different accounts rarely meet on the same
+ * lock. Every segment holds its share of the capacity, which makes eviction approximate across
+ * segments but keeps it constant time. A snapshot only replaces a cached one with a higher
+ * version, so changes arriving out of order never move an account backwards.
+ *
+ * @author jeevan
+ */
+final class NearCache {
+
+  private static final int SEGMENTS = 64;
+
+  private final Segment[] segments = new Segment[SEGMENTS];
+
+  /**
+   * Incremented by {@link #clear()}, so that a snapshot read from the primary before the cache was
+   * cleared is not put into it afterwards.
+   */
+  private volatile long epoch;
+
+  NearCache(int capacity) {
+    final int perSegment = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(perSegment);
+    }
+  }
+
+  BalanceSnapshot get(String accountId) {
+    final Segment segment = segment(accountId);
+    synchronized (segment) {
+      return segment.get(accountId);
+    }
+  }
+
+  /**
+   * Method used to cache a snapshot unless a newer one is cached already.
+   *
+   * @param accountId Account id.
+   * @param snapshot Snapshot of the account.
+   * @param epoch Value of {@link #getEpoch()} before the snapshot was read.
+   */
+  void putIfNewer(String accountId, BalanceSnapshot snapshot, long epoch) {
+    final Segment segment = segment(accountId);
+    synchronized (segment) {
+      if (epoch != this.epoch) {
+        return;
+      }
+      final BalanceSnapshot cached = segment.get(accountId);
+      if (cached == null || cached.getVersion() < snapshot.getVersion()) {
+        segment.put(accountId, snapshot);
+      }
+    }
+  }
+
+  long getEpoch() {
+    return epoch;
+  }
+
+  void clear() {
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        // under the first lock, so that no put of the old epoch lands in a cleared segment
+        if (segment == segments[0]) {
+          epoch++;
+        }
+        segment.clear();
+      }
+    }
+  }
+
+  int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  private Segment segment(String accountId) {
+    final int hash = accountId.hashCode();
+    return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+  }
+
+  private static final class Segment extends LinkedHashMap<String, BalanceSnapshot> {
+
+    private final int capacity;
+
+    private Segment(int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, BalanceSnapshot> eldest) {
+      return size() > capacity;
+    }
+  }
+}
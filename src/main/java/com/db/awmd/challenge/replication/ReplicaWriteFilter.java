@@ -0,0 +1,50 @@
+package com.db.awmd.challenge.replication;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Sends every API request a replica does not serve itself to the primary with
+ * {@code 307 Temporary Redirect}, which clients follow with the same method and body. A replica
+ * serves account reads, {@code GET /v1/accounts/{accountId}} and {@code GET /v1/accounts?ids=},
+ * and its own metrics.
+ *
+ * @author jeevan
+ */
+@Component
+@ConditionalOnProperty(prefix = "accounts.repository", name = "mode", havingValue = "replica")
+public class ReplicaWriteFilter extends OncePerRequestFilter {
+
+  private static final Pattern SERVED = Pattern.compile("/v1/accounts(/[^/]+)?|/v1/metrics");
+
+  private final String primaryUrl;
+
+  @Autowired
+  public ReplicaWriteFilter(AccountsRepositoryReplica accountsRepository) {
+    this.primaryUrl = accountsRepository.getPrimaryUrl();
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain filterChain) throws ServletException, IOException {
+    final String path = request.getRequestURI().substring(request.getContextPath().length());
+    if (!path.startsWith("/v1/")
+        || "GET".equals(request.getMethod()) && SERVED.matcher(path).matches()) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+    final String query = request.getQueryString();
+    response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
+    response.setHeader(HttpHeaders.LOCATION,
+        primaryUrl + path + (query == null ? "" : "?" + query));
+  }
+}
@@ -1,8 +1,13 @@
 package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.exception.AccountVersionMismatchException;
+import com.db.awmd.challenge.exception.BatchTransferException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
 
 public interface AccountsRepository {
 
@@ -10,6 +15,20 @@ public interface AccountsRepository {
 
   Account getAccount(String accountId);
 
+  /**
+   * Method used to read the balance and version of an account as one consistent pair without
+   * taking any lock, so that readers and writers never wait for each other. Accounts held as
+   * {@link Account} objects publish an immutable {@link BalanceSnapshot} with every change, which
+   * is simply returned.
+   *
+   * @param accountId Account id.
+   * @return Current snapshot, or {@code null} if there is no such account.
+   */
+  default BalanceSnapshot getBalanceSnapshot(String accountId) {
+    final Account account = getAccount(accountId);
+    return account == null ? null : account.getSnapshot();
+  }
+
   void clearAccounts();
 
   /**
@@ -17,7 +36,116 @@ public interface AccountsRepository {
    *
    * @param fromAccount Money being transferred from account.
    * @param toAccount Money being transferred to account.
+   * @param amount Amount in minor units being transferred between accounts, see {@link Money}.
+   */
+  void transferBetweenAccounts(Account fromAccount, Account toAccount, long amount);
+
+  /**
+   * Convenience overload converting the amount into minor units.
+   *
+   * @param fromAccount Money being transferred from account.
+   * @param toAccount Money being transferred to account.
    * @param amount Amount being transferred between accounts.
    */
-  void transferBetweenAccounts(Account fromAccount, Account toAccount, BigDecimal amount);
+  default void transferBetweenAccounts(Account fromAccount, Account toAccount,
+      BigDecimal amount) {
+    transferBetweenAccounts(fromAccount, toAccount, Money.toMinorUnits(amount));
+  }
+
+  /**
+   * Method used to transfer money only if the debited account is still at the version the caller
+   * read, see {@link Account#debit(long, long)}. A stale version fails the transfer instead of
+   * waiting for the account, so callers retry with the version they read next. By default the
+   * transfer is applied to the account objects alone and takes no lock.
+   *
+   * @param fromAccount Money being transferred from account.
+   * @param toAccount Money being transferred to account.
+   * @param amount Amount in minor units being transferred between accounts, see {@link Money}.
+   * @param expectedVersion Version the debited account must be at.
+   * @throws AccountVersionMismatchException if the debited account is at another version.
+   */
+  default void transferIfVersion(Account fromAccount, Account toAccount, long amount,
+      long expectedVersion) {
+    fromAccount.debit(amount, expectedVersion);
+    TransferSupport.creditOrRefund(fromAccount, toAccount, amount);
+  }
+
+  /**
+   * Method used to apply many transfers as one: either all of them are applied or none is. The
+   * transfers are checked in order as if applied one after the other, so a transfer may spend
+   * money an earlier one credited. By default the money leaving every account is first set aside
+   * with {@link #placeHold(Account, long)} and then captured into the credited accounts.
+   *
+   * @param fromAccounts Accounts debited, one per transfer.
+   * @param toAccounts Accounts credited, one per transfer.
+   * @param amounts Amounts in minor units, one per transfer.
+   * @throws BatchTransferException naming the transfer which could not be applied, nothing was
+   * transferred then.
+   */
+  default void transferAll(Account[] fromAccounts, Account[] toAccounts, long[] amounts) {
+    TransferSupport.transferAllHeld(this, fromAccounts, toAccounts, amounts);
+  }
+
+  /**
+   * Method used to set funds of an account aside for an authorization hold, see
+   * {@link Account#hold(long)}. Holds are applied to the account object alone and take no lock.
+   *
+   * @param account Account the funds are held on.
+   * @param amount Amount in minor units to hold.
+   * @throws UnsupportedOperationException if the repository does not keep its state in the
+   * account objects.
+   */
+  default void placeHold(Account account, long amount) {
+    account.hold(amount);
+  }
+
+  /**
+   * Method used to capture a hold: its funds are credited to another account and leave the
+   * reserved funds of the account they were held on.
+   *
+   * @param fromAccount Account the funds are held on.
+   * @param toAccount Account credited.
+   * @param amount Amount in minor units held.
+   */
+  default void captureHold(Account fromAccount, Account toAccount, long amount) {
+    // credited first, an overflowing credit then leaves the hold untouched
+    toAccount.credit(amount);
+    try {
+      fromAccount.settleHold(amount);
+    } catch (IllegalStateException ise) {
+      toAccount.debit(amount);
+      throw ise;
+    }
+  }
+
+  /**
+   * Method used to release a hold, giving its funds back to the balance of the account.
+   *
+   * @param account Account the funds are held on.
+   * @param amount Amount in minor units held.
+   */
+  default void releaseHold(Account account, long amount) {
+    account.releaseHold(amount);
+  }
+
+  /**
+   * Method used to transfer money without waiting for the transfer to be applied. Implementations
+   * which apply transfers on the calling thread simply return a completed future.
+   *
+   * @param fromAccount Money being transferred from account.
+   * @param toAccount Money being transferred to account.
+   * @param amount Amount in minor units being transferred between accounts, see {@link Money}.
+   * @return Future completed once the transfer is applied, or failed with the reason it was not.
+   */
+  default CompletableFuture<Void> transferAsync(Account fromAccount, Account toAccount,
+      long amount) {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    try {
+      transferBetweenAccounts(fromAccount, toAccount, amount);
+      result.complete(null);
+    } catch (RuntimeException re) {
+      result.completeExceptionally(re);
+    }
+    return result;
+  }
 }
@@ -3,18 +3,43 @@ package com.db.awmd.challenge.repository;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
-import java.math.BigDecimal;
+import com.db.awmd.challenge.metrics.TransferMetrics;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
+/**
+ * Default repository keeping accounts in memory and moving money under striped locks.
+ *
+ * <p>Credits to a split account, see {@link HotAccounts}, are applied without taking its stripe,
+ * so transfers into a hot account only serialize on the stripes of the debited accounts.
+ */
 @Repository
-@Slf4j
+@ConditionalOnProperty(prefix = "accounts.repository", name = "mode", havingValue = "locking",
+    matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
   private final Map<String, Account> accounts = new ConcurrentHashMap<>();
 
+  private final LockStripes lockStripes;
+
+  private final HotAccounts hotAccounts;
+
+  public AccountsRepositoryInMemory(int stripes) {
+    this(stripes, new TransferMetrics(), new HotAccounts());
+  }
+
+  @Autowired
+  public AccountsRepositoryInMemory(@Value("${accounts.repository.lock-stripes:1024}") int stripes,
+      TransferMetrics transferMetrics, HotAccounts hotAccounts) {
+    this.lockStripes = new LockStripes(stripes, transferMetrics);
+    this.hotAccounts = hotAccounts;
+    transferMetrics.trackLockStripes(lockStripes);
+  }
+
   @Override
   public void createAccount(Account account) throws DuplicateAccountIdException {
     Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
@@ -22,6 +47,7 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
       throw new DuplicateAccountIdException(
           "Account id " + account.getAccountId() + " already exists!");
     }
+    hotAccounts.onCreate(account);
   }
 
   @Override
@@ -36,13 +62,99 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
 
   @Override
   public void transferBetweenAccounts(final Account fromAccount, final Account toAccount,
-      final BigDecimal amount) throws InsufficientBalanceException {
-    fromAccount.debit(amount);
-    toAccount.credit(amount);
-    accounts.put(fromAccount.getAccountId(), fromAccount);
-    accounts.put(toAccount.getAccountId(), toAccount);
-    log.info("Money has been transferred between accounts.");
-    log.info("Balance in account " + fromAccount.getAccountId() + " is " + fromAccount.getBalance());
-    log.info("Balance in account " + toAccount.getAccountId() + " is " + toAccount.getBalance());
+      final long amount) throws InsufficientBalanceException {
+    transfer(fromAccount, toAccount, amount, Account.ANY_VERSION);
+  }
+
+  /**
+   * Checks the version under the same stripe locks as every other transfer.
+   */
+  @Override
+  public void transferIfVersion(Account fromAccount, Account toAccount, long amount,
+      long expectedVersion) {
+    transfer(fromAccount, toAccount, amount, expectedVersion);
+  }
+
+  /**
+   * Takes the stripes of every account involved, so the batch is checked and applied while no
+   * other transfer can debit them.
+   */
+  @Override
+  public void transferAll(Account[] fromAccounts, Account[] toAccounts, long[] amounts) {
+    final int[] stripes = lockStripes.lockAll(TransferSupport.accountIds(fromAccounts, toAccounts));
+    try {
+      TransferSupport.checkAll(fromAccounts, toAccounts, amounts,
+          Account::getBalanceInMinorUnits);
+      TransferSupport.applyAll(fromAccounts, toAccounts, amounts);
+    } finally {
+      lockStripes.unlockAll(stripes);
+    }
+  }
+
+  /**
+   * Holds are placed under the stripe lock of the account, so that they can not drain it while a
+   * batch holding the lock has checked it.
+   */
+  @Override
+  public void placeHold(Account account, long amount) {
+    final int stripe = lockStripes.stripeFor(account.getAccountId());
+    lockStripes.lock(stripe, stripe);
+    try {
+      account.hold(amount);
+    } finally {
+      lockStripes.unlock(stripe, stripe);
+    }
+  }
+
+  @Override
+  public void captureHold(Account fromAccount, Account toAccount, long amount) {
+    final int fromStripe = lockStripes.stripeFor(fromAccount.getAccountId());
+    final int toStripe = lockStripes.stripeFor(toAccount.getAccountId());
+    lockStripes.lock(fromStripe, toStripe);
+    try {
+      AccountsRepository.super.captureHold(fromAccount, toAccount, amount);
+    } finally {
+      lockStripes.unlock(fromStripe, toStripe);
+    }
+  }
+
+  @Override
+  public void releaseHold(Account account, long amount) {
+    final int stripe = lockStripes.stripeFor(account.getAccountId());
+    lockStripes.lock(stripe, stripe);
+    try {
+      account.releaseHold(amount);
+    } finally {
+      lockStripes.unlock(stripe, stripe);
+    }
+  }
+
+  private void transfer(final Account fromAccount, final Account toAccount, final long amount,
+      final long expectedVersion) {
+    // accounts passed in are the instances held by the map, so updating them under the stripe
+    // locks is enough; both stripes are taken in index order to rule out deadlocks
+    final int fromStripe = lockStripes.stripeFor(fromAccount.getAccountId());
+    final int toStripe = lockStripes.stripeFor(toAccount.getAccountId());
+    if (toAccount.isSplit() && toAccount != fromAccount) {
+      // credits to a split account are lock-free, only the debited side is locked
+      lockStripes.lock(fromStripe, fromStripe);
+      try {
+        fromAccount.debit(amount, expectedVersion);
+        TransferSupport.creditOrRefund(fromAccount, toAccount, amount);
+      } finally {
+        lockStripes.unlock(fromStripe, fromStripe);
+      }
+      return;
+    }
+    if (toStripe != fromStripe && lockStripes.isLocked(toStripe)) {
+      hotAccounts.onContended(toAccount);
+    }
+    lockStripes.lock(fromStripe, toStripe);
+    try {
+      fromAccount.debit(amount, expectedVersion);
+      TransferSupport.creditOrRefund(fromAccount, toAccount, amount);
+    } finally {
+      lockStripes.unlock(fromStripe, toStripe);
+    }
   }
 }
@@ -0,0 +1,296 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.exception.BatchTransferException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Durable repository which keeps accounts in memory and appends every change to a
+ * {@link TransactionJournal}. Enabled with {@code accounts.repository.mode=journaled}.
+ *
+ * <p>Changes are applied and journaled while holding the stripe locks of the touched accounts, so
+ * the journal order of the records of one account is the order in which they were applied.
+ *
+ * <p>{@link #snapshot()} periodically writes an image of all balances to a {@link SnapshotStore}
+ * without stopping transfers. The image is fuzzy: accounts are read one by one while transfers go
+ * on, and it is tagged with the journal position taken before the scan. Every change missing from
+ * the image was journaled after that position with a higher version than the image holds, so
+ * recovery loads the latest image and replays only the journal tail from its position; journal
+ * records already reflected in the image are skipped by their version.
+ *
+ * @author jeevan
+ */
+@Repository
+@ConditionalOnProperty(prefix = "accounts.repository", name = "mode", havingValue = "journaled")
+@Slf4j
+public class AccountsRepositoryJournaled implements AccountsRepository {
+
+  /**
+   * Journal and snapshots record the balance only, reserved funds would not survive a restart.
+   */
+  private static final String HOLDS_UNSUPPORTED =
+      "Authorization holds are not supported by the journaled repository.";
+
+  private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+  private final LockStripes lockStripes;
+
+  private final TransactionJournal journal;
+
+  private final SnapshotStore snapshots;
+
+  private final int snapshotsRetained;
+
+  @Getter
+  private volatile RecoveryStats recoveryStats;
+
+  public AccountsRepositoryJournaled(int stripes, String directory, int segmentSizeMb,
+      int syncEveryRecords, long syncIntervalMicros, String snapshotDirectory,
+      int snapshotsRetained) throws IOException {
+    this(stripes, directory, segmentSizeMb, syncEveryRecords, syncIntervalMicros,
+        snapshotDirectory, snapshotsRetained, new TransferMetrics());
+  }
+
+  @Autowired
+  public AccountsRepositoryJournaled(
+      @Value("${accounts.repository.lock-stripes:1024}") int stripes,
+      @Value("${accounts.journal.directory:data/journal}") String directory,
+      @Value("${accounts.journal.segment-size-mb:64}") int segmentSizeMb,
+      @Value("${accounts.journal.sync-every-records:1024}") int syncEveryRecords,
+      @Value("${accounts.journal.sync-interval-micros:1000}") long syncIntervalMicros,
+      @Value("${accounts.snapshot.directory:data/snapshots}") String snapshotDirectory,
+      @Value("${accounts.snapshot.retain:2}") int snapshotsRetained,
+      TransferMetrics transferMetrics) throws IOException {
+    this.lockStripes = new LockStripes(stripes, transferMetrics);
+    transferMetrics.trackLockStripes(lockStripes);
+    this.journal = new TransactionJournal(new File(directory), segmentSizeMb << 20,
+        syncEveryRecords, syncIntervalMicros);
+    this.snapshots = new SnapshotStore(new File(snapshotDirectory));
+    this.snapshotsRetained = snapshotsRetained;
+  }
+
+  /**
+   * Method used to rebuild the accounts from the latest snapshot and the journal tail.
+   */
+  @PostConstruct
+  public void recover() throws IOException {
+    final long started = System.nanoTime();
+    final long snapshotPosition = snapshots.loadLatest(this::restore);
+    final long snapshotLoaded = System.nanoTime();
+    final long snapshotAccounts = accounts.size();
+    final long records = journal.replay(Math.max(snapshotPosition, 0L),
+        new TransactionJournal.Visitor() {
+          @Override
+          public void onCreate(String accountId, long balance, long version) {
+            restore(accountId, balance, version);
+          }
+
+          @Override
+          public void onTransfer(String fromAccountId, long fromBalance, long fromVersion,
+              String toAccountId, long toBalance, long toVersion, long amount) {
+            restore(fromAccountId, fromBalance, fromVersion);
+            restore(toAccountId, toBalance, toVersion);
+          }
+        });
+    final long finished = System.nanoTime();
+    recoveryStats = new RecoveryStats(snapshotPosition, snapshotAccounts,
+        (snapshotLoaded - started) / 1_000_000, records, (finished - snapshotLoaded) / 1_000_000,
+        (finished - started) / 1_000_000);
+    log.info("Recovered {} accounts: {}", accounts.size(), recoveryStats);
+  }
+
+  /**
+   * Method used to write an image of all balances and drop the journal segments no retained image
+   * needs any more. Transfers carry on while the image is taken.
+   *
+   * @return Journal position the image was tagged with.
+   */
+  public synchronized long snapshot() throws IOException {
+    final long started = System.nanoTime();
+    final long position = journal.position();
+    int count = 0;
+    byte[][] ids = new byte[accounts.size() + 16][];
+    long[] balances = new long[ids.length];
+    long[] versions = new long[ids.length];
+    for (Account account : accounts.values()) {
+      if (count == ids.length) {
+        ids = Arrays.copyOf(ids, count * 2);
+        balances = Arrays.copyOf(balances, count * 2);
+        versions = Arrays.copyOf(versions, count * 2);
+      }
+      // reading under the stripe lock guarantees the state read has already been journaled
+      final int stripe = lockStripes.stripeFor(account.getAccountId());
+      final BalanceSnapshot snapshot;
+      lockStripes.lock(stripe, stripe);
+      try {
+        snapshot = account.getSnapshot();
+      } finally {
+        lockStripes.unlock(stripe, stripe);
+      }
+      ids[count] = account.getAccountId().getBytes(StandardCharsets.UTF_8);
+      balances[count] = snapshot.getBalance();
+      versions[count] = snapshot.getVersion();
+      count++;
+    }
+    // the image must never be durable while changes it reflects are not
+    journal.sync();
+    final long size = snapshots.write(position, count, ids, balances, versions);
+    final int deleted = journal.deleteSegmentsBefore(snapshots.prune(snapshotsRetained));
+    log.info("Wrote snapshot of {} accounts ({} bytes) at journal position {} in {} ms, "
+            + "deleted {} journal segments", count, size, position,
+        (System.nanoTime() - started) / 1_000_000, deleted);
+    return position;
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    journal.close();
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    final int stripe = lockStripes.stripeFor(account.getAccountId());
+    lockStripes.lock(stripe, stripe);
+    try {
+      Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
+      if (previousAccount != null) {
+        throw new DuplicateAccountIdException(
+            "Account id " + account.getAccountId() + " already exists!");
+      }
+      final BalanceSnapshot snapshot = account.getSnapshot();
+      journal.appendCreate(account.getAccountId(), snapshot.getBalance(), snapshot.getVersion());
+    } finally {
+      lockStripes.unlock(stripe, stripe);
+    }
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    return accounts.get(accountId);
+  }
+
+  @Override
+  public void clearAccounts() {
+    accounts.clear();
+    snapshots.clear();
+    try {
+      journal.reset();
+    } catch (IOException ioe) {
+      throw new UncheckedIOException("Could not reset journal", ioe);
+    }
+  }
+
+  @Override
+  public void transferBetweenAccounts(final Account fromAccount, final Account toAccount,
+      final long amount) throws InsufficientBalanceException {
+    transfer(fromAccount, toAccount, amount, Account.ANY_VERSION);
+  }
+
+  /**
+   * Checks the version under the stripe locks, and journals the transfer like any other.
+   */
+  @Override
+  public void transferIfVersion(Account fromAccount, Account toAccount, long amount,
+      long expectedVersion) {
+    transfer(fromAccount, toAccount, amount, expectedVersion);
+  }
+
+  /**
+   * Takes the stripes of every account involved, checks the batch and journals its transfers one
+   * by one. Should the journal fail part way, the transfers already journaled are journaled back
+   * in reverse order.
+   */
+  @Override
+  public void transferAll(Account[] fromAccounts, Account[] toAccounts, long[] amounts) {
+    final int[] stripes = lockStripes.lockAll(
+        TransferSupport.accountIds(fromAccounts, toAccounts));
+    try {
+      TransferSupport.checkAll(fromAccounts, toAccounts, amounts,
+          Account::getBalanceInMinorUnits);
+      for (int i = 0; i < amounts.length; i++) {
+        try {
+          transfer(fromAccounts[i], toAccounts[i], amounts[i], Account.ANY_VERSION);
+        } catch (RuntimeException re) {
+          for (int applied = i - 1; applied >= 0; applied--) {
+            try {
+              transfer(toAccounts[applied], fromAccounts[applied], amounts[applied],
+                  Account.ANY_VERSION);
+            } catch (RuntimeException undo) {
+              log.error("Could not transfer {} back from {} to {}: {}", amounts[applied],
+                  toAccounts[applied].getAccountId(), fromAccounts[applied].getAccountId(),
+                  undo.getMessage());
+            }
+          }
+          throw new BatchTransferException(i, re.getMessage());
+        }
+      }
+    } finally {
+      lockStripes.unlockAll(stripes);
+    }
+  }
+
+  private void transfer(final Account fromAccount, final Account toAccount, final long amount,
+      final long expectedVersion) {
+    final int fromStripe = lockStripes.stripeFor(fromAccount.getAccountId());
+    final int toStripe = lockStripes.stripeFor(toAccount.getAccountId());
+    lockStripes.lock(fromStripe, toStripe);
+    try {
+      fromAccount.debit(amount, expectedVersion);
+      TransferSupport.creditOrRefund(fromAccount, toAccount, amount);
+      final BalanceSnapshot from = fromAccount.getSnapshot();
+      final BalanceSnapshot to = toAccount.getSnapshot();
+      try {
+        journal.appendTransfer(fromAccount.getAccountId(), from.getBalance(), from.getVersion(),
+            toAccount.getAccountId(), to.getBalance(), to.getVersion(), amount);
+      } catch (RuntimeException re) {
+        // not journaled means not durable, undo it while still holding the locks
+        toAccount.debit(amount);
+        fromAccount.credit(amount);
+        throw re;
+      }
+    } finally {
+      lockStripes.unlock(fromStripe, toStripe);
+    }
+  }
+
+  @Override
+  public void placeHold(Account account, long amount) {
+    throw new UnsupportedOperationException(HOLDS_UNSUPPORTED);
+  }
+
+  @Override
+  public void captureHold(Account fromAccount, Account toAccount, long amount) {
+    throw new UnsupportedOperationException(HOLDS_UNSUPPORTED);
+  }
+
+  @Override
+  public void releaseHold(Account account, long amount) {
+    throw new UnsupportedOperationException(HOLDS_UNSUPPORTED);
+  }
+
+  private void restore(String accountId, long balance, long version) {
+    final BalanceSnapshot snapshot = new BalanceSnapshot(balance, version);
+    final Account account = accounts.putIfAbsent(accountId, new Account(accountId, snapshot));
+    if (account != null) {
+      account.applyIfNewer(snapshot);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository which moves money without taking any lock. Enabled with
+ * {@code accounts.repository.mode=lock-free} so it can be benchmarked against the striped locking
+ * implementation.
+ *
+ * <p>A transfer commits in two compare-and-set steps, one per account, and not both accounts
+ * together. The debit is the only step that can fail, so it is applied first and is the point at
+ * which the transfer takes effect; the credit can not fail and simply retries until its
+ * compare-and-set wins.
+ *
+ * <p>This is a deliberate deviation from an atomic transfer: between the two steps the debit is
+ * visible and the credit is not yet, so a reader adding up both accounts finds the total short by
+ * the money in flight. The money is never lost or created, the balances add up again as soon as
+ * no transfer is in flight. Committing both accounts with one descriptor would
+ * close that window, at the price of every reader and writer meeting an in-flight descriptor
+ * having to complete it first.
+ *
+ * <p>Accounts designated as hot, see {@link HotAccounts}, are split on creation so that their
+ * credits no longer retry against each other. Contention is not tallied here, so accounts are not
+ * split automatically.
+ *
+ * @author jeevan
+ */
+@Repository
+@ConditionalOnProperty(prefix = "accounts.repository", name = "mode", havingValue = "lock-free")
+public class AccountsRepositoryLockFree implements AccountsRepository {
+
+  private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+  private final HotAccounts hotAccounts;
+
+  public AccountsRepositoryLockFree() {
+    this(new HotAccounts());
+  }
+
+  @Autowired
+  public AccountsRepositoryLockFree(HotAccounts hotAccounts) {
+    this.hotAccounts = hotAccounts;
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
+    if (previousAccount != null) {
+      throw new DuplicateAccountIdException(
+          "Account id " + account.getAccountId() + " already exists!");
+    }
+    hotAccounts.onCreate(account);
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    return accounts.get(accountId);
+  }
+
+  @Override
+  public void clearAccounts() {
+    accounts.clear();
+  }
+
+  @Override
+  public void transferBetweenAccounts(final Account fromAccount, final Account toAccount,
+      final long amount) throws InsufficientBalanceException {
+    fromAccount.debit(amount);
+    TransferSupport.creditOrRefund(fromAccount, toAccount, amount);
+  }
+}
@@ -0,0 +1,220 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.AccountVersionMismatchException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import java.util.concurrent.locks.StampedLock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository keeping balances outside the Java heap in an {@link OffHeapAccountIndex}, for very
+ * large numbers of accounts. Enabled with {@code accounts.repository.mode=off-heap}.
+ *
+ * <p>An account costs 32 bytes of slot, its id bytes and about ten bytes of index, none of it
+ * visible to the garbage collector. {@link #getAccount(String)} materializes a detached
+ * {@link Account} holding a snapshot of the balance on every call; changing that object does not
+ * change the stored account. Transfers locate the slots by account id and update them under the
+ * stripe locks of both accounts.
+ *
+ * <p>Reads take no lock. Every stripe also has a {@link StampedLock} used as a sequence lock:
+ * transfers hold its write mode, which no other writer contends for under the stripe lock, while
+ * they update the slots, and readers copy the balance and version optimistically and retry if the
+ * stamp changed meanwhile. Readers thus never delay a transfer and a transfer never blocks a
+ * reader, it only makes a reader overlapping its update retry.
+ *
+ * <p>Slots have no room for reserved funds, so authorization holds are refused.
+ *
+ * @author jeevan
+ */
+@Repository
+@ConditionalOnProperty(prefix = "accounts.repository", name = "mode", havingValue = "off-heap")
+public class AccountsRepositoryOffHeap implements AccountsRepository {
+
+  private static final String HOLDS_UNSUPPORTED =
+      "Authorization holds are not supported by the off-heap repository.";
+
+  private final OffHeapAccountIndex index;
+
+  private final LockStripes lockStripes;
+
+  private final StampedLock[] seqLocks;
+
+  public AccountsRepositoryOffHeap(int stripes, int initialCapacity) {
+    this(stripes, initialCapacity, new TransferMetrics());
+  }
+
+  @Autowired
+  public AccountsRepositoryOffHeap(@Value("${accounts.repository.lock-stripes:1024}") int stripes,
+      @Value("${accounts.off-heap.initial-capacity:1048576}") int initialCapacity,
+      TransferMetrics transferMetrics) {
+    this.index = new OffHeapAccountIndex(initialCapacity);
+    this.lockStripes = new LockStripes(stripes, transferMetrics);
+    transferMetrics.trackLockStripes(lockStripes);
+    this.seqLocks = new StampedLock[lockStripes.size()];
+    for (int i = 0; i < seqLocks.length; i++) {
+      seqLocks[i] = new StampedLock();
+    }
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    final BalanceSnapshot snapshot = account.getSnapshot();
+    if (index.insert(account.getAccountId(), snapshot.getBalance(), snapshot.getVersion()) < 0) {
+      throw new DuplicateAccountIdException(
+          "Account id " + account.getAccountId() + " already exists!");
+    }
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    final BalanceSnapshot snapshot = getBalanceSnapshot(accountId);
+    return snapshot == null ? null : new Account(accountId, snapshot);
+  }
+
+  @Override
+  public BalanceSnapshot getBalanceSnapshot(String accountId) {
+    final int slot = index.find(accountId);
+    if (slot < 0) {
+      return null;
+    }
+    final StampedLock seqLock = seqLocks[lockStripes.stripeFor(accountId)];
+    int attempts = 0;
+    while (true) {
+      final long stamp = seqLock.tryOptimisticRead();
+      if (stamp != 0L) {
+        final long balance = index.balance(slot);
+        final long version = index.version(slot);
+        if (seqLock.validate(stamp)) {
+          return new BalanceSnapshot(balance, version);
+        }
+      }
+      if (++attempts % 64 == 0) {
+        Thread.yield();
+      }
+    }
+  }
+
+  @Override
+  public void clearAccounts() {
+    index.clear();
+  }
+
+  @Override
+  public void transferBetweenAccounts(final Account fromAccount, final Account toAccount,
+      final long amount) throws InsufficientBalanceException {
+    transfer(fromAccount, toAccount, amount, Account.ANY_VERSION);
+  }
+
+  /**
+   * Checks the version of the slot under the same locks as the update. The account objects handed
+   * out by {@link #getAccount(String)} are copies, so the default check on them would not do.
+   */
+  @Override
+  public void transferIfVersion(Account fromAccount, Account toAccount, long amount,
+      long expectedVersion) {
+    transfer(fromAccount, toAccount, amount, expectedVersion);
+  }
+
+  /**
+   * Takes the stripes of every account involved and checks the batch against the slots, after
+   * which none of its transfers can fail.
+   */
+  @Override
+  public void transferAll(Account[] fromAccounts, Account[] toAccounts, long[] amounts) {
+    final int[] stripes = lockStripes.lockAll(
+        TransferSupport.accountIds(fromAccounts, toAccounts));
+    try {
+      TransferSupport.checkAll(fromAccounts, toAccounts, amounts,
+          account -> index.balance(slotOf(account.getAccountId())));
+      for (int i = 0; i < amounts.length; i++) {
+        transfer(fromAccounts[i], toAccounts[i], amounts[i], Account.ANY_VERSION);
+      }
+    } finally {
+      lockStripes.unlockAll(stripes);
+    }
+  }
+
+  private void transfer(final Account fromAccount, final Account toAccount, final long amount,
+      final long expectedVersion) {
+    final int fromSlot = slotOf(fromAccount.getAccountId());
+    final int toSlot = slotOf(toAccount.getAccountId());
+    final int fromStripe = lockStripes.stripeFor(fromAccount.getAccountId());
+    final int toStripe = lockStripes.stripeFor(toAccount.getAccountId());
+    lockStripes.lock(fromStripe, toStripe);
+    final long fromStamp = seqLocks[fromStripe].writeLock();
+    final long toStamp = toStripe == fromStripe ? 0L : seqLocks[toStripe].writeLock();
+    try {
+      if (expectedVersion != Account.ANY_VERSION
+          && index.version(fromSlot) != expectedVersion) {
+        throw new AccountVersionMismatchException("Account " + fromAccount.getAccountId()
+            + " is at version " + index.version(fromSlot) + ", not " + expectedVersion + ".");
+      }
+      final long fromBalance = index.balance(fromSlot);
+      if (fromBalance < amount) {
+        throw new InsufficientBalanceException(
+            "Account " + fromAccount.getAccountId() + " does not have sufficient amount to "
+                + "debit from.");
+      }
+      if (fromSlot == toSlot) {
+        // a debit followed by a credit of the same account
+        index.update(fromSlot, fromBalance, index.version(fromSlot) + 2);
+        return;
+      }
+      // both new balances are computed before anything is written, an overflow changes nothing
+      final long toBalance = Money.add(index.balance(toSlot), amount);
+      index.update(fromSlot, Money.subtract(fromBalance, amount), index.version(fromSlot) + 1);
+      index.update(toSlot, toBalance, index.version(toSlot) + 1);
+    } finally {
+      if (toStripe != fromStripe) {
+        seqLocks[toStripe].unlockWrite(toStamp);
+      }
+      seqLocks[fromStripe].unlockWrite(fromStamp);
+      lockStripes.unlock(fromStripe, toStripe);
+    }
+  }
+
+  /**
+   * Number of accounts.
+   */
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * Bytes held outside the Java heap.
+   */
+  public long getOffHeapBytes() {
+    return index.offHeapBytes();
+  }
+
+  @Override
+  public void placeHold(Account account, long amount) {
+    throw new UnsupportedOperationException(HOLDS_UNSUPPORTED);
+  }
+
+  @Override
+  public void captureHold(Account fromAccount, Account toAccount, long amount) {
+    throw new UnsupportedOperationException(HOLDS_UNSUPPORTED);
+  }
+
+  @Override
+  public void releaseHold(Account account, long amount) {
+    throw new UnsupportedOperationException(HOLDS_UNSUPPORTED);
+  }
+
+  private int slotOf(String accountId) {
+    final int slot = index.find(accountId);
+    if (slot < 0) {
+      throw new AccountNotFoundException("Account with id " + accountId + " not found.");
+    }
+    return slot;
+  }
+}
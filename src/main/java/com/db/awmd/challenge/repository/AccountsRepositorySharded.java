@@ -0,0 +1,386 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Single-writer repository. Enabled with {@code accounts.repository.mode=sharded}.
+ *
+ * <p>Accounts are hash-partitioned over shards and the balance of an account is only ever changed
+ * by the thread owning its shard, so balances never bounce between the caches of cores. Callers
+ * hand transfers to the owner through the owner's lock-free inbound {@link MpscRing} and get a
+ * future back. Lookups read the accounts directly.
+ *
+ * <p>A transfer between accounts of the same shard is applied by its owner in one step. A transfer
+ * crossing shards is a message protocol: the owner of the debited account reserves the amount by
+ * debiting it and sends a credit to the owner of the other account, which commits the transfer, or,
+ * should the credit overflow, sends the amount back. Between the two steps the money is in flight,
+ * as with {@link AccountsRepositoryLockFree}, but it is never lost or created.
+ *
+ * <p>Authorization holds go through the owners as well. Placing and releasing a hold is applied by
+ * the owner of the account. Capturing one is the same protocol as a transfer run the other way:
+ * the owner of the credited account credits it first, so that an overflowing credit leaves the
+ * hold untouched, and the owner of the held account then settles the hold.
+ *
+ * <p>Futures are completed on the owner threads, so callbacks chained to them without an executor
+ * must be short.
+ *
+ * @author jeevan
+ */
+@Repository
+@ConditionalOnProperty(prefix = "accounts.repository", name = "mode", havingValue = "sharded")
+@Slf4j
+public class AccountsRepositorySharded implements AccountsRepository {
+
+  private static final int SPINS_BEFORE_PARKING = 200;
+
+  private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+  private final Shard[] shards;
+
+  private volatile boolean running = true;
+
+  @Autowired
+  public AccountsRepositorySharded(@Value("${accounts.sharded.shards:0}") int shards,
+      @Value("${accounts.sharded.ring-size:65536}") int ringSize) {
+    final int count = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+    this.shards = new Shard[count];
+    for (int i = 0; i < count; i++) {
+      this.shards[i] = new Shard(i, ringSize);
+    }
+    for (Shard shard : this.shards) {
+      shard.owner.start();
+    }
+  }
+
+  /**
+   * Stops the shard owners once they have processed every message already posted.
+   */
+  @PreDestroy
+  public void close() throws InterruptedException {
+    running = false;
+    for (Shard shard : shards) {
+      LockSupport.unpark(shard.owner);
+    }
+    for (Shard shard : shards) {
+      shard.owner.join();
+    }
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
+    if (previousAccount != null) {
+      throw new DuplicateAccountIdException(
+          "Account id " + account.getAccountId() + " already exists!");
+    }
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    return accounts.get(accountId);
+  }
+
+  @Override
+  public void clearAccounts() {
+    accounts.clear();
+  }
+
+  @Override
+  public void transferBetweenAccounts(final Account fromAccount, final Account toAccount,
+      final long amount) throws InsufficientBalanceException {
+    await(transferAsync(fromAccount, toAccount, amount));
+  }
+
+  @Override
+  public CompletableFuture<Void> transferAsync(final Account fromAccount,
+      final Account toAccount, final long amount) {
+    return post(Message.TRANSFER, fromAccount, toAccount, amount, fromAccount);
+  }
+
+  /**
+   * Method used to transfer money only if the debited account is still at the version the caller
+   * read. The version is checked by the owner of the debited account, in the same step as the
+   * debit, and the transfer then proceeds like any other.
+   */
+  @Override
+  public void transferIfVersion(Account fromAccount, Account toAccount, long amount,
+      long expectedVersion) {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    shardFor(fromAccount).post(new Message(Message.TRANSFER, fromAccount, toAccount, amount,
+        expectedVersion, result), null);
+    await(result);
+  }
+
+  @Override
+  public void placeHold(Account account, long amount) {
+    await(post(Message.HOLD, account, null, amount, account));
+  }
+
+  @Override
+  public void captureHold(Account fromAccount, Account toAccount, long amount) {
+    await(post(Message.CAPTURE, fromAccount, toAccount, amount, toAccount));
+  }
+
+  @Override
+  public void releaseHold(Account account, long amount) {
+    await(post(Message.RELEASE, account, null, amount, account));
+  }
+
+  /**
+   * Number of shards, each owned by one thread.
+   */
+  public int getShards() {
+    return shards.length;
+  }
+
+  /**
+   * Method used to hand a message to the owner of an account from any thread but an owner.
+   *
+   * @param owned Account whose owner handles the message first.
+   * @return Future of the message.
+   */
+  private CompletableFuture<Void> post(int type, Account fromAccount, Account toAccount,
+      long amount, Account owned) {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    shardFor(owned).post(new Message(type, fromAccount, toAccount, amount, result), null);
+    return result;
+  }
+
+  private static void await(CompletableFuture<Void> result) {
+    try {
+      result.join();
+    } catch (CompletionException ce) {
+      if (ce.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ce.getCause();
+      }
+      throw ce;
+    }
+  }
+
+  private Shard shardFor(Account account) {
+    int h = account.getAccountId().hashCode();
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return shards[(h & 0x7fffffff) % shards.length];
+  }
+
+  private static final class Message {
+
+    private static final int TRANSFER = 0;
+    private static final int CREDIT = 1;
+    private static final int REFUND = 2;
+    private static final int HOLD = 3;
+    private static final int RELEASE = 4;
+    private static final int CAPTURE = 5;
+    private static final int SETTLE = 6;
+    private static final int UNCREDIT = 7;
+
+    private final int type;
+    private final Account fromAccount;
+    private final Account toAccount;
+    private final long amount;
+    private final long expectedVersion;
+    private final CompletableFuture<Void> result;
+    private RuntimeException error;
+
+    private Message(int type, Account fromAccount, Account toAccount, long amount,
+        CompletableFuture<Void> result) {
+      this(type, fromAccount, toAccount, amount, Account.ANY_VERSION, result);
+    }
+
+    private Message(int type, Account fromAccount, Account toAccount, long amount,
+        long expectedVersion, CompletableFuture<Void> result) {
+      this.type = type;
+      this.fromAccount = fromAccount;
+      this.toAccount = toAccount;
+      this.amount = amount;
+      this.expectedVersion = expectedVersion;
+      this.result = result;
+    }
+
+    private Message next(int type) {
+      return new Message(type, fromAccount, toAccount, amount, expectedVersion, result);
+    }
+  }
+
+  private final class Shard {
+
+    private final MpscRing<Message> inbound;
+
+    private final Thread owner;
+
+    /**
+     * Messages to other shards whose rings were full, only touched by the owner. The owner never
+     * waits for room in another ring, since two owners waiting on each other would deadlock.
+     */
+    private final ArrayDeque<Message> deferred = new ArrayDeque<>();
+
+    private final ArrayDeque<Shard> deferredTargets = new ArrayDeque<>();
+
+    private volatile boolean sleeping;
+
+    private Shard(int index, int ringSize) {
+      this.inbound = new MpscRing<>(ringSize);
+      this.owner = new Thread(this::run, "accounts-shard-" + index);
+      this.owner.setDaemon(true);
+    }
+
+    /**
+     * Method used to hand a message to the owner of this shard.
+     *
+     * @param sender Shard of the calling owner thread, {@code null} for any other thread.
+     */
+    private void post(Message message, Shard sender) {
+      if (!inbound.offer(message)) {
+        if (sender != null) {
+          sender.deferred.add(message);
+          sender.deferredTargets.add(this);
+          return;
+        }
+        while (!inbound.offer(message)) {
+          if (!running) {
+            message.result.completeExceptionally(
+                new IllegalStateException("Repository is shut down."));
+            return;
+          }
+          LockSupport.parkNanos(1_000L);
+        }
+      }
+      if (sleeping) {
+        LockSupport.unpark(owner);
+      }
+    }
+
+    private void run() {
+      int idle = 0;
+      while (true) {
+        if (!deferred.isEmpty()) {
+          retryDeferred();
+        }
+        final Message message = inbound.poll();
+        if (message != null) {
+          handle(message);
+          idle = 0;
+          continue;
+        }
+        if (!running && deferred.isEmpty()) {
+          return;
+        }
+        if (++idle < SPINS_BEFORE_PARKING || !deferred.isEmpty()) {
+          Thread.yield();
+          continue;
+        }
+        sleeping = true;
+        if (inbound.isEmpty() && running) {
+          LockSupport.park(this);
+        }
+        sleeping = false;
+      }
+    }
+
+    private void handle(Message message) {
+      try {
+        switch (message.type) {
+          case Message.TRANSFER:
+            // the debit reserves the amount and is the only step which can be refused
+            message.fromAccount.debit(message.amount, message.expectedVersion);
+            final Shard toShard = shardFor(message.toAccount);
+            if (toShard == this) {
+              TransferSupport.creditOrRefund(message.fromAccount, message.toAccount,
+                  message.amount);
+              message.result.complete(null);
+            } else {
+              toShard.post(message.next(Message.CREDIT), this);
+            }
+            break;
+          case Message.CREDIT:
+            try {
+              message.toAccount.credit(message.amount);
+              message.result.complete(null);
+            } catch (ArithmeticException ae) {
+              final Message refund = message.next(Message.REFUND);
+              refund.error = ae;
+              shardFor(message.fromAccount).post(refund, this);
+            }
+            break;
+          case Message.REFUND:
+            message.fromAccount.credit(message.amount);
+            message.result.completeExceptionally(message.error);
+            break;
+          case Message.HOLD:
+            message.fromAccount.hold(message.amount);
+            message.result.complete(null);
+            break;
+          case Message.RELEASE:
+            message.fromAccount.releaseHold(message.amount);
+            message.result.complete(null);
+            break;
+          case Message.CAPTURE:
+            // credited first, an overflowing credit then leaves the hold untouched
+            message.toAccount.credit(message.amount);
+            final Shard heldShard = shardFor(message.fromAccount);
+            if (heldShard == this) {
+              settle(message);
+            } else {
+              heldShard.post(message.next(Message.SETTLE), this);
+            }
+            break;
+          case Message.SETTLE:
+            settle(message);
+            break;
+          case Message.UNCREDIT:
+            message.toAccount.debit(message.amount);
+            message.result.completeExceptionally(message.error);
+            break;
+          default:
+            throw new IllegalStateException("Unknown message type " + message.type);
+        }
+      } catch (RuntimeException re) {
+        message.result.completeExceptionally(re);
+      }
+    }
+
+    /**
+     * Method used to take the funds of a captured hold out of the held account, once the other
+     * account has been credited. Should the hold not cover them, the credit is taken back.
+     */
+    private void settle(Message message) {
+      try {
+        message.fromAccount.settleHold(message.amount);
+        message.result.complete(null);
+      } catch (IllegalStateException ise) {
+        final Shard creditedShard = shardFor(message.toAccount);
+        if (creditedShard == this) {
+          message.toAccount.debit(message.amount);
+          throw ise;
+        }
+        final Message uncredit = message.next(Message.UNCREDIT);
+        uncredit.error = ise;
+        creditedShard.post(uncredit, this);
+      }
+    }
+
+    private void retryDeferred() {
+      for (int i = deferred.size(); i > 0; i--) {
+        final Message message = deferred.poll();
+        final Shard target = deferredTargets.poll();
+        target.post(message, this);
+      }
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Background task taking a snapshot of the journaled repository at a fixed interval, which keeps
+ * the journal tail replayed on startup short.
+ *
+ * @author jeevan
+ */
+@Component
+@ConditionalOnProperty(prefix = "accounts.repository", name = "mode", havingValue = "journaled")
+@Slf4j
+public class BalanceSnapshotter {
+
+  private final AccountsRepositoryJournaled accountsRepository;
+
+  private final long intervalSeconds;
+
+  private ScheduledExecutorService executor;
+
+  @Autowired
+  public BalanceSnapshotter(AccountsRepositoryJournaled accountsRepository,
+      @Value("${accounts.snapshot.interval-seconds:300}") long intervalSeconds) {
+    this.accountsRepository = accountsRepository;
+    this.intervalSeconds = intervalSeconds;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (intervalSeconds <= 0) {
+      return;
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "balance-snapshotter");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(this::snapshot, intervalSeconds, intervalSeconds,
+        TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  private void snapshot() {
+    try {
+      accountsRepository.snapshot();
+    } catch (IOException | RuntimeException ex) {
+      log.error("Could not write balance snapshot", ex);
+    }
+  }
+}
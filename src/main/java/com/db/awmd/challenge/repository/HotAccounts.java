@@ -0,0 +1,164 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides which accounts are {@link Account#split(int) split} to take contention off their
+ * balance: the accounts designated in {@code accounts.hot-accounts.ids} as soon as they are
+ * created, and, when {@code accounts.hot-accounts.auto-split-threshold} is positive, every account
+ * found contended at least that many times within one detection interval.
+ *
+ * <p>Repositories report a credit as contended when the stripe of the credited account is held by
+ * another transfer on arrival. Only contended credits are tallied, in a map bounded to
+ * {@value #MAX_TRACKED} accounts and cleared every interval, so uncontended traffic costs
+ * nothing.
+ *
+ * @author jeevan
+ */
+@Component
+@Slf4j
+public class HotAccounts {
+
+  private static final int MAX_TRACKED = 10_000;
+
+  private final Set<String> designated;
+
+  private final int ways;
+
+  private final long autoSplitThreshold;
+
+  private final long intervalSeconds;
+
+  private final Map<String, Tally> tallies = new ConcurrentHashMap<>();
+
+  private final AtomicInteger autoSplit = new AtomicInteger();
+
+  private ScheduledExecutorService executor;
+
+  /**
+   * Creates a policy which never splits anything.
+   */
+  public HotAccounts() {
+    this(Collections.emptySet(), 16, 0L, 0L);
+  }
+
+  public HotAccounts(Set<String> designated, int ways, long autoSplitThreshold,
+      long intervalSeconds) {
+    this.designated = designated;
+    this.ways = ways;
+    this.autoSplitThreshold = autoSplitThreshold;
+    this.intervalSeconds = intervalSeconds;
+  }
+
+  @Autowired
+  public HotAccounts(@Value("${accounts.hot-accounts.ids:}") String[] designated,
+      @Value("${accounts.hot-accounts.ways:16}") int ways,
+      @Value("${accounts.hot-accounts.auto-split-threshold:0}") long autoSplitThreshold,
+      @Value("${accounts.hot-accounts.detection-interval-seconds:10}") long intervalSeconds) {
+    this(new HashSet<>(Arrays.asList(designated)), ways, autoSplitThreshold, intervalSeconds);
+  }
+
+  @PostConstruct
+  public void start() {
+    if (autoSplitThreshold <= 0 || intervalSeconds <= 0) {
+      return;
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "hot-account-detector");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(this::detect, intervalSeconds, intervalSeconds,
+        TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Method used to split a new account if it is designated as hot.
+   */
+  public void onCreate(Account account) {
+    if (designated.contains(account.getAccountId())) {
+      account.split(ways);
+    }
+  }
+
+  /**
+   * Method used to report a credit which found the stripe of its account held.
+   */
+  public void onContended(Account account) {
+    if (autoSplitThreshold <= 0 || account.isSplit()) {
+      return;
+    }
+    Tally tally = tallies.get(account.getAccountId());
+    if (tally == null) {
+      if (tallies.size() >= MAX_TRACKED) {
+        return;
+      }
+      tally = tallies.computeIfAbsent(account.getAccountId(), id -> new Tally(account));
+    }
+    tally.contended.increment();
+  }
+
+  /**
+   * Method used to split the accounts contended often enough since the previous call and to start
+   * a new interval.
+   *
+   * @return Number of accounts split.
+   */
+  public int detect() {
+    int split = 0;
+    for (Map.Entry<String, Tally> entry : tallies.entrySet()) {
+      final Tally tally = entry.getValue();
+      final long contended = tally.contended.sum();
+      if (contended >= autoSplitThreshold && !tally.account.isSplit()) {
+        tally.account.split(ways);
+        split++;
+        log.info("Split hot account {} into {} sub-balances after {} contended credits",
+            entry.getKey(), ways, contended);
+      }
+    }
+    tallies.clear();
+    autoSplit.addAndGet(split);
+    return split;
+  }
+
+  /**
+   * Number of accounts split automatically so far.
+   */
+  public int getAutoSplit() {
+    return autoSplit.get();
+  }
+
+  private static final class Tally {
+
+    private final Account account;
+    private final LongAdder contended = new LongAdder();
+
+    private Tally(Account account) {
+      this.account = account;
+    }
+  }
+}
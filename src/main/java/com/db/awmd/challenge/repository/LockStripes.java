@@ -0,0 +1,162 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed-size table of locks keyed by account id hash. Operations touching two accounts acquire
+ * both stripes in ascending index order, so opposing transfers (A to B and B to A) can never
+ * deadlock, while transfers on unrelated accounts usually land on different stripes and run in
+ * parallel.
+ *
+ * <p>Each acquisition first tries the lock without waiting. Only when a stripe is held by another
+ * thread is the stripe's contention counter incremented and the wait timed, so the uncontended
+ * path records a zero lock wait without reading the clock.
+ *
+ * @author jeevan
+ */
+public class LockStripes {
+
+  private final ReentrantLock[] locks;
+  private final int mask;
+  private final AtomicLongArray contended;
+  private final TransferMetrics metrics;
+
+  /**
+   * Creates the stripe table.
+   *
+   * @param stripes Requested number of stripes, rounded up to the next power of two.
+   */
+  public LockStripes(int stripes) {
+    this(stripes, new TransferMetrics());
+  }
+
+  /**
+   * Creates the stripe table.
+   *
+   * @param stripes Requested number of stripes, rounded up to the next power of two.
+   * @param metrics Receives the lock wait of every acquisition.
+   */
+  public LockStripes(int stripes, TransferMetrics metrics) {
+    if (stripes < 1) {
+      throw new IllegalArgumentException("Number of lock stripes must be positive.");
+    }
+    final int size = Integer.highestOneBit(stripes - 1) << 1;
+    this.locks = new ReentrantLock[Math.max(size, 1)];
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new ReentrantLock();
+    }
+    this.mask = locks.length - 1;
+    this.contended = new AtomicLongArray(locks.length);
+    this.metrics = metrics;
+  }
+
+  public int size() {
+    return locks.length;
+  }
+
+  /**
+   * Number of acquisitions of the stripe which found it held by another thread.
+   */
+  public long getContended(int stripe) {
+    return contended.get(stripe);
+  }
+
+  /**
+   * Whether the stripe is currently held, a racy hint meant for contention heuristics only.
+   */
+  public boolean isLocked(int stripe) {
+    return locks[stripe].isLocked();
+  }
+
+  /**
+   * Method used to map an account id to its stripe index.
+   *
+   * @param accountId Account id.
+   * @return Index of the stripe guarding the account.
+   */
+  public int stripeFor(String accountId) {
+    int h = accountId.hashCode();
+    // spread higher bits downwards, account ids often differ only in their last characters
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return h & mask;
+  }
+
+  /**
+   * Method used to acquire two stripes in a consistent order. Acquiring the same stripe twice is
+   * allowed and takes the lock only once.
+   *
+   * @param first One of the stripes to lock.
+   * @param second The other stripe to lock.
+   */
+  public void lock(int first, int second) {
+    long waited;
+    if (first == second) {
+      waited = acquire(first);
+    } else if (first < second) {
+      waited = acquire(first);
+      waited += acquire(second);
+    } else {
+      waited = acquire(second);
+      waited += acquire(first);
+    }
+    metrics.recordLockWait(waited);
+  }
+
+  /**
+   * Method used to release stripes acquired by {@link #lock(int, int)}.
+   *
+   * @param first One of the stripes to unlock.
+   * @param second The other stripe to unlock.
+   */
+  public void unlock(int first, int second) {
+    locks[first].unlock();
+    if (first != second) {
+      locks[second].unlock();
+    }
+  }
+
+  /**
+   * Method used to acquire the stripes of many accounts, in ascending order like
+   * {@link #lock(int, int)}. Every stripe is taken once however many of the accounts it guards.
+   *
+   * @param accountIds Ids of the accounts to lock.
+   * @return Stripes acquired, to be passed to {@link #unlockAll(int[])}.
+   */
+  public int[] lockAll(Collection<String> accountIds) {
+    final int[] stripes = accountIds.stream().mapToInt(this::stripeFor).sorted().distinct()
+        .toArray();
+    long waited = 0;
+    for (int stripe : stripes) {
+      waited += acquire(stripe);
+    }
+    metrics.recordLockWait(waited);
+    return stripes;
+  }
+
+  /**
+   * Method used to release stripes acquired by {@link #lockAll(Collection)}.
+   *
+   * @param stripes Stripes to unlock.
+   */
+  public void unlockAll(int[] stripes) {
+    for (int stripe : stripes) {
+      locks[stripe].unlock();
+    }
+  }
+
+  private long acquire(int stripe) {
+    final ReentrantLock lock = locks[stripe];
+    if (lock.tryLock()) {
+      return 0L;
+    }
+    contended.incrementAndGet(stripe);
+    final long started = System.nanoTime();
+    lock.lock();
+    return System.nanoTime() - started;
+  }
+}
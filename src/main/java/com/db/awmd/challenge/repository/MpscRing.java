@@ -0,0 +1,78 @@
+package com.db.awmd.challenge.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free ring buffer for many producers and a single consumer.
+ *
+ * <p>Producers claim a slot by advancing the tail with a compare-and-set and then publish the
+ * element into it; an empty slot is {@code null}. The consumer owns the head, so polling needs no
+ * atomic read-modify-write at all.
+ *
+ * @param <E> Type of the elements.
+ * @author jeevan
+ */
+final class MpscRing<E> {
+
+  private final AtomicReferenceArray<E> slots;
+
+  private final int mask;
+
+  private final AtomicLong tail = new AtomicLong();
+
+  private volatile long head;
+
+  MpscRing(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Ring capacity must be positive.");
+    }
+    final int size = Math.max(Integer.highestOneBit(capacity - 1) << 1, 1);
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /**
+   * Method used to add an element, called by any thread.
+   *
+   * @return {@code false} if the ring is full.
+   */
+  boolean offer(E element) {
+    long claimed;
+    do {
+      claimed = tail.get();
+      if (claimed - head >= slots.length()) {
+        return false;
+      }
+    } while (!tail.compareAndSet(claimed, claimed + 1));
+    // a volatile write, so that a consumer going to sleep either sees the element or is seen
+    // sleeping by the producer afterwards
+    slots.set((int) claimed & mask, element);
+    return true;
+  }
+
+  /**
+   * Method used to take the oldest element, called by the consumer thread only.
+   *
+   * @return The element, or {@code null} if the ring is empty or the next element is not
+   * published yet.
+   */
+  E poll() {
+    final long current = head;
+    final int index = (int) current & mask;
+    final E element = slots.get(index);
+    if (element == null) {
+      return null;
+    }
+    slots.lazySet(index, null);
+    head = current + 1;
+    return element;
+  }
+
+  /**
+   * Whether the consumer has nothing to poll, called by the consumer thread only.
+   */
+  boolean isEmpty() {
+    return slots.get((int) head & mask) == null;
+  }
+}
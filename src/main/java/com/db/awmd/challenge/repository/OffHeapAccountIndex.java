@@ -0,0 +1,252 @@
+package com.db.awmd.challenge.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Account table kept outside the Java heap, so that tens of millions of accounts cost neither
+ * object headers nor garbage collection work.
+ *
+ * <p>It consists of three parts, all in direct {@link ByteBuffer}s:
+ * <ul>
+ * <li>the slot arena, pages of fixed 32 byte slots {@code [long balance][long version][long id
+ * address][int id length][int id hash]}, one per account, never moved once written;</li>
+ * <li>the id arena, pages holding the UTF-8 bytes of the account ids;</li>
+ * <li>the index, an open-addressing hash table with linear probing mapping an id to its slot
+ * number plus one, zero marking a free entry. It is rebuilt at twice the size once three quarters
+ * full.</li>
+ * </ul>
+ *
+ * <p>Structural changes take the write lock of a {@link StampedLock}; lookups probe optimistically
+ * without locking and only fall back to the read lock if a change raced with them. Balances and
+ * versions of existing slots are not guarded here, callers serialize access to a slot themselves.
+ *
+ * @author jeevan
+ */
+final class OffHeapAccountIndex {
+
+  private static final int SLOT_SIZE = 32;
+  private static final int SLOT_PAGE_SHIFT = 16;
+  private static final int SLOTS_PER_PAGE = 1 << SLOT_PAGE_SHIFT;
+  private static final int ID_PAGE_SIZE = 1 << 22;
+  private static final int MAX_ID_BYTES = 0xFFFF;
+
+  private static final int BALANCE = 0;
+  private static final int VERSION = 8;
+  private static final int ID_ADDRESS = 16;
+  private static final int ID_LENGTH = 24;
+  private static final int ID_HASH = 28;
+
+  private final StampedLock lock = new StampedLock();
+
+  private final int initialCapacity;
+
+  private volatile ByteBuffer[] slotPages;
+  private volatile ByteBuffer[] idPages;
+  private volatile IntBuffer table;
+  private volatile int size;
+  private int idPageCount;
+  private int idPagePosition;
+
+  OffHeapAccountIndex(int initialCapacity) {
+    this.initialCapacity = Math.max(Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 2,
+        64);
+    reset();
+  }
+
+  /**
+   * Method used to find the slot of an account.
+   *
+   * @return Slot number, or {@code -1} if there is no such account.
+   */
+  int find(String accountId) {
+    final byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+    final int hash = accountId.hashCode();
+    final long stamp = lock.tryOptimisticRead();
+    if (stamp != 0L) {
+      try {
+        final int slot = probe(id, hash);
+        if (lock.validate(stamp)) {
+          return slot;
+        }
+      } catch (RuntimeException re) {
+        // read a structure being rebuilt, retried under the read lock
+      }
+    }
+    final long readStamp = lock.readLock();
+    try {
+      return probe(id, hash);
+    } finally {
+      lock.unlockRead(readStamp);
+    }
+  }
+
+  /**
+   * Method used to add an account.
+   *
+   * @return Slot number of the new account, or {@code -1} if an account with that id exists.
+   */
+  int insert(String accountId, long balance, long version) {
+    final byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+    if (id.length > MAX_ID_BYTES) {
+      throw new IllegalArgumentException("Account id is too long.");
+    }
+    final int hash = accountId.hashCode();
+    final long stamp = lock.writeLock();
+    try {
+      if (probe(id, hash) >= 0) {
+        return -1;
+      }
+      if ((size + 1L) * 4 > table.capacity() * 3L) {
+        rebuild(table.capacity() * 2);
+      }
+      final long idAddress = appendId(id);
+      final int slot = size;
+      final int page = slot >>> SLOT_PAGE_SHIFT;
+      if (page == slotPages.length) {
+        slotPages = Arrays.copyOf(slotPages, page * 2);
+      }
+      if (slotPages[page] == null) {
+        slotPages[page] = ByteBuffer.allocateDirect(SLOTS_PER_PAGE * SLOT_SIZE);
+      }
+      final int offset = (slot & (SLOTS_PER_PAGE - 1)) * SLOT_SIZE;
+      slotPages[page].putLong(offset + BALANCE, balance).putLong(offset + VERSION, version)
+          .putLong(offset + ID_ADDRESS, idAddress).putInt(offset + ID_LENGTH, id.length)
+          .putInt(offset + ID_HASH, hash);
+      place(table, hash, slot);
+      size = slot + 1;
+      return slot;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  long balance(int slot) {
+    return slotPages[slot >>> SLOT_PAGE_SHIFT].getLong(offsetOf(slot) + BALANCE);
+  }
+
+  long version(int slot) {
+    return slotPages[slot >>> SLOT_PAGE_SHIFT].getLong(offsetOf(slot) + VERSION);
+  }
+
+  void update(int slot, long balance, long version) {
+    slotPages[slot >>> SLOT_PAGE_SHIFT].putLong(offsetOf(slot) + BALANCE, balance)
+        .putLong(offsetOf(slot) + VERSION, version);
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Bytes allocated outside the heap.
+   */
+  long offHeapBytes() {
+    final long stamp = lock.readLock();
+    try {
+      long bytes = (long) table.capacity() * 4;
+      for (ByteBuffer page : slotPages) {
+        bytes += page == null ? 0 : page.capacity();
+      }
+      return bytes + (long) idPageCount * ID_PAGE_SIZE;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Method used to drop every account. The buffers are released once garbage collected.
+   */
+  void clear() {
+    final long stamp = lock.writeLock();
+    try {
+      reset();
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private void reset() {
+    slotPages = new ByteBuffer[16];
+    idPages = new ByteBuffer[16];
+    idPageCount = 0;
+    idPagePosition = ID_PAGE_SIZE;
+    table = ByteBuffer.allocateDirect(initialCapacity * 4).asIntBuffer();
+    size = 0;
+  }
+
+  private int probe(byte[] id, int hash) {
+    final IntBuffer current = table;
+    final int mask = current.capacity() - 1;
+    for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+      final int entry = current.get(i);
+      if (entry == 0) {
+        return -1;
+      }
+      final int slot = entry - 1;
+      final ByteBuffer page = slotPages[slot >>> SLOT_PAGE_SHIFT];
+      final int offset = offsetOf(slot);
+      if (page.getInt(offset + ID_HASH) == hash && page.getInt(offset + ID_LENGTH) == id.length
+          && idEquals(page.getLong(offset + ID_ADDRESS), id)) {
+        return slot;
+      }
+    }
+  }
+
+  private boolean idEquals(long address, byte[] id) {
+    final ByteBuffer page = idPages[(int) (address >>> 32)];
+    final int offset = (int) address;
+    for (int i = 0; i < id.length; i++) {
+      if (page.get(offset + i) != id[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long appendId(byte[] id) {
+    if (ID_PAGE_SIZE - idPagePosition < id.length) {
+      if (idPageCount == idPages.length) {
+        idPages = Arrays.copyOf(idPages, idPageCount * 2);
+      }
+      idPages[idPageCount++] = ByteBuffer.allocateDirect(ID_PAGE_SIZE);
+      idPagePosition = 0;
+    }
+    final ByteBuffer page = idPages[idPageCount - 1].duplicate();
+    page.position(idPagePosition);
+    page.put(id);
+    final long address = ((long) (idPageCount - 1) << 32) | idPagePosition;
+    idPagePosition += id.length;
+    return address;
+  }
+
+  private void rebuild(int capacity) {
+    final IntBuffer rebuilt = ByteBuffer.allocateDirect(capacity * 4).asIntBuffer();
+    for (int slot = 0; slot < size; slot++) {
+      place(rebuilt, slotPages[slot >>> SLOT_PAGE_SHIFT].getInt(offsetOf(slot) + ID_HASH), slot);
+    }
+    table = rebuilt;
+  }
+
+  private static void place(IntBuffer target, int hash, int slot) {
+    final int mask = target.capacity() - 1;
+    int i = spread(hash) & mask;
+    while (target.get(i) != 0) {
+      i = (i + 1) & mask;
+    }
+    target.put(i, slot + 1);
+  }
+
+  private static int offsetOf(int slot) {
+    return (slot & (SLOTS_PER_PAGE - 1)) * SLOT_SIZE;
+  }
+
+  private static int spread(int h) {
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    return h ^ (h >>> 13);
+  }
+}
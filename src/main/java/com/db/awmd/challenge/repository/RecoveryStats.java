@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.repository;
+
+import lombok.Value;
+
+/**
+ * Timings and volumes of the last startup recovery.
+ *
+ * @author jeevan
+ */
+@Value
+public class RecoveryStats {
+
+  /**
+   * Journal position of the loaded snapshot, {@code -1} if recovery started from an empty state.
+   */
+  private final long snapshotPosition;
+
+  private final long snapshotAccounts;
+
+  private final long snapshotLoadMillis;
+
+  private final long journalRecords;
+
+  private final long journalReplayMillis;
+
+  private final long totalMillis;
+}
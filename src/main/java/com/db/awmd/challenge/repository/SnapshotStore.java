@@ -0,0 +1,236 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Money;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Directory of point-in-time images of all account balances.
+ *
+ * <p>An image is columnar: a header ({@code magic, format, money scale, journal position, account
+ * count, total id bytes}) is followed by the column of id lengths, the id bytes, the column of
+ * balances and the column of versions, and a trailing CRC32 of everything before it. Images are
+ * written to a temporary file, forced and atomically renamed, so a crash never leaves a partial
+ * image behind under the final name.
+ *
+ * @author jeevan
+ */
+@Slf4j
+public class SnapshotStore {
+
+  private static final int MAGIC = 0x46534e50;
+  private static final int FORMAT = 1;
+  private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 4 + 4;
+  private static final String SUFFIX = ".snapshot";
+
+  /**
+   * Receives the accounts of an image being loaded.
+   */
+  public interface Visitor {
+
+    void onAccount(String accountId, long balance, long version);
+  }
+
+  private final File directory;
+
+  public SnapshotStore(File directory) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create snapshot directory " + directory);
+    }
+    this.directory = directory;
+  }
+
+  /**
+   * Method used to write an image.
+   *
+   * @param journalPosition Journal position from which records are not covered by the image.
+   * @param count Number of accounts.
+   * @param accountIds Account ids, UTF-8 encoded.
+   * @param balances Balances in minor units.
+   * @param versions Versions of the balances.
+   * @return Size of the image in bytes.
+   */
+  public long write(long journalPosition, int count, byte[][] accountIds, long[] balances,
+      long[] versions) throws IOException {
+    int idBytes = 0;
+    for (int i = 0; i < count; i++) {
+      idBytes += accountIds[i].length;
+    }
+    final File temporary = new File(directory, fileName(journalPosition) + ".tmp");
+    final CRC32 crc = new CRC32();
+    final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+    long size;
+    try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      buffer.putInt(MAGIC).putInt(FORMAT).putInt(Money.SCALE).putLong(journalPosition)
+          .putInt(count).putInt(idBytes);
+      for (int i = 0; i < count; i++) {
+        ensureRoom(channel, buffer, crc, 4);
+        buffer.putInt(accountIds[i].length);
+      }
+      for (int i = 0; i < count; i++) {
+        ensureRoom(channel, buffer, crc, accountIds[i].length);
+        buffer.put(accountIds[i]);
+      }
+      for (int i = 0; i < count; i++) {
+        ensureRoom(channel, buffer, crc, 8);
+        buffer.putLong(balances[i]);
+      }
+      for (int i = 0; i < count; i++) {
+        ensureRoom(channel, buffer, crc, 8);
+        buffer.putLong(versions[i]);
+      }
+      flush(channel, buffer, crc);
+      buffer.putLong(crc.getValue());
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+      size = channel.size();
+    }
+    Files.move(temporary.toPath(), new File(directory, fileName(journalPosition)).toPath(),
+        StandardCopyOption.ATOMIC_MOVE);
+    return size;
+  }
+
+  /**
+   * Method used to load the most recent intact image. Images failing their checksum are skipped
+   * in favour of older ones.
+   *
+   * @param visitor Receives the accounts of the image.
+   * @return Journal position the image was taken at, or {@code -1} if there is no intact image.
+   */
+  public long loadLatest(Visitor visitor) throws IOException {
+    final File[] images = list();
+    for (int i = images.length - 1; i >= 0; i--) {
+      try (FileChannel channel = FileChannel.open(images[i].toPath(), StandardOpenOption.READ)) {
+        final MappedByteBuffer image = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+            channel.size());
+        if (!isIntact(image)) {
+          log.warn("Skipping corrupt snapshot {}", images[i]);
+          continue;
+        }
+        return read(image, visitor);
+      }
+    }
+    return -1L;
+  }
+
+  /**
+   * Method used to delete all but the most recent images.
+   *
+   * @param retain Number of images to keep.
+   * @return Journal position of the oldest kept image, the journal is needed from there on.
+   */
+  public long prune(int retain) {
+    final File[] images = list();
+    final int kept = Math.max(0, images.length - Math.max(1, retain));
+    delete(images, kept);
+    return images.length == 0 ? 0L : positionOf(images[kept]);
+  }
+
+  /**
+   * Method used to delete every image.
+   */
+  public void clear() {
+    final File[] images = list();
+    delete(images, images.length);
+  }
+
+  private static void delete(File[] images, int count) {
+    for (int i = 0; i < count; i++) {
+      if (!images[i].delete()) {
+        log.warn("Could not delete snapshot {}", images[i]);
+      }
+    }
+  }
+
+  private static boolean isIntact(MappedByteBuffer image) {
+    if (image.capacity() < HEADER_SIZE + 8 || image.getInt(0) != MAGIC
+        || image.getInt(4) != FORMAT) {
+      return false;
+    }
+    final ByteBuffer content = image.duplicate();
+    content.limit(image.capacity() - 8);
+    final CRC32 crc = new CRC32();
+    crc.update(content);
+    return crc.getValue() == image.getLong(image.capacity() - 8);
+  }
+
+  private static long read(MappedByteBuffer image, Visitor visitor) {
+    final int scale = image.getInt(8);
+    if (scale != Money.SCALE) {
+      throw new IllegalStateException(
+          "Snapshot was taken with money scale " + scale + " but the scale is " + Money.SCALE);
+    }
+    final long journalPosition = image.getLong(12);
+    final int count = image.getInt(20);
+    final int idBytes = image.getInt(24);
+    final int lengthsAt = HEADER_SIZE;
+    int idAt = lengthsAt + 4 * count;
+    final int balancesAt = idAt + idBytes;
+    final int versionsAt = balancesAt + 8 * count;
+    byte[] id = new byte[64];
+    for (int i = 0; i < count; i++) {
+      final int length = image.getInt(lengthsAt + 4 * i);
+      if (id.length < length) {
+        id = new byte[length];
+      }
+      image.position(idAt);
+      image.get(id, 0, length);
+      idAt += length;
+      visitor.onAccount(new String(id, 0, length, StandardCharsets.UTF_8),
+          image.getLong(balancesAt + 8 * i), image.getLong(versionsAt + 8 * i));
+    }
+    return journalPosition;
+  }
+
+  private static void ensureRoom(FileChannel channel, ByteBuffer buffer, CRC32 crc, int bytes)
+      throws IOException {
+    if (buffer.remaining() < bytes) {
+      flush(channel, buffer, crc);
+      if (buffer.remaining() < bytes) {
+        throw new IOException("Account id of " + bytes + " bytes is too long for a snapshot.");
+      }
+    }
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer, CRC32 crc)
+      throws IOException {
+    buffer.flip();
+    crc.update(buffer.array(), 0, buffer.limit());
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private File[] list() {
+    final File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    if (files == null) {
+      return new File[0];
+    }
+    Arrays.sort(files, (a, b) -> Long.compare(positionOf(a), positionOf(b)));
+    return files;
+  }
+
+  private static String fileName(long journalPosition) {
+    return String.format("%020d%s", journalPosition, SUFFIX);
+  }
+
+  private static long positionOf(File file) {
+    final String name = file.getName();
+    return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+  }
+}
@@ -0,0 +1,421 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of account changes stored in fixed-size, memory-mapped segment files.
+ *
+ * <p>Each record is laid out as {@code [int payload length][int CRC32 of payload][payload]}; a
+ * zero length marks the end of the written part of a segment. Records carry the balance and
+ * version of every touched account after the change rather than the change itself, so replaying a
+ * record is idempotent and a record is ignored for an account which is already at that version.
+ *
+ * <p>Writes land in the page cache as soon as {@link #appendTransfer} returns and therefore
+ * survive a crash of the process. Forcing them to disk is batched (group commit) on a background
+ * thread, so appending threads never wait for the disk: the segment is forced once
+ * {@code syncEveryRecords} records are pending and, while records are pending, at least every
+ * {@code syncIntervalMicros} microseconds.
+ *
+ * <p>Segments are named after the logical journal position of their first byte, so a position
+ * identifies a record across segments. Positions only grow, also across a {@link #reset()}.
+ *
+ * @author jeevan
+ */
+@Slf4j
+public class TransactionJournal implements Closeable {
+
+  static final byte CREATE = 1;
+  static final byte TRANSFER = 2;
+
+  private static final String SUFFIX = ".journal";
+  private static final int HEADER_SIZE = 8;
+  private static final int MAX_ID_BYTES = 0xFFFF;
+
+  /**
+   * Receives the records of the journal during {@link #replay(long, Visitor)}.
+   */
+  public interface Visitor {
+
+    void onCreate(String accountId, long balance, long version);
+
+    void onTransfer(String fromAccountId, long fromBalance, long fromVersion,
+        String toAccountId, long toBalance, long toVersion, long amount);
+  }
+
+  private final File directory;
+  private final int segmentSize;
+  private final int syncEveryRecords;
+  private final long syncIntervalNanos;
+  private final Thread syncThread;
+  private volatile boolean open = true;
+
+  private final ByteBuffer scratch;
+  private final CRC32 crc = new CRC32();
+
+  private final List<Long> segmentBases = new ArrayList<>();
+  private MappedByteBuffer segment;
+  private long segmentBase;
+  private int unsynced;
+
+  private final Object syncMonitor = new Object();
+
+  /**
+   * Position up to which every record is known to be on disk, guarded by {@link #syncMonitor}.
+   */
+  private long durablePosition;
+
+  /**
+   * Whether a thread is forcing the segment, guarded by {@link #syncMonitor}.
+   */
+  private boolean forcing;
+
+  /**
+   * Opens the journal in the given directory, creating it if needed. Call
+   * {@link #replay(long, Visitor)} before appending to find the end of the written records.
+   *
+   * @param directory Directory holding the segment files.
+   * @param segmentSize Size of each segment file in bytes.
+   * @param syncEveryRecords Force the segment after this many records.
+   * @param syncIntervalMicros Force pending records at least this often, zero disables it.
+   */
+  public TransactionJournal(File directory, int segmentSize, int syncEveryRecords,
+      long syncIntervalMicros) throws IOException {
+    if (segmentSize < 4 * (HEADER_SIZE + 2 * MAX_ID_BYTES + 64)) {
+      throw new IllegalArgumentException("Journal segment size " + segmentSize + " is too small.");
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create journal directory " + directory);
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.syncEveryRecords = Math.max(1, syncEveryRecords);
+    this.syncIntervalNanos = TimeUnit.MICROSECONDS.toNanos(syncIntervalMicros);
+    this.scratch = ByteBuffer.allocate(HEADER_SIZE + 2 * MAX_ID_BYTES + 64);
+
+    for (File file : listSegments()) {
+      segmentBases.add(baseOf(file));
+    }
+    if (segmentBases.isEmpty()) {
+      segmentBases.add(0L);
+    }
+    openSegment(segmentBases.get(segmentBases.size() - 1));
+
+    this.syncThread = new Thread(this::syncLoop, "journal-sync");
+    this.syncThread.setDaemon(true);
+    this.syncThread.start();
+  }
+
+  /**
+   * Logical position at which the next record will be written.
+   */
+  public synchronized long position() {
+    return segmentBase + segment.position();
+  }
+
+  /**
+   * Method used to read every intact record from the given position onwards. The append position
+   * is moved to the end of the last intact record, so a record torn by a crash is overwritten.
+   *
+   * @param fromPosition Logical position to start from, records before it are skipped.
+   * @param visitor Receives the records.
+   * @return Number of records replayed.
+   */
+  public synchronized long replay(long fromPosition, Visitor visitor) throws IOException {
+    long records = 0;
+    for (int i = 0; i < segmentBases.size(); i++) {
+      final long base = segmentBases.get(i);
+      final boolean last = i == segmentBases.size() - 1;
+      final long nextBase = last ? Long.MAX_VALUE : segmentBases.get(i + 1);
+      if (nextBase <= fromPosition) {
+        continue;
+      }
+      final ByteBuffer buffer;
+      if (last) {
+        buffer = segment.duplicate();
+      } else {
+        try (FileChannel readChannel = FileChannel
+            .open(segmentFile(base).toPath(), StandardOpenOption.READ)) {
+          buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+        }
+      }
+      buffer.position(0);
+      int end = 0;
+      while (buffer.remaining() >= HEADER_SIZE) {
+        final int start = buffer.position();
+        final int length = buffer.getInt();
+        final int checksum = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining() || checksum != checksum(buffer, length)) {
+          break;
+        }
+        if (base + start >= fromPosition) {
+          decode(buffer, visitor);
+          records++;
+        }
+        buffer.position(start + HEADER_SIZE + length);
+        end = buffer.position();
+      }
+      if (last) {
+        segment.position(end);
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Method used to append the creation of an account.
+   */
+  public synchronized void appendCreate(String accountId, long balance, long version) {
+    scratch.clear();
+    scratch.position(HEADER_SIZE);
+    scratch.put(CREATE);
+    putId(accountId);
+    scratch.putLong(balance);
+    scratch.putLong(version);
+    write();
+  }
+
+  /**
+   * Method used to append a transfer with the state of both accounts after it was applied.
+   */
+  public synchronized void appendTransfer(String fromAccountId, long fromBalance,
+      long fromVersion, String toAccountId, long toBalance, long toVersion, long amount) {
+    scratch.clear();
+    scratch.position(HEADER_SIZE);
+    scratch.put(TRANSFER);
+    scratch.putLong(amount);
+    putId(fromAccountId);
+    scratch.putLong(fromBalance);
+    scratch.putLong(fromVersion);
+    putId(toAccountId);
+    scratch.putLong(toBalance);
+    scratch.putLong(toVersion);
+    write();
+  }
+
+  /**
+   * Method used to force every record appended so far to disk. Returns once a completed force
+   * covers the position of the journal at the time of the call; a force already under way which
+   * started before that position is waited for and followed by another one.
+   */
+  public void sync() {
+    final long target = position();
+    boolean interrupted = false;
+    synchronized (syncMonitor) {
+      while (durablePosition < target && forcing) {
+        try {
+          syncMonitor.wait();
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (durablePosition >= target) {
+        return;
+      }
+      forcing = true;
+    }
+    long forced = -1L;
+    try {
+      final MappedByteBuffer pending;
+      final long position;
+      synchronized (this) {
+        pending = segment;
+        position = position();
+        unsynced = 0;
+      }
+      // appends carry on while the pages are written out
+      pending.force();
+      forced = position;
+    } finally {
+      synchronized (syncMonitor) {
+        durablePosition = Math.max(durablePosition, forced);
+        forcing = false;
+        syncMonitor.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Method used to delete segments which only hold records before the given position, for example
+   * once those records are covered by a snapshot.
+   *
+   * @param position Logical journal position.
+   * @return Number of segments deleted.
+   */
+  public synchronized int deleteSegmentsBefore(long position) {
+    int deleted = 0;
+    while (segmentBases.size() > 1 && segmentBases.get(1) <= position) {
+      final File file = segmentFile(segmentBases.remove(0));
+      if (!file.delete()) {
+        log.warn("Could not delete journal segment {}", file);
+      }
+      deleted++;
+    }
+    return deleted;
+  }
+
+  /**
+   * Method used to drop every record and start over with an empty journal. The new journal
+   * starts at the current position, so positions never repeat.
+   */
+  public synchronized void reset() throws IOException {
+    final long base = position();
+    for (File file : listSegments()) {
+      if (!file.delete()) {
+        throw new IOException("Could not delete journal segment " + file);
+      }
+    }
+    segmentBases.clear();
+    segmentBases.add(base);
+    openSegment(base);
+    unsynced = 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    open = false;
+    LockSupport.unpark(syncThread);
+    try {
+      syncThread.join();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+    sync();
+  }
+
+  private void putId(String accountId) {
+    final byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+    if (id.length > MAX_ID_BYTES) {
+      throw new IllegalArgumentException("Account id is too long to be journaled.");
+    }
+    scratch.putShort((short) id.length);
+    scratch.put(id);
+  }
+
+  private void write() {
+    final int length = scratch.position() - HEADER_SIZE;
+    crc.reset();
+    crc.update(scratch.array(), HEADER_SIZE, length);
+    scratch.putInt(0, length);
+    scratch.putInt(4, (int) crc.getValue());
+    scratch.flip();
+    try {
+      if (segment.remaining() < scratch.remaining() + HEADER_SIZE) {
+        roll();
+      }
+    } catch (IOException ioe) {
+      throw new UncheckedIOException("Could not roll journal segment", ioe);
+    }
+    segment.put(scratch);
+    if (++unsynced == syncEveryRecords) {
+      LockSupport.unpark(syncThread);
+    }
+  }
+
+  private void roll() throws IOException {
+    segment.force();
+    unsynced = 0;
+    synchronized (syncMonitor) {
+      durablePosition = Math.max(durablePosition, position());
+    }
+    final long nextBase = segmentBase + segment.capacity();
+    segmentBases.add(nextBase);
+    openSegment(nextBase);
+  }
+
+  private void openSegment(long base) throws IOException {
+    try (FileChannel channel = FileChannel.open(segmentFile(base).toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      if (channel.size() == 0) {
+        channel.write(ByteBuffer.allocate(1), segmentSize - 1);
+      }
+      // the mapping stays valid once the channel is closed
+      segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+    }
+    segmentBase = base;
+  }
+
+  private void syncLoop() {
+    while (open) {
+      if (syncIntervalNanos > 0) {
+        LockSupport.parkNanos(this, syncIntervalNanos);
+      } else {
+        LockSupport.park(this);
+      }
+      try {
+        sync();
+      } catch (RuntimeException re) {
+        log.error("Could not sync journal", re);
+      }
+    }
+  }
+
+  private int checksum(ByteBuffer buffer, int length) {
+    final ByteBuffer payload = buffer.slice();
+    payload.limit(length);
+    crc.reset();
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+
+  private static void decode(ByteBuffer buffer, Visitor visitor) {
+    final byte type = buffer.get();
+    if (type == CREATE) {
+      final String accountId = getId(buffer);
+      visitor.onCreate(accountId, buffer.getLong(), buffer.getLong());
+    } else if (type == TRANSFER) {
+      final long amount = buffer.getLong();
+      final String fromAccountId = getId(buffer);
+      final long fromBalance = buffer.getLong();
+      final long fromVersion = buffer.getLong();
+      final String toAccountId = getId(buffer);
+      final long toBalance = buffer.getLong();
+      final long toVersion = buffer.getLong();
+      visitor.onTransfer(fromAccountId, fromBalance, fromVersion, toAccountId, toBalance,
+          toVersion, amount);
+    } else {
+      throw new IllegalStateException("Unknown journal record type " + type);
+    }
+  }
+
+  private static String getId(ByteBuffer buffer) {
+    final byte[] id = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(id);
+    return new String(id, StandardCharsets.UTF_8);
+  }
+
+  private File[] listSegments() {
+    final File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    if (files == null) {
+      return new File[0];
+    }
+    Arrays.sort(files, (a, b) -> Long.compare(baseOf(a), baseOf(b)));
+    return files;
+  }
+
+  private File segmentFile(long base) {
+    return new File(directory, String.format("%020d%s", base, SUFFIX));
+  }
+
+  private static long baseOf(File file) {
+    final String name = file.getName();
+    return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+  }
+}
@@ -0,0 +1,206 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.exception.BatchTransferException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Helpers shared by the repository implementations.
+ *
+ * @author jeevan
+ */
+@Slf4j
+final class TransferSupport {
+
+  private TransferSupport() {
+  }
+
+  /**
+   * Method used to credit the receiving side of a transfer whose debit has already been applied.
+   * If the credit overflows, the debited amount is put back before the error is rethrown, so a
+   * failed transfer never destroys money.
+   *
+   * @param fromAccount Account which has already been debited.
+   * @param toAccount Account being credited.
+   * @param amount Amount in minor units.
+   */
+  static void creditOrRefund(Account fromAccount, Account toAccount, long amount) {
+    try {
+      toAccount.credit(amount);
+    } catch (ArithmeticException ex) {
+      fromAccount.credit(amount);
+      throw ex;
+    }
+  }
+
+  /**
+   * Method used to collect the distinct ids of the accounts taking part in transfers.
+   */
+  static Collection<String> accountIds(Account[] fromAccounts, Account[] toAccounts) {
+    final Collection<String> accountIds = new HashSet<>();
+    for (int i = 0; i < fromAccounts.length; i++) {
+      accountIds.add(fromAccounts[i].getAccountId());
+      accountIds.add(toAccounts[i].getAccountId());
+    }
+    return accountIds;
+  }
+
+  /**
+   * Method used to check that transfers applied one after the other, in order, would all succeed
+   * against the current balances. The answer only holds while nothing else debits the accounts.
+   *
+   * @param balanceOf Current balance of an account in minor units.
+   * @throws BatchTransferException naming the first transfer which would fail.
+   */
+  static void checkAll(Account[] fromAccounts, Account[] toAccounts, long[] amounts,
+      ToLongFunction<Account> balanceOf) {
+    final Map<String, Long> balances = new HashMap<>();
+    for (int i = 0; i < amounts.length; i++) {
+      final Account fromAccount = fromAccounts[i];
+      final Account toAccount = toAccounts[i];
+      final long fromBalance = balances.computeIfAbsent(fromAccount.getAccountId(),
+          id -> balanceOf.applyAsLong(fromAccount));
+      if (fromBalance < amounts[i]) {
+        throw new BatchTransferException(i, "Account " + fromAccount.getAccountId()
+            + " does not have sufficient amount to debit from.");
+      }
+      balances.put(fromAccount.getAccountId(), fromBalance - amounts[i]);
+      final long toBalance = balances.computeIfAbsent(toAccount.getAccountId(),
+          id -> balanceOf.applyAsLong(toAccount));
+      try {
+        balances.put(toAccount.getAccountId(), Money.add(toBalance, amounts[i]));
+      } catch (ArithmeticException ae) {
+        throw new BatchTransferException(i, ae.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Method used to apply transfers checked by {@link #checkAll} to the account objects, while the
+   * caller holds the locks of every account involved. Should a transfer still fail, for example on
+   * a credit overflowing a balance, the transfers already applied are undone in reverse order.
+   *
+   * @throws BatchTransferException naming the transfer which failed, nothing was transferred then.
+   */
+  static void applyAll(Account[] fromAccounts, Account[] toAccounts, long[] amounts) {
+    for (int i = 0; i < amounts.length; i++) {
+      try {
+        fromAccounts[i].debit(amounts[i]);
+        creditOrRefund(fromAccounts[i], toAccounts[i], amounts[i]);
+      } catch (RuntimeException re) {
+        for (int applied = i - 1; applied >= 0; applied--) {
+          toAccounts[applied].debit(amounts[applied]);
+          fromAccounts[applied].credit(amounts[applied]);
+        }
+        throw new BatchTransferException(i, re.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Method used to apply transfers as one with authorization holds, for repositories which can
+   * not lock all the accounts involved. The net amount leaving every account is held first, so
+   * that nothing else can take it meanwhile; should an account not cover it, the holds already
+   * placed are released and nothing was transferred. The holds are then captured into the
+   * accounts receiving money. Only a credit overflowing a balance can fail at that point, the
+   * captures already made are then transferred back.
+   *
+   * @throws BatchTransferException naming a transfer which can not be applied.
+   */
+  static void transferAllHeld(AccountsRepository repository, Account[] fromAccounts,
+      Account[] toAccounts, long[] amounts) {
+    checkAll(fromAccounts, toAccounts, amounts, Account::getBalanceInMinorUnits);
+    final Map<String, Account> accounts = new HashMap<>();
+    final Map<String, Integer> firstDebit = new HashMap<>();
+    final Map<String, Integer> firstCredit = new HashMap<>();
+    // the checked balances bound every net amount, it can not overflow
+    final Map<String, Long> net = new LinkedHashMap<>();
+    for (int i = 0; i < amounts.length; i++) {
+      final String fromId = fromAccounts[i].getAccountId();
+      final String toId = toAccounts[i].getAccountId();
+      accounts.putIfAbsent(fromId, fromAccounts[i]);
+      accounts.putIfAbsent(toId, toAccounts[i]);
+      firstDebit.putIfAbsent(fromId, i);
+      firstCredit.putIfAbsent(toId, i);
+      net.put(fromId, net.getOrDefault(fromId, 0L) - amounts[i]);
+      net.put(toId, net.getOrDefault(toId, 0L) + amounts[i]);
+    }
+    final List<String> debtors = new ArrayList<>();
+    final List<String> creditors = new ArrayList<>();
+    for (Map.Entry<String, Long> entry : net.entrySet()) {
+      if (entry.getValue() < 0) {
+        debtors.add(entry.getKey());
+      } else if (entry.getValue() > 0) {
+        creditors.add(entry.getKey());
+      }
+    }
+
+    for (int d = 0; d < debtors.size(); d++) {
+      final String debtor = debtors.get(d);
+      try {
+        repository.placeHold(accounts.get(debtor), -net.get(debtor));
+      } catch (InsufficientBalanceException | ArithmeticException ex) {
+        for (int held = d - 1; held >= 0; held--) {
+          repository.releaseHold(accounts.get(debtors.get(held)), -net.get(debtors.get(held)));
+        }
+        throw new BatchTransferException(firstDebit.get(debtor),
+            ex instanceof ArithmeticException ? ex.getMessage()
+                : "Account " + debtor + " does not have sufficient amount to debit from.");
+      }
+    }
+
+    // every debtor pays its holds to the creditors in turn, the two sides sum up to the same
+    final List<long[]> captured = new ArrayList<>();
+    int c = 0;
+    long credit = creditors.isEmpty() ? 0L : net.get(creditors.get(0));
+    for (int d = 0; d < debtors.size(); d++) {
+      final Account debtor = accounts.get(debtors.get(d));
+      long debt = -net.get(debtors.get(d));
+      while (debt > 0) {
+        final long part = Math.min(debt, credit);
+        try {
+          repository.captureHold(debtor, accounts.get(creditors.get(c)), part);
+        } catch (ArithmeticException ae) {
+          repository.releaseHold(debtor, debt);
+          for (int held = d + 1; held < debtors.size(); held++) {
+            repository.releaseHold(accounts.get(debtors.get(held)), -net.get(debtors.get(held)));
+          }
+          revert(repository, debtors, creditors, accounts, captured);
+          throw new BatchTransferException(firstCredit.get(creditors.get(c)), ae.getMessage());
+        }
+        captured.add(new long[] {d, c, part});
+        debt -= part;
+        credit -= part;
+        if (credit == 0 && ++c < creditors.size()) {
+          credit = net.get(creditors.get(c));
+        }
+      }
+    }
+  }
+
+  private static void revert(AccountsRepository repository, List<String> debtors,
+      List<String> creditors, Map<String, Account> accounts, List<long[]> captured) {
+    for (int i = captured.size() - 1; i >= 0; i--) {
+      final long[] capture = captured.get(i);
+      final String debtor = debtors.get((int) capture[0]);
+      final String creditor = creditors.get((int) capture[1]);
+      try {
+        repository.transferBetweenAccounts(accounts.get(creditor), accounts.get(debtor),
+            capture[2]);
+      } catch (RuntimeException re) {
+        log.error("Could not transfer {} back from {} to {}: {}", capture[2], creditor, debtor,
+            re.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,212 @@
+package com.db.awmd.challenge.scheduling;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Newline-delimited JSON log of the pending scheduled transfers.
+ *
+ * <p>A schedule is written once when it is added; afterwards only the changes of its next
+ * occurrence and its end are appended, each batch with one {@code fsync}. Replaying the log
+ * therefore yields every pending schedule with the occurrence it is due at. Once the log holds
+ * many more records than there are pending schedules, it is rewritten into a temporary file with
+ * one record per schedule and moved over the log atomically. A torn last line, left by a crash
+ * in the middle of an append, is ignored on replay.
+ *
+ * @author jeevan
+ */
+@Slf4j
+final class ScheduleStore implements Closeable {
+
+  static final String ADD = "add";
+  static final String NEXT = "next";
+  static final String CANCEL = "cancel";
+  static final String DONE = "done";
+
+  private static final String FILE_NAME = "schedules.ndjson";
+
+  /**
+   * Line of the log, only the schedule id and the next occurrence are set for {@code next}
+   * records and only the schedule id for {@code cancel} and {@code done} records.
+   */
+  @Data
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  static final class Record {
+
+    private String op;
+    private String scheduleId;
+    private String accountFromId;
+    private String accountToId;
+    private BigDecimal amount;
+    private Long firstExecutionAt;
+    private Long intervalMillis;
+    private Integer occurrences;
+    private Long nextOccurrence;
+
+    static Record of(String op, String scheduleId, Long nextOccurrence) {
+      final Record record = new Record();
+      record.setOp(op);
+      record.setScheduleId(scheduleId);
+      record.setNextOccurrence(nextOccurrence);
+      return record;
+    }
+  }
+
+  private final File file;
+
+  private final ObjectReader reader;
+
+  private final ObjectWriter writer;
+
+  private FileOutputStream output;
+
+  private Writer lines;
+
+  /**
+   * Records appended since the log was last rewritten.
+   */
+  private int appended;
+
+  ScheduleStore(File directory, ObjectMapper objectMapper) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create scheduling directory " + directory);
+    }
+    this.file = new File(directory, FILE_NAME);
+    this.reader = objectMapper.readerFor(Record.class);
+    this.writer = objectMapper.writerFor(Record.class);
+  }
+
+  /**
+   * Method used to replay the log.
+   *
+   * @return {@code add} records of the pending schedules, with their current next occurrence.
+   */
+  synchronized Collection<Record> load() throws IOException {
+    final Map<String, Record> pending = new LinkedHashMap<>();
+    if (!file.exists()) {
+      return pending.values();
+    }
+    try (BufferedReader in = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+      long lineNumber = 0;
+      String line;
+      String previous = null;
+      while ((line = in.readLine()) != null) {
+        lineNumber++;
+        if (previous != null) {
+          throw new IOException("Malformed scheduling log line " + (lineNumber - 1) + ": "
+              + previous);
+        }
+        final Record record;
+        try {
+          record = reader.readValue(line);
+        } catch (JsonProcessingException jpe) {
+          // only acceptable as the last line
+          previous = line;
+          continue;
+        }
+        apply(pending, record);
+      }
+      if (previous != null) {
+        log.warn("Ignoring incomplete last line {} of the scheduling log", lineNumber);
+      }
+    }
+    return pending.values();
+  }
+
+  /**
+   * Method used to append records and force them to disk.
+   */
+  synchronized void append(List<Record> records) throws IOException {
+    if (lines == null) {
+      open();
+    }
+    for (Record record : records) {
+      lines.write(writer.writeValueAsString(record));
+      lines.write('\n');
+    }
+    lines.flush();
+    output.getFD().sync();
+    appended += records.size();
+  }
+
+  /**
+   * Method used to replace the log with the given records. They are supplied while no record can
+   * be appended, so that nothing appended concurrently is lost.
+   */
+  synchronized void rewrite(Supplier<Collection<Record>> records) throws IOException {
+    final File temporary = new File(file.getPath() + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(temporary);
+        Writer tmp = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+      for (Record record : records.get()) {
+        tmp.write(writer.writeValueAsString(record));
+        tmp.write('\n');
+      }
+      tmp.flush();
+      out.getFD().sync();
+    }
+    close();
+    Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    open();
+    appended = 0;
+  }
+
+  synchronized int getAppended() {
+    return appended;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (lines != null) {
+      lines.close();
+      lines = null;
+      output = null;
+    }
+  }
+
+  private void open() throws IOException {
+    output = new FileOutputStream(file, true);
+    lines = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+  }
+
+  private static void apply(Map<String, Record> pending, Record record) {
+    switch (record.getOp()) {
+      case ADD:
+        pending.put(record.getScheduleId(), record);
+        break;
+      case NEXT:
+        final Record added = pending.get(record.getScheduleId());
+        if (added != null) {
+          added.setNextOccurrence(record.getNextOccurrence());
+        }
+        break;
+      default:
+        pending.remove(record.getScheduleId());
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.db.awmd.challenge.scheduling;
+
+import com.db.awmd.challenge.domain.ScheduledTransferResponse;
+import com.db.awmd.challenge.domain.ScheduledTransferStatus;
+import com.db.awmd.challenge.domain.TransferRequest;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Transfer executed at {@code firstExecutionAt + n * intervalMillis} for every occurrence
+ * {@code n}, once if the interval is zero.
+ *
+ * <p>The next occurrence is only advanced by the scheduler thread; the status is changed with a
+ * compare-and-set, so a cancellation racing with the last occurrence ends the schedule once.
+ *
+ * @author jeevan
+ */
+final class ScheduledTransfer {
+
+  final String scheduleId;
+  final String accountFromId;
+  final String accountToId;
+  final BigDecimal amount;
+  final long firstExecutionAt;
+  final long intervalMillis;
+
+  /**
+   * Number of occurrences, zero for no limit.
+   */
+  final int occurrences;
+
+  final AtomicReference<ScheduledTransferStatus> status =
+      new AtomicReference<>(ScheduledTransferStatus.PENDING);
+  final AtomicLong executed = new AtomicLong();
+  final AtomicLong failed = new AtomicLong();
+
+  volatile long nextOccurrence;
+  volatile long skipped;
+  volatile String lastError;
+
+  /**
+   * Time the schedule completed or was cancelled at, its retention is counted from there.
+   */
+  volatile long finishedAt;
+
+  ScheduledTransfer(String scheduleId, String accountFromId, String accountToId,
+      BigDecimal amount, long firstExecutionAt, long intervalMillis, int occurrences,
+      long nextOccurrence) {
+    this.scheduleId = scheduleId;
+    this.accountFromId = accountFromId;
+    this.accountToId = accountToId;
+    this.amount = amount;
+    this.firstExecutionAt = firstExecutionAt;
+    this.intervalMillis = intervalMillis;
+    this.occurrences = occurrences;
+    this.nextOccurrence = nextOccurrence;
+  }
+
+  long executionTime(long occurrence) {
+    return firstExecutionAt + occurrence * intervalMillis;
+  }
+
+  boolean hasOccurrence(long occurrence) {
+    return occurrence == 0
+        || intervalMillis > 0 && (occurrences == 0 || occurrence < occurrences);
+  }
+
+  TransferRequest transferRequest() {
+    final TransferRequest transferRequest = new TransferRequest();
+    transferRequest.setAccountFromId(accountFromId);
+    transferRequest.setAccountToId(accountToId);
+    transferRequest.setAmount(amount);
+    return transferRequest;
+  }
+
+  boolean sameAs(ScheduledTransfer other) {
+    return accountFromId.equals(other.accountFromId) && accountToId.equals(other.accountToId)
+        && amount.compareTo(other.amount) == 0 && firstExecutionAt == other.firstExecutionAt
+        && intervalMillis == other.intervalMillis && occurrences == other.occurrences;
+  }
+
+  ScheduleStore.Record toRecord() {
+    final ScheduleStore.Record record = new ScheduleStore.Record();
+    record.setOp(ScheduleStore.ADD);
+    record.setScheduleId(scheduleId);
+    record.setAccountFromId(accountFromId);
+    record.setAccountToId(accountToId);
+    record.setAmount(amount);
+    record.setFirstExecutionAt(firstExecutionAt);
+    record.setIntervalMillis(intervalMillis);
+    record.setOccurrences(occurrences);
+    record.setNextOccurrence(nextOccurrence);
+    return record;
+  }
+
+  static ScheduledTransfer fromRecord(ScheduleStore.Record record) {
+    return new ScheduledTransfer(record.getScheduleId(), record.getAccountFromId(),
+        record.getAccountToId(), record.getAmount(), record.getFirstExecutionAt(),
+        record.getIntervalMillis(), record.getOccurrences(), record.getNextOccurrence());
+  }
+
+  ScheduledTransferResponse toResponse() {
+    final long next = nextOccurrence;
+    final ScheduledTransferStatus current = status.get();
+    return new ScheduledTransferResponse(scheduleId, accountFromId, accountToId, amount, current,
+        current == ScheduledTransferStatus.PENDING && hasOccurrence(next) ? executionTime(next)
+            : null,
+        intervalMillis == 0 ? null : TimeUnit.MILLISECONDS.toSeconds(intervalMillis),
+        executed.get(), failed.get(), skipped, lastError);
+  }
+}
@@ -0,0 +1,156 @@
+package com.db.awmd.challenge.scheduling;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel firing items once their deadline has passed.
+ *
+ * <p>Time is cut into ticks. The wheel has {@value #LEVELS} levels of {@value #SLOTS} slots, a
+ * slot of level {@code n} spanning {@code 64^n} ticks, and every slot holds a singly linked list of
+ * timers. A timer goes into the lowest level whose slots reach its deadline. Each tick fires the
+ * due slot of the lowest level; every {@code 64^n} ticks the next slot of level {@code n} is
+ * cascaded into the levels below it, which spreads the work of moving a timer over its lifetime.
+ * A tick therefore costs a constant amount of work plus the timers it fires, however many timers
+ * are outstanding, and scheduling a timer is constant time too. Deadlines beyond the top level
+ * wait in its last slot and are placed again when it is cascaded.
+ *
+ * <p>Any thread may schedule timers; they are queued and placed into the wheel by the single
+ * thread which advances it, so the wheel itself needs no lock. Timers are never cancelled, the
+ * consumer is expected to ignore items which no longer need to fire.
+ *
+ * @param <T> Type of the scheduled items.
+ * @author jeevan
+ */
+public final class TimingWheel<T> {
+
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int MASK = SLOTS - 1;
+  private static final int LEVELS = 4;
+
+  private static final class Timer<T> {
+
+    private final T item;
+    private final long deadlineTick;
+    private Timer<T> next;
+
+    private Timer(T item, long deadlineTick) {
+      this.item = item;
+      this.deadlineTick = deadlineTick;
+    }
+  }
+
+  private final long tickMillis;
+
+  private final Timer<T>[] slots;
+
+  private final Queue<Timer<T>> scheduled = new ConcurrentLinkedQueue<>();
+
+  private final AtomicLong size = new AtomicLong();
+
+  /**
+   * Last tick fired, only accessed by the advancing thread.
+   */
+  private long currentTick;
+
+  @SuppressWarnings("unchecked")
+  public TimingWheel(long tickMillis, long startMillis) {
+    if (tickMillis < 1) {
+      throw new IllegalArgumentException("Timing wheel tick must be positive.");
+    }
+    this.tickMillis = tickMillis;
+    this.slots = (Timer<T>[]) new Timer<?>[LEVELS * SLOTS];
+    this.currentTick = startMillis / tickMillis;
+  }
+
+  /**
+   * Method used to fire an item at or after a point in time.
+   *
+   * @param item Item handed to the consumer of {@link #advance(long, Consumer)}.
+   * @param deadlineMillis Time in milliseconds since the epoch.
+   */
+  public void schedule(T item, long deadlineMillis) {
+    // rounded up, an item never fires before its deadline
+    scheduled.add(new Timer<>(item, (deadlineMillis + tickMillis - 1) / tickMillis));
+    size.incrementAndGet();
+  }
+
+  /**
+   * Method used to fire every item whose deadline has passed. Must only be called by one thread.
+   *
+   * @param nowMillis Current time in milliseconds since the epoch.
+   * @param consumer Receives the items fired, may schedule further items.
+   */
+  public void advance(long nowMillis, Consumer<T> consumer) {
+    Timer<T> timer;
+    while ((timer = scheduled.poll()) != null) {
+      if (timer.deadlineTick <= currentTick) {
+        fire(timer, consumer);
+      } else {
+        place(timer);
+      }
+    }
+    final long targetTick = nowMillis / tickMillis;
+    while (currentTick < targetTick) {
+      currentTick++;
+      cascade();
+      timer = take(0, (int) currentTick & MASK);
+      while (timer != null) {
+        final Timer<T> next = timer.next;
+        fire(timer, consumer);
+        timer = next;
+      }
+    }
+  }
+
+  /**
+   * Number of items scheduled and not fired yet.
+   */
+  public long size() {
+    return size.get();
+  }
+
+  private void cascade() {
+    for (int level = 1; level < LEVELS; level++) {
+      final int shift = SLOT_BITS * level;
+      if ((currentTick & ((1L << shift) - 1)) != 0) {
+        return;
+      }
+      Timer<T> timer = take(level, (int) (currentTick >>> shift) & MASK);
+      while (timer != null) {
+        final Timer<T> next = timer.next;
+        place(timer);
+        timer = next;
+      }
+    }
+  }
+
+  private void place(Timer<T> timer) {
+    int level = 0;
+    while (level < LEVELS - 1 && (timer.deadlineTick >>> (SLOT_BITS * level))
+        - (currentTick >>> (SLOT_BITS * level)) >= SLOTS) {
+      level++;
+    }
+    final long current = currentTick >>> (SLOT_BITS * level);
+    final long position = Math.min(timer.deadlineTick >>> (SLOT_BITS * level),
+        current + SLOTS - 1);
+    final int index = level * SLOTS + ((int) position & MASK);
+    timer.next = slots[index];
+    slots[index] = timer;
+  }
+
+  private Timer<T> take(int level, int slot) {
+    final int index = level * SLOTS + slot;
+    final Timer<T> head = slots[index];
+    slots[index] = null;
+    return head;
+  }
+
+  private void fire(Timer<T> timer, Consumer<T> consumer) {
+    size.decrementAndGet();
+    consumer.accept(timer.item);
+  }
+}
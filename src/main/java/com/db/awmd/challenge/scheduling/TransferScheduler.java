@@ -0,0 +1,414 @@
+package com.db.awmd.challenge.scheduling;
+
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.ScheduledTransferRequest;
+import com.db.awmd.challenge.domain.ScheduledTransferResponse;
+import com.db.awmd.challenge.domain.ScheduledTransferStatus;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.ScheduledTransferNotFoundException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Future-dated transfers and standing orders.
+ *
+ * <p>Pending schedules wait in a {@link TimingWheel} rather than being polled for, so a tick costs
+ * the same however many schedules are pending. Every tick a single scheduler thread collects the
+ * schedules which fell due and executes at most {@code accounts.scheduling.max-transfers-per-tick}
+ * of them, in batches of {@code batch-size} spread over {@code parallelism} worker threads; the
+ * rest wait for the following ticks. Transfers go through {@link AccountsService} like any other.
+ *
+ * <p>Schedules are kept in a {@link ScheduleStore} log. The next occurrence of every schedule in a
+ * batch is written and forced to disk before the batch executes, so an occurrence interrupted by a
+ * crash is not executed again after the restart. Occurrences of a standing order missed while the
+ * service was down, or while it was behind, are executed up to
+ * {@code max-missed-occurrences} per schedule, the most recent ones, and the older ones are
+ * skipped; a future-dated transfer missed that way is always executed. Together with the limit per
+ * tick this bounds the catch-up after a downtime.
+ *
+ * <p>Occurrences of different schedules run in parallel, so transfers due at the same tick are not
+ * ordered among each other. Cancelling a schedule does not recall an occurrence already executing.
+ *
+ * @author jeevan
+ */
+@Service
+@Slf4j
+public class TransferScheduler {
+
+  /**
+   * The log is rewritten once this many records were appended and they outnumber the pending
+   * schedules two to one.
+   */
+  private static final int MIN_RECORDS_BEFORE_REWRITE = 4096;
+
+  private final AccountsService accountsService;
+
+  private final ScheduleStore store;
+
+  private final long tickMillis;
+
+  private final int batchSize;
+
+  private final int maxTransfersPerTick;
+
+  private final int maxMissedOccurrences;
+
+  private final long retentionMillis;
+
+  private final ExecutorService workers;
+
+  private final Map<String, ScheduledTransfer> schedules = new ConcurrentHashMap<>();
+
+  private final TimingWheel<ScheduledTransfer> wheel;
+
+  /**
+   * Schedules due but not executed yet, only accessed by the scheduler thread.
+   */
+  private final Deque<ScheduledTransfer> due = new ArrayDeque<>();
+
+  private volatile boolean running;
+
+  private Thread ticker;
+
+  @Autowired
+  public TransferScheduler(AccountsService accountsService, ObjectMapper objectMapper,
+      @Value("${accounts.scheduling.directory:data/scheduling}") String directory,
+      @Value("${accounts.scheduling.tick-millis:1000}") long tickMillis,
+      @Value("${accounts.scheduling.parallelism:0}") int parallelism,
+      @Value("${accounts.scheduling.batch-size:64}") int batchSize,
+      @Value("${accounts.scheduling.max-transfers-per-tick:1000}") int maxTransfersPerTick,
+      @Value("${accounts.scheduling.max-missed-occurrences:1}") int maxMissedOccurrences,
+      @Value("${accounts.scheduling.retention-seconds:86400}") long retentionSeconds)
+      throws IOException {
+    this(accountsService, objectMapper, new File(directory), tickMillis, parallelism, batchSize,
+        maxTransfersPerTick, maxMissedOccurrences, TimeUnit.SECONDS.toMillis(retentionSeconds));
+  }
+
+  public TransferScheduler(AccountsService accountsService, ObjectMapper objectMapper,
+      File directory, long tickMillis, int parallelism, int batchSize, int maxTransfersPerTick,
+      int maxMissedOccurrences, long retentionMillis) throws IOException {
+    this.accountsService = accountsService;
+    this.store = new ScheduleStore(directory, objectMapper);
+    this.tickMillis = tickMillis;
+    this.batchSize = Math.max(1, batchSize);
+    this.maxTransfersPerTick = Math.max(1, maxTransfersPerTick);
+    this.maxMissedOccurrences = Math.max(0, maxMissedOccurrences);
+    this.retentionMillis = retentionMillis;
+    final int threads = parallelism > 0 ? parallelism
+        : Runtime.getRuntime().availableProcessors();
+    final AtomicInteger count = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+      final Thread thread = new Thread(runnable, "scheduled-transfer-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    final long now = System.currentTimeMillis();
+    this.wheel = new TimingWheel<>(tickMillis, now);
+    for (ScheduleStore.Record record : store.load()) {
+      final ScheduledTransfer schedule = ScheduledTransfer.fromRecord(record);
+      catchUp(schedule, now);
+      if (schedule.hasOccurrence(schedule.nextOccurrence)) {
+        schedules.put(schedule.scheduleId, schedule);
+        wheel.schedule(schedule, schedule.executionTime(schedule.nextOccurrence));
+      }
+    }
+    store.rewrite(this::pendingRecords);
+    log.info("Loaded {} scheduled transfers", schedules.size());
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    ticker = new Thread(this::tick, "transfer-scheduler");
+    ticker.setDaemon(true);
+    ticker.start();
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException, IOException {
+    running = false;
+    if (ticker != null) {
+      LockSupport.unpark(ticker);
+      ticker.join();
+    }
+    workers.shutdown();
+    store.close();
+  }
+
+  /**
+   * Method used to schedule a transfer.
+   *
+   * @param request Transfer, time of the first occurrence and optionally the recurrence.
+   * @return {@code ScheduledTransferResponse} of the new schedule, or of the existing schedule
+   * with the same id.
+   * @throws IdempotencyKeyReusedException if the schedule id is already used for a different
+   * schedule.
+   */
+  public ScheduledTransferResponse schedule(ScheduledTransferRequest request) {
+    final TransferRequest transfer = request.getTransfer();
+    // rejects amounts with more fraction digits than the money scale up front
+    Money.toMinorUnits(transfer.getAmount());
+    if (request.getOccurrences() != null && request.getIntervalSeconds() == null) {
+      throw new IllegalArgumentException("Occurrences require an interval.");
+    }
+    account(transfer.getAccountFromId());
+    account(transfer.getAccountToId());
+    final String scheduleId = request.getScheduleId() != null ? request.getScheduleId()
+        : UUID.randomUUID().toString();
+    final ScheduledTransfer schedule = new ScheduledTransfer(scheduleId,
+        transfer.getAccountFromId(), transfer.getAccountToId(), transfer.getAmount(),
+        request.getExecuteAt(), request.getIntervalSeconds() == null ? 0L
+        : TimeUnit.SECONDS.toMillis(request.getIntervalSeconds()),
+        request.getOccurrences() == null ? 0 : request.getOccurrences(), 0L);
+
+    final ScheduledTransfer existing = schedules.putIfAbsent(scheduleId, schedule);
+    if (existing != null) {
+      if (!existing.sameAs(schedule)) {
+        throw new IdempotencyKeyReusedException("Schedule id " + scheduleId
+            + " was already used for a different schedule.");
+      }
+      return existing.toResponse();
+    }
+    try {
+      store.append(Collections.singletonList(schedule.toRecord()));
+    } catch (IOException ioe) {
+      schedules.remove(scheduleId, schedule);
+      throw new UncheckedIOException("Could not store scheduled transfer " + scheduleId, ioe);
+    }
+    wheel.schedule(schedule, schedule.executionTime(0));
+    return schedule.toResponse();
+  }
+
+  /**
+   * Method used to cancel the remaining occurrences of a schedule. Cancelling again, or
+   * cancelling a completed schedule, changes nothing.
+   *
+   * @param scheduleId Schedule id.
+   * @return {@code ScheduledTransferResponse} of the schedule.
+   */
+  public ScheduledTransferResponse cancel(String scheduleId) {
+    final ScheduledTransfer schedule = scheduled(scheduleId);
+    if (schedule.status.compareAndSet(ScheduledTransferStatus.PENDING,
+        ScheduledTransferStatus.CANCELLED)) {
+      schedule.finishedAt = System.currentTimeMillis();
+      try {
+        store.append(Collections.singletonList(
+            ScheduleStore.Record.of(ScheduleStore.CANCEL, scheduleId, null)));
+      } catch (IOException ioe) {
+        throw new UncheckedIOException("Could not store cancellation of " + scheduleId, ioe);
+      }
+      // rather than waiting for its next occurrence, which may be far ahead
+      wheel.schedule(schedule, schedule.finishedAt + retentionMillis);
+    }
+    return schedule.toResponse();
+  }
+
+  public ScheduledTransferResponse getScheduledTransfer(String scheduleId) {
+    return scheduled(scheduleId).toResponse();
+  }
+
+  /**
+   * Number of schedules remembered, in any state.
+   */
+  public int size() {
+    return schedules.size();
+  }
+
+  /**
+   * Method used to cancel and forget every schedule, for use together with clearing the
+   * accounts.
+   */
+  public void clear() {
+    for (ScheduledTransfer schedule : schedules.values()) {
+      schedule.status.set(ScheduledTransferStatus.CANCELLED);
+    }
+    schedules.clear();
+    try {
+      store.rewrite(Collections::emptyList);
+    } catch (IOException ioe) {
+      throw new UncheckedIOException("Could not clear scheduled transfers", ioe);
+    }
+  }
+
+  private void account(String accountId) {
+    if (accountsService.getAccount(accountId) == null) {
+      throw new AccountNotFoundException("Account with id " + accountId + " not found.");
+    }
+  }
+
+  private ScheduledTransfer scheduled(String scheduleId) {
+    final ScheduledTransfer schedule = schedules.get(scheduleId);
+    if (schedule == null) {
+      throw new ScheduledTransferNotFoundException("Scheduled transfer with id " + scheduleId
+          + " not found.");
+    }
+    return schedule;
+  }
+
+  private void tick() {
+    while (running) {
+      try {
+        runDue(System.currentTimeMillis());
+      } catch (IOException | RuntimeException ex) {
+        log.error("Could not execute scheduled transfers", ex);
+      }
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(tickMillis));
+    }
+  }
+
+  private void runDue(long now) throws IOException {
+    wheel.advance(now, schedule -> {
+      if (schedule.status.get() == ScheduledTransferStatus.PENDING) {
+        due.add(schedule);
+      } else {
+        forgetLater(schedule, now);
+      }
+    });
+
+    final List<ScheduledTransfer> batch = new ArrayList<>();
+    final List<Long> occurrences = new ArrayList<>();
+    final List<ScheduleStore.Record> records = new ArrayList<>();
+    while (batch.size() < maxTransfersPerTick && !due.isEmpty()) {
+      final ScheduledTransfer schedule = due.poll();
+      if (schedule.status.get() != ScheduledTransferStatus.PENDING) {
+        forgetLater(schedule, now);
+        continue;
+      }
+      final long occurrence = schedule.nextOccurrence;
+      schedule.nextOccurrence = occurrence + 1;
+      catchUp(schedule, now);
+      batch.add(schedule);
+      occurrences.add(occurrence);
+      records.add(schedule.hasOccurrence(schedule.nextOccurrence)
+          ? ScheduleStore.Record.of(ScheduleStore.NEXT, schedule.scheduleId,
+          schedule.nextOccurrence)
+          : ScheduleStore.Record.of(ScheduleStore.DONE, schedule.scheduleId, null));
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    try {
+      store.append(records);
+    } catch (IOException ioe) {
+      // retried on the next tick
+      for (int i = batch.size() - 1; i >= 0; i--) {
+        batch.get(i).nextOccurrence = occurrences.get(i);
+        due.addFirst(batch.get(i));
+      }
+      throw ioe;
+    }
+    execute(batch, occurrences);
+
+    for (ScheduledTransfer schedule : batch) {
+      if (schedule.status.get() == ScheduledTransferStatus.PENDING
+          && schedule.hasOccurrence(schedule.nextOccurrence)) {
+        wheel.schedule(schedule, schedule.executionTime(schedule.nextOccurrence));
+      } else {
+        if (schedule.status.compareAndSet(ScheduledTransferStatus.PENDING,
+            ScheduledTransferStatus.COMPLETED)) {
+          schedule.finishedAt = now;
+        }
+        forgetLater(schedule, now);
+      }
+    }
+    if (store.getAppended() > Math.max(MIN_RECORDS_BEFORE_REWRITE, 2 * schedules.size())) {
+      store.rewrite(this::pendingRecords);
+    }
+  }
+
+  private void execute(List<ScheduledTransfer> batch, List<Long> occurrences) {
+    final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+    for (int from = 0; from < batch.size(); from += batchSize) {
+      final int start = from;
+      final int end = Math.min(batch.size(), from + batchSize);
+      tasks.add(CompletableFuture.runAsync(() -> {
+        for (int i = start; i < end; i++) {
+          execute(batch.get(i), occurrences.get(i));
+        }
+      }, workers));
+    }
+    CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+  }
+
+  private void execute(ScheduledTransfer schedule, long occurrence) {
+    try {
+      accountsService.transferAmount(schedule.transferRequest());
+      schedule.executed.incrementAndGet();
+    } catch (RuntimeException re) {
+      schedule.failed.incrementAndGet();
+      schedule.lastError = re.getMessage();
+      log.debug("Scheduled transfer {} occurrence {} failed", schedule.scheduleId, occurrence,
+          re);
+    }
+  }
+
+  /**
+   * Method used to skip the occurrences of a standing order which are due but older than the
+   * most recent {@code maxMissedOccurrences}.
+   */
+  private void catchUp(ScheduledTransfer schedule, long now) {
+    final long next = schedule.nextOccurrence;
+    if (schedule.intervalMillis == 0 || schedule.executionTime(next) > now) {
+      return;
+    }
+    long latest = (now - schedule.firstExecutionAt) / schedule.intervalMillis;
+    if (schedule.occurrences > 0) {
+      latest = Math.min(latest, schedule.occurrences - 1);
+    }
+    final long keepFrom = latest + 1 - maxMissedOccurrences;
+    if (keepFrom > next) {
+      schedule.skipped += keepFrom - next;
+      schedule.nextOccurrence = keepFrom;
+    }
+  }
+
+  /**
+   * Keeps a finished schedule around for its retention, so that it can still be looked up.
+   */
+  private void forgetLater(ScheduledTransfer schedule, long now) {
+    final long forgetAt = schedule.finishedAt + retentionMillis;
+    if (now >= forgetAt) {
+      schedules.remove(schedule.scheduleId, schedule);
+    } else {
+      wheel.schedule(schedule, forgetAt);
+    }
+  }
+
+  private Collection<ScheduleStore.Record> pendingRecords() {
+    final List<ScheduleStore.Record> records = new ArrayList<>();
+    for (ScheduledTransfer schedule : schedules.values()) {
+      if (schedule.status.get() == ScheduledTransferStatus.PENDING) {
+        records.add(schedule.toRecord());
+      }
+    }
+    return records;
+  }
+}
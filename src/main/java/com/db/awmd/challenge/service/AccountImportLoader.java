@@ -0,0 +1,45 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.AccountImportResponse;
+import java.io.File;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Imports the accounts of the local file named by {@code accounts.import.file} once the
+ * application has started, for seeding an environment. Accounts which already exist, for example
+ * recovered by the journaled repository, are reported as duplicates and left untouched.
+ *
+ * @author jeevan
+ */
+@Component
+@ConditionalOnProperty(prefix = "accounts.import", name = "file")
+@Slf4j
+public class AccountImportLoader implements ApplicationRunner {
+
+  private final AccountImportService accountImportService;
+
+  private final File file;
+
+  @Autowired
+  public AccountImportLoader(AccountImportService accountImportService,
+      @Value("${accounts.import.file}") String file) {
+    this.accountImportService = accountImportService;
+    this.file = new File(file);
+  }
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    log.info("Importing accounts from {}", file);
+    final AccountImportResponse response = accountImportService.importFile(file);
+    if (!response.getErrors().isEmpty()) {
+      log.warn("First rejected line of {}: {} {}", file, response.getErrors().get(0).getLine(),
+          response.getErrors().get(0).getMessage());
+    }
+  }
+}
@@ -0,0 +1,344 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportError;
+import com.db.awmd.challenge.domain.AccountImportFormat;
+import com.db.awmd.challenge.domain.AccountImportResponse;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service creating accounts in bulk from newline-delimited JSON or CSV, one account per line.
+ *
+ * <p>The input is never held in memory as a whole: the calling thread only splits it into chunks
+ * of lines, and every chunk is parsed, validated and inserted on a worker thread. At most two
+ * chunks per worker are outstanding at any time, so the calling thread stops reading while the
+ * workers catch up. Lines are parsed with the streaming JSON parser rather than bound through
+ * {@link Account}, and a bad line is reported and skipped without affecting the others.
+ *
+ * <p>Chunks are inserted in no particular order, so when one input repeats an account id it is
+ * not defined which of its lines is imported and which is reported as the duplicate.
+ *
+ * @author jeevan
+ */
+@Service
+@Slf4j
+public class AccountImportService {
+
+  /**
+   * Header a CSV input may start with, field names optionally quoted and in any case.
+   */
+  private static final Pattern CSV_HEADER = Pattern.compile(
+      "\\s*(\"?)accountId\\1\\s*,\\s*(\"?)balance\\2\\s*", Pattern.CASE_INSENSITIVE);
+
+  private final AccountsService accountsService;
+
+  private final JsonFactory jsonFactory;
+
+  private final int chunkSize;
+
+  private final int maxReportedErrors;
+
+  private final int parallelism;
+
+  private final ExecutorService workers;
+
+  @Autowired
+  public AccountImportService(AccountsService accountsService, ObjectMapper objectMapper,
+      @Value("${accounts.import.parallelism:0}") int parallelism,
+      @Value("${accounts.import.chunk-size:4096}") int chunkSize,
+      @Value("${accounts.import.max-reported-errors:1000}") int maxReportedErrors) {
+    this.accountsService = accountsService;
+    this.jsonFactory = objectMapper.getFactory();
+    this.chunkSize = Math.max(1, chunkSize);
+    this.maxReportedErrors = maxReportedErrors;
+    this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    final AtomicInteger threads = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+      final Thread thread = new Thread(runnable, "account-import-" + threads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    workers.shutdown();
+  }
+
+  /**
+   * Method used to import the accounts of a local file.
+   *
+   * @param file File to import, CSV if named {@code *.csv} and newline-delimited JSON otherwise.
+   * @return {@code AccountImportResponse} with the counts and the rejected lines.
+   */
+  public AccountImportResponse importFile(File file) throws IOException {
+    try (InputStream input = new FileInputStream(file)) {
+      return importAccounts(input, AccountImportFormat.forFileName(file.getName()));
+    }
+  }
+
+  /**
+   * Method used to import accounts from a stream, which is read to its end but not closed.
+   *
+   * @param input Stream of UTF-8 lines.
+   * @param format Format of the lines.
+   * @return {@code AccountImportResponse} with the counts and the rejected lines.
+   */
+  public AccountImportResponse importAccounts(InputStream input, AccountImportFormat format)
+      throws IOException {
+    final long started = System.nanoTime();
+    final Outcome outcome = new Outcome();
+    final Semaphore outstanding = new Semaphore(2 * parallelism);
+    final BufferedReader reader = new BufferedReader(
+        new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16);
+    try {
+      String[] chunk = new String[chunkSize];
+      int size = 0;
+      long firstLine = 1;
+      long lineNumber = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (lineNumber == 1 && format == AccountImportFormat.CSV && isCsvHeader(line)) {
+          line = "";
+        }
+        if (size == 0) {
+          firstLine = lineNumber;
+        }
+        chunk[size++] = line;
+        if (size == chunkSize) {
+          submit(chunk, size, firstLine, format, outcome, outstanding);
+          chunk = new String[chunkSize];
+          size = 0;
+        }
+      }
+      if (size > 0) {
+        submit(chunk, size, firstLine, format, outcome, outstanding);
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while importing accounts", ie);
+    } finally {
+      // wait for the submitted chunks even if reading failed
+      outstanding.acquireUninterruptibly(2 * parallelism);
+    }
+
+    final AccountImportError[] errors = outcome.errors.toArray(new AccountImportError[0]);
+    Arrays.sort(errors, Comparator.comparingLong(AccountImportError::getLine));
+    final long rejected = outcome.duplicates.get() + outcome.failed.get();
+    log.info("Imported {} accounts in {} ms, {} duplicates, {} failed", outcome.imported.get(),
+        (System.nanoTime() - started) / 1_000_000, outcome.duplicates.get(),
+        outcome.failed.get());
+    return new AccountImportResponse(outcome.imported.get(), outcome.duplicates.get(),
+        outcome.failed.get(), Arrays.asList(errors), rejected > errors.length);
+  }
+
+  private void submit(String[] chunk, int size, long firstLine, AccountImportFormat format,
+      Outcome outcome, Semaphore outstanding) throws InterruptedException {
+    outstanding.acquire();
+    try {
+      workers.execute(() -> {
+        try {
+          importChunk(chunk, size, firstLine, format, outcome);
+        } finally {
+          outstanding.release();
+        }
+      });
+    } catch (RuntimeException re) {
+      outstanding.release();
+      throw re;
+    }
+  }
+
+  private void importChunk(String[] chunk, int size, long firstLine, AccountImportFormat format,
+      Outcome outcome) {
+    final Line parsed = new Line();
+    for (int i = 0; i < size; i++) {
+      final String line = chunk[i];
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      final long lineNumber = firstLine + i;
+      parsed.accountId = null;
+      parsed.balance = null;
+      try {
+        if (format == AccountImportFormat.CSV) {
+          parseCsv(line, parsed);
+        } else {
+          parseJson(line, parsed);
+        }
+        accountsService.createAccount(
+            new Account(parsed.accountId, new BalanceSnapshot(validate(parsed), 0L)));
+        outcome.imported.incrementAndGet();
+      } catch (DuplicateAccountIdException daie) {
+        outcome.duplicates.incrementAndGet();
+        outcome.report(maxReportedErrors,
+            new AccountImportError(lineNumber, parsed.accountId, daie.getMessage()));
+      } catch (RuntimeException | IOException ex) {
+        outcome.failed.incrementAndGet();
+        outcome.report(maxReportedErrors, new AccountImportError(lineNumber, parsed.accountId,
+            ex instanceof JsonProcessingException
+                ? ((JsonProcessingException) ex).getOriginalMessage() : ex.getMessage()));
+      }
+    }
+  }
+
+  /**
+   * Method used to apply the constraints {@link Account} is validated with on creation.
+   *
+   * @return Balance in minor units.
+   */
+  private static long validate(Line parsed) {
+    if (parsed.accountId == null || parsed.accountId.isEmpty()) {
+      throw new IllegalArgumentException("accountId may not be empty");
+    }
+    if (parsed.balance == null) {
+      throw new IllegalArgumentException("balance may not be null");
+    }
+    if (parsed.balance.signum() < 0) {
+      throw new IllegalArgumentException("Initial balance must be positive.");
+    }
+    try {
+      return Money.toMinorUnits(parsed.balance);
+    } catch (ArithmeticException ae) {
+      throw new IllegalArgumentException("Invalid balance " + parsed.balance);
+    }
+  }
+
+  private void parseJson(String line, Line parsed) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(line)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IllegalArgumentException("Expected a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        final String field = parser.getCurrentName();
+        final JsonToken value = parser.nextToken();
+        if ("accountId".equals(field) && value == JsonToken.VALUE_STRING) {
+          parsed.accountId = parser.getText();
+        } else if ("balance".equals(field) && value.isNumeric()) {
+          parsed.balance = parser.getDecimalValue();
+        } else if ("balance".equals(field) && value == JsonToken.VALUE_STRING) {
+          parsed.balance = decimal(parser.getText());
+        } else if ("accountId".equals(field) || "balance".equals(field)) {
+          if (value != JsonToken.VALUE_NULL) {
+            throw new IllegalArgumentException("Invalid value for " + field);
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+      if (parser.nextToken() != null) {
+        throw new IllegalArgumentException("Expected one JSON object per line");
+      }
+    }
+  }
+
+  private static void parseCsv(String line, Line parsed) {
+    final List<String> fields = new ArrayList<>(2);
+    final StringBuilder field = new StringBuilder();
+    int i = 0;
+    while (i <= line.length()) {
+      field.setLength(0);
+      if (i < line.length() && line.charAt(i) == '"') {
+        i++;
+        while (true) {
+          if (i >= line.length()) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+          }
+          final char c = line.charAt(i++);
+          if (c != '"') {
+            field.append(c);
+          } else if (i < line.length() && line.charAt(i) == '"') {
+            field.append('"');
+            i++;
+          } else {
+            break;
+          }
+        }
+        if (i < line.length() && line.charAt(i) != ',') {
+          throw new IllegalArgumentException("Unexpected character after quoted field");
+        }
+      } else {
+        while (i < line.length() && line.charAt(i) != ',') {
+          field.append(line.charAt(i++));
+        }
+      }
+      fields.add(field.toString());
+      i++;
+    }
+    if (fields.size() != 2) {
+      throw new IllegalArgumentException("Expected accountId,balance but got " + fields.size()
+          + " fields");
+    }
+    parsed.accountId = fields.get(0).trim();
+    parsed.balance = fields.get(1).trim().isEmpty() ? null : decimal(fields.get(1).trim());
+  }
+
+  private static BigDecimal decimal(String text) {
+    try {
+      return new BigDecimal(text);
+    } catch (NumberFormatException nfe) {
+      throw new IllegalArgumentException("Invalid balance " + text);
+    }
+  }
+
+  private static boolean isCsvHeader(String line) {
+    return CSV_HEADER.matcher(line).matches();
+  }
+
+  /**
+   * Fields of the line being imported, reused across the lines of a chunk.
+   */
+  private static final class Line {
+
+    private String accountId;
+    private BigDecimal balance;
+  }
+
+  private static final class Outcome {
+
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong reported = new AtomicLong();
+    private final Queue<AccountImportError> errors = new ConcurrentLinkedQueue<>();
+
+    private void report(int maxReportedErrors, AccountImportError error) {
+      if (reported.getAndIncrement() < maxReportedErrors) {
+        errors.add(error);
+      }
+    }
+  }
+}
@@ -1,14 +1,31 @@
 package com.db.awmd.challenge.service;
 
+import com.db.awmd.challenge.audit.TransferAuditLog;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountSnapshot;
+import com.db.awmd.challenge.domain.AccountSnapshotsResponse;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.Money;
 import com.db.awmd.challenge.domain.TransferRequest;
 import com.db.awmd.challenge.domain.TransferResponse;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.AccountVersionMismatchException;
+import com.db.awmd.challenge.exception.BatchTransferException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.history.TransactionHistory;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.metrics.TransferMetrics.Outcome;
+import com.db.awmd.challenge.replication.ChangeStream;
 import com.db.awmd.challenge.repository.AccountsRepository;
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -21,6 +38,28 @@ public class AccountsService {
   @Autowired
   private NotificationService notificationService;
 
+  @Autowired
+  private TransferMetrics transferMetrics;
+
+  @Autowired
+  private TransferAuditLog transferAuditLog;
+
+  @Autowired
+  private IdempotencyCache idempotencyCache;
+
+  @Autowired
+  private TransactionHistory transactionHistory;
+
+  @Autowired
+  private ChangeStream changeStream;
+
+  /**
+   * Every transfer is audited, but only about one in this many is also logged at INFO level; zero
+   * turns the application log of transfers off.
+   */
+  @Value("${accounts.logging.transfer-sample-rate:1000}")
+  private int transferLogSampleRate;
+
   @Autowired
   public AccountsService(AccountsRepository accountsRepository) {
     this.accountsRepository = accountsRepository;
@@ -30,51 +69,323 @@ public class AccountsService {
     this.accountsRepository.createAccount(account);
   }
 
+  /**
+   * Method used to drop every account. The change stream starts over, so that replicas drop the
+   * accounts they cached rather than keep them at the versions they had before.
+   */
+  public void clearAccounts() {
+    this.accountsRepository.clearAccounts();
+    changeStream.reset();
+  }
+
   public Account getAccount(String accountId) {
     return this.accountsRepository.getAccount(accountId);
   }
 
   /**
-   * Method is used for money transfer. Money is transferred from one account to another.
+   * Method used to read an account without taking any lock, see
+   * {@link AccountsRepository#getBalanceSnapshot(String)}.
+   *
+   * @param accountId Account id.
+   * @return Snapshot of the account, or {@code null} if there is no such account.
+   */
+  public AccountSnapshot getAccountSnapshot(String accountId) {
+    final BalanceSnapshot snapshot = this.accountsRepository.getBalanceSnapshot(accountId);
+    return snapshot == null ? null : new AccountSnapshot(accountId, snapshot);
+  }
+
+  /**
+   * Method used to read many accounts without taking any lock. Every snapshot is consistent in
+   * itself, but the accounts are read one after the other rather than at a single point in time.
+   *
+   * @param accountIds Account ids.
+   * @return {@code AccountSnapshotsResponse} with the accounts found and the ids not found.
+   */
+  public AccountSnapshotsResponse getAccountSnapshots(List<String> accountIds) {
+    final List<AccountSnapshot> accounts = new ArrayList<>(accountIds.size());
+    final List<String> notFound = new ArrayList<>();
+    for (String accountId : accountIds) {
+      final AccountSnapshot snapshot = getAccountSnapshot(accountId);
+      if (snapshot == null) {
+        notFound.add(accountId);
+      } else {
+        accounts.add(snapshot);
+      }
+    }
+    return new AccountSnapshotsResponse(accounts, notFound);
+  }
+
+  /**
+   * Method is used for money transfer. Money is transferred from one account to another. A request
+   * carrying a request id is executed at most once per id, see {@link IdempotencyCache}.
    *
    * @param transferRequest Transfer request contains both account details and amount to transfer.
    * @return {@code TransferResponse} An object which is returned by API with status and message.
    */
   public TransferResponse transferAmount(final TransferRequest transferRequest) {
-    Account transferFromAccount = accountsRepository.getAccount(transferRequest.getAccountFromId());
-    Account transferToAccount = accountsRepository.getAccount(transferRequest.getAccountToId());
+    final String requestId = transferRequest.getRequestId();
+    if (requestId == null) {
+      return transferOnce(transferRequest);
+    }
+    return idempotencyCache.execute(requestId, fingerprint(transferRequest),
+        () -> transferOnce(transferRequest));
+  }
+
+  /**
+   * Method is used for money transfer without blocking the calling thread while the repository
+   * applies it, see {@link AccountsRepository#transferAsync(Account, Account, long)}.
+   *
+   * @param transferRequest Transfer request contains both account details and amount to transfer.
+   * @return Future of the {@code TransferResponse}, failed with the same exceptions
+   * {@link #transferAmount(TransferRequest)} throws.
+   */
+  public CompletableFuture<TransferResponse> transferAmountAsync(
+      final TransferRequest transferRequest) {
+    final String requestId = transferRequest.getRequestId();
+    if (requestId == null) {
+      return transferOnceAsync(transferRequest);
+    }
+    return idempotencyCache.executeAsync(requestId, fingerprint(transferRequest),
+        () -> transferOnceAsync(transferRequest));
+  }
+
+  private TransferResponse transferOnce(final TransferRequest transferRequest) {
+    // the amount is converted into minor units once, the rest of the path works on a long
+    final String amountText = transferRequest.getAmount().toString();
+    final Long expectedVersion = transferRequest.getExpectedVersion();
+    transfer(transferRequest.getAccountFromId(), transferRequest.getAccountToId(),
+        Money.toMinorUnits(transferRequest.getAmount()), amountText,
+        expectedVersion == null ? Account.ANY_VERSION : expectedVersion);
+    return response(transferRequest, amountText);
+  }
+
+  private CompletableFuture<TransferResponse> transferOnceAsync(
+      final TransferRequest transferRequest) {
+    if (transferRequest.getExpectedVersion() != null) {
+      // a conditional transfer is applied before the future is returned
+      try {
+        return CompletableFuture.completedFuture(transferOnce(transferRequest));
+      } catch (RuntimeException re) {
+        return failed(re);
+      }
+    }
+    final String amountText = transferRequest.getAmount().toString();
+    final long amount;
+    try {
+      amount = Money.toMinorUnits(transferRequest.getAmount());
+    } catch (ArithmeticException ae) {
+      return failed(ae);
+    }
+    return transferAsync(transferRequest.getAccountFromId(), transferRequest.getAccountToId(),
+        amount, amountText).thenApply(ignored -> response(transferRequest, amountText));
+  }
+
+  private static TransferResponse response(TransferRequest transferRequest, String amountText) {
+    return new TransferResponse(true,
+        amountText + " amount has been transferred from account " + transferRequest
+            .getAccountFromId() + " to " + transferRequest.getAccountToId());
+  }
+
+  private static String fingerprint(TransferRequest transferRequest) {
+    return transferRequest.getAccountFromId() + '\u0000' + transferRequest.getAccountToId()
+        + '\u0000' + transferRequest.getAmount().stripTrailingZeros().toPlainString()
+        + '\u0000' + transferRequest.getExpectedVersion();
+  }
+
+  /**
+   * Method is used for money transfer when the amount is already expressed in minor units.
+   *
+   * @param accountFromId Money being transferred from account.
+   * @param accountToId Money being transferred to account.
+   * @param amount Amount in minor units, see {@link Money}.
+   */
+  public void transfer(final String accountFromId, final String accountToId, final long amount) {
+    transfer(accountFromId, accountToId, amount, Money.toBigDecimal(amount).toString(),
+        Account.ANY_VERSION);
+  }
+
+  /**
+   * Asynchronous variant of {@link #transfer(String, String, long)}.
+   *
+   * @param accountFromId Money being transferred from account.
+   * @param accountToId Money being transferred to account.
+   * @param amount Amount in minor units, see {@link Money}.
+   * @return Future completed once the transfer is applied.
+   */
+  public CompletableFuture<Void> transferAsync(final String accountFromId,
+      final String accountToId, final long amount) {
+    return transferAsync(accountFromId, accountToId, amount,
+        Money.toBigDecimal(amount).toString());
+  }
+
+  /**
+   * Method used to settle an authorization hold into another account. The transfer is audited,
+   * recorded and notified like any other.
+   *
+   * @param fromAccount Account the funds are held on.
+   * @param toAccount Account credited.
+   * @param amount Amount in minor units held.
+   */
+  public void captureHold(final Account fromAccount, final Account toAccount, final long amount) {
+    final long started = System.nanoTime();
+    try {
+      accountsRepository.captureHold(fromAccount, toAccount, amount);
+    } catch (ArithmeticException | IllegalStateException ex) {
+      recordFailure(ex, fromAccount.getAccountId(), toAccount.getAccountId(), amount);
+      throw ex;
+    }
+    transferred(fromAccount, toAccount, amount, Money.toBigDecimal(amount).toString(), started);
+  }
+
+  /**
+   * Method used to apply many transfers as one, see
+   * {@link AccountsRepository#transferAll(Account[], Account[], long[])}. Once applied, every
+   * transfer is audited, recorded and notified like any other; a rejected batch changed nothing
+   * and only the transfer it was rejected for is audited as failed.
+   *
+   * @param transferRequests Transfers in order.
+   * @param amounts Amounts of the transfers in minor units.
+   * @throws BatchTransferException naming the transfer the batch was rejected for.
+   */
+  public void transferAll(final List<TransferRequest> transferRequests, final long[] amounts) {
+    final long started = System.nanoTime();
+    final Account[] fromAccounts = new Account[amounts.length];
+    final Account[] toAccounts = new Account[amounts.length];
+    for (int i = 0; i < amounts.length; i++) {
+      final TransferRequest transferRequest = transferRequests.get(i);
+      fromAccounts[i] = accountsRepository.getAccount(transferRequest.getAccountFromId());
+      toAccounts[i] = accountsRepository.getAccount(transferRequest.getAccountToId());
+      final AccountNotFoundException notFound = checkAccountExistence(
+          transferRequest.getAccountFromId(), fromAccounts[i], transferRequest.getAccountToId(),
+          toAccounts[i], amounts[i]);
+      if (notFound != null) {
+        throw new BatchTransferException(i, notFound.getMessage());
+      }
+    }
+    final long lookedUp = System.nanoTime();
+    transferMetrics.recordLookup(lookedUp - started);
+
+    try {
+      accountsRepository.transferAll(fromAccounts, toAccounts, amounts);
+    } catch (BatchTransferException bte) {
+      final TransferRequest rejected = transferRequests.get(bte.getIndex());
+      recordFailure(bte, rejected.getAccountFromId(), rejected.getAccountToId(),
+          amounts[bte.getIndex()]);
+      throw bte;
+    }
+    for (int i = 0; i < amounts.length; i++) {
+      transferred(fromAccounts[i], toAccounts[i], amounts[i],
+          transferRequests.get(i).getAmount().toString(), lookedUp);
+    }
+  }
+
+  private void transfer(final String accountFromId, final String accountToId, final long amount,
+      final String amountText, final long expectedVersion) {
+    final long started = System.nanoTime();
+    Account transferFromAccount = accountsRepository.getAccount(accountFromId);
+    Account transferToAccount = accountsRepository.getAccount(accountToId);
+    final long lookedUp = System.nanoTime();
+    transferMetrics.recordLookup(lookedUp - started);
 
     // check if the accounts are valid or present
-    checkAccountExistence(transferRequest, transferFromAccount, transferToAccount);
+    final AccountNotFoundException notFound = checkAccountExistence(accountFromId,
+        transferFromAccount, accountToId, transferToAccount, amount);
+    if (notFound != null) {
+      throw notFound;
+    }
 
-    final BigDecimal transferAmount = transferRequest.getAmount();
-    accountsRepository
-        .transferBetweenAccounts(transferFromAccount, transferToAccount, transferAmount);
-    notificationService.notifyAboutTransfer(transferFromAccount,
-        "Your account has been debited with " + transferAmount);
-    notificationService.notifyAboutTransfer(transferToAccount,
-        "Your account has been credited with " + transferAmount);
+    try {
+      if (expectedVersion == Account.ANY_VERSION) {
+        accountsRepository.transferBetweenAccounts(transferFromAccount, transferToAccount, amount);
+      } else {
+        accountsRepository.transferIfVersion(transferFromAccount, transferToAccount, amount,
+            expectedVersion);
+      }
+    } catch (InsufficientBalanceException | ArithmeticException
+        | AccountVersionMismatchException ex) {
+      recordFailure(ex, accountFromId, accountToId, amount);
+      throw ex;
+    }
+    transferred(transferFromAccount, transferToAccount, amount, amountText, lookedUp);
+  }
+
+  private CompletableFuture<Void> transferAsync(final String accountFromId,
+      final String accountToId, final long amount, final String amountText) {
+    final long started = System.nanoTime();
+    final Account transferFromAccount = accountsRepository.getAccount(accountFromId);
+    final Account transferToAccount = accountsRepository.getAccount(accountToId);
+    final long lookedUp = System.nanoTime();
+    transferMetrics.recordLookup(lookedUp - started);
 
-    final String message =
-        transferAmount + " amount has been transferred from account " + transferFromAccount
-            .getAccountId() + " to " + transferToAccount.getAccountId();
-    log.info(message);
+    final AccountNotFoundException notFound = checkAccountExistence(accountFromId,
+        transferFromAccount, accountToId, transferToAccount, amount);
+    if (notFound != null) {
+      return failed(notFound);
+    }
 
-    return new TransferResponse(true, message);
+    // runs on the thread completing the repository future, so it only does cheap bookkeeping
+    return accountsRepository.transferAsync(transferFromAccount, transferToAccount, amount)
+        .whenComplete((ignored, failure) -> {
+          if (failure == null) {
+            transferred(transferFromAccount, transferToAccount, amount, amountText, lookedUp);
+          } else {
+            recordFailure(failure, accountFromId, accountToId, amount);
+          }
+        });
   }
 
-  private void checkAccountExistence(TransferRequest transferRequest, Account transferFromAccount,
-      Account transferToAccount) {
+  private void transferred(Account transferFromAccount, Account transferToAccount, long amount,
+      String amountText, long lookedUp) {
+    final String accountFromId = transferFromAccount.getAccountId();
+    final String accountToId = transferToAccount.getAccountId();
+    transferMetrics.recordCommit(System.nanoTime() - lookedUp);
+    record(Outcome.SUCCESS, accountFromId, accountToId, amount);
+    transactionHistory.record(accountFromId, accountToId, amount);
+    changeStream.record(accountFromId);
+    changeStream.record(accountToId);
+    if (transferLogSampleRate > 0 && log.isInfoEnabled()
+        && ThreadLocalRandom.current().nextInt(transferLogSampleRate) == 0) {
+      log.info("{} amount has been transferred from account {} to {} (sampled, 1 in {})",
+          amountText, accountFromId, accountToId, transferLogSampleRate);
+    }
+    notificationService.notifyAboutTransfer(transferFromAccount,
+        "Your account has been debited with " + amountText);
+    notificationService.notifyAboutTransfer(transferToAccount,
+        "Your account has been credited with " + amountText);
+  }
+
+  private AccountNotFoundException checkAccountExistence(String accountFromId,
+      Account transferFromAccount, String accountToId, Account transferToAccount, long amount) {
+    if (transferFromAccount == null || transferToAccount == null) {
+      record(Outcome.NOT_FOUND, accountFromId, accountToId, amount);
+    }
+
     if (transferFromAccount == null) {
-      final String error = "Account with id " + transferRequest.getAccountFromId() + " not found.";
-      log.error(error);
-      throw new AccountNotFoundException(error);
+      return new AccountNotFoundException("Account with id " + accountFromId + " not found.");
     }
 
     if (transferToAccount == null) {
-      final String error = "Account with id " + transferRequest.getAccountToId() + " not found.";
-      log.error(error);
-      throw new AccountNotFoundException(error);
+      return new AccountNotFoundException("Account with id " + accountToId + " not found.");
     }
+    return null;
+  }
+
+  private void recordFailure(Throwable failure, String accountFromId, String accountToId,
+      long amount) {
+    final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+        ? failure.getCause() : failure;
+    record(cause instanceof InsufficientBalanceException ? Outcome.INSUFFICIENT_BALANCE
+        : Outcome.REJECTED, accountFromId, accountToId, amount);
+  }
+
+  private void record(Outcome outcome, String accountFromId, String accountToId, long amount) {
+    transferMetrics.recordOutcome(outcome);
+    transferAuditLog.publish(outcome, accountFromId, accountToId, amount);
+  }
+
+  private static <T> CompletableFuture<T> failed(Throwable failure) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    result.completeExceptionally(failure);
+    return result;
   }
 }
@@ -0,0 +1,349 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+/**
+ * Decorator which takes notifications off the transfer path. Notifications are put on a bounded
+ * queue shared by all request threads and a single background dispatcher hands them to the
+ * wrapped {@link NotificationService}. Notifications for the same account which arrive within the
+ * coalescing window are merged into one call.
+ *
+ * <p>When the queue is full the configured {@link BackpressurePolicy} applies. Pending
+ * notifications, including spilled ones, are delivered before the application shuts down.
+ *
+ * @author jeevan
+ */
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "accounts.notifications", name = "async", havingValue = "true",
+    matchIfMissing = true)
+@Slf4j
+public class AsyncNotificationService implements NotificationService {
+
+  /**
+   * What to do with a notification when the queue is full.
+   */
+  public enum BackpressurePolicy {
+    /**
+     * Wait for the dispatcher to make room, slowing the transfer down.
+     */
+    BLOCK,
+    /**
+     * Discard the oldest queued notification.
+     */
+    DROP_OLDEST,
+    /**
+     * Append the notification to a file which the dispatcher replays in slices between batches
+     * of the queue.
+     */
+    SPILL
+  }
+
+  private static final int MAX_BATCH = 1024;
+
+  private final NotificationService delegate;
+
+  private final AccountsRepository accountsRepository;
+
+  private final BlockingQueue<PendingNotification> queue;
+
+  private final long coalesceWindowNanos;
+
+  private final BackpressurePolicy backpressurePolicy;
+
+  private final File spillFile;
+
+  private final Object spillLock = new Object();
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  private DataOutputStream spillOutput;
+
+  /**
+   * Spilled notifications being replayed, used by the dispatcher alone.
+   */
+  private DataInputStream replayInput;
+
+  private volatile boolean running;
+
+  private Thread dispatcher;
+
+  @Autowired
+  public AsyncNotificationService(
+      @Qualifier("emailNotificationService") NotificationService delegate,
+      AccountsRepository accountsRepository,
+      @Value("${accounts.notifications.queue-capacity:65536}") int queueCapacity,
+      @Value("${accounts.notifications.coalesce-window-ms:50}") long coalesceWindowMillis,
+      @Value("${accounts.notifications.backpressure:BLOCK}") BackpressurePolicy backpressurePolicy,
+      @Value("${accounts.notifications.spill-file:notifications.spill}") String spillFile) {
+    this.delegate = delegate;
+    this.accountsRepository = accountsRepository;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.coalesceWindowNanos = TimeUnit.MILLISECONDS.toNanos(coalesceWindowMillis);
+    this.backpressurePolicy = backpressurePolicy;
+    this.spillFile = new File(spillFile);
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    dispatcher = new Thread(this::dispatch, "notification-dispatcher");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * Stops waiting for new notifications and blocks until everything queued or spilled has been
+   * delivered.
+   */
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    running = false;
+    dispatcher.join();
+    synchronized (spillLock) {
+      closeSpillOutput();
+    }
+  }
+
+  @Override
+  public void notifyAboutTransfer(Account account, String transferDescription) {
+    final PendingNotification notification = new PendingNotification(account,
+        transferDescription);
+    if (queue.offer(notification)) {
+      return;
+    }
+    switch (backpressurePolicy) {
+      case DROP_OLDEST:
+        while (!queue.offer(notification)) {
+          if (queue.poll() != null) {
+            dropped.incrementAndGet();
+          }
+        }
+        break;
+      case SPILL:
+        spill(notification);
+        break;
+      default:
+        try {
+          queue.put(notification);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          dropped.incrementAndGet();
+        }
+    }
+  }
+
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * Number of notifications discarded by {@link BackpressurePolicy#DROP_OLDEST}.
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  private void dispatch() {
+    final List<PendingNotification> batch = new ArrayList<>();
+    boolean spilled = true;
+    while (true) {
+      try {
+        final PendingNotification first = queue.poll(spilled ? 0 : 100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          spilled = replaySpilled();
+          if (!running && !spilled && queue.isEmpty()) {
+            return;
+          }
+          continue;
+        }
+        batch.add(first);
+        // keep collecting for the coalescing window, unless shutting down
+        final long deadline = System.nanoTime() + coalesceWindowNanos;
+        while (batch.size() < MAX_BATCH && running) {
+          final long remaining = deadline - System.nanoTime();
+          final PendingNotification next =
+              remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        queue.drainTo(batch, MAX_BATCH - batch.size());
+        deliver(batch);
+        // one slice of spilled notifications per batch, so they move under sustained load too
+        spilled = replaySpilled();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException re) {
+        log.error("Failed to deliver notifications", re);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void deliver(List<PendingNotification> batch) {
+    final Map<String, PendingNotification> byAccount = new LinkedHashMap<>();
+    for (PendingNotification notification : batch) {
+      final PendingNotification previous = byAccount
+          .putIfAbsent(notification.account.getAccountId(), notification);
+      if (previous != null) {
+        previous.merge(notification);
+      }
+    }
+    for (PendingNotification notification : byAccount.values()) {
+      delegate.notifyAboutTransfer(notification.account, notification.description());
+    }
+  }
+
+  private void spill(PendingNotification notification) {
+    synchronized (spillLock) {
+      try {
+        if (spillOutput == null) {
+          spillOutput = new DataOutputStream(
+              new BufferedOutputStream(new FileOutputStream(spillFile, true)));
+        }
+        spillOutput.writeUTF(notification.account.getAccountId());
+        spillOutput.writeUTF(notification.description());
+      } catch (IOException ioe) {
+        log.error("Could not spill notification for account {}",
+            notification.account.getAccountId(), ioe);
+        dropped.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Method used to deliver the next slice of spilled notifications, at most {@value #MAX_BATCH}.
+   * The spill file is renamed to a replay file which is read slice by slice; notifications spilled
+   * meanwhile go to a new spill file, replayed once the current one is done. A replay file left
+   * behind by a previous run is replayed first.
+   *
+   * @return {@code true} if spilled notifications may remain.
+   */
+  private boolean replaySpilled() {
+    final File replayFile = new File(spillFile.getPath() + ".replay");
+    if (replayInput == null) {
+      if (!replayFile.exists()) {
+        synchronized (spillLock) {
+          if (spillOutput == null && !spillFile.exists()) {
+            return false;
+          }
+          closeSpillOutput();
+          if (!spillFile.renameTo(replayFile)) {
+            log.error("Could not rename {} to replay it", spillFile);
+            return false;
+          }
+        }
+      }
+      try {
+        replayInput = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(replayFile)));
+      } catch (IOException ioe) {
+        log.error("Could not replay spilled notifications from {}", replayFile, ioe);
+        return false;
+      }
+    }
+    final List<PendingNotification> batch = new ArrayList<>();
+    boolean finished = false;
+    try {
+      while (batch.size() < MAX_BATCH) {
+        final String accountId;
+        try {
+          accountId = replayInput.readUTF();
+        } catch (EOFException eof) {
+          finished = true;
+          break;
+        }
+        final String description = replayInput.readUTF();
+        final Account account = accountsRepository.getAccount(accountId);
+        batch.add(new PendingNotification(account == null ? new Account(accountId) : account,
+            description));
+      }
+    } catch (IOException ioe) {
+      log.error("Could not replay spilled notifications from {}", replayFile, ioe);
+      finished = true;
+    }
+    if (finished) {
+      try {
+        replayInput.close();
+      } catch (IOException ioe) {
+        log.warn("Could not close {}", replayFile, ioe);
+      }
+      replayInput = null;
+      if (!replayFile.delete()) {
+        log.warn("Could not delete {}", replayFile);
+      }
+    }
+    deliver(batch);
+    return true;
+  }
+
+  private void closeSpillOutput() {
+    if (spillOutput == null) {
+      return;
+    }
+    try {
+      spillOutput.close();
+    } catch (IOException ioe) {
+      log.error("Could not close spill file {}", spillFile, ioe);
+    }
+    spillOutput = null;
+  }
+
+  private static final class PendingNotification {
+
+    private final Account account;
+    private String description;
+    private StringBuilder merged;
+
+    private PendingNotification(Account account, String description) {
+      this.account = account;
+      this.description = description;
+    }
+
+    private void merge(PendingNotification other) {
+      if (merged == null) {
+        merged = new StringBuilder(description);
+      }
+      merged.append('\n').append(other.description);
+    }
+
+    private String description() {
+      if (merged != null) {
+        description = merged.toString();
+        merged = null;
+      }
+      return description;
+    }
+  }
+}
@@ -0,0 +1,307 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.BatchTransferItemResult;
+import com.db.awmd.challenge.domain.BatchTransferMode;
+import com.db.awmd.challenge.domain.BatchTransferResponse;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.BatchTransferException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service executing many transfers in one call. Best effort transfers are partitioned into groups
+ * which share no account (connected components of the account graph); each group is executed
+ * sequentially in submission order, so ordering per account is preserved, while independent
+ * groups run in parallel on a fork-join pool. All-or-nothing batches are handed to the repository
+ * as one, which applies every transfer or none.
+ *
+ * @author jeevan
+ */
+@Service
+@Slf4j
+public class BatchTransferService {
+
+  /**
+   * Small groups are packed together until a task has at least this many transfers, so that a
+   * batch of unrelated transfers does not turn into one fork-join task per transfer.
+   */
+  private static final int MIN_TRANSFERS_PER_TASK = 256;
+
+  private final AccountsService accountsService;
+
+  private final Validator validator;
+
+  private final IdempotencyCache idempotencyCache;
+
+  private final ForkJoinPool pool;
+
+  @Autowired
+  public BatchTransferService(AccountsService accountsService, Validator validator,
+      IdempotencyCache idempotencyCache,
+      @Value("${accounts.batch.parallelism:0}") int parallelism) {
+    this.accountsService = accountsService;
+    this.validator = validator;
+    this.idempotencyCache = idempotencyCache;
+    this.pool = new ForkJoinPool(
+        parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  /**
+   * Method used to execute a batch of transfers. A batch sent with an idempotency key is executed
+   * at most once per key, see {@link IdempotencyCache}.
+   *
+   * @param transferRequests Transfers in submission order.
+   * @param mode Whether the batch is applied atomically or item by item.
+   * @param idempotencyKey Key chosen by the client, or {@code null}.
+   * @return {@code BatchTransferResponse} with one result per submitted transfer.
+   */
+  public BatchTransferResponse transferBatch(final List<TransferRequest> transferRequests,
+      final BatchTransferMode mode, final String idempotencyKey) {
+    if (idempotencyKey == null) {
+      return transferBatch(transferRequests, mode);
+    }
+    return idempotencyCache.execute(idempotencyKey, fingerprint(transferRequests, mode),
+        () -> transferBatch(transferRequests, mode));
+  }
+
+  /**
+   * Method used to execute a batch of transfers.
+   *
+   * @param transferRequests Transfers in submission order.
+   * @param mode Whether the batch is applied atomically or item by item.
+   * @return {@code BatchTransferResponse} with one result per submitted transfer.
+   */
+  public BatchTransferResponse transferBatch(final List<TransferRequest> transferRequests,
+      final BatchTransferMode mode) {
+    final int size = transferRequests.size();
+    final BatchTransferItemResult[] results = new BatchTransferItemResult[size];
+    final long[] amounts = new long[size];
+
+    final boolean valid = validate(transferRequests, amounts, results);
+    if (mode == BatchTransferMode.ALL_OR_NOTHING) {
+      if (valid) {
+        transferAll(transferRequests, amounts, results);
+      }
+      return response(mode, results, "Not executed, batch rejected.");
+    }
+
+    final int[] order = new int[size];
+    final int[] groupEnds = partition(transferRequests, results, order);
+    final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    int taskStart = 0;
+    for (int g = 0; g < groupEnds.length; g++) {
+      final int groupEnd = groupEnds[g];
+      if (groupEnd - taskStart >= MIN_TRANSFERS_PER_TASK || g == groupEnds.length - 1) {
+        final int from = taskStart;
+        final int to = groupEnd;
+        tasks.add(pool.submit(() -> execute(transferRequests, amounts, order, from, to,
+            results)));
+        taskStart = groupEnd;
+      }
+    }
+    tasks.forEach(ForkJoinTask::join);
+    return response(mode, results, null);
+  }
+
+  /**
+   * Method used to apply an all-or-nothing batch in one go, see
+   * {@link AccountsService#transferAll(List, long[])}. A rejected batch changed no account, so
+   * there is nothing to roll back.
+   */
+  private void transferAll(List<TransferRequest> transferRequests, long[] amounts,
+      BatchTransferItemResult[] results) {
+    try {
+      accountsService.transferAll(transferRequests, amounts);
+    } catch (BatchTransferException bte) {
+      results[bte.getIndex()] = new BatchTransferItemResult(bte.getIndex(), false,
+          bte.getMessage());
+      return;
+    }
+    for (int i = 0; i < results.length; i++) {
+      results[i] = transferred(i, transferRequests.get(i));
+    }
+  }
+
+  private boolean validate(List<TransferRequest> transferRequests, long[] amounts,
+      BatchTransferItemResult[] results) {
+    boolean valid = true;
+    for (int i = 0; i < results.length; i++) {
+      final TransferRequest transferRequest = transferRequests.get(i);
+      final Set<ConstraintViolation<TransferRequest>> violations =
+          validator.validate(transferRequest);
+      if (!violations.isEmpty()) {
+        final ConstraintViolation<TransferRequest> violation = violations.iterator().next();
+        results[i] = new BatchTransferItemResult(i, false,
+            violation.getPropertyPath() + " " + violation.getMessage());
+        valid = false;
+        continue;
+      }
+      try {
+        amounts[i] = Money.toMinorUnits(transferRequest.getAmount());
+      } catch (ArithmeticException ae) {
+        results[i] = new BatchTransferItemResult(i, false, "Invalid amount " + transferRequest
+            .getAmount());
+        valid = false;
+      }
+    }
+    return valid;
+  }
+
+  /**
+   * Method used to group transfers by connected accounts with a union-find over account ids.
+   *
+   * @param order Filled with the indexes of the transfers to execute, grouped and in submission
+   * order within each group.
+   * @return End offset (exclusive) of every group within {@code order}.
+   */
+  private int[] partition(List<TransferRequest> transferRequests,
+      BatchTransferItemResult[] results, int[] order) {
+    final Map<String, Integer> accountIndexes = new HashMap<>();
+    final int[] parent = new int[2 * results.length];
+    final int[] fromIndexes = new int[results.length];
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] != null) {
+        continue;
+      }
+      final TransferRequest transferRequest = transferRequests.get(i);
+      final int from = indexOf(accountIndexes, parent, transferRequest.getAccountFromId());
+      final int to = indexOf(accountIndexes, parent, transferRequest.getAccountToId());
+      parent[find(parent, from)] = find(parent, to);
+      fromIndexes[i] = from;
+    }
+
+    // stable counting sort of the transfers by the root of their group
+    final int[] counts = new int[accountIndexes.size() + 1];
+    final int[] roots = new int[results.length];
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] == null) {
+        roots[i] = find(parent, fromIndexes[i]);
+        counts[roots[i] + 1]++;
+      }
+    }
+    int groups = 0;
+    for (int r = 1; r < counts.length; r++) {
+      if (counts[r] > 0) {
+        groups++;
+      }
+      counts[r] += counts[r - 1];
+    }
+    final int[] groupEnds = new int[groups];
+    int g = 0;
+    for (int r = 1; r < counts.length; r++) {
+      if (counts[r] > counts[r - 1]) {
+        groupEnds[g++] = counts[r];
+      }
+    }
+    final int[] next = Arrays.copyOf(counts, counts.length);
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] == null) {
+        order[next[roots[i]]++] = i;
+      }
+    }
+    return groupEnds;
+  }
+
+  private static int indexOf(Map<String, Integer> accountIndexes, int[] parent, String accountId) {
+    Integer index = accountIndexes.get(accountId);
+    if (index == null) {
+      index = accountIndexes.size();
+      accountIndexes.put(accountId, index);
+      parent[index] = index;
+    }
+    return index;
+  }
+
+  private static int find(int[] parent, int index) {
+    while (parent[index] != index) {
+      parent[index] = parent[parent[index]];
+      index = parent[index];
+    }
+    return index;
+  }
+
+  private void execute(List<TransferRequest> transferRequests, long[] amounts, int[] order,
+      int from, int to, BatchTransferItemResult[] results) {
+    for (int position = from; position < to; position++) {
+      final int i = order[position];
+      final TransferRequest transferRequest = transferRequests.get(i);
+      try {
+        accountsService.transfer(transferRequest.getAccountFromId(),
+            transferRequest.getAccountToId(), amounts[i]);
+        results[i] = transferred(i, transferRequest);
+      } catch (AccountNotFoundException | InsufficientBalanceException | ArithmeticException ex) {
+        results[i] = new BatchTransferItemResult(i, false, ex.getMessage());
+      } catch (RuntimeException re) {
+        // other transfers of the batch may have gone through, so the batch must still answer
+        log.error("Transfer {} of batch failed unexpectedly", i, re);
+        results[i] = new BatchTransferItemResult(i, false, re.getMessage());
+      }
+    }
+  }
+
+  private static BatchTransferItemResult transferred(int index, TransferRequest transferRequest) {
+    return new BatchTransferItemResult(index, true,
+        transferRequest.getAmount() + " amount has been transferred from account "
+            + transferRequest.getAccountFromId() + " to " + transferRequest.getAccountToId());
+  }
+
+  /**
+   * Method used to identify a batch by a digest of its transfers, so that the idempotency cache
+   * does not hold on to whole batches.
+   */
+  private static String fingerprint(List<TransferRequest> transferRequests,
+      BatchTransferMode mode) {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new IllegalStateException(nsae);
+    }
+    for (TransferRequest transferRequest : transferRequests) {
+      final String item = transferRequest.getAccountFromId() + '\u0000'
+          + transferRequest.getAccountToId() + '\u0000' + (transferRequest.getAmount() == null
+          ? null : transferRequest.getAmount().stripTrailingZeros().toPlainString()) + '\n';
+      digest.update(item.getBytes(StandardCharsets.UTF_8));
+    }
+    return "batch\u0000" + mode + '\u0000' + Base64.getEncoder().encodeToString(digest.digest());
+  }
+
+  private BatchTransferResponse response(BatchTransferMode mode,
+      BatchTransferItemResult[] results, String notExecutedMessage) {
+    int succeeded = 0;
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] == null) {
+        results[i] = new BatchTransferItemResult(i, false, notExecutedMessage);
+      } else if (results[i].isStatus()) {
+        succeeded++;
+      }
+    }
+    final int failed = results.length - succeeded;
+    return new BatchTransferResponse(mode, failed == 0, succeeded, failed, Arrays.asList(results));
+  }
+}
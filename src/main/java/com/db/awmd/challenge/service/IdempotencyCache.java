@@ -0,0 +1,209 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Remembers the response of every transfer, or batch of transfers, made with an idempotency key,
+ * so that a retried request gets the original response instead of moving the money again.
+ *
+ * <p>Keys are spread over independently locked shards. Each shard keeps its entries in insertion
+ * order, which is also expiry order, and evicts from the oldest end once an entry has outlived the
+ * time-to-live or the shard holds more than its share of the maximum size. A request arriving while
+ * the first one with the same key is still executing waits for that execution's result.
+ *
+ * <p>Only responses are remembered. A transfer failing with an exception moved no money, so its
+ * entry is dropped and a retry executes again. A batch reports failed transfers in its response,
+ * which is remembered whatever the outcome: some of its transfers may have been applied.
+ *
+ * @author jeevan
+ */
+@Component
+public class IdempotencyCache {
+
+  private final Shard[] shards;
+
+  private final int mask;
+
+  private final long ttlNanos;
+
+  private final int maxEntriesPerShard;
+
+  @Autowired
+  public IdempotencyCache(@Value("${accounts.idempotency.shards:64}") int shards,
+      @Value("${accounts.idempotency.max-entries:100000}") int maxEntries,
+      @Value("${accounts.idempotency.ttl-seconds:3600}") long ttlSeconds) {
+    final int size = Math.max(Integer.highestOneBit(Math.max(shards, 1) - 1) << 1, 1);
+    this.shards = new Shard[size];
+    for (int i = 0; i < size; i++) {
+      this.shards[i] = new Shard();
+    }
+    this.mask = size - 1;
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    this.maxEntriesPerShard = Math.max(1, maxEntries / size);
+  }
+
+  /**
+   * Method used to execute a transfer at most once per idempotency key.
+   *
+   * @param key Idempotency key chosen by the client.
+   * @param fingerprint Identifies the transfer, a key may not be reused for another transfer.
+   * @param transfer Executes the transfer, called only if the key is not known yet.
+   * @return Response of the first execution with this key.
+   * @throws IdempotencyKeyReusedException If the key was used for a different transfer.
+   */
+  public <T> T execute(String key, String fingerprint, Supplier<T> transfer) {
+    try {
+      return executeAsync(key, fingerprint, () -> {
+        final CompletableFuture<T> response = new CompletableFuture<>();
+        try {
+          response.complete(transfer.get());
+        } catch (RuntimeException re) {
+          response.completeExceptionally(re);
+        }
+        return response;
+      }).join();
+    } catch (CompletionException ce) {
+      // rethrow what the transfer threw, whether it ran here or in a concurrent duplicate
+      if (ce.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ce.getCause();
+      }
+      throw ce;
+    }
+  }
+
+  /**
+   * Method used to execute an asynchronous transfer at most once per idempotency key.
+   *
+   * @param key Idempotency key chosen by the client.
+   * @param fingerprint Identifies the transfer, a key may not be reused for another transfer.
+   * @param transfer Starts the transfer, called only if the key is not known yet.
+   * @return Future of the response of the first execution with this key, failed with
+   * {@link IdempotencyKeyReusedException} if the key was used for a different transfer.
+   */
+  public <T> CompletableFuture<T> executeAsync(String key, String fingerprint,
+      Supplier<CompletableFuture<T>> transfer) {
+    final Shard shard = shards[spread(key.hashCode()) & mask];
+    final long now = System.nanoTime();
+    final Entry entry;
+    final Entry existing;
+    synchronized (shard) {
+      shard.evict(now, ttlNanos, maxEntriesPerShard);
+      existing = shard.entries.get(key);
+      if (existing == null) {
+        entry = new Entry(fingerprint, now + ttlNanos);
+        shard.entries.put(key, entry);
+      } else {
+        entry = existing;
+      }
+    }
+
+    if (!entry.fingerprint.equals(fingerprint)) {
+      final CompletableFuture<T> rejected = new CompletableFuture<>();
+      rejected.completeExceptionally(new IdempotencyKeyReusedException(
+          "Idempotency key " + key + " was already used for a different transfer."));
+      return rejected;
+    }
+    if (existing != null) {
+      return entry.response();
+    }
+
+    CompletableFuture<T> started;
+    try {
+      started = transfer.get();
+    } catch (RuntimeException re) {
+      started = new CompletableFuture<>();
+      started.completeExceptionally(re);
+    }
+    started.whenComplete((response, failure) -> {
+      if (failure == null) {
+        entry.response.complete(response);
+        return;
+      }
+      synchronized (shard) {
+        shard.entries.remove(key, entry);
+      }
+      entry.response.completeExceptionally(
+          failure instanceof CompletionException && failure.getCause() != null
+              ? failure.getCause() : failure);
+    });
+    return entry.response();
+  }
+
+  /**
+   * Number of remembered keys, including ones still executing.
+   */
+  public int size() {
+    int size = 0;
+    for (Shard shard : shards) {
+      synchronized (shard) {
+        size += shard.entries.size();
+      }
+    }
+    return size;
+  }
+
+  public void clear() {
+    for (Shard shard : shards) {
+      synchronized (shard) {
+        shard.entries.clear();
+      }
+    }
+  }
+
+  private static int spread(int h) {
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    return h ^ (h >>> 13);
+  }
+
+  private static final class Shard {
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private void evict(long now, long ttlNanos, int maxEntries) {
+      final Iterator<Entry> oldest = entries.values().iterator();
+      while (oldest.hasNext()) {
+        final Entry entry = oldest.next();
+        if (entries.size() <= maxEntries && now - entry.expiresAt < 0) {
+          return;
+        }
+        // an entry still executing is kept, its first request is waiting for the result
+        if (!entry.response.isDone()) {
+          return;
+        }
+        oldest.remove();
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    private final String fingerprint;
+    private final long expiresAt;
+    private final CompletableFuture<Object> response = new CompletableFuture<>();
+
+    private Entry(String fingerprint, long expiresAt) {
+      this.fingerprint = fingerprint;
+      this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Fingerprints tell transfers and batches apart, so an entry is only ever read back with the
+     * type it was executed with.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> response() {
+      return (CompletableFuture<T>) response;
+    }
+  }
+}
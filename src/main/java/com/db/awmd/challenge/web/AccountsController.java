@@ -1,13 +1,34 @@
 package com.db.awmd.challenge.web;
 
+import com.db.awmd.challenge.admission.AdmissionControl;
+import com.db.awmd.challenge.admission.AdmissionControl.Rejection;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportFormat;
+import com.db.awmd.challenge.domain.AccountImportResponse;
+import com.db.awmd.challenge.domain.AccountSnapshot;
+import com.db.awmd.challenge.domain.BatchTransferMode;
+import com.db.awmd.challenge.domain.BatchTransferResponse;
 import com.db.awmd.challenge.domain.TransferRequest;
-import com.db.awmd.challenge.domain.TransferResponse;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.history.TransactionHistory;
+import com.db.awmd.challenge.service.AccountImportService;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BatchTransferService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -15,7 +36,9 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -23,11 +46,39 @@ import org.springframework.web.bind.annotation.RestController;
 @Slf4j
 public class AccountsController {
 
+  public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+  private static final int MAX_TRANSACTIONS_PAGE = 1000;
+
+  private static final int MAX_ACCOUNTS_PER_READ = 1000;
+
   private final AccountsService accountsService;
 
+  private final BatchTransferService batchTransferService;
+
+  private final AccountImportService accountImportService;
+
+  private final TransactionHistory transactionHistory;
+
+  private final ObjectReader transferRequestReader;
+
+  private final AdmissionControl admissionControl;
+
+  private final int maxBatchSize;
+
   @Autowired
-  public AccountsController(AccountsService accountsService) {
+  public AccountsController(AccountsService accountsService,
+      BatchTransferService batchTransferService, AccountImportService accountImportService,
+      TransactionHistory transactionHistory, ObjectMapper objectMapper,
+      AdmissionControl admissionControl,
+      @Value("${accounts.batch.max-size:1000}") int maxBatchSize) {
     this.accountsService = accountsService;
+    this.batchTransferService = batchTransferService;
+    this.accountImportService = accountImportService;
+    this.transactionHistory = transactionHistory;
+    this.transferRequestReader = objectMapper.readerFor(TransferRequest.class);
+    this.admissionControl = admissionControl;
+    this.maxBatchSize = maxBatchSize;
   }
 
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -43,24 +94,153 @@ public class AccountsController {
     return new ResponseEntity<>(HttpStatus.CREATED);
   }
 
+  /**
+   * API used to create many accounts in one call, one account per line. The body is read as a
+   * stream and never bound as a whole; lines which are malformed, invalid or duplicates are
+   * skipped and reported without failing the others.
+   *
+   * @param contentType {@code application/x-ndjson} or {@code text/csv}.
+   * @param body Request body stream.
+   * @return {@code AccountImportResponse} with the counts and the rejected lines.
+   */
+  @PostMapping(path = "/import", consumes = {APPLICATION_NDJSON_VALUE,
+      AccountImportFormat.TEXT_CSV_VALUE}, produces = MediaType.APPLICATION_JSON_VALUE)
+  public AccountImportResponse importAccounts(
+      @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body)
+      throws IOException {
+    return accountImportService
+        .importAccounts(body, AccountImportFormat.forContentType(contentType));
+  }
+
+  /**
+   * API used to read an account. The version of the account is sent as a strong {@code ETag},
+   * which a transfer can send back in {@code If-Match} to debit the account only if it has not
+   * changed since; a read whose {@code If-None-Match} names the current version is answered with
+   * 304 and no body.
+   *
+   * @param accountId Account id.
+   * @return {@code ResponseEntity<AccountSnapshot>}, with an empty body if there is no such
+   * account.
+   */
   @GetMapping(path = "/{accountId}")
-  public Account getAccount(@PathVariable String accountId) {
-    log.info("Retrieving account for id {}", accountId);
-    return this.accountsService.getAccount(accountId);
+  public ResponseEntity<AccountSnapshot> getAccount(@PathVariable String accountId) {
+    log.debug("Retrieving account for id {}", accountId);
+    final AccountSnapshot snapshot = this.accountsService.getAccountSnapshot(accountId);
+    if (snapshot == null) {
+      return new ResponseEntity<>(HttpStatus.OK);
+    }
+    // If-None-Match is compared with the ETag of the response by Spring MVC
+    final HttpHeaders headers = new HttpHeaders();
+    headers.setETag(etag(snapshot.getVersion()));
+    return new ResponseEntity<>(snapshot, headers, HttpStatus.OK);
   }
 
   /**
-   * API used to transfer money between two accounts.
+   * API used to read many accounts in one call, e.g. {@code GET /v1/accounts?ids=Id-1,Id-2}.
    *
-   * @param transferRequest Object which holds transfer request data.
-   * @return {@code ResponseEntity<TransferResponse>} JSON representation of transfer response
-   * object.
+   * @param ids Account ids, at most {@value #MAX_ACCOUNTS_PER_READ}.
+   * @return {@code ResponseEntity<AccountSnapshotsResponse>} with the accounts found and the ids
+   * not found.
    */
-  @PostMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-  public ResponseEntity<TransferResponse> transferAmount(
-      @RequestBody @Valid TransferRequest transferRequest) {
-    log.info("Incoming request to transfer money");
-    return new ResponseEntity<>(accountsService.transferAmount(transferRequest), HttpStatus.OK);
+  @GetMapping(params = "ids")
+  public ResponseEntity<Object> getAccounts(@RequestParam List<String> ids) {
+    if (ids.size() > MAX_ACCOUNTS_PER_READ) {
+      return new ResponseEntity<>("At most " + MAX_ACCOUNTS_PER_READ + " accounts can be read "
+          + "at once.", HttpStatus.BAD_REQUEST);
+    }
+    return new ResponseEntity<>(this.accountsService.getAccountSnapshots(ids), HttpStatus.OK);
   }
 
+  /**
+   * API used to page through the transactions of an account, newest first. Every page costs time
+   * in proportion to its size, however long the history is.
+   *
+   * @param accountId Account id.
+   * @param cursor {@code nextCursor} of the previous page, absent for the first page.
+   * @param before Only transactions recorded before this time in milliseconds since the epoch.
+   * @param limit Maximum number of transactions, from 1 to {@value #MAX_TRANSACTIONS_PAGE}.
+   * @return {@code ResponseEntity<TransactionPage>}, or 404 if the account does not exist.
+   */
+  @GetMapping(path = "/{accountId}/transactions")
+  public ResponseEntity<Object> getTransactions(@PathVariable String accountId,
+      @RequestParam(required = false) String cursor, @RequestParam(required = false) Long before,
+      @RequestParam(defaultValue = "50") int limit) {
+    if (limit < 1 || limit > MAX_TRANSACTIONS_PAGE) {
+      return new ResponseEntity<>("Limit must be between 1 and " + MAX_TRANSACTIONS_PAGE + ".",
+          HttpStatus.BAD_REQUEST);
+    }
+    if (this.accountsService.getAccount(accountId) == null) {
+      return new ResponseEntity<>("Account with id " + accountId + " not found.",
+          HttpStatus.NOT_FOUND);
+    }
+    try {
+      return new ResponseEntity<>(transactionHistory.page(accountId, cursor, before, limit),
+          HttpStatus.OK);
+    } catch (IllegalArgumentException iae) {
+      return new ResponseEntity<>(iae.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  /**
+   * API used to execute many transfers in one call. The body is either a JSON array of transfer
+   * requests or newline-delimited JSON with one transfer request per line. Transfers are read one
+   * by one and reading stops as soon as the batch exceeds {@code accounts.batch.max-size}, so an
+   * oversized body is refused without being held in memory as a whole.
+   *
+   * <p>A batch goes through admission control like single transfers, paying a token per transfer,
+   * and is executed at most once per {@code Idempotency-Key}.
+   *
+   * @param mode {@code ALL_OR_NOTHING} or {@code BEST_EFFORT}, the latter being the default.
+   * @param idempotencyKey Optional key making a retried batch return the original response.
+   * @param body Request body stream.
+   * @return {@code ResponseEntity<BatchTransferResponse>} with one result per transfer, the parse
+   * error if the body is malformed, 413 if the batch is too large or 429 if it is not admitted.
+   */
+  @PostMapping(path = "/transfers/batch", consumes = {MediaType.APPLICATION_JSON_VALUE,
+      APPLICATION_NDJSON_VALUE}, produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<?> transferBatch(
+      @RequestParam(defaultValue = "BEST_EFFORT") BatchTransferMode mode,
+      @RequestHeader(name = TransfersController.IDEMPOTENCY_KEY_HEADER, required = false)
+          String idempotencyKey, InputStream body, HttpServletRequest request)
+      throws IOException {
+    final List<TransferRequest> transferRequests = new ArrayList<>();
+    try (MappingIterator<TransferRequest> iterator = transferRequestReader.readValues(body)) {
+      while (iterator.hasNextValue()) {
+        if (transferRequests.size() == maxBatchSize) {
+          return new ResponseEntity<>("Batch exceeds " + maxBatchSize + " transfers.",
+              HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+        transferRequests.add(iterator.nextValue());
+      }
+    } catch (JsonProcessingException jpe) {
+      return new ResponseEntity<>(jpe.getOriginalMessage(), HttpStatus.BAD_REQUEST);
+    }
+    log.info("Incoming request to transfer money in a batch of {}", transferRequests.size());
+
+    final List<String> accountFromIds = new ArrayList<>(transferRequests.size());
+    for (TransferRequest transferRequest : transferRequests) {
+      accountFromIds.add(transferRequest.getAccountFromId());
+    }
+    final Rejection rejection = admissionControl.tryAdmitBatch(
+        admissionControl.clientOf(request), accountFromIds);
+    if (rejection != null) {
+      return TransfersController.tooManyRequests(rejection);
+    }
+    final long started = System.nanoTime();
+    try {
+      final BatchTransferResponse response = batchTransferService
+          .transferBatch(transferRequests, mode, idempotencyKey);
+      return new ResponseEntity<>(response,
+          response.isStatus() || mode == BatchTransferMode.BEST_EFFORT ? HttpStatus.OK
+              : HttpStatus.BAD_REQUEST);
+    } catch (IdempotencyKeyReusedException ikre) {
+      return new ResponseEntity<>(ikre.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+    } finally {
+      admissionControl.release(started);
+    }
+  }
+
+  static String etag(long version) {
+    return "\"" + version + "\"";
+  }
 }
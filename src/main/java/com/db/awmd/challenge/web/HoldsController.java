@@ -0,0 +1,113 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.HoldRequest;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.HoldNotFoundException;
+import com.db.awmd.challenge.exception.HoldStateException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.holds.HoldService;
+import javax.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Two-phase transfers: a hold reserves funds on one account, capturing it transfers them to the
+ * other account and releasing it gives them back, see {@link HoldService}. Capture and release
+ * may be repeated safely; a hold which already went the other way is answered with 409. Not
+ * offered with the journaled and off-heap repositories.
+ *
+ * @author jeevan
+ */
+@RestController
+@RequestMapping("/v1/holds")
+@ConditionalOnExpression(HoldService.ENABLED)
+@Slf4j
+public class HoldsController {
+
+  private final HoldService holdService;
+
+  @Autowired
+  public HoldsController(HoldService holdService) {
+    this.holdService = holdService;
+  }
+
+  /**
+   * API used to reserve funds for a later transfer.
+   *
+   * @param holdRequest Object which holds the accounts, amount and time to live of the hold.
+   * @return {@code ResponseEntity<HoldResponse>} with 201, 400 if the balance is insufficient,
+   * 404 if an account does not exist or 409 if the hold id is already used for another hold.
+   */
+  @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> placeHold(@RequestBody @Valid HoldRequest holdRequest) {
+    log.debug("Placing hold {}", holdRequest);
+    try {
+      return new ResponseEntity<>(holdService.placeHold(holdRequest), HttpStatus.CREATED);
+    } catch (AccountNotFoundException anfe) {
+      return new ResponseEntity<>(anfe.getMessage(), HttpStatus.NOT_FOUND);
+    } catch (InsufficientBalanceException | ArithmeticException ex) {
+      return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    } catch (HoldStateException hse) {
+      return new ResponseEntity<>(hse.getMessage(), HttpStatus.CONFLICT);
+    }
+  }
+
+  /**
+   * API used to transfer the held funds to the account the hold was placed for.
+   *
+   * @param holdId Hold id.
+   * @return {@code ResponseEntity<HoldResponse>}, 404 if there is no such hold or 409 if it was
+   * released or has expired.
+   */
+  @PostMapping(path = "/{holdId}/capture", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> capture(@PathVariable String holdId) {
+    try {
+      return new ResponseEntity<>(holdService.capture(holdId), HttpStatus.OK);
+    } catch (HoldNotFoundException hnfe) {
+      return new ResponseEntity<>(hnfe.getMessage(), HttpStatus.NOT_FOUND);
+    } catch (HoldStateException hse) {
+      return new ResponseEntity<>(hse.getMessage(), HttpStatus.CONFLICT);
+    } catch (ArithmeticException ae) {
+      // the credited balance would overflow
+      return new ResponseEntity<>(ae.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  /**
+   * API used to give the held funds back to the account the hold was placed on.
+   *
+   * @param holdId Hold id.
+   * @return {@code ResponseEntity<HoldResponse>}, 404 if there is no such hold or 409 if it was
+   * captured.
+   */
+  @PostMapping(path = "/{holdId}/release", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> release(@PathVariable String holdId) {
+    try {
+      return new ResponseEntity<>(holdService.release(holdId), HttpStatus.OK);
+    } catch (HoldNotFoundException hnfe) {
+      return new ResponseEntity<>(hnfe.getMessage(), HttpStatus.NOT_FOUND);
+    } catch (HoldStateException hse) {
+      return new ResponseEntity<>(hse.getMessage(), HttpStatus.CONFLICT);
+    }
+  }
+
+  @GetMapping(path = "/{holdId}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> getHold(@PathVariable String holdId) {
+    try {
+      return new ResponseEntity<>(holdService.getHold(holdId), HttpStatus.OK);
+    } catch (HoldNotFoundException hnfe) {
+      return new ResponseEntity<>(hnfe.getMessage(), HttpStatus.NOT_FOUND);
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.admission.AdaptiveConcurrencyLimit;
+import com.db.awmd.challenge.admission.AdmissionControl;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.metrics.TransferMetrics.Outcome;
+import com.db.awmd.challenge.replication.AccountsRepositoryReplica;
+import com.db.awmd.challenge.repository.AccountsRepositoryJournaled;
+import com.db.awmd.challenge.repository.LockStripes;
+import com.db.awmd.challenge.repository.RecoveryStats;
+import com.db.awmd.challenge.service.AsyncNotificationService;
+import java.util.Locale;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Scrape endpoint publishing {@link TransferMetrics} in the Prometheus text exposition format.
+ * Latency histograms are published as summaries in seconds; they cover the whole lifetime of the
+ * application.
+ *
+ * @author jeevan
+ */
+@RestController
+@RequestMapping("/v1/metrics")
+public class MetricsController {
+
+  public static final String PROMETHEUS_TEXT_VALUE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final TransferMetrics transferMetrics;
+
+  private final ObjectProvider<AsyncNotificationService> asyncNotificationService;
+
+  private final AdmissionControl admissionControl;
+
+  private final ObjectProvider<AccountsRepositoryReplica> replica;
+
+  private final ObjectProvider<AccountsRepositoryJournaled> journaled;
+
+  @Autowired
+  public MetricsController(TransferMetrics transferMetrics,
+      ObjectProvider<AsyncNotificationService> asyncNotificationService,
+      AdmissionControl admissionControl, ObjectProvider<AccountsRepositoryReplica> replica,
+      ObjectProvider<AccountsRepositoryJournaled> journaled) {
+    this.transferMetrics = transferMetrics;
+    this.asyncNotificationService = asyncNotificationService;
+    this.admissionControl = admissionControl;
+    this.replica = replica;
+    this.journaled = journaled;
+  }
+
+  /**
+   * API used to scrape the metrics.
+   *
+   * @return Metrics in the Prometheus text format.
+   */
+  @GetMapping(produces = PROMETHEUS_TEXT_VALUE)
+  public String scrape() {
+    final StringBuilder out = new StringBuilder(4096);
+
+    header(out, "accounts_transfers_total", "counter", "Transfers by outcome.");
+    for (Outcome outcome : Outcome.values()) {
+      out.append("accounts_transfers_total{outcome=\"")
+          .append(outcome.name().toLowerCase(Locale.ROOT)).append("\"} ")
+          .append(transferMetrics.getOutcomeCount(outcome)).append('\n');
+    }
+
+    summary(out, "accounts_transfer_request_seconds",
+        "Time spent handling a transfer request.", transferMetrics.getRequestNanos());
+    summary(out, "accounts_transfer_lookup_seconds",
+        "Time taken to look up both accounts of a transfer.", transferMetrics.getLookupNanos());
+    summary(out, "accounts_transfer_lock_wait_seconds",
+        "Time spent waiting for the locks of a transfer.", transferMetrics.getLockWaitNanos());
+    summary(out, "accounts_transfer_commit_seconds",
+        "Time taken by the repository to apply a transfer.", transferMetrics.getCommitNanos());
+
+    final LockStripes lockStripes = transferMetrics.getLockStripes();
+    if (lockStripes != null) {
+      header(out, "accounts_lock_stripe_contended_total", "counter",
+          "Lock acquisitions which found the stripe held, stripes never contended are omitted.");
+      for (int stripe = 0; stripe < lockStripes.size(); stripe++) {
+        final long contended = lockStripes.getContended(stripe);
+        if (contended > 0) {
+          out.append("accounts_lock_stripe_contended_total{stripe=\"").append(stripe)
+              .append("\"} ").append(contended).append('\n');
+        }
+      }
+    }
+
+    final AdaptiveConcurrencyLimit concurrencyLimit = admissionControl.getConcurrencyLimit();
+    header(out, "accounts_admission_concurrency_limit", "gauge",
+        "Transfers admission control currently lets execute at once.");
+    out.append("accounts_admission_concurrency_limit ").append(concurrencyLimit.getLimit())
+        .append('\n');
+    header(out, "accounts_admission_in_flight", "gauge",
+        "Admitted transfers still executing.");
+    out.append("accounts_admission_in_flight ").append(concurrencyLimit.getInFlight())
+        .append('\n');
+
+    final AsyncNotificationService notifications = asyncNotificationService.getIfAvailable();
+    if (notifications != null) {
+      header(out, "accounts_notification_queue_depth", "gauge",
+          "Notifications waiting to be dispatched.");
+      out.append("accounts_notification_queue_depth ").append(notifications.getQueueDepth())
+          .append('\n');
+      header(out, "accounts_notifications_dropped_total", "counter",
+          "Notifications discarded because the queue was full.");
+      out.append("accounts_notifications_dropped_total ").append(notifications.getDropped())
+          .append('\n');
+    }
+
+    final AccountsRepositoryReplica accountsReplica = replica.getIfAvailable();
+    if (accountsReplica != null) {
+      header(out, "accounts_replica_cached_accounts", "gauge",
+          "Account balances held by the near-cache of this replica.");
+      out.append("accounts_replica_cached_accounts ").append(accountsReplica.getCacheSize())
+          .append('\n');
+      header(out, "accounts_replica_applied_sequence", "gauge",
+          "Sequence of the last change of the primary applied by this replica.");
+      out.append("accounts_replica_applied_sequence ")
+          .append(accountsReplica.getAppliedSequence()).append('\n');
+      header(out, "accounts_replica_seconds_since_contact", "gauge",
+          "Time since this replica last heard from the primary.");
+      out.append("accounts_replica_seconds_since_contact ")
+          .append(accountsReplica.getMillisSinceContact() / 1e3).append('\n');
+    }
+
+    final AccountsRepositoryJournaled accountsJournaled = journaled.getIfAvailable();
+    final RecoveryStats recovery = accountsJournaled == null ? null
+        : accountsJournaled.getRecoveryStats();
+    if (recovery != null) {
+      header(out, "accounts_recovery_seconds", "gauge",
+          "Time the last startup recovery took, by phase.");
+      out.append("accounts_recovery_seconds{phase=\"snapshot_load\"} ")
+          .append(recovery.getSnapshotLoadMillis() / 1e3).append('\n');
+      out.append("accounts_recovery_seconds{phase=\"journal_replay\"} ")
+          .append(recovery.getJournalReplayMillis() / 1e3).append('\n');
+      out.append("accounts_recovery_seconds{phase=\"total\"} ")
+          .append(recovery.getTotalMillis() / 1e3).append('\n');
+      header(out, "accounts_recovery_snapshot_accounts", "gauge",
+          "Accounts loaded from the snapshot by the last startup recovery.");
+      out.append("accounts_recovery_snapshot_accounts ").append(recovery.getSnapshotAccounts())
+          .append('\n');
+      header(out, "accounts_recovery_snapshot_position", "gauge",
+          "Journal position of the snapshot recovered from, -1 if there was none.");
+      out.append("accounts_recovery_snapshot_position ").append(recovery.getSnapshotPosition())
+          .append('\n');
+      header(out, "accounts_recovery_journal_records", "gauge",
+          "Journal records replayed by the last startup recovery.");
+      out.append("accounts_recovery_journal_records ").append(recovery.getJournalRecords())
+          .append('\n');
+    }
+    return out.toString();
+  }
+
+  private static void header(StringBuilder out, String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void summary(StringBuilder out, String name, String help, Histogram nanos) {
+    // copied so that quantiles, count and sum are taken from the same state
+    final Histogram histogram = nanos.copy();
+    header(out, name, "summary", help);
+    for (double quantile : QUANTILES) {
+      out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+          .append(seconds(histogram.getValueAtPercentile(quantile * 100))).append('\n');
+    }
+    out.append(name).append("{quantile=\"1.0\"} ").append(seconds(histogram.getMaxValue()))
+        .append('\n');
+    final long count = histogram.getTotalCount();
+    out.append(name).append("_sum ").append(seconds(histogram.getMean() * count)).append('\n');
+    out.append(name).append("_count ").append(count).append('\n');
+  }
+
+  private static double seconds(double nanos) {
+    return nanos / 1e9;
+  }
+}
@@ -0,0 +1,74 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.AccountChange;
+import com.db.awmd.challenge.replication.ChangeStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Endpoints replicas follow the primary with, see {@link ChangeStream}. Both answer 404 unless the
+ * change stream is enabled.
+ *
+ * @author jeevan
+ */
+@RestController
+@RequestMapping("/v1/replication")
+public class ReplicationController {
+
+  private static final int MAX_CHANGES_PER_READ = 10000;
+
+  private static final long MAX_WAIT_MILLIS = 30000;
+
+  private final ChangeStream changeStream;
+
+  @Autowired
+  public ReplicationController(ChangeStream changeStream) {
+    this.changeStream = changeStream;
+  }
+
+  /**
+   * API used to read the changes committed after a sequence, long-polling while there is none.
+   *
+   * @param after Last sequence the replica has applied.
+   * @param limit Maximum number of changes, from 1 to {@value #MAX_CHANGES_PER_READ}.
+   * @param waitMillis How long to wait for a change, at most {@value #MAX_WAIT_MILLIS}.
+   * @return {@code ResponseEntity<AccountChanges>}.
+   */
+  @GetMapping(path = "/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> getChanges(@RequestParam(defaultValue = "0") long after,
+      @RequestParam(defaultValue = "1000") int limit,
+      @RequestParam(defaultValue = "0") long waitMillis) throws InterruptedException {
+    if (!changeStream.isEnabled()) {
+      return new ResponseEntity<>("Change stream is disabled.", HttpStatus.NOT_FOUND);
+    }
+    if (limit < 1 || limit > MAX_CHANGES_PER_READ) {
+      return new ResponseEntity<>("Limit must be between 1 and " + MAX_CHANGES_PER_READ + ".",
+          HttpStatus.BAD_REQUEST);
+    }
+    return new ResponseEntity<>(changeStream.read(after, limit,
+        Math.max(0, Math.min(waitMillis, MAX_WAIT_MILLIS))), HttpStatus.OK);
+  }
+
+  /**
+   * API used by a replica to read an account it has not cached, with its version.
+   *
+   * @param accountId Account id.
+   * @return {@code ResponseEntity<AccountChange>}, or 404 if there is no such account.
+   */
+  @GetMapping(path = "/accounts/{accountId}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> getAccount(@PathVariable String accountId) {
+    final AccountChange account = changeStream.isEnabled() ? changeStream.read(accountId) : null;
+    if (account == null) {
+      return new ResponseEntity<>("Account with id " + accountId + " not found.",
+          HttpStatus.NOT_FOUND);
+    }
+    return new ResponseEntity<>(account, HttpStatus.OK);
+  }
+}
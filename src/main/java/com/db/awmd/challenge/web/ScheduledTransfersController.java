@@ -0,0 +1,88 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.ScheduledTransferRequest;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.ScheduledTransferNotFoundException;
+import com.db.awmd.challenge.scheduling.TransferScheduler;
+import javax.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Future-dated transfers and standing orders, executed by {@link TransferScheduler}.
+ *
+ * @author jeevan
+ */
+@RestController
+@RequestMapping("/v1/scheduled-transfers")
+@Slf4j
+public class ScheduledTransfersController {
+
+  private final TransferScheduler transferScheduler;
+
+  @Autowired
+  public ScheduledTransfersController(TransferScheduler transferScheduler) {
+    this.transferScheduler = transferScheduler;
+  }
+
+  /**
+   * API used to schedule a transfer once or repeatedly.
+   *
+   * @param request Object which holds the transfer, the time of its first execution and the
+   * recurrence.
+   * @return {@code ResponseEntity<ScheduledTransferResponse>} with 201, 400 if the request is
+   * inconsistent, 404 if an account does not exist or 422 if the schedule id is already used for
+   * another schedule.
+   */
+  @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> schedule(@RequestBody @Valid ScheduledTransferRequest request) {
+    log.debug("Scheduling transfer {}", request);
+    try {
+      return new ResponseEntity<>(transferScheduler.schedule(request), HttpStatus.CREATED);
+    } catch (AccountNotFoundException anfe) {
+      return new ResponseEntity<>(anfe.getMessage(), HttpStatus.NOT_FOUND);
+    } catch (IllegalArgumentException | ArithmeticException ex) {
+      return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    } catch (IdempotencyKeyReusedException ikre) {
+      return new ResponseEntity<>(ikre.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+  }
+
+  @GetMapping(path = "/{scheduleId}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> getScheduledTransfer(@PathVariable String scheduleId) {
+    try {
+      return new ResponseEntity<>(transferScheduler.getScheduledTransfer(scheduleId),
+          HttpStatus.OK);
+    } catch (ScheduledTransferNotFoundException stnfe) {
+      return new ResponseEntity<>(stnfe.getMessage(), HttpStatus.NOT_FOUND);
+    }
+  }
+
+  /**
+   * API used to cancel the remaining occurrences of a schedule.
+   *
+   * @param scheduleId Schedule id.
+   * @return {@code ResponseEntity<ScheduledTransferResponse>}, or 404 if there is no such
+   * schedule.
+   */
+  @DeleteMapping(path = "/{scheduleId}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> cancel(@PathVariable String scheduleId) {
+    try {
+      return new ResponseEntity<>(transferScheduler.cancel(scheduleId), HttpStatus.OK);
+    } catch (ScheduledTransferNotFoundException stnfe) {
+      return new ResponseEntity<>(stnfe.getMessage(), HttpStatus.NOT_FOUND);
+    }
+  }
+}
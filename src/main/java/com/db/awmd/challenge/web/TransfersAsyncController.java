@@ -0,0 +1,150 @@
+package com.db.awmd.challenge.web;
+
+import static com.db.awmd.challenge.web.TransfersController.IDEMPOTENCY_KEY_HEADER;
+
+import com.db.awmd.challenge.admission.AdmissionControl;
+import com.db.awmd.challenge.admission.AdmissionControl.Rejection;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResponse;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.AccountVersionMismatchException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.service.AccountsService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Non-blocking transfer endpoint, enabled with {@code accounts.web.execution=async}.
+ *
+ * <p>The endpoint returns the future of {@link AccountsService#transferAmountAsync} and the request
+ * thread goes back to the servlet container at once (Servlet 3 asynchronous processing); the
+ * response is written when the future completes. With the sharded repository the transfer itself
+ * runs on the shard owners, so no request thread ever waits for it. The number of transfers in
+ * flight, rather than the size of the request thread pool, bounds the load: above
+ * {@code accounts.web.max-in-flight-transfers} requests are refused with 503 and a
+ * {@code Retry-After} header. Requests refused by {@link AdmissionControl} before that are answered
+ * with 429.
+ *
+ * <p>Unlike the blocking endpoint, failed transfers are answered with a {@link TransferResponse}
+ * and status 400 rather than with the raw exception. Conditional transfers with {@code If-Match}
+ * are answered like on the blocking endpoint.
+ *
+ * @author jeevan
+ */
+@RestController
+@RequestMapping("/v1/accounts")
+@ConditionalOnProperty(prefix = "accounts.web", name = "execution", havingValue = "async")
+public class TransfersAsyncController {
+
+  private final AccountsService accountsService;
+
+  private final TransferMetrics transferMetrics;
+
+  private final AdmissionControl admissionControl;
+
+  private final Semaphore inFlight;
+
+  @Autowired
+  public TransfersAsyncController(AccountsService accountsService,
+      TransferMetrics transferMetrics, AdmissionControl admissionControl,
+      @Value("${accounts.web.max-in-flight-transfers:10000}") int maxInFlightTransfers) {
+    this.accountsService = accountsService;
+    this.transferMetrics = transferMetrics;
+    this.admissionControl = admissionControl;
+    this.inFlight = new Semaphore(maxInFlightTransfers);
+  }
+
+  /**
+   * API used to transfer money between two accounts without holding a request thread.
+   *
+   * @param transferRequest Object which holds transfer request data.
+   * @param idempotencyKey Optional key making retries safe, takes precedence over the request id
+   * of the body.
+   * @param ifMatch Optional {@code ETag} the debited account must still have.
+   * @param request Servlet request, for the client sending it.
+   * @return Future of the {@code ResponseEntity<TransferResponse>}.
+   */
+  @PostMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public CompletableFuture<ResponseEntity<TransferResponse>> transferAmount(
+      @RequestBody @Valid TransferRequest transferRequest,
+      @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+      @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+      HttpServletRequest request) {
+    try {
+      transferRequest.setExpectedVersion(TransfersController.expectedVersion(ifMatch));
+    } catch (IllegalArgumentException iae) {
+      return CompletableFuture.completedFuture(new ResponseEntity<>(
+          new TransferResponse(false, iae.getMessage()), HttpStatus.BAD_REQUEST));
+    }
+    final Rejection rejection = admissionControl.tryAdmit(
+        admissionControl.clientOf(request), transferRequest.getAccountFromId());
+    if (rejection != null) {
+      return CompletableFuture.completedFuture(TransfersController.tooManyRequests(rejection));
+    }
+    final long started = System.nanoTime();
+    if (!inFlight.tryAcquire()) {
+      admissionControl.release(started);
+      final HttpHeaders headers = new HttpHeaders();
+      headers.set(HttpHeaders.RETRY_AFTER, "1");
+      return CompletableFuture.completedFuture(new ResponseEntity<>(
+          new TransferResponse(false, "Too many transfers in progress, retry later."), headers,
+          HttpStatus.SERVICE_UNAVAILABLE));
+    }
+    if (idempotencyKey != null) {
+      transferRequest.setRequestId(idempotencyKey);
+    }
+    CompletableFuture<TransferResponse> transfer;
+    try {
+      transfer = accountsService.transferAmountAsync(transferRequest);
+    } catch (RuntimeException re) {
+      transfer = new CompletableFuture<>();
+      transfer.completeExceptionally(re);
+    }
+    return transfer.handle((response, failure) -> {
+      inFlight.release();
+      admissionControl.release(started);
+      transferMetrics.recordRequest(System.nanoTime() - started);
+      if (failure == null) {
+        return new ResponseEntity<>(response, HttpStatus.OK);
+      }
+      return failed(failure instanceof CompletionException && failure.getCause() != null
+          ? failure.getCause() : failure);
+    });
+  }
+
+  private static ResponseEntity<TransferResponse> failed(Throwable failure) {
+    final HttpStatus status;
+    if (failure instanceof IdempotencyKeyReusedException) {
+      status = HttpStatus.UNPROCESSABLE_ENTITY;
+    } else if (failure instanceof AccountVersionMismatchException) {
+      status = HttpStatus.PRECONDITION_FAILED;
+    } else if (failure instanceof AccountNotFoundException
+        || failure instanceof InsufficientBalanceException
+        || failure instanceof ArithmeticException) {
+      status = HttpStatus.BAD_REQUEST;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else {
+      throw new CompletionException(failure);
+    }
+    return new ResponseEntity<>(new TransferResponse(false, failure.getMessage()), status);
+  }
+}
@@ -0,0 +1,142 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.admission.AdmissionControl;
+import com.db.awmd.challenge.admission.AdmissionControl.Rejection;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResponse;
+import com.db.awmd.challenge.exception.AccountVersionMismatchException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.service.AccountsService;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Transfer endpoint executing the transfer on the request thread. Enabled unless
+ * {@code accounts.web.execution=async}, see {@link TransfersAsyncController}. Requests refused by
+ * {@link AdmissionControl} are answered with 429 and a {@code Retry-After} header.
+ *
+ * <p>A transfer with an {@code If-Match} header carrying the {@code ETag} of the debited account,
+ * as returned by {@code GET /v1/accounts/{accountId}}, is applied only if that account is still at
+ * that version, and answered with 412 otherwise.
+ *
+ * @author jeevan
+ */
+@RestController
+@RequestMapping("/v1/accounts")
+@ConditionalOnProperty(prefix = "accounts.web", name = "execution", havingValue = "blocking",
+    matchIfMissing = true)
+public class TransfersController {
+
+  public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+  private static final Pattern VERSION_ETAG = Pattern.compile("\"(\\d{1,19})\"");
+
+  private final AccountsService accountsService;
+
+  private final TransferMetrics transferMetrics;
+
+  private final AdmissionControl admissionControl;
+
+  @Autowired
+  public TransfersController(AccountsService accountsService, TransferMetrics transferMetrics,
+      AdmissionControl admissionControl) {
+    this.accountsService = accountsService;
+    this.transferMetrics = transferMetrics;
+    this.admissionControl = admissionControl;
+  }
+
+  /**
+   * API used to transfer money between two accounts.
+   *
+   * @param transferRequest Object which holds transfer request data.
+   * @param idempotencyKey Optional key making retries safe, takes precedence over the request id
+   * of the body.
+   * @param ifMatch Optional {@code ETag} the debited account must still have.
+   * @param request Servlet request, for the client sending it.
+   * @return {@code ResponseEntity<TransferResponse>} JSON representation of transfer response
+   * object.
+   */
+  @PostMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<TransferResponse> transferAmount(
+      @RequestBody @Valid TransferRequest transferRequest,
+      @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+      @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+      HttpServletRequest request) {
+    try {
+      transferRequest.setExpectedVersion(expectedVersion(ifMatch));
+    } catch (IllegalArgumentException iae) {
+      return new ResponseEntity<>(new TransferResponse(false, iae.getMessage()),
+          HttpStatus.BAD_REQUEST);
+    }
+    final Rejection rejection = admissionControl.tryAdmit(
+        admissionControl.clientOf(request), transferRequest.getAccountFromId());
+    if (rejection != null) {
+      return tooManyRequests(rejection);
+    }
+    final long started = System.nanoTime();
+    if (idempotencyKey != null) {
+      transferRequest.setRequestId(idempotencyKey);
+    }
+    try {
+      return new ResponseEntity<>(accountsService.transferAmount(transferRequest), HttpStatus.OK);
+    } catch (ArithmeticException ae) {
+      // amount has more fraction digits than the money scale or the balance would overflow
+      return new ResponseEntity<>(new TransferResponse(false, ae.getMessage()),
+          HttpStatus.BAD_REQUEST);
+    } catch (IdempotencyKeyReusedException ikre) {
+      return new ResponseEntity<>(new TransferResponse(false, ikre.getMessage()),
+          HttpStatus.UNPROCESSABLE_ENTITY);
+    } catch (AccountVersionMismatchException avme) {
+      return new ResponseEntity<>(new TransferResponse(false, avme.getMessage()),
+          HttpStatus.PRECONDITION_FAILED);
+    } finally {
+      admissionControl.release(started);
+      transferMetrics.recordRequest(System.nanoTime() - started);
+    }
+  }
+
+  /**
+   * Method used to read the account version out of an {@code If-Match} header, which names one
+   * strong {@code ETag} or {@code *} for any version.
+   *
+   * @param ifMatch Header value, may be {@code null}.
+   * @return Version, or {@code null} if any version will do.
+   * @throws IllegalArgumentException if the header is not a single account version.
+   */
+  static Long expectedVersion(String ifMatch) {
+    if (ifMatch == null || "*".equals(ifMatch.trim())) {
+      return null;
+    }
+    final Matcher matcher = VERSION_ETAG.matcher(ifMatch.trim());
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("If-Match must be the ETag of one account version, "
+          + "e.g. \"42\".");
+    }
+    try {
+      return Long.valueOf(matcher.group(1));
+    } catch (NumberFormatException nfe) {
+      throw new IllegalArgumentException("If-Match names an unknown account version.");
+    }
+  }
+
+  static ResponseEntity<TransferResponse> tooManyRequests(Rejection rejection) {
+    final HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RETRY_AFTER, Long.toString(rejection.getRetryAfterSeconds()));
+    return new ResponseEntity<>(new TransferResponse(false, rejection.getMessage()), headers,
+        HttpStatus.TOO_MANY_REQUESTS);
+  }
+}
@@ -0,0 +1,85 @@
+package com.db.awmd.challenge.stress;
+
+import java.util.List;
+
+/**
+ * Outcome of one run of the {@link TransferStressHarness}.
+ *
+ * @author jeevan
+ */
+public class StressReport {
+
+  private final String repository;
+  private final long seed;
+  private final int threads;
+  private final long applied;
+  private final long rejected;
+  private final long elapsedNanos;
+  private final long violationCount;
+  private final List<String> violations;
+
+  public StressReport(String repository, long seed, int threads, long applied, long rejected,
+      long elapsedNanos, long violationCount, List<String> violations) {
+    this.repository = repository;
+    this.seed = seed;
+    this.threads = threads;
+    this.applied = applied;
+    this.rejected = rejected;
+    this.elapsedNanos = elapsedNanos;
+    this.violationCount = violationCount;
+    this.violations = violations;
+  }
+
+  public String getRepository() {
+    return repository;
+  }
+
+  /**
+   * Seed the workload of every thread was derived from, pass it as {@code stress.seed} to
+   * replay the same transfers.
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  public long getApplied() {
+    return applied;
+  }
+
+  /**
+   * Transfers refused for insufficient balance, which the workload provokes on purpose.
+   */
+  public long getRejected() {
+    return rejected;
+  }
+
+  /**
+   * Transfers per second, applied and rejected ones alike.
+   */
+  public double getThroughput() {
+    return (applied + rejected) * 1e9 / Math.max(1L, elapsedNanos);
+  }
+
+  public long getViolationCount() {
+    return violationCount;
+  }
+
+  /**
+   * Description of the first violations found.
+   */
+  public List<String> getViolations() {
+    return violations;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder report = new StringBuilder()
+        .append(String.format("%-12s seed=%d threads=%d applied=%d rejected=%d in %d ms, "
+                + "%.0f transfers/s, %d violations", repository, seed, threads, applied,
+            rejected, elapsedNanos / 1_000_000, getThroughput(), violationCount));
+    for (String violation : violations) {
+      report.append(System.lineSeparator()).append("  ").append(violation);
+    }
+    return report.toString();
+  }
+}
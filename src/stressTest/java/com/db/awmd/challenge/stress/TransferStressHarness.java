@@ -0,0 +1,246 @@
+package com.db.awmd.challenge.stress;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Harness hammering an {@link AccountsRepository} with random and adversarial transfers from many
+ * threads while checking that no money is created or destroyed and no balance goes negative.
+ *
+ * <p>Every thread draws its transfers from its own generator seeded with the run seed and its
+ * index, so a run is replayed by passing the seed it reports. The interleaving of the threads is
+ * still up to the scheduler, but the transfers each thread attempts are the same. The workload
+ * mixes uniformly random pairs with the patterns concurrency bugs hide in:
+ * <ul>
+ * <li>opposing transfers between a few fixed pairs, A to B on one thread and B to A on another,
+ * which deadlock under inconsistent lock ordering,</li>
+ * <li>transfers into and out of one hot account, which pile up on a single lock or cell,</li>
+ * <li>transfers from an account to itself,</li>
+ * <li>overdrafts larger than any balance, which must be rejected without side effects.</li>
+ * </ul>
+ *
+ * <p>The threads run in rounds and meet at a barrier between rounds, where the repository is
+ * quiescent and the total balance must match the initial one exactly. Between barriers a monitor
+ * thread keeps reading the balances and reports any that is negative.
+ *
+ * @author jeevan
+ */
+public class TransferStressHarness {
+
+  private static final int MAX_REPORTED_VIOLATIONS = 20;
+
+  private static final int OPPOSING_PAIRS = 4;
+
+  private final long seed;
+  private final int threads;
+  private final int accounts;
+  private final long initialBalance;
+  private final long transfersPerThread;
+  private final int rounds;
+
+  private final AtomicLong violationCount = new AtomicLong();
+  private final List<String> violations = Collections.synchronizedList(new ArrayList<>());
+
+  /**
+   * @param seed Seed of the workload.
+   * @param threads Number of transferring threads.
+   * @param accounts Number of accounts, at least {@code 2 * OPPOSING_PAIRS + 1}.
+   * @param initialBalance Initial balance of every account in minor units.
+   * @param transfers Number of transfers over all threads.
+   * @param rounds Number of times the threads meet to check the total balance.
+   */
+  public TransferStressHarness(long seed, int threads, int accounts, long initialBalance,
+      long transfers, int rounds) {
+    if (accounts < 2 * OPPOSING_PAIRS + 1) {
+      throw new IllegalArgumentException("At least " + (2 * OPPOSING_PAIRS + 1)
+          + " accounts are needed.");
+    }
+    this.seed = seed;
+    this.threads = threads;
+    this.accounts = accounts;
+    this.initialBalance = initialBalance;
+    this.transfersPerThread = Math.max(1L, transfers / threads);
+    this.rounds = (int) Math.max(1L, Math.min(rounds, transfersPerThread));
+  }
+
+  /**
+   * Method used to create the accounts of the workload in the given, empty repository.
+   *
+   * @param repository Repository under test.
+   * @param splitHotAccount Whether the hot account is split before any transfer.
+   */
+  public void createAccounts(AccountsRepository repository, boolean splitHotAccount) {
+    final BigDecimal balance = Money.toBigDecimal(initialBalance);
+    for (int i = 0; i < accounts; i++) {
+      final Account account = new Account(accountId(i), balance);
+      if (i == 0 && splitHotAccount) {
+        account.split(threads);
+      }
+      repository.createAccount(account);
+    }
+  }
+
+  /**
+   * Method used to run the workload against a repository holding the accounts created by
+   * {@link #createAccounts(AccountsRepository, boolean)}.
+   *
+   * @param name Name of the repository in the report.
+   * @param repository Repository under test.
+   * @return {@code StressReport} with the throughput and the violations found.
+   */
+  public StressReport run(String name, AccountsRepository repository)
+      throws InterruptedException {
+    final long expectedTotal = total(repository, "before the run");
+    final Account[] resolved = new Account[accounts];
+    for (int i = 0; i < accounts; i++) {
+      resolved[i] = repository.getAccount(accountId(i));
+    }
+
+    final AtomicLong applied = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    final AtomicLong round = new AtomicLong();
+    final CyclicBarrier barrier = new CyclicBarrier(threads,
+        () -> checkTotal(repository, expectedTotal, round.incrementAndGet()));
+    final long perRound = transfersPerThread / rounds;
+
+    final List<Thread> workers = new ArrayList<>(threads);
+    for (int t = 0; t < threads; t++) {
+      final SplittableRandom random = new SplittableRandom(seed * 31 + t);
+      final int index = t;
+      workers.add(new Thread(() -> {
+        long done = 0;
+        try {
+          for (int r = 0; r < rounds; r++) {
+            final long end = r == rounds - 1 ? transfersPerThread : done + perRound;
+            for (; done < end; done++) {
+              transfer(repository, resolved, random, index, applied, rejected);
+            }
+            barrier.await();
+          }
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        } catch (BrokenBarrierException bbe) {
+          violation("Thread " + index + " gave up after " + done + " transfers: barrier broken");
+        }
+      }, "stress-" + name + "-" + t));
+    }
+
+    final Thread monitor = new Thread(() -> {
+      while (!Thread.currentThread().isInterrupted()) {
+        checkNonNegative(repository);
+      }
+    }, "stress-" + name + "-monitor");
+    monitor.setDaemon(true);
+
+    final long started = System.nanoTime();
+    monitor.start();
+    workers.forEach(Thread::start);
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    final long elapsed = System.nanoTime() - started;
+    monitor.interrupt();
+    monitor.join();
+
+    checkTotal(repository, expectedTotal, round.get());
+    checkNonNegative(repository);
+    final List<String> reported;
+    synchronized (violations) {
+      reported = new ArrayList<>(violations);
+    }
+    return new StressReport(name, seed, threads, applied.get(), rejected.get(), elapsed,
+        violationCount.get(), reported);
+  }
+
+  private void transfer(AccountsRepository repository, Account[] resolved,
+      SplittableRandom random, int thread, AtomicLong applied, AtomicLong rejected) {
+    final int kind = random.nextInt(10);
+    final int from;
+    final int to;
+    long amount = 1 + random.nextInt(100);
+    if (kind < 4) {
+      from = random.nextInt(accounts);
+      to = random.nextInt(accounts);
+    } else if (kind < 6) {
+      // even threads move money one way and odd threads the other way
+      final int pair = random.nextInt(OPPOSING_PAIRS);
+      final boolean forward = (thread & 1) == 0;
+      from = 1 + 2 * pair + (forward ? 0 : 1);
+      to = 1 + 2 * pair + (forward ? 1 : 0);
+    } else if (kind < 8) {
+      final int other = 1 + random.nextInt(accounts - 1);
+      final boolean intoHot = random.nextBoolean();
+      from = intoHot ? other : 0;
+      to = intoHot ? 0 : other;
+    } else if (kind < 9) {
+      from = random.nextInt(accounts);
+      to = from;
+    } else {
+      from = random.nextInt(accounts);
+      to = random.nextInt(accounts);
+      amount = initialBalance * accounts + 1;
+    }
+
+    try {
+      repository.transferBetweenAccounts(resolved[from], resolved[to], amount);
+      applied.incrementAndGet();
+    } catch (InsufficientBalanceException ibe) {
+      rejected.incrementAndGet();
+    } catch (RuntimeException re) {
+      violation("Transfer of " + amount + " from " + accountId(from) + " to " + accountId(to)
+          + " failed: " + re);
+    }
+  }
+
+  private void checkTotal(AccountsRepository repository, long expectedTotal, long round) {
+    final long total = total(repository, "after round " + round);
+    if (total != expectedTotal) {
+      violation("Total balance after round " + round + " is " + total + " instead of "
+          + expectedTotal);
+    }
+  }
+
+  private long total(AccountsRepository repository, String when) {
+    long total = 0;
+    for (int i = 0; i < accounts; i++) {
+      final BalanceSnapshot snapshot = repository.getBalanceSnapshot(accountId(i));
+      if (snapshot == null) {
+        violation("Account " + accountId(i) + " is missing " + when);
+      } else {
+        total += snapshot.getBalance();
+      }
+    }
+    return total;
+  }
+
+  private void checkNonNegative(AccountsRepository repository) {
+    for (int i = 0; i < accounts; i++) {
+      final BalanceSnapshot snapshot = repository.getBalanceSnapshot(accountId(i));
+      if (snapshot != null && snapshot.getBalance() < 0) {
+        violation("Account " + accountId(i) + " has a negative balance of "
+            + snapshot.getBalance() + " at version " + snapshot.getVersion());
+      }
+    }
+  }
+
+  private void violation(String description) {
+    if (violationCount.getAndIncrement() < MAX_REPORTED_VIOLATIONS) {
+      violations.add(description);
+    }
+  }
+
+  private static String accountId(int index) {
+    return "Stress-" + index;
+  }
+}
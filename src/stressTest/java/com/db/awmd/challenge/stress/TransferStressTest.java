@@ -0,0 +1,102 @@
+package com.db.awmd.challenge.stress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryJournaled;
+import com.db.awmd.challenge.repository.AccountsRepositoryLockFree;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+import com.db.awmd.challenge.repository.AccountsRepositorySharded;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Runs the {@link TransferStressHarness} against every repository implementation. The workload
+ * is sized with system properties, for example
+ * {@code gradle stressTest -Pstress.seed=42 -Pstress.threads=16 -Pstress.transfers=10000000}.
+ */
+@RunWith(Parameterized.class)
+public class TransferStressTest {
+
+  private static final long SEED = Long.getLong("stress.seed", System.nanoTime());
+  private static final int THREADS = Integer.getInteger("stress.threads",
+      Math.max(8, 2 * Runtime.getRuntime().availableProcessors()));
+  private static final long TRANSFERS = Long.getLong("stress.transfers", 1_000_000L);
+  private static final int ACCOUNTS = Integer.getInteger("stress.accounts", 64);
+  private static final int ROUNDS = Integer.getInteger("stress.rounds", 20);
+  private static final long INITIAL_BALANCE = 10_000L;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Parameter
+  public String name;
+
+  private AutoCloseable closeable;
+
+  @Parameters(name = "{0}")
+  public static Collection<Object[]> repositories() {
+    return Arrays.asList(new Object[][]{{"locking"}, {"locking-split"}, {"lock-free"},
+        {"journaled"}, {"sharded"}, {"off-heap"}});
+  }
+
+  @After
+  public void closeRepository() throws Exception {
+    if (closeable != null) {
+      closeable.close();
+    }
+  }
+
+  @Test
+  public void conservesMoneyAndNeverOverdraws() throws Exception {
+    final TransferStressHarness harness = new TransferStressHarness(SEED, THREADS, ACCOUNTS,
+        INITIAL_BALANCE, TRANSFERS, ROUNDS);
+    final AccountsRepository repository = createRepository();
+    harness.createAccounts(repository, "locking-split".equals(name));
+
+    final StressReport report = harness.run(name, repository);
+
+    System.out.println(report);
+    assertThat(report.getViolations()).as("violations, replay with -Pstress.seed=%d", SEED)
+        .isEmpty();
+    assertThat(report.getViolationCount()).isZero();
+    assertThat(report.getApplied()).isPositive();
+    assertThat(report.getRejected()).isPositive();
+  }
+
+  private AccountsRepository createRepository() throws Exception {
+    switch (name) {
+      case "locking":
+      case "locking-split":
+        return new AccountsRepositoryInMemory(64);
+      case "lock-free":
+        return new AccountsRepositoryLockFree();
+      case "journaled":
+        final File journal = folder.newFolder("journal");
+        final File snapshots = folder.newFolder("snapshots");
+        final AccountsRepositoryJournaled journaled = new AccountsRepositoryJournaled(64,
+            journal.getPath(), 16, 1024, 1000, snapshots.getPath(), 2);
+        journaled.recover();
+        closeable = journaled::close;
+        return journaled;
+      case "sharded":
+        final AccountsRepositorySharded sharded = new AccountsRepositorySharded(4, 1024);
+        closeable = sharded::close;
+        return sharded;
+      case "off-heap":
+        return new AccountsRepositoryOffHeap(64, ACCOUNTS);
+      default:
+        throw new IllegalArgumentException("Unknown repository " + name);
+    }
+  }
+}
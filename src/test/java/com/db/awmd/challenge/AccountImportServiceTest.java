@@ -0,0 +1,128 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportFormat;
+import com.db.awmd.challenge.domain.AccountImportResponse;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountImportService;
+import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccountImportServiceTest {
+
+  private AccountsService accountsService;
+
+  private AccountImportService accountImportService;
+
+  @Before
+  public void setUp() {
+    accountsService = new AccountsService(new AccountsRepositoryInMemory(16));
+    // tiny chunks so that even small inputs are spread over several workers
+    accountImportService = new AccountImportService(accountsService, new ObjectMapper(), 4, 3, 10);
+  }
+
+  @After
+  public void tearDown() {
+    accountImportService.shutdown();
+  }
+
+  @Test
+  public void importNdjsonReportsBadLinesInOrder() throws Exception {
+    accountsService.createAccount(new Account("Id-0", new BigDecimal(5)));
+    AccountImportResponse response = importAccounts(AccountImportFormat.NDJSON,
+        "{\"accountId\":\"Id-1\",\"balance\":100.50}\n"
+            + "\n"
+            + "{\"accountId\":\"Id-2\",\"balance\":\"7\",\"note\":{\"a\":[1]}}\n"
+            + "{\"accountId\":\"Id-0\",\"balance\":1}\n"
+            + "{\"accountId\":\"Id-3\",\"balance\":-1}\n"
+            + "not json\n"
+            + "{\"accountId\":\"Id-4\",\"balance\":0.001}\n"
+            + "{\"accountId\":\"Id-5\",\"balance\":2}");
+
+    assertThat(response.getImported()).isEqualTo(3);
+    assertThat(response.getDuplicates()).isEqualTo(1);
+    assertThat(response.getFailed()).isEqualTo(3);
+    assertThat(response.isErrorsTruncated()).isFalse();
+    assertThat(response.getErrors()).extracting("line").containsExactly(4L, 5L, 6L, 7L);
+    assertThat(response.getErrors().get(0).getMessage())
+        .isEqualTo("Account id Id-0 already exists!");
+    assertThat(response.getErrors().get(1).getMessage())
+        .isEqualTo("Initial balance must be positive.");
+    assertThat(response.getErrors().get(3).getMessage()).isEqualTo("Invalid balance 0.001");
+    assertThat(accountsService.getAccount("Id-0").getBalance()).isEqualByComparingTo("5");
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("100.50");
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("7");
+    assertThat(accountsService.getAccount("Id-5").getBalance()).isEqualByComparingTo("2");
+  }
+
+  @Test
+  public void importCsvWithHeaderAndQuotes() throws Exception {
+    AccountImportResponse response = importAccounts(AccountImportFormat.CSV,
+        "accountId,balance\r\n"
+            + "Id-1,10\r\n"
+            + "\"Id,\"\"2\"\"\",20.25\r\n"
+            + "Id-3\r\n");
+
+    assertThat(response.getImported()).isEqualTo(2);
+    assertThat(response.getFailed()).isEqualTo(1);
+    assertThat(response.getErrors()).extracting("line").containsExactly(4L);
+    assertThat(accountsService.getAccount("Id,\"2\"").getBalance()).isEqualByComparingTo("20.25");
+  }
+
+  @Test
+  public void importCsvWhoseFirstAccountLooksLikeAHeader() throws Exception {
+    AccountImportResponse response = importAccounts(AccountImportFormat.CSV,
+        "accountId-7,70\r\n"
+            + "Id-1,10\r\n");
+
+    assertThat(response.getImported()).isEqualTo(2);
+    assertThat(accountsService.getAccount("accountId-7").getBalance())
+        .isEqualByComparingTo("70");
+
+    response = importAccounts(AccountImportFormat.CSV,
+        " \"accountId\" , \"balance\" \r\n"
+            + "Id-2,20\r\n");
+
+    assertThat(response.getImported()).isEqualTo(1);
+    assertThat(response.getFailed()).isZero();
+  }
+
+  @Test
+  public void importFile() throws Exception {
+    File file = File.createTempFile("accounts", ".csv");
+    try {
+      try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+        for (int i = 0; i < 10_000; i++) {
+          writer.println("Id-" + i + "," + i);
+        }
+      }
+
+      AccountImportResponse response = accountImportService.importFile(file);
+
+      assertThat(response.getImported()).isEqualTo(10_000);
+      assertThat(response.getErrors()).isEmpty();
+      assertThat(accountsService.getAccount("Id-9999").getBalance()).isEqualByComparingTo("9999");
+    } finally {
+      assertThat(file.delete()).isTrue();
+    }
+  }
+
+  private AccountImportResponse importAccounts(AccountImportFormat format, String body)
+      throws IOException {
+    try (InputStream input = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))) {
+      return accountImportService.importAccounts(input, format);
+    }
+  }
+}
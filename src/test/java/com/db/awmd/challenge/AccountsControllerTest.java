@@ -5,12 +5,15 @@ import static org.junit.Assert.fail;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.history.TransactionHistory;
 import com.db.awmd.challenge.service.AccountsService;
 import java.math.BigDecimal;
 import org.junit.Before;
@@ -18,6 +21,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
@@ -34,6 +38,9 @@ public class AccountsControllerTest {
   @Autowired
   private AccountsService accountsService;
 
+  @Autowired
+  private TransactionHistory transactionHistory;
+
   @Autowired
   private WebApplicationContext webApplicationContext;
 
@@ -43,6 +50,7 @@ public class AccountsControllerTest {
 
     // Reset the existing accounts before each test.
     accountsService.getAccountsRepository().clearAccounts();
+    transactionHistory.clear();
   }
 
   @Test
@@ -106,6 +114,39 @@ public class AccountsControllerTest {
             content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
   }
 
+  /**
+   * The version of the account is its ETag, a read naming the current version gets no body.
+   */
+  @Test
+  public void getAccountConditionally() throws Exception {
+    createAccount("AC1", new BigDecimal(4000));
+    createAccount("AC2", new BigDecimal(3000));
+
+    this.mockMvc.perform(get("/v1/accounts/AC1"))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"0\""));
+    this.mockMvc.perform(get("/v1/accounts/AC1").header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+        .andExpect(status().isNotModified())
+        .andExpect(content().string(""));
+
+    this.accountsService.transfer("AC1", "AC2", 100);
+    this.mockMvc.perform(get("/v1/accounts/AC1").header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
+        .andExpect(jsonPath("$.balance").value(3999));
+  }
+
+  @Test
+  public void getAccounts() throws Exception {
+    createAccount("AC1", new BigDecimal("10.5"));
+    createAccount("AC2", new BigDecimal(20));
+
+    this.mockMvc.perform(get("/v1/accounts").param("ids", "AC2,AC3,AC1"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("{\"accounts\":[{\"accountId\":\"AC2\",\"balance\":20.00},"
+            + "{\"accountId\":\"AC1\",\"balance\":10.50}],\"notFound\":[\"AC3\"]}"));
+  }
+
   /**
    * Positive test for amount transfer between accounts.
    */
@@ -119,6 +160,63 @@ public class AccountsControllerTest {
         .andExpect(status().isOk());
   }
 
+  /**
+   * A retried transfer with the same idempotency key moves the money only once.
+   */
+  @Test
+  public void transferAmountRetriedWithIdempotencyKey() throws Exception {
+    createAccount("AC1", new BigDecimal(4000));
+    createAccount("AC2", new BigDecimal(3000));
+
+    for (int attempt = 0; attempt < 2; attempt++) {
+      this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+          .header("Idempotency-Key", "transfer-retried-once")
+          .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200}"))
+          .andExpect(status().isOk())
+          .andExpect(jsonPath("$.message")
+              .value("200 amount has been transferred from account AC2 to AC1"));
+    }
+    assertThat(accountsService.getAccount("AC1").getBalance()).isEqualByComparingTo("4200");
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("2800");
+
+    this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+        .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":300,"
+            + "\"requestId\":\"transfer-retried-once\"}"))
+        .andExpect(status().isUnprocessableEntity());
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("2800");
+  }
+
+  /**
+   * A transfer with If-Match is applied only while the debited account is at that version.
+   */
+  @Test
+  public void transferAmountIfMatch() throws Exception {
+    createAccount("AC1", new BigDecimal(4000));
+    createAccount("AC2", new BigDecimal(3000));
+
+    this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+        .header(HttpHeaders.IF_MATCH, "\"0\"")
+        .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200}"))
+        .andExpect(status().isOk());
+    this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+        .header(HttpHeaders.IF_MATCH, "\"0\"")
+        .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200}"))
+        .andExpect(status().isPreconditionFailed())
+        .andExpect(jsonPath("$.message").value("Account AC2 is at version 1, not 0."));
+    this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+        .header(HttpHeaders.IF_MATCH, "W/\"1\"")
+        .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200}"))
+        .andExpect(status().isBadRequest());
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("2800");
+
+    this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+        .header(HttpHeaders.IF_MATCH, "\"1\"")
+        .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200}"))
+        .andExpect(status().isOk());
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("2600");
+    assertThat(accountsService.getAccount("AC1").getBalance()).isEqualByComparingTo("4400");
+  }
+
   /**
    * Negative test where amount being transferred is invalid.
    */
@@ -132,6 +230,21 @@ public class AccountsControllerTest {
         .andExpect(status().isBadRequest());
   }
 
+  /**
+   * Negative test where amount has more fraction digits than balances are kept with.
+   */
+  @Test
+  public void transferAmountTooPrecise() throws Exception {
+    createAccount("AC1", new BigDecimal(4000));
+    createAccount("AC2", new BigDecimal(3000));
+
+    this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+        .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":1.001}"))
+        .andExpect(status().isBadRequest());
+
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("3000");
+  }
+
   /**
    * Negative test where one of the accounts does not exist.
    */
@@ -166,6 +279,174 @@ public class AccountsControllerTest {
     }
   }
 
+  /**
+   * Best effort batch given as a JSON array: the failing transfer does not stop the others.
+   */
+  @Test
+  public void transferBatchBestEffort() throws Exception {
+    createAccount("AC1", new BigDecimal(4000));
+    createAccount("AC2", new BigDecimal(3000));
+    createAccount("AC3", new BigDecimal(0));
+
+    this.mockMvc.perform(post("/v1/accounts/transfers/batch")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("[{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200},"
+            + "{\"accountFromId\":\"AC3\",\"accountToId\":\"AC1\",\"amount\":50},"
+            + "{\"accountFromId\":\"AC1\",\"accountToId\":\"AC3\",\"amount\":100}]"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.succeeded").value(2))
+        .andExpect(jsonPath("$.failed").value(1))
+        .andExpect(jsonPath("$.results[1].status").value(false))
+        .andExpect(jsonPath("$.results[1].message")
+            .value("Account AC3 does not have sufficient amount to debit from."));
+
+    assertThat(accountsService.getAccount("AC1").getBalance()).isEqualByComparingTo("4100");
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("2800");
+    assertThat(accountsService.getAccount("AC3").getBalance()).isEqualByComparingTo("100");
+  }
+
+  /**
+   * All-or-nothing batch given as newline-delimited JSON: one failing transfer rejects the batch.
+   */
+  @Test
+  public void transferBatchAllOrNothing() throws Exception {
+    createAccount("AC1", new BigDecimal(4000));
+    createAccount("AC2", new BigDecimal(3000));
+
+    this.mockMvc.perform(post("/v1/accounts/transfers/batch").param("mode", "ALL_OR_NOTHING")
+        .contentType("application/x-ndjson")
+        .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200}\n"
+            + "{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":2900}\n"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.succeeded").value(0))
+        .andExpect(jsonPath("$.results[0].message").value("Not executed, batch rejected."))
+        .andExpect(jsonPath("$.results[1].message")
+            .value("Account AC2 does not have sufficient amount to debit from."));
+
+    assertThat(accountsService.getAccount("AC1").getBalance()).isEqualByComparingTo("4000");
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("3000");
+    assertThat(transactionHistory.page("AC2", null, null, 10).getTransactions()).isEmpty();
+  }
+
+  @Test
+  public void transferBatchAllOrNothingApplied() throws Exception {
+    createAccount("AC1", new BigDecimal(100));
+    createAccount("AC2", new BigDecimal(0));
+
+    this.mockMvc.perform(post("/v1/accounts/transfers/batch").param("mode", "ALL_OR_NOTHING")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("[{\"accountFromId\":\"AC1\",\"accountToId\":\"AC2\",\"amount\":100},"
+            + "{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":40}]"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.succeeded").value(2));
+
+    assertThat(accountsService.getAccount("AC1").getBalance()).isEqualByComparingTo("40");
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("60");
+    assertThat(transactionHistory.page("AC2", null, null, 10).getTransactions()).hasSize(2);
+  }
+
+  @Test
+  public void transferBatchTooLarge() throws Exception {
+    createAccount("AC1", new BigDecimal(4000));
+    createAccount("AC2", new BigDecimal(3000));
+    final StringBuilder body = new StringBuilder();
+    for (int i = 0; i <= 1000; i++) {
+      body.append("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":1}\n");
+    }
+
+    this.mockMvc.perform(post("/v1/accounts/transfers/batch").contentType("application/x-ndjson")
+        .content(body.toString()))
+        .andExpect(status().isPayloadTooLarge())
+        .andExpect(content().string("Batch exceeds 1000 transfers."));
+
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("3000");
+  }
+
+  @Test
+  public void transferBatchIdempotent() throws Exception {
+    createAccount("AC1", new BigDecimal(4000));
+    createAccount("AC2", new BigDecimal(3000));
+    final String batch = "[{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200}]";
+
+    for (int attempt = 0; attempt < 2; attempt++) {
+      this.mockMvc.perform(post("/v1/accounts/transfers/batch")
+          .contentType(MediaType.APPLICATION_JSON).header("Idempotency-Key", "batch-1")
+          .content(batch))
+          .andExpect(status().isOk())
+          .andExpect(jsonPath("$.succeeded").value(1));
+    }
+    this.mockMvc.perform(post("/v1/accounts/transfers/batch")
+        .contentType(MediaType.APPLICATION_JSON).header("Idempotency-Key", "batch-1")
+        .content(batch.replace("200", "300")))
+        .andExpect(status().isUnprocessableEntity());
+
+    assertThat(accountsService.getAccount("AC1").getBalance()).isEqualByComparingTo("4200");
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("2800");
+  }
+
+  @Test
+  public void importAccounts() throws Exception {
+    createAccount("Id-1", new BigDecimal(10));
+
+    this.mockMvc.perform(post("/v1/accounts/import").contentType("application/x-ndjson")
+        .content("{\"accountId\":\"Id-1\",\"balance\":5}\n"
+            + "{\"accountId\":\"Id-2\",\"balance\":1000}\n"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.imported").value(1))
+        .andExpect(jsonPath("$.duplicates").value(1))
+        .andExpect(jsonPath("$.errors[0].line").value(1))
+        .andExpect(jsonPath("$.errors[0].accountId").value("Id-1"));
+
+    this.mockMvc.perform(post("/v1/accounts/import").contentType("text/csv")
+        .content("accountId,balance\nId-3,12.5\n"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.imported").value(1))
+        .andExpect(jsonPath("$.failed").value(0));
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("10");
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("1000");
+    assertThat(accountsService.getAccount("Id-3").getBalance()).isEqualByComparingTo("12.5");
+  }
+
+  @Test
+  public void getTransactions() throws Exception {
+    createAccount("AC1", new BigDecimal(4000));
+    createAccount("AC2", new BigDecimal(3000));
+    this.accountsService.transfer("AC2", "AC1", 100);
+    this.accountsService.transfer("AC1", "AC2", 2550);
+
+    this.mockMvc.perform(get("/v1/accounts/AC1/transactions").param("limit", "1"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.transactions[0].amount").value(-25.5))
+        .andExpect(jsonPath("$.transactions[0].counterpartyId").value("AC2"))
+        .andExpect(jsonPath("$.nextCursor").value("1"));
+    this.mockMvc.perform(get("/v1/accounts/AC1/transactions").param("cursor", "1"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.transactions[0].amount").value(1))
+        .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+    this.mockMvc.perform(get("/v1/accounts/AC3/transactions")).andExpect(status().isNotFound());
+    this.mockMvc.perform(get("/v1/accounts/AC1/transactions").param("cursor", "x"))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void scrapeMetrics() throws Exception {
+    createAccount("AC1", new BigDecimal(4000));
+    createAccount("AC2", new BigDecimal(3000));
+    this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+        .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200}"))
+        .andExpect(status().isOk());
+
+    String metrics = this.mockMvc.perform(get("/v1/metrics")).andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    assertThat(metrics).contains("# TYPE accounts_transfers_total counter")
+        .containsPattern("accounts_transfers_total\\{outcome=\"success\"} [1-9]")
+        .containsPattern("accounts_transfer_commit_seconds_count [1-9]")
+        .contains("accounts_transfer_lock_wait_seconds{quantile=\"0.99\"}")
+        .contains("accounts_notification_queue_depth");
+  }
+
   private void createAccount(String id, BigDecimal balance) {
     Account account = new Account(id, balance);
     this.accountsService.createAccount(account);
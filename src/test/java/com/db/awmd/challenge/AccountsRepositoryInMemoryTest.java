@@ -1,10 +1,19 @@
 package com.db.awmd.challenge;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.BatchTransferException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
 import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
 import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -45,4 +54,132 @@ public class AccountsRepositoryInMemoryTest {
     assertThat(this.accountsRepositoryInMemory.getAccount("AC4").getBalance())
         .isEqualByComparingTo(new BigDecimal(4200));
   }
+
+  /**
+   * Opposing transfers between the same pair of accounts from many threads must neither deadlock
+   * nor lose updates.
+   */
+  @Test
+  public void transferBetweenAccountsConcurrently() throws Exception {
+    Account accountA = new Account("AC5", new BigDecimal(100000));
+    Account accountB = new Account("AC6", new BigDecimal(100000));
+    accountsRepositoryInMemory.createAccount(accountA);
+    accountsRepositoryInMemory.createAccount(accountB);
+
+    final int threads = 8;
+    final int transfersPerThread = 10000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < threads; t++) {
+      final boolean forward = t % 2 == 0;
+      executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < transfersPerThread; i++) {
+          if (forward) {
+            accountsRepositoryInMemory.transferBetweenAccounts(accountA, accountB, BigDecimal.ONE);
+          } else {
+            accountsRepositoryInMemory.transferBetweenAccounts(accountB, accountA, BigDecimal.ONE);
+          }
+        }
+        return null;
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+    // the same number of units flowed in both directions
+    assertThat(accountsRepositoryInMemory.getAccount("AC5").getBalance())
+        .isEqualByComparingTo(new BigDecimal(100000));
+    assertThat(accountsRepositoryInMemory.getAccount("AC6").getBalance())
+        .isEqualByComparingTo(new BigDecimal(100000));
+  }
+
+  /**
+   * A batch is checked under the locks of all its accounts: the second transfer can not be
+   * covered, so the first is not applied either.
+   */
+  @Test
+  public void transferAllAppliesNothingIfOneTransferFails() throws Exception {
+    Account accountA = new Account("AC7", new BigDecimal(100));
+    Account accountB = new Account("AC8", BigDecimal.ZERO);
+    Account accountC = new Account("AC9", BigDecimal.ZERO);
+    accountsRepositoryInMemory.createAccount(accountA);
+    accountsRepositoryInMemory.createAccount(accountB);
+    accountsRepositoryInMemory.createAccount(accountC);
+
+    try {
+      accountsRepositoryInMemory.transferAll(new Account[] {accountA, accountB},
+          new Account[] {accountB, accountC}, new long[] {10000L, 15000L});
+      fail("Should have failed due to insufficient balance in the second account.");
+    } catch (BatchTransferException ex) {
+      assertThat(ex.getIndex()).isEqualTo(1);
+      assertThat(ex.getMessage())
+          .isEqualTo("Account AC8 does not have sufficient amount to debit from.");
+    }
+    accountsRepositoryInMemory.transferAll(new Account[] {accountA, accountB},
+        new Account[] {accountB, accountC}, new long[] {10000L, 2500L});
+
+    assertThat(accountA.getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+    assertThat(accountB.getBalance()).isEqualByComparingTo(new BigDecimal(75));
+    assertThat(accountC.getBalance()).isEqualByComparingTo(new BigDecimal(25));
+  }
+
+  /**
+   * A hold placed on a debited account while a batch runs waits for the batch: it can not drain
+   * the account between the check of the batch and its transfers.
+   */
+  @Test
+  public void holdPlacedDuringABatchWaitsForIt() throws Exception {
+    final AtomicBoolean armed = new AtomicBoolean();
+    final AtomicReference<Thread> holder = new AtomicReference<>();
+    final AtomicReference<RuntimeException> holdFailure = new AtomicReference<>();
+    Account accountA = new Account("AC10", new BigDecimal(100)) {
+      @Override
+      public long getBalanceInMinorUnits() {
+        if (armed.compareAndSet(true, false)) {
+          // the batch is checking this account, a hold tries to get in right now
+          final Account account = this;
+          final Thread thread = new Thread(() -> {
+            try {
+              accountsRepositoryInMemory.placeHold(account, 8000L);
+            } catch (RuntimeException re) {
+              holdFailure.set(re);
+            }
+          });
+          holder.set(thread);
+          thread.start();
+          awaitBlockedOrDone(thread);
+        }
+        return super.getBalanceInMinorUnits();
+      }
+    };
+    Account accountB = new Account("AC11", BigDecimal.ZERO);
+    Account accountC = new Account("AC12", BigDecimal.ZERO);
+    accountsRepositoryInMemory.createAccount(accountA);
+    accountsRepositoryInMemory.createAccount(accountB);
+    accountsRepositoryInMemory.createAccount(accountC);
+
+    armed.set(true);
+    accountsRepositoryInMemory.transferAll(new Account[] {accountA, accountA},
+        new Account[] {accountB, accountC}, new long[] {5000L, 5000L});
+    holder.get().join(TimeUnit.MINUTES.toMillis(1));
+
+    assertThat(holdFailure.get()).isInstanceOf(InsufficientBalanceException.class);
+    assertThat(accountA.getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+    assertThat(accountA.getSnapshot().getReserved()).isZero();
+    assertThat(accountB.getBalance()).isEqualByComparingTo(new BigDecimal(50));
+    assertThat(accountC.getBalance()).isEqualByComparingTo(new BigDecimal(50));
+  }
+
+  private static void awaitBlockedOrDone(Thread thread) {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (System.nanoTime() < deadline) {
+      final Thread.State state = thread.getState();
+      if (state == Thread.State.WAITING || state == Thread.State.TERMINATED) {
+        return;
+      }
+      Thread.yield();
+    }
+  }
 }
@@ -0,0 +1,238 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.BatchTransferException;
+import com.db.awmd.challenge.repository.AccountsRepositoryJournaled;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AccountsRepositoryJournaledTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File directory;
+
+  private File snapshotDirectory;
+
+  private AccountsRepositoryJournaled accountsRepository;
+
+  @Before
+  public void openRepository() throws IOException {
+    directory = folder.newFolder("journal");
+    snapshotDirectory = folder.newFolder("snapshots");
+    accountsRepository = open();
+  }
+
+  @After
+  public void closeRepository() throws IOException {
+    accountsRepository.close();
+  }
+
+  @Test
+  public void recoversBalancesAfterRestart() throws Exception {
+    accountsRepository.createAccount(new Account("AC1", new BigDecimal("4000")));
+    accountsRepository.createAccount(new Account("AC2", new BigDecimal("3000.50")));
+    accountsRepository.transferBetweenAccounts(accountsRepository.getAccount("AC2"),
+        accountsRepository.getAccount("AC1"), new BigDecimal("200.25"));
+
+    accountsRepository.close();
+    accountsRepository = open();
+
+    assertThat(accountsRepository.getAccount("AC1").getBalance()).isEqualByComparingTo("4200.25");
+    assertThat(accountsRepository.getAccount("AC2").getBalance()).isEqualByComparingTo("2800.25");
+    assertThat(accountsRepository.getAccount("AC2").getVersion()).isEqualTo(1L);
+  }
+
+  @Test
+  public void recoversAcrossSegments() throws Exception {
+    accountsRepository.createAccount(new Account("AC1", new BigDecimal("100000")));
+    accountsRepository.createAccount(new Account("AC2", new BigDecimal("100000")));
+    Account accountA = accountsRepository.getAccount("AC1");
+    Account accountB = accountsRepository.getAccount("AC2");
+    // enough records to fill several 1 MB segments
+    for (int i = 0; i < 50000; i++) {
+      accountsRepository.transferBetweenAccounts(accountA, accountB, i % 3 == 0 ? 2L : 1L);
+    }
+    final BigDecimal balanceA = accountA.getBalance();
+    final BigDecimal balanceB = accountB.getBalance();
+    assertThat(directory.list()).hasSize(3);
+
+    accountsRepository.close();
+    accountsRepository = open();
+
+    assertThat(accountsRepository.getAccount("AC1").getBalance()).isEqualByComparingTo(balanceA);
+    assertThat(accountsRepository.getAccount("AC2").getBalance()).isEqualByComparingTo(balanceB);
+    assertThat(accountsRepository.getAccount("AC1").getVersion()).isEqualTo(50000L);
+  }
+
+  @Test
+  public void appendsAfterRecoveredRecords() throws Exception {
+    accountsRepository.createAccount(new Account("AC1", new BigDecimal("10")));
+    accountsRepository.close();
+    accountsRepository = open();
+
+    accountsRepository.createAccount(new Account("AC2", new BigDecimal("20")));
+    accountsRepository.close();
+    accountsRepository = open();
+
+    assertThat(accountsRepository.getAccount("AC1").getBalance()).isEqualByComparingTo("10");
+    assertThat(accountsRepository.getAccount("AC2").getBalance()).isEqualByComparingTo("20");
+  }
+
+  @Test
+  public void recoversRecordsJournaledAfterClear() throws Exception {
+    accountsRepository.createAccount(new Account("AC1", new BigDecimal("10")));
+    accountsRepository.snapshot();
+    accountsRepository.clearAccounts();
+    accountsRepository.createAccount(new Account("AC2", new BigDecimal("20")));
+    // journal positions go on after the clear, so the snapshot covers none of the new records
+    final long position = accountsRepository.snapshot();
+    accountsRepository.createAccount(new Account("AC3", new BigDecimal("30")));
+
+    accountsRepository.close();
+    accountsRepository = open();
+
+    assertThat(position).isPositive();
+    assertThat(accountsRepository.getAccount("AC1")).isNull();
+    assertThat(accountsRepository.getAccount("AC2").getBalance()).isEqualByComparingTo("20");
+    assertThat(accountsRepository.getAccount("AC3").getBalance()).isEqualByComparingTo("30");
+  }
+
+  @Test
+  public void recoversFromSnapshotAndJournalTail() throws Exception {
+    accountsRepository.createAccount(new Account("AC1", new BigDecimal("1000")));
+    accountsRepository.createAccount(new Account("AC2", new BigDecimal("1000")));
+    Account accountA = accountsRepository.getAccount("AC1");
+    Account accountB = accountsRepository.getAccount("AC2");
+    for (int i = 0; i < 30000; i++) {
+      accountsRepository.transferBetweenAccounts(accountA, accountB, 1L);
+    }
+    accountsRepository.snapshot();
+    // the segments before the snapshot are no longer needed
+    assertThat(directory.list()).hasSize(1);
+    for (int i = 0; i < 10; i++) {
+      accountsRepository.transferBetweenAccounts(accountB, accountA, 5L);
+    }
+    accountsRepository.createAccount(new Account("AC3", new BigDecimal("7")));
+
+    accountsRepository.close();
+    accountsRepository = open();
+
+    assertThat(accountsRepository.getAccount("AC1").getBalance()).isEqualByComparingTo("700.50");
+    assertThat(accountsRepository.getAccount("AC2").getBalance()).isEqualByComparingTo("1299.50");
+    assertThat(accountsRepository.getAccount("AC3").getBalance()).isEqualByComparingTo("7");
+    assertThat(accountsRepository.getRecoveryStats().getSnapshotAccounts()).isEqualTo(2L);
+    assertThat(accountsRepository.getRecoveryStats().getJournalRecords()).isEqualTo(11L);
+  }
+
+  @Test
+  public void fallsBackToOlderSnapshotWhenLatestIsCorrupt() throws Exception {
+    accountsRepository.createAccount(new Account("AC1", new BigDecimal("100")));
+    accountsRepository.createAccount(new Account("AC2", new BigDecimal("100")));
+    accountsRepository.snapshot();
+    accountsRepository.transferBetweenAccounts(accountsRepository.getAccount("AC1"),
+        accountsRepository.getAccount("AC2"), new BigDecimal("40"));
+    accountsRepository.snapshot();
+    accountsRepository.close();
+
+    File[] images = snapshotDirectory.listFiles();
+    assertThat(images).hasSize(2);
+    File latest = images[0].getName().compareTo(images[1].getName()) > 0 ? images[0] : images[1];
+    try (RandomAccessFile file = new RandomAccessFile(latest, "rw")) {
+      file.seek(file.length() - 20);
+      file.write(0x7f);
+    }
+
+    accountsRepository = open();
+
+    assertThat(accountsRepository.getAccount("AC1").getBalance()).isEqualByComparingTo("60");
+    assertThat(accountsRepository.getAccount("AC2").getBalance()).isEqualByComparingTo("140");
+  }
+
+  /**
+   * Snapshots taken while transfers run must recover to a state which conserves the total.
+   */
+  @Test
+  public void snapshotsWhileTransfersRun() throws Exception {
+    for (int i = 0; i < 8; i++) {
+      accountsRepository.createAccount(new Account("AC" + i, new BigDecimal("1000")));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    Future<?>[] workers = new Future<?>[4];
+    for (int t = 0; t < workers.length; t++) {
+      final int seed = t;
+      workers[t] = executor.submit(() -> {
+        for (int i = 0; i < 20000; i++) {
+          Account from = accountsRepository.getAccount("AC" + ((i + seed) % 8));
+          Account to = accountsRepository.getAccount("AC" + ((i * 3 + seed + 1) % 8));
+          try {
+            accountsRepository.transferBetweenAccounts(from, to, 1L + i % 7);
+          } catch (RuntimeException ignored) {
+            // insufficient balance
+          }
+        }
+      });
+    }
+    for (int i = 0; i < 5; i++) {
+      accountsRepository.snapshot();
+    }
+    for (Future<?> worker : workers) {
+      worker.get();
+    }
+    executor.shutdown();
+
+    accountsRepository.close();
+    accountsRepository = open();
+
+    BigDecimal total = BigDecimal.ZERO;
+    for (int i = 0; i < 8; i++) {
+      total = total.add(accountsRepository.getAccount("AC" + i).getBalance());
+    }
+    assertThat(total).isEqualByComparingTo("8000");
+  }
+
+  private AccountsRepositoryJournaled open() throws IOException {
+    AccountsRepositoryJournaled repository = new AccountsRepositoryJournaled(16,
+        directory.getPath(), 1, 64, 1000, snapshotDirectory.getPath(), 2);
+    repository.recover();
+    return repository;
+  }
+
+  @Test
+  public void recoversBatchTransfers() throws Exception {
+    accountsRepository.createAccount(new Account("AC1", new BigDecimal("100")));
+    accountsRepository.createAccount(new Account("AC2", BigDecimal.ZERO));
+    final Account[] accounts = {accountsRepository.getAccount("AC1"),
+        accountsRepository.getAccount("AC2")};
+    accountsRepository.transferAll(accounts, new Account[] {accounts[1], accounts[0]},
+        new long[] {10000L, 2500L});
+    try {
+      accountsRepository.transferAll(accounts, new Account[] {accounts[1], accounts[0]},
+          new long[] {2500L, 10001L});
+      fail("Should have failed due to insufficient balance in the second account.");
+    } catch (BatchTransferException ex) {
+      assertThat(ex.getIndex()).isEqualTo(1);
+    }
+
+    accountsRepository.close();
+    accountsRepository = open();
+
+    assertThat(accountsRepository.getAccount("AC1").getBalance()).isEqualByComparingTo("25");
+    assertThat(accountsRepository.getAccount("AC2").getBalance()).isEqualByComparingTo("75");
+    assertThat(accountsRepository.getAccount("AC2").getVersion()).isEqualTo(2L);
+  }
+}
@@ -0,0 +1,227 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.BatchTransferException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepositoryLockFree;
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccountsRepositoryLockFreeTest {
+
+  private AccountsRepositoryLockFree accountsRepository;
+
+  @Before
+  public void prepareRepository() {
+    this.accountsRepository = new AccountsRepositoryLockFree();
+  }
+
+  @Test
+  public void transferBetweenAccounts() throws Exception {
+    Account accountFrom = new Account("AC3", new BigDecimal(3000));
+    Account accountTo = new Account("AC4", new BigDecimal(4000));
+    accountsRepository.createAccount(accountFrom);
+    accountsRepository.createAccount(accountTo);
+
+    accountsRepository.transferBetweenAccounts(accountFrom, accountTo, new BigDecimal(200));
+
+    assertThat(accountsRepository.getAccount("AC3").getBalance())
+        .isEqualByComparingTo(new BigDecimal(2800));
+    assertThat(accountsRepository.getAccount("AC4").getBalance())
+        .isEqualByComparingTo(new BigDecimal(4200));
+    assertThat(accountsRepository.getAccount("AC3").getVersion()).isEqualTo(1L);
+  }
+
+  @Test
+  public void transferBetweenAccountsInsufficientBalance() throws Exception {
+    Account accountFrom = new Account("AC3", new BigDecimal(100));
+    Account accountTo = new Account("AC4", new BigDecimal(0));
+    accountsRepository.createAccount(accountFrom);
+    accountsRepository.createAccount(accountTo);
+
+    try {
+      accountsRepository.transferBetweenAccounts(accountFrom, accountTo, new BigDecimal(200));
+      fail("Should have failed due to insufficient balance in the account.");
+    } catch (InsufficientBalanceException ex) {
+      assertThat(ex.getMessage())
+          .isEqualTo("Account AC3 does not have sufficient amount to debit from.");
+    }
+    assertThat(accountTo.getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+    assertThat(accountTo.getVersion()).isEqualTo(0L);
+  }
+
+  /**
+   * Many threads draining one account: exactly the available amount must be debited and the
+   * balance must never go negative.
+   */
+  @Test
+  public void transferBetweenAccountsConcurrently() throws Exception {
+    Account accountFrom = new Account("AC5", new BigDecimal(5000));
+    Account accountTo = new Account("AC6", BigDecimal.ZERO);
+    accountsRepository.createAccount(accountFrom);
+    accountsRepository.createAccount(accountTo);
+
+    final int threads = 8;
+    final AtomicInteger rejected = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < threads; t++) {
+      executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < 1000; i++) {
+          try {
+            accountsRepository.transferBetweenAccounts(accountFrom, accountTo, BigDecimal.ONE);
+          } catch (InsufficientBalanceException ex) {
+            rejected.incrementAndGet();
+          }
+        }
+        return null;
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+    assertThat(accountFrom.getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+    assertThat(accountTo.getBalance()).isEqualByComparingTo(new BigDecimal(5000));
+    assertThat(rejected.get()).isEqualTo(threads * 1000 - 5000);
+  }
+
+  /**
+   * A transfer of a batch may spend what an earlier one credited.
+   */
+  @Test
+  public void transferAll() throws Exception {
+    Account accountA = new Account("AC1", new BigDecimal(100));
+    Account accountB = new Account("AC2", BigDecimal.ZERO);
+    Account accountC = new Account("AC3", BigDecimal.ZERO);
+    accountsRepository.createAccount(accountA);
+    accountsRepository.createAccount(accountB);
+    accountsRepository.createAccount(accountC);
+
+    accountsRepository.transferAll(new Account[] {accountA, accountB},
+        new Account[] {accountB, accountC}, new long[] {10000L, 6000L});
+
+    assertThat(accountA.getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+    assertThat(accountB.getBalance()).isEqualByComparingTo(new BigDecimal(40));
+    assertThat(accountC.getBalance()).isEqualByComparingTo(new BigDecimal(60));
+    assertThat(accountA.getSnapshot().getReserved()).isZero();
+    assertThat(accountB.getSnapshot().getReserved()).isZero();
+  }
+
+  /**
+   * The second debited account is drained between the check of the batch and its hold, as by a
+   * concurrent transfer: the hold already placed on the first account is released and nothing is
+   * transferred.
+   */
+  @Test
+  public void transferAllReleasesHoldsIfAnAccountNoLongerCovers() throws Exception {
+    Account accountA = new Account("AC1", new BigDecimal(100));
+    Account accountB = new Account("AC2", new BigDecimal(100));
+    Account accountC = new Account("AC3", BigDecimal.ZERO);
+    accountsRepository = new AccountsRepositoryLockFree() {
+      @Override
+      public void placeHold(Account account, long amount) {
+        if (account == accountB) {
+          accountB.debit(5000L);
+        }
+        super.placeHold(account, amount);
+      }
+    };
+    accountsRepository.createAccount(accountA);
+    accountsRepository.createAccount(accountB);
+    accountsRepository.createAccount(accountC);
+
+    try {
+      accountsRepository.transferAll(new Account[] {accountA, accountB},
+          new Account[] {accountC, accountC}, new long[] {8000L, 6000L});
+      fail("Should have failed due to insufficient balance in the second account.");
+    } catch (BatchTransferException ex) {
+      assertThat(ex.getIndex()).isEqualTo(1);
+      assertThat(ex.getMessage())
+          .isEqualTo("Account AC2 does not have sufficient amount to debit from.");
+    }
+    assertThat(accountA.getBalance()).isEqualByComparingTo(new BigDecimal(100));
+    assertThat(accountA.getSnapshot().getReserved()).isZero();
+    assertThat(accountB.getBalance()).isEqualByComparingTo(new BigDecimal(50));
+    assertThat(accountC.getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+    assertThat(accountC.getVersion()).isEqualTo(0L);
+  }
+
+  /**
+   * The debit and the credit of a transfer are separate steps: while the credit is being applied
+   * the debit is already visible, so the money is briefly in flight.
+   */
+  @Test
+  public void transferExposesTheDebitBeforeTheCredit() throws Exception {
+    Account accountFrom = new Account("AC3", new BigDecimal(100));
+    final AtomicLong seenInFlight = new AtomicLong(-1L);
+    Account accountTo = new Account("AC4", BigDecimal.ZERO) {
+      @Override
+      public void credit(long amount) {
+        seenInFlight.set(accountFrom.getBalanceInMinorUnits() + getBalanceInMinorUnits());
+        super.credit(amount);
+      }
+    };
+    accountsRepository.createAccount(accountFrom);
+    accountsRepository.createAccount(accountTo);
+
+    accountsRepository.transferBetweenAccounts(accountFrom, accountTo, 4000L);
+
+    assertThat(seenInFlight.get()).isEqualTo(6000L);
+    assertThat(accountFrom.getBalanceInMinorUnits() + accountTo.getBalanceInMinorUnits())
+        .isEqualTo(10000L);
+  }
+
+  /**
+   * Transfers around a ring of accounts from many threads: however the debits and credits
+   * interleave, the total is exact once no transfer is in flight.
+   */
+  @Test
+  public void totalIsConservedOnceNoTransferIsInFlight() throws Exception {
+    final Account[] accounts = new Account[4];
+    for (int i = 0; i < accounts.length; i++) {
+      accounts[i] = new Account("AC" + i, new BigDecimal(1000));
+      accountsRepository.createAccount(accounts[i]);
+    }
+
+    final int threads = 4;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < threads; t++) {
+      final int offset = t;
+      executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < 10000; i++) {
+          try {
+            accountsRepository.transferBetweenAccounts(accounts[(i + offset) % 4],
+                accounts[(i + offset + 1) % 4], 1L);
+          } catch (InsufficientBalanceException ex) {
+            // the ring may drain one account for a while
+          }
+        }
+        return null;
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+    long sum = 0;
+    for (Account account : accounts) {
+      assertThat(account.getBalanceInMinorUnits()).isNotNegative();
+      sum += account.getBalanceInMinorUnits();
+    }
+    assertThat(sum).isEqualTo(4 * 100000L);
+  }
+}
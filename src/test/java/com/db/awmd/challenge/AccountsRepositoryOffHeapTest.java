@@ -0,0 +1,188 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.exception.AccountVersionMismatchException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccountsRepositoryOffHeapTest {
+
+  private AccountsRepositoryOffHeap accountsRepository;
+
+  @Before
+  public void prepareRepository() {
+    // a small index is rebuilt several times by the tests below
+    this.accountsRepository = new AccountsRepositoryOffHeap(64, 16);
+  }
+
+  @Test
+  public void transferBetweenAccounts() throws Exception {
+    accountsRepository.createAccount(new Account("AC3", new BigDecimal("3000.25")));
+    accountsRepository.createAccount(new Account("AC4", new BigDecimal(4000)));
+
+    accountsRepository.transferBetweenAccounts(accountsRepository.getAccount("AC3"),
+        accountsRepository.getAccount("AC4"), new BigDecimal("200.25"));
+
+    assertThat(accountsRepository.getAccount("AC3").getBalance()).isEqualByComparingTo("2800");
+    assertThat(accountsRepository.getAccount("AC4").getBalance())
+        .isEqualByComparingTo("4200.25");
+    assertThat(accountsRepository.getAccount("AC3").getVersion()).isEqualTo(1L);
+    assertThat(accountsRepository.getAccount("AC5")).isNull();
+  }
+
+  @Test
+  public void transferBetweenAccountsInsufficientBalance() throws Exception {
+    accountsRepository.createAccount(new Account("AC3", new BigDecimal(100)));
+    accountsRepository.createAccount(new Account("AC4", BigDecimal.ZERO));
+
+    try {
+      accountsRepository.transferBetweenAccounts(accountsRepository.getAccount("AC3"),
+          accountsRepository.getAccount("AC4"), new BigDecimal(200));
+      fail("Should have failed due to insufficient balance in the account.");
+    } catch (InsufficientBalanceException ex) {
+      assertThat(ex.getMessage())
+          .isEqualTo("Account AC3 does not have sufficient amount to debit from.");
+    }
+    assertThat(accountsRepository.getAccount("AC4").getVersion()).isEqualTo(0L);
+  }
+
+  @Test
+  public void transferIfVersion() throws Exception {
+    accountsRepository.createAccount(new Account("AC3", new BigDecimal(3000)));
+    accountsRepository.createAccount(new Account("AC4", new BigDecimal(4000)));
+
+    accountsRepository.transferIfVersion(accountsRepository.getAccount("AC3"),
+        accountsRepository.getAccount("AC4"), 100L, 0L);
+    try {
+      accountsRepository.transferIfVersion(accountsRepository.getAccount("AC3"),
+          accountsRepository.getAccount("AC4"), 100L, 0L);
+      fail("Should have failed because the account changed.");
+    } catch (AccountVersionMismatchException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Account AC3 is at version 1, not 0.");
+    }
+    assertThat(accountsRepository.getBalanceSnapshot("AC3").getBalance()).isEqualTo(299900L);
+    assertThat(accountsRepository.getBalanceSnapshot("AC4").getVersion()).isEqualTo(1L);
+  }
+
+  @Test
+  public void findsEveryAccountAfterTheIndexGrew() throws Exception {
+    for (int i = 0; i < 100_000; i++) {
+      accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+    }
+    try {
+      accountsRepository.createAccount(new Account("Id-42", BigDecimal.ONE));
+      fail("Should have rejected the duplicate account.");
+    } catch (DuplicateAccountIdException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Account id Id-42 already exists!");
+    }
+
+    assertThat(accountsRepository.size()).isEqualTo(100_000);
+    for (int i = 0; i < 100_000; i++) {
+      assertThat(accountsRepository.getAccount("Id-" + i).getBalance())
+          .isEqualByComparingTo(new BigDecimal(i));
+    }
+    assertThat(accountsRepository.getAccount("Id-100000")).isNull();
+  }
+
+  /**
+   * Random transfers from many threads while accounts are being added: money is neither lost nor
+   * created.
+   */
+  @Test
+  public void transferBetweenAccountsConcurrently() throws Exception {
+    final int accounts = 64;
+    for (int i = 0; i < accounts; i++) {
+      accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal(100)));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < 8; t++) {
+      final int thread = t;
+      executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < 5000; i++) {
+          if (thread == 0) {
+            accountsRepository.createAccount(new Account("New-" + i, BigDecimal.ZERO));
+            continue;
+          }
+          Account from = accountsRepository
+              .getAccount("Id-" + ThreadLocalRandom.current().nextInt(accounts));
+          Account to = accountsRepository
+              .getAccount("Id-" + ThreadLocalRandom.current().nextInt(accounts));
+          try {
+            accountsRepository.transferBetweenAccounts(from, to, 300L);
+          } catch (InsufficientBalanceException ex) {
+            // expected now and then
+          }
+        }
+        return null;
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+    BigDecimal total = BigDecimal.ZERO;
+    for (int i = 0; i < accounts; i++) {
+      total = total.add(accountsRepository.getAccount("Id-" + i).getBalance());
+    }
+    assertThat(total).isEqualByComparingTo(new BigDecimal(100 * accounts));
+    assertThat(accountsRepository.size()).isEqualTo(accounts + 5000);
+  }
+
+  /**
+   * One writer moves a unit back and forth, so the balance of AC1 is its initial balance minus the
+   * parity of its version. A torn read would pair a balance with the wrong version.
+   */
+  @Test
+  public void snapshotReadsAreConsistentDuringTransfers() throws Exception {
+    accountsRepository.createAccount(new Account("AC1", new BigDecimal(100)));
+    accountsRepository.createAccount(new Account("AC2", new BigDecimal(100)));
+    final Account ac1 = accountsRepository.getAccount("AC1");
+    final Account ac2 = accountsRepository.getAccount("AC2");
+    final ExecutorService readers = Executors.newFixedThreadPool(3);
+    final AtomicBoolean done = new AtomicBoolean();
+    final AtomicLong torn = new AtomicLong();
+    final AtomicLong reads = new AtomicLong();
+    for (int r = 0; r < 3; r++) {
+      readers.execute(() -> {
+        while (!done.get()) {
+          BalanceSnapshot snapshot = accountsRepository.getBalanceSnapshot("AC1");
+          if (snapshot.getBalance() != 10_000 - snapshot.getVersion() % 2) {
+            torn.incrementAndGet();
+          }
+          reads.incrementAndGet();
+        }
+      });
+    }
+
+    for (int i = 0; i < 200_000; i++) {
+      accountsRepository.transferBetweenAccounts(ac1, ac2, 1L);
+      accountsRepository.transferBetweenAccounts(ac2, ac1, 1L);
+    }
+    done.set(true);
+    readers.shutdown();
+    assertThat(readers.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(reads.get()).isPositive();
+    assertThat(torn.get()).isZero();
+    assertThat(accountsRepository.getBalanceSnapshot("AC1").getVersion()).isEqualTo(400_000L);
+    assertThat(accountsRepository.getBalanceSnapshot("AC9")).isNull();
+  }
+}
@@ -0,0 +1,165 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.BatchTransferException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepositorySharded;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccountsRepositoryShardedTest {
+
+  private AccountsRepositorySharded accountsRepository;
+
+  @Before
+  public void prepareRepository() {
+    // a tiny ring makes shard owners defer messages to each other
+    this.accountsRepository = new AccountsRepositorySharded(4, 8);
+  }
+
+  @After
+  public void closeRepository() throws Exception {
+    accountsRepository.close();
+  }
+
+  @Test
+  public void transferBetweenAccounts() throws Exception {
+    Account accountFrom = new Account("AC3", new BigDecimal(3000));
+    Account accountTo = new Account("AC4", new BigDecimal(4000));
+    accountsRepository.createAccount(accountFrom);
+    accountsRepository.createAccount(accountTo);
+
+    accountsRepository.transferBetweenAccounts(accountFrom, accountTo, new BigDecimal(200));
+
+    assertThat(accountsRepository.getAccount("AC3").getBalance())
+        .isEqualByComparingTo(new BigDecimal(2800));
+    assertThat(accountsRepository.getAccount("AC4").getBalance())
+        .isEqualByComparingTo(new BigDecimal(4200));
+  }
+
+  @Test
+  public void transferAsyncInsufficientBalance() throws Exception {
+    Account accountFrom = new Account("AC3", new BigDecimal(100));
+    Account accountTo = new Account("AC4", new BigDecimal(0));
+    accountsRepository.createAccount(accountFrom);
+    accountsRepository.createAccount(accountTo);
+
+    try {
+      accountsRepository.transferAsync(accountFrom, accountTo, 20000L).get(10, TimeUnit.SECONDS);
+      fail("Should have failed due to insufficient balance in the account.");
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause()).isInstanceOf(InsufficientBalanceException.class)
+          .hasMessage("Account AC3 does not have sufficient amount to debit from.");
+    }
+    assertThat(accountTo.getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+  }
+
+  @Test
+  public void holdsAcrossShards() throws Exception {
+    List<Account> all = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      Account account = new Account("Id-" + i, new BigDecimal(100));
+      accountsRepository.createAccount(account);
+      all.add(account);
+    }
+    for (int i = 1; i < all.size(); i++) {
+      accountsRepository.placeHold(all.get(0), 1000L);
+      accountsRepository.captureHold(all.get(0), all.get(i), 1000L);
+    }
+    accountsRepository.placeHold(all.get(0), 2000L);
+    accountsRepository.releaseHold(all.get(0), 2000L);
+
+    assertThat(all.get(0).getSnapshot().getBalance()).isEqualTo(3000L);
+    assertThat(all.get(0).getSnapshot().getReserved()).isZero();
+    for (int i = 1; i < all.size(); i++) {
+      assertThat(all.get(i).getBalance()).isEqualByComparingTo("110");
+    }
+    try {
+      accountsRepository.captureHold(all.get(0), all.get(1), 1000L);
+      fail("Should have failed because nothing is held.");
+    } catch (IllegalStateException ise) {
+      // the credit is taken back
+      assertThat(all.get(1).getBalance()).isEqualByComparingTo("110");
+    }
+  }
+
+  /**
+   * Random transfers among accounts spread over all shards: money is neither lost nor created.
+   */
+  @Test
+  public void transferAsyncAcrossShardsConservesMoney() throws Exception {
+    final int accounts = 32;
+    List<Account> all = new ArrayList<>();
+    for (int i = 0; i < accounts; i++) {
+      Account account = new Account("Id-" + i, new BigDecimal(100));
+      accountsRepository.createAccount(account);
+      all.add(account);
+    }
+
+    List<CompletableFuture<Void>> transfers = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      Account from = all.get(ThreadLocalRandom.current().nextInt(accounts));
+      Account to = all.get(ThreadLocalRandom.current().nextInt(accounts));
+      if (from != to) {
+        transfers.add(accountsRepository.transferAsync(from, to, 700L));
+      }
+    }
+    int failed = 0;
+    for (CompletableFuture<Void> transfer : transfers) {
+      try {
+        transfer.get(10, TimeUnit.SECONDS);
+      } catch (ExecutionException ex) {
+        assertThat(ex.getCause()).isInstanceOf(InsufficientBalanceException.class);
+        failed++;
+      }
+    }
+
+    BigDecimal total = BigDecimal.ZERO;
+    for (Account account : all) {
+      assertThat(account.getBalance()).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+      total = total.add(account.getBalance());
+    }
+    assertThat(total).isEqualByComparingTo(new BigDecimal(100 * accounts));
+    assertThat(failed).isLessThan(transfers.size());
+  }
+
+  /**
+   * A batch across shards is held and captured through the owners of its accounts, and a batch
+   * one account can not cover changes nothing.
+   */
+  @Test
+  public void transferAllAcrossShards() throws Exception {
+    Account accountA = new Account("AC1", new BigDecimal(100));
+    Account accountB = new Account("AC2", BigDecimal.ZERO);
+    Account accountC = new Account("AC3", BigDecimal.ZERO);
+    accountsRepository.createAccount(accountA);
+    accountsRepository.createAccount(accountB);
+    accountsRepository.createAccount(accountC);
+
+    accountsRepository.transferAll(new Account[] {accountA, accountB},
+        new Account[] {accountB, accountC}, new long[] {10000L, 6000L});
+    try {
+      accountsRepository.transferAll(new Account[] {accountB, accountC},
+          new Account[] {accountA, accountA}, new long[] {4000L, 6001L});
+      fail("Should have failed due to insufficient balance in the second account.");
+    } catch (BatchTransferException ex) {
+      assertThat(ex.getIndex()).isEqualTo(1);
+    }
+
+    assertThat(accountA.getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+    assertThat(accountB.getBalance()).isEqualByComparingTo(new BigDecimal(40));
+    assertThat(accountC.getBalance()).isEqualByComparingTo(new BigDecimal(60));
+    assertThat(accountB.getSnapshot().getReserved()).isZero();
+  }
+}
@@ -0,0 +1,119 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.admission.AdaptiveConcurrencyLimit;
+import com.db.awmd.challenge.admission.AdmissionControl;
+import com.db.awmd.challenge.admission.TokenBuckets;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class AdmissionControlTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void bucketAllowsBurstThenRate() {
+    final TokenBuckets buckets = new TokenBuckets(10, 5, 100);
+    final long now = 1_000 * SECOND;
+
+    for (int i = 0; i < 5; i++) {
+      assertThat(buckets.tryAcquire("client", now)).isZero();
+    }
+    final long wait = buckets.tryAcquire("client", now);
+    assertThat(wait).isEqualTo(SECOND / 10);
+    // other keys have buckets of their own
+    assertThat(buckets.tryAcquire("other", now)).isZero();
+
+    assertThat(buckets.tryAcquire("client", now + wait)).isZero();
+    assertThat(buckets.tryAcquire("client", now + wait)).isPositive();
+    // an idle bucket refills up to the burst and no further
+    for (int i = 0; i < 5; i++) {
+      assertThat(buckets.tryAcquire("client", now + 60 * SECOND)).isZero();
+    }
+    assertThat(buckets.tryAcquire("client", now + 60 * SECOND)).isPositive();
+  }
+
+  @Test
+  public void bucketsStayBounded() {
+    final TokenBuckets buckets = new TokenBuckets(1, 1, 100);
+    final long now = 1_000 * SECOND;
+
+    int admitted = 0;
+    for (int i = 0; i < 10_000; i++) {
+      if (buckets.tryAcquire("client-" + i, now) == 0) {
+        admitted++;
+      }
+    }
+    assertThat(buckets.size()).isEqualTo(100);
+    // keys beyond the maximum share one bucket, rotating keys gains nothing
+    assertThat(admitted).isEqualTo(101);
+
+    // buckets in use are not evicted to make room, only idle ones are
+    buckets.clear();
+    buckets.tryAcquire("busy", now);
+    for (int i = 0; i < 200; i++) {
+      buckets.tryAcquire("other-" + i, now);
+    }
+    assertThat(buckets.tryAcquire("busy", now)).isPositive();
+    assertThat(buckets.tryAcquire("new", now + 10 * SECOND)).isZero();
+    assertThat(buckets.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void clientIdHeaderIsTrustedOnlyWhenConfigured() {
+    final MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setRemoteAddr("10.0.0.1");
+    request.addHeader(AdmissionControl.CLIENT_ID_HEADER, "client-1");
+
+    assertThat(admissionControl(false).clientOf(request)).isEqualTo("10.0.0.1");
+    assertThat(admissionControl(true).clientOf(request)).isEqualTo("client-1");
+    request.setUserPrincipal(() -> "alice");
+    assertThat(admissionControl(true).clientOf(request)).isEqualTo("alice");
+  }
+
+  @Test
+  public void limitRefusesBeyondItsValue() {
+    final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 2.0, 1000, 30);
+
+    assertThat(limit.tryAcquire()).isTrue();
+    assertThat(limit.tryAcquire()).isTrue();
+    assertThat(limit.tryAcquire()).isFalse();
+    limit.release(TimeUnit.MICROSECONDS.toNanos(100), System.nanoTime());
+    assertThat(limit.tryAcquire()).isTrue();
+  }
+
+  @Test
+  public void limitGrowsWhileFastAndShrinksWhileSlow() {
+    final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(16, 4, 64, 2.0, 1000, 30);
+    final long fast = TimeUnit.MICROSECONDS.toNanos(500);
+    final long slow = TimeUnit.MILLISECONDS.toNanos(50);
+    long now = System.nanoTime();
+
+    for (int i = 0; i < 1000; i++) {
+      fill(limit);
+      limit.release(fast, now++);
+    }
+    final double grown = limit.getLimit();
+    assertThat(grown).isGreaterThan(16);
+
+    for (int i = 0; i < 1000; i++) {
+      fill(limit);
+      limit.release(slow, now++);
+    }
+    assertThat(limit.getLimit()).isLessThan(grown).isGreaterThanOrEqualTo(4);
+  }
+
+  private static AdmissionControl admissionControl(boolean trustClientId) {
+    return new AdmissionControl(new TransferMetrics(), true, trustClientId, 1, 1, 1, 1, 100, 16,
+        1, 64, 2.0, 1000, 30);
+  }
+
+  private static void fill(AdaptiveConcurrencyLimit limit) {
+    while (limit.tryAcquire()) {
+      // take every slot, so that the limit counts as used
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AsyncNotificationService;
+import com.db.awmd.challenge.service.AsyncNotificationService.BackpressurePolicy;
+import com.db.awmd.challenge.service.NotificationService;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncNotificationServiceTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final List<String> delivered = new CopyOnWriteArrayList<>();
+
+  private final NotificationService recorder = (account, description) -> delivered
+      .add(account.getAccountId() + ":" + description);
+
+  @Test
+  public void coalescesNotificationsPerAccount() throws Exception {
+    AsyncNotificationService service = create(recorder, 16, 200, BackpressurePolicy.BLOCK);
+    service.start();
+
+    service.notifyAboutTransfer(new Account("AC1"), "debited with 10");
+    service.notifyAboutTransfer(new Account("AC2"), "credited with 10");
+    service.notifyAboutTransfer(new Account("AC1"), "debited with 20");
+    service.shutdown();
+
+    assertThat(delivered)
+        .containsExactly("AC1:debited with 10\ndebited with 20", "AC2:credited with 10");
+  }
+
+  @Test
+  public void dropsOldestWhenQueueIsFull() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    AsyncNotificationService service = create((account, description) -> {
+      awaitQuietly(release);
+      recorder.notifyAboutTransfer(account, description);
+    }, 2, 0, BackpressurePolicy.DROP_OLDEST);
+    service.start();
+
+    // the first one is picked up by the dispatcher, which then blocks in the delegate
+    service.notifyAboutTransfer(new Account("AC0"), "first");
+    while (service.getQueueDepth() > 0) {
+      Thread.yield();
+    }
+    for (int i = 1; i <= 4; i++) {
+      service.notifyAboutTransfer(new Account("AC" + i), "n" + i);
+    }
+    release.countDown();
+    service.shutdown();
+
+    assertThat(service.getDropped()).isEqualTo(2);
+    assertThat(delivered).containsExactly("AC0:first", "AC3:n3", "AC4:n4");
+  }
+
+  @Test
+  public void spillsToDiskAndReplaysWhenQueueIsFull() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    AsyncNotificationService service = create((account, description) -> {
+      awaitQuietly(release);
+      recorder.notifyAboutTransfer(account, description);
+    }, 1, 0, BackpressurePolicy.SPILL);
+    service.start();
+
+    service.notifyAboutTransfer(new Account("AC0"), "first");
+    while (service.getQueueDepth() > 0) {
+      Thread.yield();
+    }
+    for (int i = 1; i <= 3; i++) {
+      service.notifyAboutTransfer(new Account("AC" + i), "n" + i);
+    }
+    release.countDown();
+    service.shutdown();
+
+    assertThat(delivered).containsExactlyInAnyOrder("AC0:first", "AC1:n1", "AC2:n2", "AC3:n3");
+  }
+
+  @Test
+  public void replaysSpilledNotificationsUnderSustainedLoad() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    AsyncNotificationService service = create((account, description) -> {
+      awaitQuietly(release);
+      recorder.notifyAboutTransfer(account, description);
+    }, 4, 0, BackpressurePolicy.SPILL);
+    service.start();
+
+    service.notifyAboutTransfer(new Account("AC0"), "first");
+    while (service.getQueueDepth() > 0) {
+      Thread.yield();
+    }
+    for (int i = 1; i <= 8; i++) {
+      service.notifyAboutTransfer(new Account("AC" + i), "n" + i);
+    }
+    release.countDown();
+
+    // the queue never stays empty for long, spilled notifications still get through
+    final long deadline = System.currentTimeMillis() + 10_000;
+    while (!delivered.contains("AC8:n8")) {
+      assertThat(System.currentTimeMillis()).isLessThan(deadline);
+      service.notifyAboutTransfer(new Account("live"), "n");
+    }
+    service.shutdown();
+
+    assertThat(delivered).contains("AC5:n5", "AC6:n6", "AC7:n7");
+  }
+
+  private AsyncNotificationService create(NotificationService delegate, int capacity,
+      long windowMillis, BackpressurePolicy policy) throws Exception {
+    File spill = new File(folder.getRoot(), "notifications.spill");
+    return new AsyncNotificationService(delegate, new AccountsRepositoryInMemory(16), capacity,
+        windowMillis, policy, spill.getPath());
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
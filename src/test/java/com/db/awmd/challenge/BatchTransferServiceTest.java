@@ -0,0 +1,82 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.BatchTransferMode;
+import com.db.awmd.challenge.domain.BatchTransferResponse;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.repository.AccountsRepositoryLockFree;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BatchTransferService;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.validation.Validation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchTransferServiceTest {
+
+  private final AtomicInteger transfers = new AtomicInteger();
+
+  private BatchTransferService batchTransferService;
+
+  @Before
+  public void prepareService() {
+    // a repository failing in an unexpected way on the transfers out of AC2
+    final AccountsService accountsService = new AccountsService(new AccountsRepositoryLockFree()) {
+      @Override
+      public void transfer(String accountFromId, String accountToId, long amount) {
+        transfers.incrementAndGet();
+        if ("AC2".equals(accountFromId)) {
+          throw new IllegalStateException("Shard of AC2 is shutting down.");
+        }
+      }
+    };
+    batchTransferService = new BatchTransferService(accountsService,
+        Validation.buildDefaultValidatorFactory().getValidator(),
+        new IdempotencyCache(4, 1000, 60), 2);
+  }
+
+  @After
+  public void shutdownService() {
+    batchTransferService.shutdown();
+  }
+
+  /**
+   * A transfer failing unexpectedly is reported as a failed item, the batch still answers for the
+   * transfers which went through and a retry with the same key does not apply them again.
+   */
+  @Test
+  public void unexpectedFailureIsReportedPerItem() {
+    final List<TransferRequest> transferRequests = new ArrayList<>();
+    transferRequests.add(transferRequest("AC1", "AC3"));
+    transferRequests.add(transferRequest("AC2", "AC3"));
+    transferRequests.add(transferRequest("AC4", "AC5"));
+
+    final BatchTransferResponse response = batchTransferService
+        .transferBatch(transferRequests, BatchTransferMode.BEST_EFFORT, "batch-1");
+
+    assertThat(response.getSucceeded()).isEqualTo(2);
+    assertThat(response.getFailed()).isEqualTo(1);
+    assertThat(response.getResults().get(1).isStatus()).isFalse();
+    assertThat(response.getResults().get(1).getMessage())
+        .isEqualTo("Shard of AC2 is shutting down.");
+
+    assertThat(batchTransferService
+        .transferBatch(transferRequests, BatchTransferMode.BEST_EFFORT, "batch-1"))
+        .isSameAs(response);
+    assertThat(transfers.get()).isEqualTo(3);
+  }
+
+  private static TransferRequest transferRequest(String accountFromId, String accountToId) {
+    final TransferRequest transferRequest = new TransferRequest();
+    transferRequest.setAccountFromId(accountFromId);
+    transferRequest.setAccountToId(accountToId);
+    transferRequest.setAmount(BigDecimal.TEN);
+    return transferRequest;
+  }
+}
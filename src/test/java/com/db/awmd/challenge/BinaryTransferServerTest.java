@@ -0,0 +1,134 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.binary.BinaryTransferClient;
+import com.db.awmd.challenge.binary.BinaryTransferServer;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.service.AccountsService;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"accounts.binary.enabled=true", "accounts.binary.port=0",
+    "accounts.binary.io-threads=2", "accounts.binary.max-in-flight-per-connection=16"})
+public class BinaryTransferServerTest {
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private BinaryTransferServer binaryTransferServer;
+
+  private BinaryTransferClient client;
+
+  @Before
+  public void connect() throws Exception {
+    accountsService.getAccountsRepository().clearAccounts();
+    client = new BinaryTransferClient("localhost", binaryTransferServer.getPort());
+  }
+
+  @After
+  public void disconnect() throws Exception {
+    client.close();
+  }
+
+  @Test
+  public void transfer() throws Exception {
+    accountsService.createAccount(new Account("AC1", new BigDecimal(4000)));
+    accountsService.createAccount(new Account("AC2", new BigDecimal(3000)));
+
+    client.transfer("AC2", "AC1", 20000L).get(10, TimeUnit.SECONDS);
+
+    assertThat(accountsService.getAccount("AC1").getBalance()).isEqualByComparingTo("4200");
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("2800");
+  }
+
+  @Test
+  public void pipelinedTransfers() throws Exception {
+    accountsService.createAccount(new Account("AC1", new BigDecimal(1000)));
+    accountsService.createAccount(new Account("AC2", new BigDecimal(1000)));
+
+    // far more requests than may be in flight, so the server has to pause and resume reading
+    final List<CompletableFuture<Void>> transfers = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      transfers.add(i % 2 == 0 ? client.transfer("AC1", "AC2", 1L)
+          : client.transfer("AC2", "AC1", 3L));
+    }
+    CompletableFuture.allOf(transfers.toArray(new CompletableFuture<?>[0]))
+        .get(30, TimeUnit.SECONDS);
+
+    assertThat(accountsService.getAccount("AC1").getBalance()).isEqualByComparingTo("1010");
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("990");
+    assertThat(client.getPending()).isZero();
+  }
+
+  @Test
+  public void failuresCarryTheServiceException() throws Exception {
+    accountsService.createAccount(new Account("AC1", new BigDecimal(1)));
+    accountsService.createAccount(new Account("AC2", new BigDecimal(0)));
+
+    assertFailure(client.transfer("AC1", "AC2", 101L), InsufficientBalanceException.class);
+    assertFailure(client.transfer("AC1", "AC9", 1L), AccountNotFoundException.class);
+    assertFailure(client.transfer("AC1", "AC2", 0L), IllegalArgumentException.class);
+    assertThat(accountsService.getAccount("AC1").getBalance()).isEqualByComparingTo("1");
+  }
+
+  @Test
+  public void transferIsIdempotentPerRequestId() throws Exception {
+    accountsService.createAccount(new Account("AC1", new BigDecimal(100)));
+    accountsService.createAccount(new Account("AC2", new BigDecimal(0)));
+
+    client.transfer("AC1", "AC2", 1000L, "binary-1").get(10, TimeUnit.SECONDS);
+    client.transfer("AC1", "AC2", 1000L, "binary-1").get(10, TimeUnit.SECONDS);
+    assertFailure(client.transfer("AC1", "AC2", 2000L, "binary-1"),
+        IdempotencyKeyReusedException.class);
+
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("10");
+  }
+
+  @Test
+  public void unknownFrameTypeIsAnswered() throws Exception {
+    try (Socket socket = new Socket("localhost", binaryTransferServer.getPort())) {
+      final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      out.writeInt(1 + 8);
+      out.writeByte(42);
+      out.writeLong(7L);
+      out.flush();
+
+      final DataInputStream in = new DataInputStream(socket.getInputStream());
+      final int length = in.readInt();
+      assertThat(in.readByte()).isEqualTo((byte) 3);
+      assertThat(in.readLong()).isEqualTo(7L);
+      assertThat(length).isEqualTo(1 + 8 + 2 + in.readUnsignedShort());
+    }
+  }
+
+  private static void assertFailure(CompletableFuture<Void> transfer,
+      Class<? extends Throwable> expected) throws Exception {
+    try {
+      transfer.get(10, TimeUnit.SECONDS);
+      fail("Transfer should have failed with " + expected.getSimpleName());
+    } catch (ExecutionException ee) {
+      assertThat(ee.getCause()).isInstanceOf(expected);
+    }
+  }
+}
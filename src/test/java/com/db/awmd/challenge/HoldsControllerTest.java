@@ -0,0 +1,219 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.HoldRequest;
+import com.db.awmd.challenge.domain.HoldResponse;
+import com.db.awmd.challenge.domain.HoldStatus;
+import com.db.awmd.challenge.holds.HoldService;
+import com.db.awmd.challenge.service.AccountsService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.context.WebApplicationContext;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"accounts.holds.tick-millis=10",
+    "accounts.holds.retention-seconds=1"})
+@WebAppConfiguration
+public class HoldsControllerTest {
+
+  private MockMvc mockMvc;
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private HoldService holdService;
+
+  @Autowired
+  private WebApplicationContext webApplicationContext;
+
+  @Before
+  public void prepareMockMvc() {
+    this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+    accountsService.getAccountsRepository().clearAccounts();
+    holdService.clear();
+    accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+    accountsService.createAccount(new Account("Id-2", new BigDecimal(10)));
+  }
+
+  @Test
+  public void holdReservesAndCaptureTransfers() throws Exception {
+    placeHold("{\"holdId\":\"H1\",\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\","
+        + "\"amount\":30}").andExpect(status().isCreated())
+        .andExpect(jsonPath("$.holdId").value("H1"))
+        .andExpect(jsonPath("$.status").value("HELD"));
+
+    assertBalance("Id-1", "70", "30");
+    assertBalance("Id-2", "10", null);
+
+    this.mockMvc.perform(post("/v1/holds/H1/capture")).andExpect(status().isOk())
+        .andExpect(jsonPath("$.status").value("CAPTURED"));
+    // capturing again is answered the same without transferring twice
+    this.mockMvc.perform(post("/v1/holds/H1/capture")).andExpect(status().isOk())
+        .andExpect(jsonPath("$.status").value("CAPTURED"));
+    this.mockMvc.perform(post("/v1/holds/H1/release")).andExpect(status().isConflict());
+
+    assertBalance("Id-1", "70", null);
+    assertBalance("Id-2", "40", null);
+  }
+
+  @Test
+  public void releaseGivesFundsBack() throws Exception {
+    placeHold("{\"holdId\":\"H1\",\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\","
+        + "\"amount\":30}").andExpect(status().isCreated());
+
+    this.mockMvc.perform(post("/v1/holds/H1/release")).andExpect(status().isOk())
+        .andExpect(jsonPath("$.status").value("RELEASED"));
+    this.mockMvc.perform(post("/v1/holds/H1/release")).andExpect(status().isOk());
+    this.mockMvc.perform(post("/v1/holds/H1/capture")).andExpect(status().isConflict());
+    this.mockMvc.perform(get("/v1/holds/H1")).andExpect(status().isOk())
+        .andExpect(jsonPath("$.status").value("RELEASED"));
+
+    assertBalance("Id-1", "100", null);
+    assertBalance("Id-2", "10", null);
+  }
+
+  @Test
+  public void holdIdIsIdempotent() throws Exception {
+    final String body = "{\"holdId\":\"H1\",\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\","
+        + "\"amount\":30}";
+    placeHold(body).andExpect(status().isCreated());
+    placeHold(body).andExpect(status().isCreated()).andExpect(jsonPath("$.holdId").value("H1"));
+    placeHold("{\"holdId\":\"H1\",\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\","
+        + "\"amount\":31}").andExpect(status().isConflict());
+
+    assertBalance("Id-1", "70", "30");
+  }
+
+  @Test
+  public void holdOfWholeBalanceIsRetriedById() throws Exception {
+    final String body = "{\"holdId\":\"H1\",\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\","
+        + "\"amount\":100}";
+    placeHold(body).andExpect(status().isCreated());
+    // nothing is left to reserve, the retry must not try to
+    placeHold(body).andExpect(status().isCreated()).andExpect(jsonPath("$.status").value("HELD"));
+
+    assertBalance("Id-1", "0", "100");
+  }
+
+  @Test
+  public void holdBeyondBalanceIsRefused() throws Exception {
+    placeHold("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":60}")
+        .andExpect(status().isCreated());
+    placeHold("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":60}")
+        .andExpect(status().isBadRequest());
+    placeHold("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-9\",\"amount\":1}")
+        .andExpect(status().isNotFound());
+    placeHold("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":0}")
+        .andExpect(status().isBadRequest());
+    this.mockMvc.perform(post("/v1/holds/unknown/capture")).andExpect(status().isNotFound());
+
+    assertBalance("Id-1", "40", "60");
+  }
+
+  @Test
+  public void expiredHoldsAreReleasedAndForgotten() throws Exception {
+    final List<String> holdIds = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      holdIds.add(holdService.placeHold(hold("Id-1", "Id-2", 1, 1L)).getHoldId());
+    }
+    assertBalance("Id-1", "0", "100");
+
+    final long deadline = System.currentTimeMillis() + 10_000;
+    while (accountsService.getAccountSnapshot("Id-1").getReserved() != null
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertBalance("Id-1", "100", null);
+    assertThat(holdService.getHold(holdIds.get(0)).getStatus()).isEqualTo(HoldStatus.EXPIRED);
+    this.mockMvc.perform(post("/v1/holds/" + holdIds.get(0) + "/capture"))
+        .andExpect(status().isConflict());
+
+    while (holdService.size() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertThat(holdService.size()).isZero();
+  }
+
+  @Test
+  public void concurrentCaptureAndReleaseTransitionOnce() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (int round = 0; round < 50; round++) {
+        final String holdId = holdService.placeHold(hold("Id-1", "Id-2", 1, null)).getHoldId();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<HoldResponse>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+          final boolean capture = t % 2 == 0;
+          results.add(executor.submit(() -> {
+            start.await();
+            try {
+              return capture ? holdService.capture(holdId) : holdService.release(holdId);
+            } catch (RuntimeException re) {
+              return null;
+            }
+          }));
+        }
+        start.countDown();
+        for (Future<HoldResponse> result : results) {
+          result.get();
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    final BigDecimal total = accountsService.getAccount("Id-1").getBalance()
+        .add(accountsService.getAccount("Id-2").getBalance());
+    assertThat(total).isEqualByComparingTo("110");
+    assertThat(accountsService.getAccountSnapshot("Id-1").getReserved()).isNull();
+  }
+
+  private static HoldRequest hold(String accountFromId, String accountToId, long amount,
+      Long ttlSeconds) {
+    final HoldRequest holdRequest = new HoldRequest();
+    holdRequest.setAccountFromId(accountFromId);
+    holdRequest.setAccountToId(accountToId);
+    holdRequest.setAmount(BigDecimal.valueOf(amount));
+    holdRequest.setTtlSeconds(ttlSeconds);
+    return holdRequest;
+  }
+
+  private ResultActions placeHold(String body) throws Exception {
+    return this.mockMvc.perform(post("/v1/holds").contentType(MediaType.APPLICATION_JSON)
+        .content(body));
+  }
+
+  private void assertBalance(String accountId, String balance, String reserved) {
+    assertThat(accountsService.getAccountSnapshot(accountId).getBalance())
+        .isEqualByComparingTo(balance);
+    if (reserved == null) {
+      assertThat(accountsService.getAccountSnapshot(accountId).getReserved()).isNull();
+    } else {
+      assertThat(accountsService.getAccountSnapshot(accountId).getReserved())
+          .isEqualByComparingTo(reserved);
+    }
+  }
+}
@@ -0,0 +1,228 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.exception.AccountVersionMismatchException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.HotAccounts;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public class HotAccountsTest {
+
+  @Test
+  public void creditsToSplitAccountAreConserved() throws Exception {
+    HotAccounts hotAccounts = new HotAccounts(Collections.singleton("merchant"), 4, 0L, 0L);
+    AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory(64,
+        new TransferMetrics(), hotAccounts);
+    Account merchant = new Account("merchant", new BigDecimal(10));
+    accountsRepository.createAccount(merchant);
+    assertThat(merchant.isSplit()).isTrue();
+
+    final int threads = 8;
+    final int transfersPerThread = 10000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < threads; t++) {
+      final Account payer = new Account("payer-" + t, new BigDecimal(100));
+      accountsRepository.createAccount(payer);
+      executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < transfersPerThread; i++) {
+          accountsRepository.transferBetweenAccounts(payer, merchant, 1L);
+        }
+        return null;
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+    assertThat(merchant.getBalance()).isEqualByComparingTo("810");
+    assertThat(merchant.getVersion()).isEqualTo(threads * transfersPerThread);
+
+    // the main balance only holds the initial 10, the sub-balances are folded into it
+    Account supplier = new Account("supplier", BigDecimal.ZERO);
+    accountsRepository.createAccount(supplier);
+    accountsRepository.transferBetweenAccounts(merchant, supplier, new BigDecimal(800));
+    assertThat(merchant.getBalance()).isEqualByComparingTo("10");
+    assertThat(supplier.getBalance()).isEqualByComparingTo("800");
+    try {
+      accountsRepository.transferBetweenAccounts(merchant, supplier, new BigDecimal(11));
+      fail("Should have failed because of insufficient balance");
+    } catch (InsufficientBalanceException ibe) {
+      assertThat(merchant.getBalance()).isEqualByComparingTo("10");
+    }
+  }
+
+  @Test
+  public void conditionalDebitOfSplitAccount() throws Exception {
+    Account merchant = new Account("merchant", new BigDecimal(10));
+    merchant.split(4);
+    merchant.credit(500L);
+    assertThat(merchant.getVersion()).isEqualTo(1L);
+
+    merchant.debit(300L, 1L);
+    assertThat(merchant.getVersion()).isEqualTo(2L);
+    // the main balance falls short, the credit is folded into it without moving the account on
+    merchant.debit(1000L, 2L);
+    assertThat(merchant.getBalance()).isEqualByComparingTo("2");
+    assertThat(merchant.getVersion()).isEqualTo(3L);
+    try {
+      merchant.debit(100L, 2L);
+      fail("Should have failed because the account moved on");
+    } catch (AccountVersionMismatchException avme) {
+      assertThat(merchant.getBalance()).isEqualByComparingTo("2");
+    }
+  }
+
+  @Test
+  public void splitAccountIsReadAtOnePointInTime() throws Exception {
+    Account merchant = new Account("merchant", new BigDecimal(10));
+    merchant.split(4);
+    final int threads = 4;
+    final int creditsPerThread = 20000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < threads; t++) {
+      executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < creditsPerThread; i++) {
+          merchant.credit(1L);
+          if (i % 100 == 0) {
+            merchant.debit(1L);
+          }
+        }
+        return null;
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    // every credit and every debit moves the account on by one version, so a balance read
+    // together with its version tells how many of each were applied
+    while (!executor.isTerminated()) {
+      final BalanceSnapshot snapshot = merchant.getSnapshot();
+      final long gained = snapshot.getBalance() - 1000L;
+      assertThat((snapshot.getVersion() + gained) % 2).isZero();
+      final long credits = (snapshot.getVersion() + gained) / 2;
+      final long debits = (snapshot.getVersion() - gained) / 2;
+      assertThat(debits).isBetween(0L, credits / 100 + threads);
+    }
+    assertThat(merchant.getBalance()).isEqualByComparingTo("802");
+    assertThat(merchant.getVersion())
+        .isEqualTo(threads * (creditsPerThread + creditsPerThread / 100));
+  }
+
+  @Test
+  public void debitsFoldSubBalancesWhileCreditsLand() throws Exception {
+    Account merchant = new Account("merchant", BigDecimal.ZERO);
+    merchant.split(4);
+    final int threads = 4;
+    final int creditsPerThread = 20000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < threads; t++) {
+      executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < creditsPerThread; i++) {
+          merchant.credit(1L);
+        }
+        return null;
+      });
+    }
+    // the main balance starts at zero, so every debit has to fold the credits in
+    final long[] debits = new long[1];
+    executor.submit(() -> {
+      start.await();
+      while (debits[0] < threads * creditsPerThread / 20) {
+        try {
+          merchant.debit(10L);
+          debits[0]++;
+        } catch (InsufficientBalanceException ibe) {
+          Thread.yield();
+        }
+      }
+      return null;
+    });
+    start.countDown();
+    executor.shutdown();
+    while (!executor.isTerminated()) {
+      final BalanceSnapshot snapshot = merchant.getSnapshot();
+      // versions count 1 per credit and 1 per debit of 10, balances gain 1 and lose 10
+      assertThat((snapshot.getVersion() - snapshot.getBalance()) % 11).isZero();
+    }
+    assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+    assertThat(merchant.getBalanceInMinorUnits()).isEqualTo(threads * creditsPerThread / 2);
+    assertThat(merchant.getVersion())
+        .isEqualTo(threads * creditsPerThread + threads * creditsPerThread / 20);
+    // what is left was folded in or is still in the sub-balances, either way it can be spent
+    merchant.debit(threads * creditsPerThread / 2);
+    assertThat(merchant.getBalanceInMinorUnits()).isZero();
+  }
+
+  @Test
+  public void splitAccountIsReadWhileCreditsNeverStop() throws Exception {
+    Account merchant = new Account("merchant", BigDecimal.ZERO);
+    merchant.split(4);
+    final int threads = 4;
+    final AtomicBoolean stop = new AtomicBoolean();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    for (int t = 0; t < threads; t++) {
+      executor.submit(() -> {
+        while (!stop.get()) {
+          merchant.credit(1L);
+        }
+        return null;
+      });
+    }
+    try {
+      // every read returns although the credits never pause, and sees them at one point in time
+      long previous = 0L;
+      for (int i = 0; i < 10000; i++) {
+        final BalanceSnapshot snapshot = merchant.getSnapshot();
+        assertThat(snapshot.getVersion()).isEqualTo(snapshot.getBalance());
+        assertThat(snapshot.getVersion()).isGreaterThanOrEqualTo(previous);
+        previous = snapshot.getVersion();
+      }
+    } finally {
+      stop.set(true);
+      executor.shutdown();
+    }
+    assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+    assertThat(merchant.getVersion()).isEqualTo(merchant.getBalanceInMinorUnits());
+  }
+
+  @Test
+  public void splitsAccountsContendedOften() throws Exception {
+    HotAccounts hotAccounts = new HotAccounts(Collections.emptySet(), 4, 3L, 0L);
+    Account hot = new Account("hot", BigDecimal.ONE);
+    Account warm = new Account("warm", BigDecimal.ONE);
+    for (int i = 0; i < 3; i++) {
+      hotAccounts.onContended(hot);
+    }
+    hotAccounts.onContended(warm);
+
+    assertThat(hotAccounts.detect()).isEqualTo(1);
+    assertThat(hot.isSplit()).isTrue();
+    assertThat(warm.isSplit()).isFalse();
+    assertThat(hot.getBalance()).isEqualByComparingTo("1");
+
+    // a new interval starts from zero
+    hotAccounts.onContended(warm);
+    hotAccounts.onContended(warm);
+    assertThat(hotAccounts.detect()).isZero();
+    assertThat(hotAccounts.getAutoSplit()).isEqualTo(1);
+  }
+}
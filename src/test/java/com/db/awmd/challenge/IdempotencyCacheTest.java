@@ -0,0 +1,73 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.TransferResponse;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class IdempotencyCacheTest {
+
+  @Test
+  public void concurrentDuplicatesWaitForTheFirstExecution() throws Exception {
+    IdempotencyCache cache = new IdempotencyCache(4, 1000, 60);
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<TransferResponse>> responses = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        responses.add(executor.submit(() -> cache.execute("key-1", "AC1>AC2:10", () -> {
+          executions.incrementAndGet();
+          try {
+            release.await();
+          } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+          }
+          return new TransferResponse(true, "done");
+        })));
+      }
+      Thread.sleep(100);
+      release.countDown();
+      for (Future<TransferResponse> response : responses) {
+        assertThat(response.get().getMessage()).isEqualTo("done");
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(executions.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void failedTransferIsNotRemembered() {
+    IdempotencyCache cache = new IdempotencyCache(4, 1000, 60);
+    try {
+      cache.execute("key-1", "AC1>AC2:10", () -> {
+        throw new InsufficientBalanceException("insufficient");
+      });
+      fail("Should have failed.");
+    } catch (InsufficientBalanceException ibe) {
+      assertThat(cache.size()).isZero();
+    }
+    assertThat(cache.execute("key-1", "AC1>AC2:10", () -> new TransferResponse(true, "retried"))
+        .getMessage()).isEqualTo("retried");
+  }
+
+  @Test
+  public void evictsOldestEntriesBeyondTheSizeBound() {
+    IdempotencyCache cache = new IdempotencyCache(1, 10, 60);
+    for (int i = 0; i < 100; i++) {
+      cache.execute("key-" + i, "AC1>AC2:10", () -> new TransferResponse(true, "done"));
+    }
+    assertThat(cache.size()).isLessThanOrEqualTo(11);
+  }
+}
@@ -0,0 +1,42 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import com.db.awmd.challenge.holds.HoldService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.web.context.WebApplicationContext;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "accounts.repository.mode=journaled")
+@WebAppConfiguration
+public class MetricsControllerTest {
+
+  @Autowired
+  private WebApplicationContext webApplicationContext;
+
+  @Test
+  public void scrapeRecoveryMetrics() throws Exception {
+    String metrics = webAppContextSetup(this.webApplicationContext).build()
+        .perform(get("/v1/metrics")).andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    assertThat(metrics).contains("# TYPE accounts_recovery_seconds gauge")
+        .containsPattern("accounts_recovery_seconds\\{phase=\"total\"} [0-9.]+")
+        .contains("accounts_recovery_snapshot_position -1")
+        .contains("accounts_recovery_journal_records 0");
+  }
+
+  @Test
+  public void holdsAreNotOfferedByTheJournaledRepository() throws Exception {
+    webAppContextSetup(this.webApplicationContext).build()
+        .perform(get("/v1/holds/any")).andExpect(status().isNotFound());
+    assertThat(webApplicationContext.getBeanNamesForType(HoldService.class)).isEmpty();
+  }
+}
@@ -0,0 +1,42 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import java.math.BigDecimal;
+import org.junit.Test;
+
+public class MoneyTest {
+
+  @Test
+  public void convertsBetweenMinorUnitsAndBigDecimal() {
+    assertThat(Money.toMinorUnits(new BigDecimal("123.45"))).isEqualTo(12345L);
+    assertThat(Money.toMinorUnits(new BigDecimal(200))).isEqualTo(20000L);
+    assertThat(Money.toBigDecimal(12345L)).isEqualByComparingTo("123.45");
+  }
+
+  @Test
+  public void rejectsAmountsFinerThanScale() {
+    try {
+      Money.toMinorUnits(new BigDecimal("0.001"));
+      fail("Should have rejected an amount finer than the money scale.");
+    } catch (ArithmeticException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void creditOverflowLeavesBalanceUntouched() {
+    Account account = new Account("AC1");
+    account.credit(Long.MAX_VALUE);
+
+    try {
+      account.credit(1L);
+      fail("Should have failed on balance overflow.");
+    } catch (ArithmeticException ex) {
+      assertThat(account.getBalanceInMinorUnits()).isEqualTo(Long.MAX_VALUE);
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountChanges;
+import com.db.awmd.challenge.replication.AccountsRepositoryReplica;
+import com.db.awmd.challenge.replication.ChangeStream;
+import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.function.BooleanSupplier;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Runs a primary and a replica in one JVM, talking to each other over localhost.
+ */
+public class ReplicationTest {
+
+  @ClassRule
+  public static TemporaryFolder folder = new TemporaryFolder();
+
+  private static ConfigurableApplicationContext primary;
+
+  private static ConfigurableApplicationContext replica;
+
+  private static RestTemplate http;
+
+  private AccountsService primaryAccounts;
+
+  @BeforeClass
+  public static void startInstances() throws Exception {
+    primary = start(folder.newFolder(), "--accounts.replication.change-stream.enabled=true",
+        "--accounts.replication.change-stream.capacity=64");
+    replica = start(folder.newFolder(), "--accounts.repository.mode=replica",
+        "--accounts.replication.primary-url=" + url(primary, ""),
+        "--accounts.replication.poll-wait-millis=200",
+        "--accounts.replication.cache-size=64");
+    // does not follow redirects of POST requests, so that they can be checked
+    http = new RestTemplate(new SimpleClientHttpRequestFactory());
+  }
+
+  @AfterClass
+  public static void stopInstances() {
+    replica.close();
+    primary.close();
+  }
+
+  @Before
+  public void clear() {
+    primaryAccounts = primary.getBean(AccountsService.class);
+    primaryAccounts.clearAccounts();
+    replica.getBean(AccountsRepositoryReplica.class).clearAccounts();
+  }
+
+  @Test
+  public void replicaServesReadsAndFollowsTransfers() throws Exception {
+    primaryAccounts.createAccount(new Account("Id-1", new BigDecimal(100)));
+    primaryAccounts.createAccount(new Account("Id-2", new BigDecimal(0)));
+    await(() -> replica.getBean(AccountsRepositoryReplica.class).getMillisSinceContact() < 1000);
+
+    assertThat(balanceOnReplica("Id-1")).isEqualByComparingTo("100");
+
+    primaryAccounts.transfer("Id-1", "Id-2", 2500L);
+    await(() -> balanceOnReplica("Id-1").compareTo(new BigDecimal(75)) == 0);
+    assertThat(balanceOnReplica("Id-2")).isEqualByComparingTo("25");
+
+    // many more changes than the primary retains, the replica converges whether it keeps up or
+    // has to start over
+    for (int i = 0; i < 500; i++) {
+      primaryAccounts.transfer("Id-1", "Id-2", 1L);
+    }
+    await(() -> balanceOnReplica("Id-1").compareTo(new BigDecimal("70")) == 0);
+    assertThat(balanceOnReplica("Id-2")).isEqualByComparingTo("30");
+  }
+
+  @Test
+  public void replicaRedirectsWritesToThePrimary() {
+    final HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_JSON);
+    final ResponseEntity<String> response = http.postForEntity(url(replica, "/v1/accounts"),
+        new HttpEntity<>("{\"accountId\":\"Id-1\",\"balance\":1}", headers), String.class);
+
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TEMPORARY_REDIRECT);
+    assertThat(response.getHeaders().getLocation().toString())
+        .isEqualTo(url(primary, "/v1/accounts"));
+  }
+
+  @Test
+  public void changeStreamResetsReadersTooFarBehind() throws Exception {
+    primaryAccounts.createAccount(new Account("Id-1", new BigDecimal(100)));
+    primaryAccounts.createAccount(new Account("Id-2", new BigDecimal(0)));
+    final ChangeStream changeStream = primary.getBean(ChangeStream.class);
+    final long start = changeStream.read(Long.MAX_VALUE, 1, 0).getLastSequence();
+
+    primaryAccounts.transfer("Id-1", "Id-2", 1L);
+    AccountChanges changes = changeStream.read(start, 10, 0);
+    assertThat(changes.isReset()).isFalse();
+    assertThat(changes.getChanges()).extracting("accountId").containsExactly("Id-1", "Id-2");
+    assertThat(changes.getChanges().get(0).getBalance()).isEqualTo(9999L);
+    assertThat(changes.getLastSequence()).isEqualTo(start + 2);
+
+    for (int i = 0; i < 40; i++) {
+      primaryAccounts.transfer("Id-1", "Id-2", 1L);
+    }
+    assertThat(changeStream.read(start, 10, 0).isReset()).isTrue();
+  }
+
+  @Test
+  public void replicaDropsAccountsClearedOnThePrimary() throws Exception {
+    primaryAccounts.createAccount(new Account("Id-1", new BigDecimal(100)));
+    primaryAccounts.createAccount(new Account("Id-2", new BigDecimal(0)));
+    for (int i = 0; i < 5; i++) {
+      primaryAccounts.transfer("Id-1", "Id-2", 100L);
+    }
+    await(() -> balanceOnReplica("Id-1").compareTo(new BigDecimal(95)) == 0);
+    final ChangeStream changeStream = primary.getBean(ChangeStream.class);
+    final AccountChanges before = changeStream.read(Long.MAX_VALUE, 1, 0);
+
+    // the accounts created again are at lower versions than the ones the replica holds
+    primaryAccounts.clearAccounts();
+    primaryAccounts.createAccount(new Account("Id-1", new BigDecimal(7)));
+    assertThat(changeStream.read(before.getLastSequence() - 1, 10, 0).isReset()).isTrue();
+    assertThat(changeStream.read(before.getLastSequence(), 10, 0).getStreamId())
+        .isNotEqualTo(before.getStreamId());
+
+    await(() -> balanceOnReplica("Id-1").compareTo(new BigDecimal(7)) == 0);
+  }
+
+  private BigDecimal balanceOnReplica(String accountId) {
+    return new BigDecimal(http.getForObject(url(replica, "/v1/accounts/" + accountId),
+        JsonNode.class).get("balance").asText());
+  }
+
+  private static ConfigurableApplicationContext start(File directory, String... args) {
+    final String[] common = {"--server.port=0",
+        "--accounts.history.directory=" + new File(directory, "history"),
+        "--accounts.scheduling.directory=" + new File(directory, "scheduling"),
+        "--accounts.notifications.spill-file=" + new File(directory, "notifications.spill")};
+    final String[] all = new String[common.length + args.length];
+    System.arraycopy(common, 0, all, 0, common.length);
+    System.arraycopy(args, 0, all, common.length, args.length);
+    return new SpringApplicationBuilder(DevChallengeApplication.class).run(all);
+  }
+
+  private static String url(ConfigurableApplicationContext context, String path) {
+    return "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + path;
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 10_000;
+    while (!condition.getAsBoolean()) {
+      assertThat(System.currentTimeMillis()).isLessThan(deadline);
+      Thread.sleep(10);
+    }
+  }
+}
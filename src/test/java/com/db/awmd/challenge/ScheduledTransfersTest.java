@@ -0,0 +1,203 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ScheduledTransferRequest;
+import com.db.awmd.challenge.domain.ScheduledTransferResponse;
+import com.db.awmd.challenge.domain.ScheduledTransferStatus;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.scheduling.TransferScheduler;
+import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.function.BooleanSupplier;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.context.WebApplicationContext;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "accounts.scheduling.tick-millis=10")
+@WebAppConfiguration
+public class ScheduledTransfersTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private MockMvc mockMvc;
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private TransferScheduler transferScheduler;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private WebApplicationContext webApplicationContext;
+
+  @Before
+  public void prepareMockMvc() {
+    this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+    accountsService.getAccountsRepository().clearAccounts();
+    transferScheduler.clear();
+    accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+    accountsService.createAccount(new Account("Id-2", new BigDecimal(0)));
+  }
+
+  @Test
+  public void futureDatedTransferExecutesOnceDue() throws Exception {
+    // far enough ahead for the first request of a cold context to be answered before it is due
+    final long executeAt = System.currentTimeMillis() + 3000;
+    schedule("{\"scheduleId\":\"S1\",\"executeAt\":" + executeAt + ",\"transfer\":"
+        + "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":30}}")
+        .andExpect(status().isCreated())
+        .andExpect(jsonPath("$.status").value("PENDING"))
+        .andExpect(jsonPath("$.nextExecutionAt").value(executeAt));
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("0");
+
+    await(() -> transferScheduler.getScheduledTransfer("S1").getStatus()
+        == ScheduledTransferStatus.COMPLETED);
+    assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(executeAt);
+    this.mockMvc.perform(get("/v1/scheduled-transfers/S1")).andExpect(status().isOk())
+        .andExpect(jsonPath("$.executed").value(1))
+        .andExpect(jsonPath("$.nextExecutionAt").doesNotExist());
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("70");
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("30");
+  }
+
+  @Test
+  public void standingOrderRepeatsUntilCancelled() throws Exception {
+    schedule("{\"scheduleId\":\"S1\",\"executeAt\":" + System.currentTimeMillis()
+        + ",\"intervalSeconds\":1,\"transfer\":"
+        + "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":10}}")
+        .andExpect(status().isCreated());
+
+    await(() -> transferScheduler.getScheduledTransfer("S1").getExecuted() >= 2);
+    this.mockMvc.perform(delete("/v1/scheduled-transfers/S1")).andExpect(status().isOk())
+        .andExpect(jsonPath("$.status").value("CANCELLED"));
+    this.mockMvc.perform(delete("/v1/scheduled-transfers/S1")).andExpect(status().isOk());
+    final long executed = transferScheduler.getScheduledTransfer("S1").getExecuted();
+
+    Thread.sleep(1500);
+    assertThat(transferScheduler.getScheduledTransfer("S1").getExecuted()).isEqualTo(executed);
+    assertThat(accountsService.getAccount("Id-2").getBalance())
+        .isEqualByComparingTo(BigDecimal.TEN.multiply(BigDecimal.valueOf(executed)));
+  }
+
+  @Test
+  public void failedOccurrenceIsReported() throws Exception {
+    schedule("{\"scheduleId\":\"S1\",\"executeAt\":0,\"transfer\":"
+        + "{\"accountFromId\":\"Id-2\",\"accountToId\":\"Id-1\",\"amount\":10}}")
+        .andExpect(status().isCreated());
+
+    await(() -> transferScheduler.getScheduledTransfer("S1").getStatus()
+        == ScheduledTransferStatus.COMPLETED);
+    final ScheduledTransferResponse response = transferScheduler.getScheduledTransfer("S1");
+    assertThat(response.getFailed()).isEqualTo(1);
+    assertThat(response.getLastError()).contains("sufficient");
+  }
+
+  @Test
+  public void invalidSchedulesAreRefused() throws Exception {
+    final String transfer = "\"transfer\":{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\","
+        + "\"amount\":10}";
+    schedule("{" + transfer + "}").andExpect(status().isBadRequest());
+    schedule("{\"executeAt\":0,\"occurrences\":3," + transfer + "}")
+        .andExpect(status().isBadRequest());
+    schedule("{\"executeAt\":0,\"transfer\":{\"accountFromId\":\"Id-1\","
+        + "\"accountToId\":\"Id-9\",\"amount\":10}}").andExpect(status().isNotFound());
+    schedule("{\"scheduleId\":\"S1\",\"executeAt\":" + Long.MAX_VALUE / 2 + "," + transfer + "}")
+        .andExpect(status().isCreated());
+    schedule("{\"scheduleId\":\"S1\",\"executeAt\":" + Long.MAX_VALUE / 2 + "," + transfer + "}")
+        .andExpect(status().isCreated());
+    schedule("{\"scheduleId\":\"S1\",\"executeAt\":0," + transfer + "}")
+        .andExpect(status().isUnprocessableEntity());
+    this.mockMvc.perform(get("/v1/scheduled-transfers/S9")).andExpect(status().isNotFound());
+  }
+
+  @Test
+  public void schedulesSurviveRestartAndCatchUpIsBounded() throws Exception {
+    final File directory = folder.newFolder();
+    final long now = System.currentTimeMillis();
+    TransferScheduler scheduler = new TransferScheduler(accountsService, objectMapper,
+        directory, 10, 2, 4, 100, 1, 60_000);
+    scheduler.schedule(request("Future", now + 3_600_000, null, null));
+    // fifty daily occurrences, all due while the scheduler is down
+    scheduler.schedule(request("Missed", now - 50L * 86_400_000, 86_400L, 50));
+    scheduler.shutdown();
+
+    scheduler = new TransferScheduler(accountsService, objectMapper, directory, 10, 2, 4, 100,
+        1, 60_000);
+    try {
+      assertThat(scheduler.getScheduledTransfer("Future").getNextExecutionAt())
+          .isEqualTo(now + 3_600_000);
+      assertThat(scheduler.getScheduledTransfer("Missed").getSkipped()).isEqualTo(49);
+      scheduler.start();
+      final TransferScheduler started = scheduler;
+      await(() -> started.getScheduledTransfer("Missed").getStatus()
+          == ScheduledTransferStatus.COMPLETED);
+      assertThat(started.getScheduledTransfer("Missed").getExecuted()).isEqualTo(1);
+      assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("1");
+    } finally {
+      scheduler.shutdown();
+    }
+
+    scheduler = new TransferScheduler(accountsService, objectMapper, directory, 10, 2, 4, 100,
+        1, 60_000);
+    try {
+      assertThat(scheduler.size()).isEqualTo(1);
+      assertThat(scheduler.getScheduledTransfer("Future").getStatus())
+          .isEqualTo(ScheduledTransferStatus.PENDING);
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  private static ScheduledTransferRequest request(String scheduleId, long executeAt,
+      Long intervalSeconds, Integer occurrences) {
+    final TransferRequest transfer = new TransferRequest();
+    transfer.setAccountFromId("Id-1");
+    transfer.setAccountToId("Id-2");
+    transfer.setAmount(BigDecimal.ONE);
+    final ScheduledTransferRequest request = new ScheduledTransferRequest();
+    request.setScheduleId(scheduleId);
+    request.setTransfer(transfer);
+    request.setExecuteAt(executeAt);
+    request.setIntervalSeconds(intervalSeconds);
+    request.setOccurrences(occurrences);
+    return request;
+  }
+
+  private ResultActions schedule(String body) throws Exception {
+    return this.mockMvc.perform(post("/v1/scheduled-transfers")
+        .contentType(MediaType.APPLICATION_JSON).content(body));
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 10_000;
+    while (!condition.getAsBoolean()) {
+      assertThat(System.currentTimeMillis()).isLessThan(deadline);
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.TransactionEntry;
+import com.db.awmd.challenge.domain.TransactionPage;
+import com.db.awmd.challenge.history.TransactionHistory;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransactionHistoryTest {
+
+  private File directory;
+
+  private TransactionHistory history;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("history").toFile();
+    // a tiny ring and segments so that most entries are spilled across several segments
+    history = new TransactionHistory(directory, 4096, 4);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    history.close();
+    history.clear();
+    assertThat(directory.delete()).isTrue();
+  }
+
+  @Test
+  public void pagesThroughRingAndSpilledEntries() throws Exception {
+    for (int i = 1; i <= 1000; i++) {
+      history.record("AC1", "AC2", i);
+    }
+
+    List<TransactionEntry> entries = new ArrayList<>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      TransactionPage page = history.page("AC2", cursor, null, 7);
+      assertThat(page.getTransactions().size()).isBetween(1, 7);
+      entries.addAll(page.getTransactions());
+      cursor = page.getNextCursor();
+      pages++;
+    } while (cursor != null);
+
+    assertThat(pages).isEqualTo(143);
+    assertThat(entries).hasSize(1000);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(entries.get(i).getAmount()).isEqualByComparingTo(
+          String.valueOf((1000 - i) / 100.0));
+      assertThat(entries.get(i).getSequence()).isEqualTo(1000 - i);
+      assertThat(entries.get(i).getCounterpartyId()).isEqualTo("AC1");
+    }
+    assertThat(history.page("AC1", null, null, 1).getTransactions().get(0).getAmount())
+        .isEqualByComparingTo("-10");
+  }
+
+  @Test
+  public void cursorIsStableWhileEntriesAreAdded() throws Exception {
+    for (int i = 1; i <= 10; i++) {
+      history.record("AC1", "AC2", i);
+    }
+    TransactionPage first = history.page("AC1", null, null, 3);
+    for (int i = 11; i <= 100; i++) {
+      history.record("AC1", "AC2", i);
+    }
+
+    TransactionPage second = history.page("AC1", first.getNextCursor(), null, 3);
+
+    assertThat(second.getTransactions()).extracting("sequence").containsExactly(7L, 6L, 5L);
+  }
+
+  @Test
+  public void pagesBeforePointInTime() throws Exception {
+    for (int i = 1; i <= 200; i++) {
+      history.record("AC1", "AC2", i);
+    }
+    Thread.sleep(5);
+    long before = System.currentTimeMillis();
+    Thread.sleep(5);
+    for (int i = 201; i <= 300; i++) {
+      history.record("AC1", "AC2", i);
+    }
+
+    TransactionPage page = history.page("AC1", null, before, 2);
+    assertThat(page.getTransactions()).extracting("sequence").containsExactly(200L, 199L);
+    assertThat(history.page("AC1", page.getNextCursor(), before, 2).getTransactions())
+        .extracting("sequence").containsExactly(198L, 197L);
+    assertThat(history.page("AC1", null, 0L, 2).getTransactions()).isEmpty();
+    assertThat(history.page("AC3", null, null, 2).getTransactions()).isEmpty();
+  }
+}
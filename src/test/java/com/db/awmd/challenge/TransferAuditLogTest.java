@@ -0,0 +1,58 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.audit.TransferAuditLog;
+import com.db.awmd.challenge.metrics.TransferMetrics.Outcome;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class TransferAuditLogTest {
+
+  @Test
+  public void writesEveryEventOfConcurrentProducersInSequenceOrder() throws Exception {
+    final int producers = 4;
+    final int eventsPerProducer = 20_000;
+    final List<Long> sequences = new ArrayList<>();
+    final long[] amountPerProducer = new long[producers];
+    // a ring much smaller than the number of events makes producers wrap and wait
+    TransferAuditLog auditLog = new TransferAuditLog(64,
+        (sequence, timestamp, outcome, from, to, amount) -> {
+          sequences.add(sequence);
+          amountPerProducer[Integer.parseInt(from)] += amount;
+        });
+    auditLog.start();
+
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      final String from = String.valueOf(p);
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException ie) {
+          return;
+        }
+        for (int i = 0; i < eventsPerProducer; i++) {
+          auditLog.publish(Outcome.SUCCESS, from, "AC1", 3);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    auditLog.shutdown();
+
+    assertThat(sequences).hasSize(producers * eventsPerProducer);
+    for (int i = 0; i < sequences.size(); i++) {
+      assertThat(sequences.get(i)).isEqualTo(i);
+    }
+    assertThat(amountPerProducer).containsOnly(3L * eventsPerProducer);
+    assertThat(auditLog.getBacklog()).isZero();
+  }
+}
@@ -0,0 +1,56 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+public class TransferMetricsTest {
+
+  @Test
+  public void latenciesOfAllThreadsAreMerged() throws Exception {
+    TransferMetrics transferMetrics = new TransferMetrics(true, 4);
+    final int threads = 8;
+    final int requestsPerThread = 10000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < threads; t++) {
+      final long nanos = 1000L * (t + 1);
+      executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < requestsPerThread; i++) {
+          transferMetrics.recordRequest(nanos);
+        }
+        return null;
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+    Histogram requestNanos = transferMetrics.getRequestNanos();
+    assertThat(requestNanos.getTotalCount()).isEqualTo(threads * requestsPerThread);
+    assertThat(requestNanos.getMinValue()).isEqualTo(1000L);
+    assertThat(requestNanos.lowestEquivalentValue(requestNanos.getMaxValue()))
+        .isEqualTo(requestNanos.lowestEquivalentValue(1000L * threads));
+    // a latency above the highest trackable one is recorded as that
+    transferMetrics.recordRequest(TimeUnit.HOURS.toNanos(1));
+    assertThat(transferMetrics.getRequestNanos().getTotalCount())
+        .isEqualTo(threads * requestsPerThread + 1);
+  }
+
+  @Test
+  public void latenciesAreNotRecordedWhenTurnedOff() {
+    TransferMetrics transferMetrics = new TransferMetrics(false, 4);
+    transferMetrics.recordRequest(1000L);
+    transferMetrics.recordOutcome(TransferMetrics.Outcome.SUCCESS);
+
+    assertThat(transferMetrics.getRequestNanos().getTotalCount()).isZero();
+    assertThat(transferMetrics.getOutcomeCount(TransferMetrics.Outcome.SUCCESS)).isEqualTo(1L);
+  }
+}
@@ -0,0 +1,95 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import com.db.awmd.challenge.admission.AdmissionControl;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.metrics.TransferMetrics.Outcome;
+import com.db.awmd.challenge.service.AccountsService;
+import java.math.BigDecimal;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.context.WebApplicationContext;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"accounts.admission.account.rate-per-second=0.001",
+    "accounts.admission.account.burst=2", "accounts.admission.client.rate-per-second=0.001",
+    "accounts.admission.client.burst=3", "accounts.admission.client.trust-client-id-header=true"})
+@WebAppConfiguration
+public class TransfersAdmissionTest {
+
+  private MockMvc mockMvc;
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private AdmissionControl admissionControl;
+
+  @Autowired
+  private TransferMetrics transferMetrics;
+
+  @Autowired
+  private WebApplicationContext webApplicationContext;
+
+  @Before
+  public void prepareMockMvc() {
+    this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+    accountsService.getAccountsRepository().clearAccounts();
+    admissionControl.clear();
+  }
+
+  @Test
+  public void accountRateLimitAnswers429WithoutTransferring() throws Exception {
+    accountsService.createAccount(new Account("AC1", new BigDecimal(100)));
+    accountsService.createAccount(new Account("AC2", new BigDecimal(100)));
+    final long throttled = transferMetrics.getOutcomeCount(Outcome.THROTTLED);
+
+    transfer("client-1", "AC1", "AC2").andExpect(status().isOk());
+    transfer("client-2", "AC1", "AC2").andExpect(status().isOk());
+    transfer("client-3", "AC1", "AC2").andExpect(status().isTooManyRequests())
+        .andExpect(header().string("Retry-After", "1000"))
+        .andExpect(jsonPath("$.status").value(false));
+    // other accounts are not affected
+    transfer("client-3", "AC2", "AC1").andExpect(status().isOk());
+
+    assertThat(accountsService.getAccount("AC1").getBalance()).isEqualByComparingTo("97");
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("103");
+    assertThat(transferMetrics.getOutcomeCount(Outcome.THROTTLED)).isEqualTo(throttled + 1);
+  }
+
+  @Test
+  public void clientRateLimitAppliesAcrossAccounts() throws Exception {
+    for (int i = 0; i < 4; i++) {
+      accountsService.createAccount(new Account("AC" + i, new BigDecimal(100)));
+    }
+
+    transfer("client-1", "AC0", "AC1").andExpect(status().isOk());
+    transfer("client-1", "AC1", "AC2").andExpect(status().isOk());
+    transfer("client-1", "AC2", "AC3").andExpect(status().isOk());
+    transfer("client-1", "AC3", "AC0").andExpect(status().isTooManyRequests());
+    transfer("client-2", "AC3", "AC0").andExpect(status().isOk());
+  }
+
+  private ResultActions transfer(String clientId, String from, String to) throws Exception {
+    return this.mockMvc.perform(post("/v1/accounts/transfer")
+        .header(AdmissionControl.CLIENT_ID_HEADER, clientId)
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"accountFromId\":\"" + from + "\",\"accountToId\":\"" + to
+            + "\",\"amount\":3}"));
+  }
+}
@@ -0,0 +1,113 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import java.math.BigDecimal;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.context.WebApplicationContext;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"accounts.web.execution=async", "accounts.repository.mode=sharded"})
+@WebAppConfiguration
+public class TransfersAsyncControllerTest {
+
+  private MockMvc mockMvc;
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private WebApplicationContext webApplicationContext;
+
+  @Before
+  public void prepareMockMvc() {
+    this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+    accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @Test
+  public void transferAmount() throws Exception {
+    accountsService.createAccount(new Account("AC1", new BigDecimal(4000)));
+    accountsService.createAccount(new Account("AC2", new BigDecimal(3000)));
+
+    MvcResult started = this.mockMvc.perform(post("/v1/accounts/transfer")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200}"))
+        .andExpect(request().asyncStarted()).andReturn();
+    this.mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk())
+        .andExpect(jsonPath("$.message")
+            .value("200 amount has been transferred from account AC2 to AC1"));
+
+    assertThat(accountsService.getAccount("AC1").getBalance()).isEqualByComparingTo("4200");
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("2800");
+  }
+
+  /**
+   * The version of the debited account is checked by the owner of its shard.
+   */
+  @Test
+  public void transferAmountIfMatch() throws Exception {
+    accountsService.createAccount(new Account("AC1", new BigDecimal(4000)));
+    accountsService.createAccount(new Account("AC2", new BigDecimal(3000)));
+
+    transferIfMatch("\"0\"").andExpect(status().isOk());
+    transferIfMatch("\"0\"").andExpect(status().isPreconditionFailed())
+        .andExpect(jsonPath("$.message").value("Account AC2 is at version 1, not 0."));
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("2800");
+
+    transferIfMatch("\"1\"").andExpect(status().isOk());
+    assertThat(accountsService.getAccount("AC2").getBalance()).isEqualByComparingTo("2600");
+    assertThat(accountsService.getAccount("AC1").getBalance()).isEqualByComparingTo("4400");
+  }
+
+  @Test
+  public void transferAmountInsufficientBalance() throws Exception {
+    accountsService.createAccount(new Account("AC1", new BigDecimal(4000)));
+    accountsService.createAccount(new Account("AC2", new BigDecimal(3000)));
+
+    MvcResult started = this.mockMvc.perform(post("/v1/accounts/transfer")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":3200}"))
+        .andExpect(request().asyncStarted()).andReturn();
+    this.mockMvc.perform(asyncDispatch(started)).andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.message")
+            .value("Account AC2 does not have sufficient amount to debit from."));
+  }
+
+  @Test
+  public void transferAmountAccountNotFound() throws Exception {
+    MvcResult started = this.mockMvc.perform(post("/v1/accounts/transfer")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200}"))
+        .andExpect(request().asyncStarted()).andReturn();
+    this.mockMvc.perform(asyncDispatch(started)).andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.message").value("Account with id AC2 not found."));
+  }
+
+  private ResultActions transferIfMatch(String ifMatch) throws Exception {
+    MvcResult started = this.mockMvc.perform(post("/v1/accounts/transfer")
+        .contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.IF_MATCH, ifMatch)
+        .content("{\"accountFromId\":\"AC2\",\"accountToId\":\"AC1\",\"amount\":200}"))
+        .andExpect(request().asyncStarted()).andReturn();
+    return this.mockMvc.perform(asyncDispatch(started));
+  }
+}